@@ -236,9 +236,8 @@ public abstract class AbstractUpdateManager
             fields = reorderFields(fields);
         }
 
-        BitSet dirty = sm.getDirty();
         for (FieldMapping field : fields) {
-            if (dirty.get(field.getIndex())
+            if (sm.isFieldDirty(field.getIndex())
                     && !bufferCustomInsert(field, sm, store, customs)) {
                 field.insert(sm, store, rowMgr);
             }
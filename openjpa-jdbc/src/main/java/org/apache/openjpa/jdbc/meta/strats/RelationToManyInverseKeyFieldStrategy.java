@@ -302,7 +302,7 @@ public abstract class RelationToManyInverseKeyFieldStrategy
             return;
         }
 
-        if (!sm.getLoaded().get(field.getIndex()))
+        if (!sm.isFieldLoaded(field.getIndex()))
             return;
 
         // update fk on each field value row
@@ -19,7 +19,6 @@
 
 package org.apache.openjpa.persistence.jest;
 
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -56,11 +55,10 @@ public class Closure implements Iterable<OpenJPAStateManager> {
             return;
         boolean isVisited = !_visited.add(sm);
         if (isVisited) return;
-        BitSet loaded = sm.getLoaded();
         FieldMetaData[] fmds = sm.getMetaData().getFields();
         for (FieldMetaData fmd : fmds) {
             int idx = fmd.getIndex();
-            if (!loaded.get(idx))
+            if (!sm.isFieldLoaded(idx))
                 continue;
             if (fmd.getElement().getTypeMetaData() == null && fmd.getValue().getTypeMetaData() == null)
                 continue;
@@ -30,7 +30,6 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -136,13 +135,12 @@ public class JSONObjectFormatter implements ObjectFormatter<JSON> {
             return root;
         }
 
-        BitSet loaded = sm.getLoaded();
         StoreContext ctx = (StoreContext)sm.getGenericContext();
         List<Attribute<?, ?>> attrs = MetamodelHelper.getAttributesInOrder(sm.getMetaData(), model);
 
         for (Attribute<?, ?> attr : attrs) {
             FieldMetaData fmd = ((Members.Member<?, ?>) attr).fmd;
-            if (!loaded.get(fmd.getIndex()))
+            if (!sm.isFieldLoaded(fmd.getIndex()))
                 continue;
             Object value = sm.fetch(fmd.getIndex());
             switch (fmd.getDeclaredTypeCode()) {
@@ -51,7 +51,6 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -253,13 +252,12 @@ public class XMLFormatter implements ObjectFormatter<Document> {
         parent.appendChild(root);
         root.setAttribute(ATTR_ID, ior(sm));
         Element child = null;
-        BitSet loaded = sm.getLoaded();
         StoreContext ctx = (StoreContext)sm.getGenericContext();
         List<Attribute<?, ?>> attrs = MetamodelHelper.getAttributesInOrder(sm.getMetaData(), model);
         for (int i = 0; i < attrs.size(); child = null, i++) {
             Members.Member<?, ?> attr = (Members.Member<?, ?>) attrs.get(i);
             FieldMetaData fmd = attr.fmd;
-            if (!loaded.get(fmd.getIndex()))
+            if (!sm.isFieldLoaded(fmd.getIndex()))
                 continue;
             String tag = MetamodelHelper.getTagByAttributeType(attr);
             Object value = sm.fetch(fmd.getIndex());
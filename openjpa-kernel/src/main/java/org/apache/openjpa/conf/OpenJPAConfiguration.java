@@ -43,6 +43,7 @@ import org.apache.openjpa.kernel.FetchConfiguration;
 import org.apache.openjpa.kernel.FinderCache;
 import org.apache.openjpa.kernel.InverseManager;
 import org.apache.openjpa.kernel.LockManager;
+import org.apache.openjpa.kernel.ManagedObjectCache;
 import org.apache.openjpa.kernel.PreparedQueryCache;
 import org.apache.openjpa.kernel.QueryFlushModes;
 import org.apache.openjpa.kernel.RestoreState;
@@ -1103,6 +1104,34 @@ public interface OpenJPAConfiguration
      */
     void setMultithreaded(Boolean multithreaded);
 
+    /**
+     * The kind of map that brokers use to track their managed objects.
+     *
+     * @since 4.0.1
+     */
+    String getManagedObjectCache();
+
+    /**
+     * The kind of map that brokers use to track their managed objects.
+     *
+     * @since 4.0.1
+     */
+    void setManagedObjectCache(String cache);
+
+    /**
+     * Return the {@link ManagedObjectCache} constant.
+     *
+     * @since 4.0.1
+     */
+    int getManagedObjectCacheConstant();
+
+    /**
+     * The kind of map that brokers use to track their managed objects.
+     *
+     * @since 4.0.1
+     */
+    void setManagedObjectCache(int cache);
+
     /**
      * Get the size of the batch that will be pre-selected when accessing
      * elements in a query or relationship. Use -1 to prefetch all results.
@@ -48,6 +48,7 @@ import org.apache.openjpa.kernel.FinderCache;
 import org.apache.openjpa.kernel.InverseManager;
 import org.apache.openjpa.kernel.LockLevels;
 import org.apache.openjpa.kernel.LockManager;
+import org.apache.openjpa.kernel.ManagedObjectCache;
 import org.apache.openjpa.kernel.PreparedQueryCache;
 import org.apache.openjpa.kernel.QueryFlushModes;
 import org.apache.openjpa.kernel.RestoreState;
@@ -151,6 +152,7 @@ public class OpenJPAConfigurationImpl
     public BooleanValue nontransactionalWrite;
     public BooleanValue refreshFromDataCache;
     public BooleanValue multithreaded;
+    public IntValue managedObjectCache;
     public StringValue mapping;
     public PluginValue metaFactoryPlugin;
     public MetaDataRepositoryValue metaRepositoryPlugin;
@@ -524,6 +526,15 @@ public class OpenJPAConfigurationImpl
         nontransactionalWrite = addBoolean("NontransactionalWrite");
         multithreaded = addBoolean("Multithreaded");
 
+        managedObjectCache = addInt("ManagedObjectCache");
+        aliases = new String[] {
+                "soft",    String.valueOf(ManagedObjectCache.CACHE_SOFT),
+                "compact", String.valueOf(ManagedObjectCache.CACHE_COMPACT), };
+        managedObjectCache.setAliases(aliases);
+        managedObjectCache.setDefault(aliases[0]);
+        managedObjectCache.set(ManagedObjectCache.CACHE_SOFT);
+        managedObjectCache.setAliasListComprehensive(true);
+
         fetchBatchSize = addInt("FetchBatchSize");
         fetchBatchSize.setDefault("-1");
         fetchBatchSize.set(-1);
@@ -1505,6 +1516,26 @@ public class OpenJPAConfigurationImpl
         return multithreaded.get();
     }
 
+    @Override
+    public void setManagedObjectCache(String cache) {
+        this.managedObjectCache.setString(cache);
+    }
+
+    @Override
+    public String getManagedObjectCache() {
+        return managedObjectCache.getString();
+    }
+
+    @Override
+    public void setManagedObjectCache(int cache) {
+        this.managedObjectCache.set(cache);
+    }
+
+    @Override
+    public int getManagedObjectCacheConstant() {
+        return managedObjectCache.get();
+    }
+
     @Override
     public void setFetchBatchSize(int fetchBatchSize) {
         this.fetchBatchSize.set(fetchBatchSize);
@@ -1973,6 +2004,12 @@ public class OpenJPAConfigurationImpl
 
     @Override
     protected void preClose() {
+        // the data cache manager may need metadata to write out its caches
+        try {
+            ImplHelper.close(dataCacheManagerPlugin.get());
+        } catch (RuntimeException re) {
+            // noop, as in close()
+        }
         ImplHelper.close(metaRepository);
         ImplHelper.close(remoteEventManager);
         ImplHelper.close(getInstrumentationManagerInstance());
@@ -40,10 +40,15 @@ public class RemoteCommitProviderValue
         "sjvm", "org.apache.openjpa.event.SingleJVMRemoteCommitProvider",
         "jms", "org.apache.openjpa.event.JMSRemoteCommitProvider",
         "tcp", "org.apache.openjpa.event.TCPRemoteCommitProvider",
+        "nio", "org.apache.openjpa.event.NIORemoteCommitProvider",
+        "shm", "org.apache.openjpa.event.SharedMemoryRemoteCommitProvider",
+        "multicast", "org.apache.openjpa.event.MulticastRemoteCommitProvider",
     };
 
     private Options _opts = null;
     private Boolean _transmitPersIds = null;
+    private Integer _coalesceMillis = null;
+    private Integer _coalesceMaxObjectIds = null;
 
     public RemoteCommitProviderValue() {
         super("RemoteCommitProvider", true);
@@ -55,6 +60,8 @@ public class RemoteCommitProviderValue
         super.setProperties(props);
         _opts = null;
         _transmitPersIds = null;
+        _coalesceMillis = null;
+        _coalesceMaxObjectIds = null;
     }
 
     @Override
@@ -62,6 +69,8 @@ public class RemoteCommitProviderValue
         super.setString(str);
         _opts = null;
         _transmitPersIds = null;
+        _coalesceMillis = null;
+        _coalesceMaxObjectIds = null;
     }
 
     /**
@@ -115,6 +124,10 @@ public class RemoteCommitProviderValue
         parseOptions();
         if (_transmitPersIds != null)
             mgr.setTransmitPersistedObjectIds(_transmitPersIds);
+        if (_coalesceMillis != null)
+            mgr.setCoalesceMillis(_coalesceMillis);
+        if (_coalesceMaxObjectIds != null)
+            mgr.setCoalesceMaxObjectIds(_coalesceMaxObjectIds);
     }
 
     /**
@@ -138,5 +151,13 @@ public class RemoteCommitProviderValue
             ("transmitPersistedObjectIds", "TransmitPersistedObjectIds", null));
         if (transmit != null)
             _transmitPersIds = Boolean.valueOf (transmit);
+        String millis = StringUtil.trimToNull(_opts.removeProperty
+            ("coalesceMillis", "CoalesceMillis", null));
+        if (millis != null)
+            _coalesceMillis = Integer.valueOf(millis);
+        String maxIds = StringUtil.trimToNull(_opts.removeProperty
+            ("coalesceMaxObjectIds", "CoalesceMaxObjectIds", null));
+        if (maxIds != null)
+            _coalesceMaxObjectIds = Integer.valueOf(maxIds);
 	}
 }
@@ -18,6 +18,7 @@
  */
 package org.apache.openjpa.datacache;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -26,10 +27,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.event.RemoteCommitEvent;
@@ -41,7 +45,10 @@ import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.StringUtil;
 import org.apache.openjpa.lib.util.concurrent.AbstractConcurrentEventManager;
+import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.util.GeneralException;
+import org.apache.openjpa.util.OffHeapStore;
+import org.apache.openjpa.util.OpenJPAId;
 
 
 /**
@@ -80,6 +87,21 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
     protected Set<String> _includedTypes = new HashSet<>();
     protected Set<String> _excludedTypes = new HashSet<>();
     protected boolean _evictOnBulkUpdate = true;
+    private long _offHeapSize = 0;
+    private long _overflowSize = 0;
+    private String _overflowDir = null;
+    private CacheTiers _tiers = null;
+    private DataCacheManager _manager = null;
+    private volatile SnapshotValidator _validator = null;
+    private boolean _coalesceLoads = false;
+    private long _coalesceTimeout = 1000;
+    private LoadCoalescer _loads = null;
+    private long _refreshAheadWindow = 0;
+    private CacheRefresher _refresher = null;
+    private long _expirationTick = 0;
+    private ExpirationWheel _wheel = null;
+    private ScheduledFuture<?> _sweep = null;
+    private volatile Thread _sweeper = null;
 
     @Override
     public String getName() {
@@ -107,8 +129,194 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
         _schedule = s;
     }
 
+    /**
+     * Sets the number of bytes available to an off-heap tier behind this
+     * cache. Entries evicted from the cache because it is full are
+     * serialized with a {@link PCDataCodec} into direct memory, and are
+     * decoded from there on later lookups instead of being reloaded from
+     * the database. Defaults to 0, which disables the tier.
+     *
+     * @since 4.0.1
+     */
+    public void setOffHeapSize(long size) {
+        _offHeapSize = size;
+    }
+
+    public long getOffHeapSize() {
+        return _offHeapSize;
+    }
+
+    /**
+     * The off-heap tier behind this cache, or null if it is disabled.
+     *
+     * @since 4.0.1
+     */
+    public OffHeapStore getOffHeapStore() {
+        return (_tiers == null) ? null : _tiers.getStore(CacheTiers.OFF_HEAP);
+    }
+
+    /**
+     * Sets the number of bytes of local disk available to an overflow tier
+     * of memory-mapped files behind this cache and its off-heap tier.
+     * Entries evicted from the cache, or from the off-heap tier if there is
+     * one, are kept in the files if the {@link DataCacheManagerImpl data
+     * cache manager} enables overflow for their type. Defaults to 0, which
+     * disables the tier.
+     *
+     * @since 4.0.1
+     */
+    public void setOverflowSize(long size) {
+        _overflowSize = size;
+    }
+
+    public long getOverflowSize() {
+        return _overflowSize;
+    }
+
+    /**
+     * Sets the directory in which the overflow tier creates its files.
+     * Defaults to the <code>java.io.tmpdir</code> directory.
+     *
+     * @since 4.0.1
+     */
+    public void setOverflowDirectory(String dir) {
+        _overflowDir = dir;
+    }
+
+    public String getOverflowDirectory() {
+        return _overflowDir;
+    }
+
+    /**
+     * The overflow tier behind this cache, or null if it is disabled.
+     *
+     * @since 4.0.1
+     */
+    public OffHeapStore getOverflowStore() {
+        return (_tiers == null) ? null : _tiers.getStore(CacheTiers.OVERFLOW);
+    }
+
+    /**
+     * Whether concurrent loads of an instance that is missing from this
+     * cache are coalesced, so that only one thread loads it from the data
+     * store and the others wait for it to be cached. Defaults to false.
+     *
+     * @since 4.0.1
+     */
+    public void setCoalesceLoads(boolean coalesce) {
+        _coalesceLoads = coalesce;
+    }
+
+    public boolean getCoalesceLoads() {
+        return _coalesceLoads;
+    }
+
+    /**
+     * The number of milliseconds a thread waits for another thread's load
+     * of the same instance before loading it itself. Defaults to 1000.
+     *
+     * @since 4.0.1
+     */
+    public void setCoalesceTimeout(long timeout) {
+        _coalesceTimeout = timeout;
+    }
+
+    public long getCoalesceTimeout() {
+        return _coalesceTimeout;
+    }
+
+    /**
+     * The loads in progress, or null if loads are not coalesced.
+     */
+    LoadCoalescer getLoadCoalescer() {
+        return _loads;
+    }
+
+    /**
+     * The number of milliseconds before an entry times out during which a
+     * lookup of the entry schedules a reload of it in the background, so
+     * that frequently read entries do not expire. Defaults to 0, which
+     * disables refresh-ahead.
+     *
+     * @since 4.0.1
+     */
+    public void setRefreshAheadWindow(long window) {
+        _refreshAheadWindow = window;
+    }
+
+    public long getRefreshAheadWindow() {
+        return _refreshAheadWindow;
+    }
+
+    /**
+     * The refresher of entries about to expire, or null if refresh-ahead
+     * is disabled.
+     */
+    CacheRefresher getRefresher() {
+        return _refresher;
+    }
+
+    /**
+     * The number of milliseconds between sweeps that evict the entries that
+     * have timed out, indexed by expiration time in a timing wheel, so that
+     * they do not stay in memory until they are next looked up. The entries
+     * evicted by a sweep are reported once the sweep is done.
+     * Defaults to 0, which leaves timed out entries to be evicted lazily.
+     *
+     * @since 4.0.1
+     */
+    public void setExpirationTick(long tick) {
+        _expirationTick = tick;
+    }
+
+    public long getExpirationTick() {
+        return _expirationTick;
+    }
+
+    /**
+     * The index of entry expiration times, or null if timed out entries are
+     * evicted lazily.
+     */
+    ExpirationWheel getExpirationWheel() {
+        return _wheel;
+    }
+
+    /**
+     * Whether an off-heap or overflow tier is configured.
+     */
+    protected boolean isTiered() {
+        return _offHeapSize > 0 || _overflowSize > 0;
+    }
+
+    /**
+     * The tiers behind this cache, or null if there are none.
+     */
+    CacheTiers getTiers() {
+        return _tiers;
+    }
+
+    /**
+     * Set the validator to notify when entries restored from a snapshot are
+     * looked up.
+     */
+    void setSnapshotValidator(SnapshotValidator validator) {
+        _validator = validator;
+    }
+
     @Override
     public void initialize(DataCacheManager manager) {
+        _manager = manager;
+        if (_coalesceLoads)
+            _loads = new LoadCoalescer(_coalesceTimeout);
+        if (_refreshAheadWindow > 0 && manager instanceof DataCacheManagerImpl)
+            _refresher = ((DataCacheManagerImpl) manager).getRefresher();
+        if (_expirationTick > 0 && manager instanceof DataCacheManagerImpl) {
+            _wheel = new ExpirationWheel(_expirationTick, 64, System.currentTimeMillis());
+            _sweep = ((DataCacheManagerImpl) manager).getExpirationTimer().scheduleWithFixedDelay(
+                this::expireTimedOut, _expirationTick, _expirationTick, TimeUnit.MILLISECONDS);
+        }
+        if (isTiered())
+            _tiers = newCacheTiers();
         if (_schedule != null && !"".equals(_schedule)) {
             ClearableScheduler scheduler = manager.getClearableScheduler();
             if (scheduler != null)
@@ -166,9 +374,11 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
     @Override
     public boolean contains(Object key) {
         DataCachePCData o = getInternal(key);
+        if (o == null && _tiers != null && _tiers.containsKey(key))
+            o = (DataCachePCData) _tiers.get(key);
         if (o != null && o.isTimedOut()) {
             o = null;
-            removeInternal(key);
+            removeTiered(key);
             if (log.isTraceEnabled())
                 log.trace(s_loc.get("cache-timeout", key));
         }
@@ -190,10 +400,20 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
 
     @Override
     public DataCachePCData get(Object key) {
-        DataCachePCData o = getInternal(key);
+        return accessed(key, getInternal(key));
+    }
+
+    /**
+     * Complete the lookup of the given key, whose entry in the cache map, if
+     * any, is given: look the key up in the tiers, drop a timed out entry,
+     * and notify the snapshot validator and the refresher.
+     */
+    private DataCachePCData accessed(Object key, DataCachePCData o) {
+        if (o == null && _tiers != null)
+            o = (DataCachePCData) _tiers.get(key);
         if (o != null && o.isTimedOut()) {
             o = null;
-            removeInternal(key);
+            removeTiered(key);
             if (log.isTraceEnabled())
                 log.trace(s_loc.get("cache-timeout", key));
         }
@@ -204,39 +424,71 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
                 log.trace(s_loc.get("cache-hit", key));
         }
 
+        SnapshotValidator validator = _validator;
+        if (o != null && validator != null)
+            validator.accessed(key);
+        if (o != null && _refresher != null && isExpiring(o))
+            _refresher.refresh(this, key);
         return o;
     }
 
+    /**
+     * Whether the given entry times out within the refresh-ahead window.
+     */
+    private boolean isExpiring(DataCachePCData data) {
+        long timeout = data.getTimeOut();
+        return timeout != -1
+            && timeout - System.currentTimeMillis() <= _refreshAheadWindow;
+    }
+
 
     /**
      * Returns the objects for the given key List.
      */
     @Override
     public Map<Object,DataCachePCData> getAll(List<Object> keys) {
-        Map<Object,DataCachePCData> resultMap = new HashMap<>(keys.size());
+        Map<Object,DataCachePCData> resultMap = getAllInternal(keys);
         for (Object key : keys)
-            resultMap.put(key, get(key));
+            resultMap.put(key, accessed(key, resultMap.get(key)));
         return resultMap;
     }
 
     @Override
     public DataCachePCData put(DataCachePCData data) {
+        // drop the stale tiered copy first; dropping it afterwards could
+        // discard the new data if it is overflowed to the tiers meanwhile
+        if (_tiers != null)
+            _tiers.remove(data.getId());
         DataCachePCData o = putInternal(data.getId(), data);
+        scheduleExpiration(data);
         if (log.isTraceEnabled())
             log.trace(s_loc.get("cache-put", data.getId()));
         return (o == null || o.isTimedOut()) ? null : o;
     }
 
+    @Override
+    public void putAll(Collection<DataCachePCData> values) {
+        putAllInternal(values);
+        if (log.isTraceEnabled())
+            for (DataCachePCData data : values)
+                log.trace(s_loc.get("cache-put", data.getId()));
+    }
+
     @Override
     public void update(DataCachePCData data) {
         if (recacheUpdates()) {
+            if (_tiers != null)
+                _tiers.remove(data.getId());
             putInternal(data.getId(), data);
+            scheduleExpiration(data);
         }
     }
 
     @Override
     public DataCachePCData remove(Object key) {
-        DataCachePCData o = removeInternal(key);
+        DataCachePCData o = removeTiered(key);
+        if (_wheel != null)
+            _wheel.cancel(key);
         if (o != null && o.isTimedOut())
             o = null;
         if (log.isTraceEnabled()) {
@@ -267,6 +519,7 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
     @Override
     public void removeAll(Class<?> cls, boolean subClasses) {
         removeAllInternal(cls, subClasses);
+        removeAllTiered(cls);
     }
 
     @Override
@@ -334,6 +587,10 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
     @Override
     public void clear() {
         clearInternal();
+        if (_tiers != null)
+            _tiers.clear();
+        if (_wheel != null)
+            _wheel.clear();
         if (log.isTraceEnabled())
             log.trace(s_loc.get("cache-clear", getName()));
     }
@@ -345,8 +602,12 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
 
     protected void close(boolean clear) {
         if (!_closed) {
+            if (_sweep != null)
+                _sweep.cancel(false);
             if (clear)
                 clearInternal();
+            if (_tiers != null)
+                _tiers.close();
             _closed = true;
         }
     }
@@ -398,6 +659,12 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
      * with this class.
      */
     protected void keyRemoved(Object key, boolean expired) {
+        // entries removed by a sweep are reported once it is done
+        if (_sweeper == Thread.currentThread())
+            return;
+        if (_wheel != null)
+            _wheel.cancel(key);
+
         // Notify any expiration listeners of the expiration.
         if (hasListeners())
             fireEvent(new ExpirationEvent(this, key, expired));
@@ -406,6 +673,151 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
             log.trace(s_loc.get("cache-expired", key));
     }
 
+    /**
+     * Invoke when an entry is removed from this cache, if the removed data
+     * is available. Entries that expire because the cache is full move to
+     * the off-heap or overflow tier if one is enabled, and are reported as
+     * expired only once they are evicted from there.
+     *
+     * @since 4.0.1
+     */
+    protected void keyRemoved(Object key, DataCachePCData data,
+        boolean expired) {
+        if (expired && data != null && _tiers != null && !data.isTimedOut()
+            && _tiers.put(key, data))
+            return;
+        keyRemoved(key, expired);
+    }
+
+    /**
+     * Index the expiration time of the given entry, if it has one.
+     */
+    private void scheduleExpiration(DataCachePCData data) {
+        if (_wheel != null && data.getTimeOut() != -1)
+            _wheel.schedule(data.getId(), data.getTimeOut());
+    }
+
+    /**
+     * Evict the entries whose expiration time has passed, and notify the
+     * expiration listeners of them once they are all evicted. Entries that
+     * were replaced or removed since they were indexed are skipped.
+     */
+    void expireTimedOut() {
+        if (_closed)
+            return;
+        List<Object> keys = _wheel.advance(System.currentTimeMillis());
+        if (keys.isEmpty())
+            return;
+
+        List<Object> expired = new ArrayList<>(keys.size());
+        writeLock();
+        _sweeper = Thread.currentThread();
+        try {
+            for (Object key : keys) {
+                DataCachePCData data = getInternal(key);
+                if (data == null && _tiers != null && _tiers.containsKey(key))
+                    data = (DataCachePCData) _tiers.get(key);
+                if (data != null && data.isTimedOut()) {
+                    removeTiered(key);
+                    expired.add(key);
+                }
+            }
+        } catch (RuntimeException re) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("cache-sweep-fail", getName(), re));
+        } finally {
+            _sweeper = null;
+            writeUnlock();
+        }
+
+        if (expired.isEmpty())
+            return;
+        if (hasListeners())
+            for (Object key : expired)
+                fireEvent(new ExpirationEvent(this, key, true));
+        if (log.isTraceEnabled())
+            log.trace(s_loc.get("cache-swept", getName(), expired.size()));
+    }
+
+    /**
+     * Create the tiers behind this cache.
+     */
+    private CacheTiers newCacheTiers() {
+        final PCDataCodec codec = new PCDataCodec(conf);
+        return new CacheTiers(_offHeapSize, _overflowSize, _overflowDir,
+            getName(), log) {
+            @Override
+            protected byte[] encode(Object value) throws IOException {
+                return codec.encode((DataCachePCData) value);
+            }
+
+            @Override
+            protected Object decode(byte[] bytes) throws IOException {
+                return codec.decode(bytes);
+            }
+
+            @Override
+            protected boolean accepts(int tier, Object key) {
+                return tier != OVERFLOW || isOverflowEnabled(key);
+            }
+
+            @Override
+            protected void evicted(Object key) {
+                keyRemoved(key, true);
+            }
+        };
+    }
+
+    /**
+     * Whether the data cache manager enables the overflow tier for the type
+     * of the given oid.
+     */
+    private boolean isOverflowEnabled(Object oid) {
+        if (!(_manager instanceof DataCacheManagerImpl))
+            return true;
+        Class<?> type;
+        if (oid instanceof OpenJPAId)
+            type = ((OpenJPAId) oid).getType();
+        else {
+            ClassMetaData meta = conf.getMetaDataRepositoryInstance()
+                .getMetaData(oid, null, false);
+            if (meta == null)
+                return false;
+            type = meta.getDescribedType();
+        }
+        return ((DataCacheManagerImpl) _manager).isOverflowEnabled(type);
+    }
+
+    /**
+     * Remove the given key from the cache and from its tiers.
+     */
+    private DataCachePCData removeTiered(Object key) {
+        DataCachePCData o = removeInternal(key);
+        if (_tiers != null) {
+            if (o == null)
+                o = (DataCachePCData) _tiers.get(key);
+            _tiers.remove(key);
+        }
+        return o;
+    }
+
+    /**
+     * Remove the instances of the given class from the tiers. The type
+     * recorded in an oid may be a superclass of the instance's type, so all
+     * related types are removed, as are entries whose oid does not record a
+     * type.
+     */
+    private void removeAllTiered(Class<?> cls) {
+        if (_tiers == null)
+            return;
+        _tiers.removeIf(key -> {
+            if (!(key instanceof OpenJPAId))
+                return true;
+            Class<?> type = ((OpenJPAId) key).getType();
+            return cls.isAssignableFrom(type) || type.isAssignableFrom(cls);
+        });
+    }
+
     /**
      * Return <code>true</code> if updates to data already in the
      * cache (either in {@link #commit} or the {@link #update})
@@ -427,13 +839,47 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
     protected abstract DataCachePCData putInternal(Object oid,
             DataCachePCData pc);
 
+    /**
+     * Return the objects for the given oids, in a map that contains every
+     * given oid. Looks the oids up one by one by default.
+     *
+     * @since 4.0.1
+     */
+    protected Map<Object,DataCachePCData> getAllInternal(List<Object> oids) {
+        Map<Object,DataCachePCData> pcs = new HashMap<>((int) (oids.size() / .75F) + 1);
+        for (Object oid : oids)
+            pcs.put(oid, getInternal(oid));
+        return pcs;
+    }
+
     /**
      * Add all of the given objects to the cache.
      */
     protected void putAllInternal(Collection<DataCachePCData> pcs) {
+        if (pcs.isEmpty())
+            return;
+        // drop stale tiered copies first, so that entries the batch itself
+        // evicts to the tiers stay there
+        Map<Object,DataCachePCData> map = new LinkedHashMap<>((int) (pcs.size() / .75F) + 1);
         for (DataCachePCData pc : pcs) {
-            putInternal(pc.getId(), pc);
+            map.put(pc.getId(), pc);
+            if (_tiers != null)
+                _tiers.remove(pc.getId());
         }
+        putAllInternal(map);
+        for (DataCachePCData pc : pcs)
+            scheduleExpiration(pc);
+    }
+
+    /**
+     * Add the given objects to the cache under their oids. Adds them one by
+     * one by default.
+     *
+     * @since 4.0.1
+     */
+    protected void putAllInternal(Map<Object,DataCachePCData> pcs) {
+        for (Map.Entry<Object,DataCachePCData> entry : pcs.entrySet())
+            putInternal(entry.getKey(), entry.getValue());
     }
 
     /**
@@ -450,8 +896,11 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
      * Remove all objects under the given oids from the cache.
      */
     protected void removeAllInternal(Collection<Object> oids) {
-        for (Object oid : oids)
+        for (Object oid : oids) {
             removeInternal(oid);
+            if (_tiers != null)
+                _tiers.remove(oid);
+        }
     }
 
     /**
@@ -466,6 +915,7 @@ public abstract class AbstractDataCache extends AbstractConcurrentEventManager
             if (log.isTraceEnabled())
                 log.trace(s_loc.get("cache-removeclass", cls.getName()));
             removeAllInternal(cls, false);
+            removeAllTiered(cls);
         }
     }
 
@@ -18,6 +18,7 @@
  */
 package org.apache.openjpa.datacache;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.security.AccessController;
 import java.util.ArrayList;
@@ -33,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.event.RemoteCommitEvent;
 import org.apache.openjpa.event.RemoteCommitListener;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.kernel.QueryStatistics;
 import org.apache.openjpa.lib.conf.Configurable;
 import org.apache.openjpa.lib.conf.Configuration;
@@ -46,6 +48,7 @@ import org.apache.openjpa.lib.util.concurrent.ConcurrentReferenceHashSet;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.MetaDataRepository;
 import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.OffHeapStore;
 
 /**
  * Abstract {@link QueryCache} implementation that provides various
@@ -66,7 +69,8 @@ public abstract class AbstractQueryCache
         Localizer.forPackage(AbstractQueryCache.class);
 
     private static final String TIMESTAMP = "timestamp";
-    public enum EvictPolicy {DEFAULT, TIMESTAMP}
+    private static final String PREDICATE = "predicate";
+    public enum EvictPolicy {DEFAULT, TIMESTAMP, PREDICATE}
 
     /**
      * The configuration set by the system.
@@ -89,6 +93,12 @@ public abstract class AbstractQueryCache
     private QueryStatistics<QueryKey> _stats;
     private boolean _statsEnabled = false;
 
+    private long _offHeapSize = 0;
+    private long _overflowSize = 0;
+    private String _overflowDir = null;
+    private CacheTiers _tiers = null;
+    private DataCacheManager _manager = null;
+
     public void setEnableStatistics(boolean enable){
         _statsEnabled = enable;
     }
@@ -101,8 +111,89 @@ public abstract class AbstractQueryCache
         return _stats;
     }
 
+    /**
+     * Sets the number of bytes of direct memory available to an off-heap
+     * tier behind this cache. Results evicted from the cache are kept there
+     * in serialized form. Defaults to 0, which disables the tier.
+     *
+     * @since 4.0.1
+     */
+    public void setOffHeapSize(long size) {
+        _offHeapSize = size;
+    }
+
+    public long getOffHeapSize() {
+        return _offHeapSize;
+    }
+
+    /**
+     * Sets the number of bytes of local disk available to an overflow tier
+     * of memory-mapped files behind this cache and its off-heap tier.
+     * Results are kept there if the {@link DataCacheManagerImpl data cache
+     * manager} enables overflow for their candidate type. Defaults to 0,
+     * which disables the tier.
+     *
+     * @since 4.0.1
+     */
+    public void setOverflowSize(long size) {
+        _overflowSize = size;
+    }
+
+    public long getOverflowSize() {
+        return _overflowSize;
+    }
+
+    /**
+     * Sets the directory in which the overflow tier creates its files.
+     * Defaults to the <code>java.io.tmpdir</code> directory.
+     *
+     * @since 4.0.1
+     */
+    public void setOverflowDirectory(String dir) {
+        _overflowDir = dir;
+    }
+
+    public String getOverflowDirectory() {
+        return _overflowDir;
+    }
+
+    /**
+     * The off-heap tier behind this cache, or null if it is disabled.
+     *
+     * @since 4.0.1
+     */
+    public OffHeapStore getOffHeapStore() {
+        return (_tiers == null) ? null : _tiers.getStore(CacheTiers.OFF_HEAP);
+    }
+
+    /**
+     * The overflow tier behind this cache, or null if it is disabled.
+     *
+     * @since 4.0.1
+     */
+    public OffHeapStore getOverflowStore() {
+        return (_tiers == null) ? null : _tiers.getStore(CacheTiers.OVERFLOW);
+    }
+
+    /**
+     * Whether an off-heap or overflow tier is configured.
+     */
+    protected boolean isTiered() {
+        return _offHeapSize > 0 || _overflowSize > 0;
+    }
+
+    /**
+     * The tiers behind this cache, or null if there are none.
+     */
+    CacheTiers getTiers() {
+        return _tiers;
+    }
+
     @Override
     public void initialize(DataCacheManager manager) {
+        _manager = manager;
+        if (isTiered())
+            _tiers = newCacheTiers();
         if (evictPolicy == EvictPolicy.TIMESTAMP) {
             entityTimestampMap = new ConcurrentHashMap<>();
 
@@ -125,7 +216,7 @@ public abstract class AbstractQueryCache
 
     @Override
     public void onTypesChanged(TypesChangedEvent ev) {
-        if (evictPolicy == EvictPolicy.DEFAULT) {
+        if (evictPolicy != EvictPolicy.TIMESTAMP) {
             writeLock();
             Collection keys = null;
             try {
@@ -136,11 +227,14 @@ public abstract class AbstractQueryCache
                 writeUnlock();
             }
 
+            // only the predicate policy looks at the changed instances
+            Collection<OpenJPAStateManager> instances =
+                (evictPolicy == EvictPolicy.PREDICATE) ? ev.getInstances() : null;
             QueryKey qk;
-                List<QueryKey> removes = null;
-                for (Object o: keys) {
-                    qk = (QueryKey) o;
-                if (qk.changeInvalidatesQuery(ev.getTypes())) {
+            List<QueryKey> removes = null;
+            for (Object o: keys) {
+                qk = (QueryKey) o;
+                if (qk.changeInvalidatesQuery(ev.getTypes(), instances)) {
                     if (removes == null)
                         removes = new ArrayList<>();
                     removes.add(qk);
@@ -148,6 +242,8 @@ public abstract class AbstractQueryCache
             }
             if (removes != null)
                 removeAllInternal(removes);
+            if (_tiers != null)
+                _tiers.removeIf(k -> ((QueryKey) k).changeInvalidatesQuery(ev.getTypes(), instances));
         } else {
             Collection changedTypes = ev.getTypes();
             HashMap<String,Long> changedClasses =
@@ -170,9 +266,13 @@ public abstract class AbstractQueryCache
             _stats.recordExecution(key);
         }
         QueryResult o = getInternal(key);
+        if (o == null && _tiers != null)
+            o = (QueryResult) _tiers.get(key);
         if (o != null && o.isTimedOut()) {
             o = null;
             removeInternal(key);
+            if (_tiers != null)
+                _tiers.remove(key);
             if (log.isTraceEnabled())
                 log.trace(s_loc.get("cache-timeout", key));
         }
@@ -192,6 +292,8 @@ public abstract class AbstractQueryCache
     @Override
     public QueryResult put(QueryKey qk, QueryResult oids) {
         QueryResult o = putInternal(qk, oids);
+        if (_tiers != null)
+            _tiers.remove(qk);
         if (log.isTraceEnabled())
             log.trace(s_loc.get("cache-put", qk));
         return (o == null || o.isTimedOut()) ? null : o;
@@ -200,6 +302,11 @@ public abstract class AbstractQueryCache
     @Override
     public QueryResult remove(QueryKey key) {
         QueryResult o = removeInternal(key);
+        if (_tiers != null) {
+            if (o == null)
+                o = (QueryResult) _tiers.get(key);
+            _tiers.remove(key);
+        }
         if (_statsEnabled) {
             _stats.recordEviction(key);
         }
@@ -241,6 +348,8 @@ public abstract class AbstractQueryCache
     @Override
     public void clear() {
         clearInternal();
+        if (_tiers != null)
+            _tiers.clear();
         if (log.isTraceEnabled())
             log.trace(s_loc.get("cache-clear", "<query-cache>"));
         if (_statsEnabled) {
@@ -257,6 +366,8 @@ public abstract class AbstractQueryCache
         if (!_closed) {
             if (clear)
                 clearInternal();
+            if (_tiers != null)
+                _tiers.close();
             _closed = true;
         }
     }
@@ -330,6 +441,51 @@ public abstract class AbstractQueryCache
         return classes;
     }
 
+    /**
+     * Invoke when a result is removed from this cache. Results that expire
+     * because the cache is full move to the off-heap or overflow tier if
+     * one is enabled.
+     *
+     * @since 4.0.1
+     */
+    protected void keyRemoved(QueryKey qk, QueryResult result, boolean expired) {
+        if (expired && result != null && _tiers != null && !result.isTimedOut())
+            _tiers.put(qk, result);
+    }
+
+    /**
+     * Create the tiers behind this cache.
+     */
+    private CacheTiers newCacheTiers() {
+        final PCDataCodec codec = new PCDataCodec(conf);
+        String name = (_name == null) ? "query" : _name;
+        return new CacheTiers(_offHeapSize, _overflowSize, _overflowDir, name,
+            log) {
+            @Override
+            protected byte[] encode(Object value) throws IOException {
+                return codec.encode((QueryResult) value);
+            }
+
+            @Override
+            protected Object decode(byte[] bytes) throws IOException {
+                return codec.decodeQueryResult(bytes);
+            }
+
+            @Override
+            protected boolean accepts(int tier, Object key) {
+                if (tier != OVERFLOW || !(_manager instanceof DataCacheManagerImpl))
+                    return true;
+                String type = ((QueryKey) key).getCandidateTypeName();
+                return type == null || ((DataCacheManagerImpl) _manager).isOverflowEnabled(type);
+            }
+
+            @Override
+            protected void evicted(Object key) {
+                // query results have no expiration events
+            }
+        };
+    }
+
     /**
      * Return a threadsafe view of the keys in this cache. This collection
      * must be iterable without risk of concurrent modification exceptions.
@@ -421,12 +577,20 @@ public abstract class AbstractQueryCache
 	}
 
     /**
-     * Sets the eviction policy for the query cache
+     * Sets the eviction policy for the query cache: <code>default</code>,
+     * <code>timestamp</code> or <code>predicate</code>. The
+     * <code>predicate</code> policy evicts the results of a query whose
+     * filter requires equality to a parameter or literal only if an
+     * instance committed through this persistence unit could satisfy it.
      * @param evictPolicy -- String value that specifies the eviction policy
      */
     public void setEvictPolicy(String evictPolicy) {
         if (evictPolicy.equalsIgnoreCase(TIMESTAMP))
             this.evictPolicy = EvictPolicy.TIMESTAMP;
+        else if (evictPolicy.equalsIgnoreCase(PREDICATE))
+            this.evictPolicy = EvictPolicy.PREDICATE;
+        else
+            this.evictPolicy = EvictPolicy.DEFAULT;
     }
 
     /**
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.io.Serializable;
+
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.CacheMap;
+import org.apache.openjpa.util.ConcurrentCacheMap;
+import org.apache.openjpa.util.TinyLFUCacheMap;
+import org.apache.openjpa.util.UserException;
+
+/**
+ * Eviction policy shared by the concurrent data and query caches. Parses
+ * the policy names and creates the {@link CacheMap} implementing them.
+ *
+ * @since 4.0.1
+ */
+class CacheEvictionPolicy
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (CacheEvictionPolicy.class);
+
+    // clock or tinylfu; null for the plain cache map
+    private String _policy = null;
+    private int _concurrencyLevel = ConcurrentCacheMap.defaultConcurrencyLevel();
+
+    /**
+     * Set the policy by name.
+     *
+     * @return the LRU setting of the plain cache map implied by the
+     * <code>random</code> and <code>lru</code> policies, or null for the
+     * policies with a map of their own
+     */
+    public Boolean setPolicy(String policy) {
+        if (Caches.EVICTION_RANDOM.equalsIgnoreCase(policy)) {
+            _policy = null;
+            return Boolean.FALSE;
+        }
+        if (Caches.EVICTION_LRU.equalsIgnoreCase(policy)) {
+            _policy = null;
+            return Boolean.TRUE;
+        }
+        if (Caches.EVICTION_CLOCK.equalsIgnoreCase(policy))
+            _policy = Caches.EVICTION_CLOCK;
+        else if (Caches.EVICTION_TINYLFU.equalsIgnoreCase(policy))
+            _policy = Caches.EVICTION_TINYLFU;
+        else
+            throw new UserException(_loc.get("bad-eviction-policy", policy));
+        return null;
+    }
+
+    /**
+     * The name of the policy, given the LRU setting of the plain cache map.
+     */
+    public String getPolicy(boolean lru) {
+        if (_policy != null)
+            return _policy;
+        return (lru) ? Caches.EVICTION_LRU : Caches.EVICTION_RANDOM;
+    }
+
+    public void setConcurrencyLevel(int level) {
+        _concurrencyLevel = level;
+    }
+
+    public int getConcurrencyLevel() {
+        return _concurrencyLevel;
+    }
+
+    /**
+     * Create the cache map implementing this policy, notifying the given
+     * listener of its entries.
+     *
+     * @param lru the LRU setting of the plain cache map
+     */
+    public CacheMap newCacheMap(boolean lru, final Listener listener) {
+        if (Caches.EVICTION_CLOCK.equals(_policy)) {
+            return new ConcurrentCacheMap(1000, 500, .75F, _concurrencyLevel) {
+                @Override
+                protected void entryRemoved(Object key, Object value, boolean expired) {
+                    listener.entryRemoved(key, value, expired);
+                }
+
+                @Override
+                protected long weigh(Object key, Object value) {
+                    return listener.weigh(key, value);
+                }
+
+                @Override
+                protected void weightChanged(Object key, Object value, long delta) {
+                    listener.weightChanged(key, value, delta);
+                }
+            };
+        }
+        if (Caches.EVICTION_TINYLFU.equals(_policy)) {
+            return new TinyLFUCacheMap(1000, 500, .75F, _concurrencyLevel) {
+                @Override
+                protected void entryRemoved(Object key, Object value, boolean expired) {
+                    listener.entryRemoved(key, value, expired);
+                }
+
+                @Override
+                protected long weigh(Object key, Object value) {
+                    return listener.weigh(key, value);
+                }
+
+                @Override
+                protected void weightChanged(Object key, Object value, long delta) {
+                    listener.weightChanged(key, value, delta);
+                }
+            };
+        }
+        return new CacheMap(lru) {
+            @Override
+            protected void entryRemoved(Object key, Object value, boolean expired) {
+                listener.entryRemoved(key, value, expired);
+            }
+
+            @Override
+            protected long weigh(Object key, Object value) {
+                return listener.weigh(key, value);
+            }
+
+            @Override
+            protected void weightChanged(Object key, Object value, long delta) {
+                listener.weightChanged(key, value, delta);
+            }
+        };
+    }
+
+    /**
+     * Receives the callbacks of the cache map.
+     */
+    interface Listener {
+
+        /**
+         * See {@link CacheMap#entryRemoved}.
+         */
+        void entryRemoved(Object key, Object value, boolean expired);
+
+        /**
+         * See {@link CacheMap#weigh}. Every entry weighs 1 by default.
+         */
+        default long weigh(Object key, Object value) {
+            return 1;
+        }
+
+        /**
+         * See {@link CacheMap#weightChanged}. Does nothing by default.
+         */
+        default void weightChanged(Object key, Object value, long delta) {
+        }
+    }
+}
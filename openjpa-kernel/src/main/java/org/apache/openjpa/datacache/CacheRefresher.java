@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.security.AccessController;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.openjpa.kernel.Broker;
+import org.apache.openjpa.kernel.BrokerFactory;
+import org.apache.openjpa.kernel.DataCacheRetrieveMode;
+import org.apache.openjpa.kernel.DataCacheStoreMode;
+import org.apache.openjpa.kernel.DelegatingStoreManager;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.StoreManager;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
+import org.apache.openjpa.lib.util.Localizer;
+
+/**
+ * Reloads data cache entries that are about to expire on a bounded pool of
+ * daemon threads, so that the readers that find them expired do not have
+ * to wait for the data store. Each instance is reloaded bypassing the
+ * cache, and its entry is replaced with one whose timeout starts over.
+ * Entries of instances that have been deleted are removed. Refreshes that
+ * do not fit in the queue are dropped, and the entries expire as usual.
+ *
+ * @since 4.0.1
+ */
+final class CacheRefresher {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (CacheRefresher.class);
+
+    private final DataCacheManagerImpl _manager;
+    private final ThreadPoolExecutor _executor;
+    private final Set<Object> _pending = ConcurrentHashMap.newKeySet();
+    private final Log _log;
+    private final AtomicLong _refreshed = new AtomicLong();
+
+    CacheRefresher(DataCacheManagerImpl manager, int threads, int queueSize,
+        Log log) {
+        _manager = manager;
+        _log = log;
+        threads = Math.max(1, threads);
+        String name = _loc.get("refresher-name").getMessage();
+        _executor = new ThreadPoolExecutor(threads, threads, 60,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+            r -> AccessController.doPrivileged(J2DoPrivHelper
+                .newDaemonThreadAction(r, name)));
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedule a reload of the given entry of the given cache, unless one
+     * is already pending.
+     *
+     * @return whether a reload was scheduled
+     */
+    boolean refresh(AbstractDataCache cache, Object oid) {
+        if (_manager.getBrokerFactory() == null || !_pending.add(oid))
+            return false;
+        try {
+            _executor.execute(() -> reload(cache, oid));
+            return true;
+        } catch (RejectedExecutionException ree) {
+            _pending.remove(oid);
+            return false;
+        }
+    }
+
+    /**
+     * The number of entries reloaded.
+     */
+    long getRefreshCount() {
+        return _refreshed.get();
+    }
+
+    /**
+     * Stop reloading entries.
+     */
+    void close() {
+        _executor.shutdownNow();
+    }
+
+    private void reload(AbstractDataCache cache, Object oid) {
+        BrokerFactory factory = _manager.getBrokerFactory();
+        Broker broker = null;
+        try {
+            if (factory == null || factory.isClosed())
+                return;
+            broker = factory.newBroker();
+            FetchConfiguration fetch = broker.getFetchConfiguration();
+            fetch.setCacheRetrieveMode(DataCacheRetrieveMode.BYPASS);
+            fetch.setCacheStoreMode(DataCacheStoreMode.BYPASS);
+            Object pc = broker.find(oid, true, null);
+            DataCacheStoreManager store = getDataCacheStoreManager(broker);
+            if (pc == null)
+                cache.remove(oid);
+            else if (store != null)
+                store.recache(cache, broker.getStateManager(pc));
+            _refreshed.incrementAndGet();
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("cache-refreshed", oid));
+        } catch (RuntimeException re) {
+            if (_log.isWarnEnabled())
+                _log.warn(_loc.get("cache-refresh-fail", oid, re));
+        } finally {
+            _pending.remove(oid);
+            if (broker != null)
+                broker.close();
+        }
+    }
+
+    private static DataCacheStoreManager getDataCacheStoreManager(
+        Broker broker) {
+        StoreManager store = broker.getStoreManager();
+        while (store instanceof DelegatingStoreManager) {
+            if (store instanceof DataCacheStoreManager)
+                return (DataCacheStoreManager) store;
+            store = ((DelegatingStoreManager) store).getDelegate();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.Serialization;
+
+/**
+ * Writes the contents of the data and query caches to a file, and restores
+ * them from it. Data cache entries are written with a {@link PCDataCodec},
+ * including the entries in the caches' off-heap and overflow tiers; query
+ * keys are written with Java serialization. Entries that have timed out,
+ * that have no version or that cannot be encoded are skipped. Only
+ * {@link ConcurrentDataCache} and {@link ConcurrentQueryCache} instances
+ * are written.
+ *
+ * @since 4.0.1
+ */
+final class CacheSnapshot {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (CacheSnapshot.class);
+
+    private static final int MAGIC = 0x4F4A4353;
+    private static final byte FORMAT = 1;
+
+    // record tags
+    private static final byte END = 0;
+    private static final byte DATA = 1;
+    private static final byte QUERY = 2;
+
+    private final PCDataCodec _codec;
+    private final Log _log;
+    private int _data = 0;
+    private int _queries = 0;
+
+    CacheSnapshot(PCDataCodec codec, Log log) {
+        _codec = codec;
+        _log = log;
+    }
+
+    /**
+     * Write the given caches to the given file. The snapshot is written to
+     * a temporary file first, and replaces the given file once complete.
+     */
+    void write(File file, DataCache cache, QueryCache queryCache)
+        throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null)
+            parent.mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT);
+            writeData(out, cache);
+            if (queryCache instanceof ConcurrentQueryCache)
+                writeQueries(out, (ConcurrentQueryCache) queryCache);
+            out.writeByte(END);
+        } catch (UncheckedIOException uioe) {
+            tmp.delete();
+            throw uioe.getCause();
+        } catch (IOException ioe) {
+            tmp.delete();
+            throw ioe;
+        }
+
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException amnse) {
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (_log.isInfoEnabled())
+            _log.info(_loc.get("snapshot-written", _data, _queries, file));
+    }
+
+    private void writeData(DataOutputStream out, DataCache cache)
+        throws IOException {
+        if (cache == null)
+            return;
+        if (cache.isPartitioned()) {
+            for (String name : cache.getPartitionNames())
+                writeData(out, cache.getPartition(name, false));
+            return;
+        }
+        if (!(cache instanceof ConcurrentDataCache))
+            return;
+
+        // write the tiers first, so that the entries in memory are restored
+        // last and stay there
+        ConcurrentDataCache c = (ConcurrentDataCache) cache;
+        if (c.getTiers() != null)
+            c.getTiers().forEach((key, value) -> writeData(out, value));
+        for (Object value : c.getCacheMap().values())
+            writeData(out, value);
+    }
+
+    private void writeData(DataOutputStream out, Object value) {
+        if (!(value instanceof DataCachePCData))
+            return;
+        DataCachePCData data = (DataCachePCData) value;
+        if (data.isTimedOut() || data.getVersion() == null
+            || !_codec.isEncodable(data))
+            return;
+
+        byte[] bytes;
+        try {
+            bytes = _codec.encode(data);
+        } catch (IOException | RuntimeException e) {
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("snapshot-encode", data.getId(), e));
+            return;
+        }
+        try {
+            out.writeByte(DATA);
+            writeBytes(out, bytes);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        _data++;
+    }
+
+    private void writeQueries(DataOutputStream out, ConcurrentQueryCache cache)
+        throws IOException {
+        if (cache.getTiers() != null)
+            cache.getTiers().forEach((key, value) -> writeQuery(out, key, value));
+        for (Object o : cache.getCacheMap().entrySet()) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            writeQuery(out, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void writeQuery(DataOutputStream out, Object key, Object value) {
+        if (!(value instanceof QueryResult)
+            || ((QueryResult) value).isTimedOut())
+            return;
+
+        byte[] keyBytes;
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (ObjectOutputStream objs = new ObjectOutputStream(buf)) {
+                objs.writeObject(key);
+            }
+            keyBytes = buf.toByteArray();
+            bytes = _codec.encode((QueryResult) value);
+        } catch (IOException | RuntimeException e) {
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("snapshot-encode", key, e));
+            return;
+        }
+        try {
+            out.writeByte(QUERY);
+            writeBytes(out, keyBytes);
+            writeBytes(out, bytes);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        _queries++;
+    }
+
+    /**
+     * Restore the contents of the given file into the caches of the given
+     * manager. If a validator is given, restored data cache entries are
+     * registered with it, and entries of caches it cannot validate are
+     * skipped.
+     */
+    void read(File file, DataCacheManager mgr, SnapshotValidator validator)
+        throws IOException {
+        QueryCache queryCache = mgr.getSystemQueryCache();
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT)
+                throw new StreamCorruptedException(file.getPath());
+            for (byte tag = in.readByte(); tag != END; tag = in.readByte()) {
+                if (tag == DATA)
+                    readData(readBytes(in), mgr, validator);
+                else if (tag == QUERY) {
+                    byte[] keyBytes = readBytes(in);
+                    byte[] bytes = readBytes(in);
+                    if (queryCache != null)
+                        readQuery(keyBytes, bytes, queryCache);
+                } else
+                    throw new StreamCorruptedException(file.getPath());
+            }
+        }
+        if (_log.isInfoEnabled())
+            _log.info(_loc.get("snapshot-read", _data, _queries, file));
+    }
+
+    private void readData(byte[] bytes, DataCacheManager mgr,
+        SnapshotValidator validator) {
+        DataCachePCData data;
+        try {
+            data = _codec.decode(bytes);
+        } catch (IOException | RuntimeException e) {
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("snapshot-decode", e));
+            return;
+        }
+        if (data.isTimedOut())
+            return;
+        DataCache cache = mgr.getDataCache(data.getCache(), false);
+        if (cache == null
+            || (validator != null && !(cache instanceof AbstractDataCache)))
+            return;
+
+        cache.put(data);
+        if (validator != null)
+            validator.restored((AbstractDataCache) cache, data.getId());
+        _data++;
+    }
+
+    private void readQuery(byte[] keyBytes, byte[] bytes, QueryCache cache) {
+        QueryKey key;
+        QueryResult result;
+        try {
+            key = (QueryKey) Serialization.deserialize(keyBytes, null);
+            result = _codec.decodeQueryResult(bytes);
+        } catch (IOException | RuntimeException e) {
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("snapshot-decode", e));
+            return;
+        }
+        if (result.isTimedOut())
+            return;
+        cache.put(key, result);
+        _queries++;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes)
+        throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0)
+            throw new StreamCorruptedException();
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -141,6 +141,65 @@ public interface CacheStatistics extends Serializable {
      */
     @Deprecated long getTotalWriteCount(Class<?> cls);
 
+    /**
+     * Gets number of total read requests that missed the cache but were
+     * served from it after waiting for another thread to load the same
+     * instance, since last reset.
+     *
+     * @since 4.0.1
+     */
+    long getCoalescedLoadCount();
+
+    /**
+     * Gets number of total read requests that were served from the cache
+     * after waiting for another thread's load, since start.
+     *
+     * @since 4.0.1
+     */
+    long getTotalCoalescedLoadCount();
+
+    /**
+     * Gets number of total read requests for the given class that were
+     * served from the cache after waiting for another thread's load, since
+     * last reset.
+     *
+     * @since 4.0.1
+     */
+    long getCoalescedLoadCount(String c);
+
+    /**
+     * Gets number of total read requests for the given class that were
+     * served from the cache after waiting for another thread's load, since
+     * start.
+     *
+     * @since 4.0.1
+     */
+    long getTotalCoalescedLoadCount(String c);
+
+    /**
+     * Gets the estimated number of bytes held by the cache. Only tracked
+     * for caches with a byte budget; reset does not affect it.
+     *
+     * @since 4.0.1
+     */
+    long getByteCount();
+
+    /**
+     * Gets the estimated number of bytes held by the cache for the given
+     * class. Only tracked for caches with a byte budget.
+     *
+     * @since 4.0.1
+     */
+    long getByteCount(Class<?> c);
+
+    /**
+     * Gets the estimated number of bytes held by the cache for the given
+     * class. Only tracked for caches with a byte budget.
+     *
+     * @since 4.0.1
+     */
+    long getByteCount(String c);
+
 	/**
 	 * Gets the time of last reset.
 	 */
@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.openjpa.util.OpenJPAId;
 
@@ -31,11 +33,13 @@ import org.apache.openjpa.util.OpenJPAId;
  */
 public class CacheStatisticsImpl implements CacheStatisticsSPI {
     private static final long serialVersionUID = 9014495759588003166L;
-    private static final int ARRAY_SIZE = 3;
+    private static final int ARRAY_SIZE = 4;
     private long[] totalStat = new long[ARRAY_SIZE];
     private long[] stat = new long[ARRAY_SIZE];
     private Map<String, long[]> stats = new HashMap<>();
     private Map<String, long[]> totalStats = new HashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<String, AtomicLong> typeBytes = new ConcurrentHashMap<>();
 
     private Date start = new Date();
     private Date since = new Date();
@@ -44,6 +48,7 @@ public class CacheStatisticsImpl implements CacheStatisticsSPI {
     private static final int READ = 0;
     private static final int HIT = 1;
     private static final int WRITE = 2;
+    private static final int COALESCED = 3;
 
     @Override
     public long getReadCount() {
@@ -134,6 +139,42 @@ public class CacheStatisticsImpl implements CacheStatisticsSPI {
         return getCount(totalStats, str, WRITE);
     }
 
+    @Override
+    public long getCoalescedLoadCount() {
+        return stat[COALESCED];
+    }
+
+    @Override
+    public long getTotalCoalescedLoadCount() {
+        return totalStat[COALESCED];
+    }
+
+    @Override
+    public long getCoalescedLoadCount(String str) {
+        return getCount(stats, str, COALESCED);
+    }
+
+    @Override
+    public long getTotalCoalescedLoadCount(String str) {
+        return getCount(totalStats, str, COALESCED);
+    }
+
+    @Override
+    public long getByteCount() {
+        return bytes.get();
+    }
+
+    @Override
+    public long getByteCount(Class<?> c) {
+        return getByteCount(c.getName());
+    }
+
+    @Override
+    public long getByteCount(String str) {
+        AtomicLong count = typeBytes.get(str);
+        return (count == null) ? 0 : count.get();
+    }
+
     @Override
     public Date since() {
         return since;
@@ -214,6 +255,22 @@ public class CacheStatisticsImpl implements CacheStatisticsSPI {
         addSample(cls.getName(), WRITE);
     }
 
+    @Override
+    public void newCoalescedLoad(Class<?> cls) {
+        if (!enabled) {
+            return;
+        }
+        cls = (cls == null) ? Object.class : cls;
+        addSample(cls.getName(), COALESCED);
+    }
+
+    @Override
+    public void addBytes(Class<?> cls, long delta) {
+        cls = (cls == null) ? Object.class : cls;
+        bytes.addAndGet(delta);
+        typeBytes.computeIfAbsent(cls.getName(), c -> new AtomicLong()).addAndGet(delta);
+    }
+
     public void newPut(Object oid) {
         if (!enabled) {
             return;
@@ -41,6 +41,28 @@ public interface CacheStatisticsSPI extends CacheStatistics {
      */
     void newPut(Class<?> cls);
 
+    /**
+     * Record a cache miss that was served from the cache after waiting for
+     * another thread to load the same instance.
+     *
+     * @param cls
+     *            - The class describing the type that is contained in the cache.
+     * @since 4.0.1
+     */
+    void newCoalescedLoad(Class<?> cls);
+
+    /**
+     * Record a change in the estimated number of bytes held by the cache.
+     * Recorded even when statistics collection is disabled.
+     *
+     * @param cls
+     *            - The class describing the type that is contained in the cache.
+     * @param delta
+     *            - The number of bytes added, or removed if negative.
+     * @since 4.0.1
+     */
+    void addBytes(Class<?> cls, long delta);
+
 
     /**
      * Enable statistics collection.
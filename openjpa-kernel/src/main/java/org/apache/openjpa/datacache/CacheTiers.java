@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.MappedFileStore;
+import org.apache.openjpa.util.OffHeapStore;
+
+/**
+ * The serialized tiers behind a data or query cache: an optional off-heap
+ * tier followed by an optional memory-mapped file tier. Entries evicted
+ * from the cache go to the first tier that accepts them, and entries
+ * evicted from the off-heap tier are demoted to the file tier. Lookups
+ * decode entries in place rather than moving them back into the cache, so
+ * that a lookup can never resurrect data that is concurrently invalidated.
+ *
+ * @since 4.0.1
+ */
+abstract class CacheTiers {
+
+    static final int OFF_HEAP = 0;
+    static final int OVERFLOW = 1;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (CacheTiers.class);
+
+    private final OffHeapStore[] _stores = new OffHeapStore[2];
+    private final Log _log;
+
+    /**
+     * Constructor.
+     *
+     * @param offHeapSize bytes of direct memory for the off-heap tier, or
+     * 0 for none
+     * @param overflowSize bytes of disk for the file tier, or 0 for none
+     * @param overflowDir directory holding the files of the file tier
+     * @param name name of the owning cache, used to name the files
+     */
+    CacheTiers(long offHeapSize, long overflowSize, String overflowDir,
+        String name, Log log) {
+        _log = log;
+        if (offHeapSize > 0) {
+            _stores[OFF_HEAP] = new OffHeapStore(offHeapSize) {
+                @Override
+                protected void entryEvicted(Object key, ByteBuffer record) {
+                    demote(key, record);
+                }
+            };
+        }
+        if (overflowSize > 0) {
+            File dir = new File((overflowDir != null) ? overflowDir
+                : System.getProperty("java.io.tmpdir"));
+            _stores[OVERFLOW] = new MappedFileStore(dir, "openjpa-" + name
+                + "-", overflowSize) {
+                @Override
+                protected void entryEvicted(Object key, ByteBuffer record) {
+                    evicted(key);
+                }
+            };
+        }
+    }
+
+    /**
+     * Whether any tier is configured.
+     */
+    boolean isEnabled() {
+        return _stores[OFF_HEAP] != null || _stores[OVERFLOW] != null;
+    }
+
+    /**
+     * The store of the given tier, or null if it is not configured.
+     */
+    OffHeapStore getStore(int tier) {
+        return _stores[tier];
+    }
+
+    /**
+     * Serialize the given value.
+     */
+    protected abstract byte[] encode(Object value) throws IOException;
+
+    /**
+     * Deserialize a value written by {@link #encode}.
+     */
+    protected abstract Object decode(byte[] bytes) throws IOException;
+
+    /**
+     * Whether the given key may be stored in the given tier.
+     */
+    protected boolean accepts(int tier, Object key) {
+        return true;
+    }
+
+    /**
+     * Invoked when the given key is evicted from the last tier holding it.
+     */
+    protected abstract void evicted(Object key);
+
+    /**
+     * Store the given value evicted from the cache in the first tier that
+     * accepts it, returning false if there is none or the value cannot be
+     * serialized.
+     */
+    boolean put(Object key, Object value) {
+        byte[] bytes = null;
+        for (int i = 0; i < _stores.length; i++) {
+            if (_stores[i] == null || !accepts(i, key))
+                continue;
+            try {
+                if (bytes == null)
+                    bytes = encode(value);
+                if (_stores[i].put(key, bytes, 0, bytes.length))
+                    return true;
+            } catch (IOException | RuntimeException e) {
+                if (_log.isTraceEnabled())
+                    _log.trace(_loc.get("cache-tier-encode", key, e));
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move a record evicted from the off-heap tier to the file tier.
+     */
+    private void demote(Object key, ByteBuffer record) {
+        OffHeapStore overflow = _stores[OVERFLOW];
+        if (overflow != null && accepts(OVERFLOW, key)) {
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            try {
+                if (overflow.put(key, bytes, 0, bytes.length))
+                    return;
+            } catch (RuntimeException re) {
+                if (_log.isTraceEnabled())
+                    _log.trace(_loc.get("cache-tier-encode", key, re));
+            }
+        }
+        evicted(key);
+    }
+
+    /**
+     * Decode the value stored under the given key, or return null if no
+     * tier holds it.
+     */
+    Object get(Object key) {
+        for (OffHeapStore store : _stores) {
+            if (store == null)
+                continue;
+            byte[] bytes = store.get(key);
+            if (bytes == null)
+                continue;
+            try {
+                return decode(bytes);
+            } catch (IOException | RuntimeException e) {
+                if (_log.isTraceEnabled())
+                    _log.trace(_loc.get("cache-tier-decode", key, e));
+                store.remove(key);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(Object key) {
+        for (OffHeapStore store : _stores)
+            if (store != null && store.containsKey(key))
+                return true;
+        return false;
+    }
+
+    /**
+     * Remove the given key from all tiers. The tiers are visited in the
+     * order entries are demoted, so a concurrent demotion cannot leave a
+     * copy behind.
+     */
+    boolean remove(Object key) {
+        boolean removed = false;
+        for (OffHeapStore store : _stores)
+            if (store != null)
+                removed |= store.remove(key);
+        return removed;
+    }
+
+    /**
+     * Invoke the given action on each decodable entry of the tiers, the file
+     * tier first.
+     */
+    void forEach(BiConsumer<Object, Object> action) {
+        for (int i = _stores.length - 1; i >= 0; i--) {
+            if (_stores[i] == null)
+                continue;
+            for (Object key : _stores[i].keySet()) {
+                byte[] bytes = _stores[i].get(key);
+                if (bytes == null)
+                    continue;
+                Object value;
+                try {
+                    value = decode(bytes);
+                } catch (IOException | RuntimeException e) {
+                    if (_log.isTraceEnabled())
+                        _log.trace(_loc.get("cache-tier-decode", key, e));
+                    continue;
+                }
+                action.accept(key, value);
+            }
+        }
+    }
+
+    void removeIf(Predicate<Object> keys) {
+        for (OffHeapStore store : _stores)
+            if (store != null)
+                store.removeIf(keys);
+    }
+
+    void clear() {
+        for (OffHeapStore store : _stores)
+            if (store != null)
+                store.clear();
+    }
+
+    void close() {
+        for (OffHeapStore store : _stores)
+            if (store != null)
+                store.close();
+    }
+}
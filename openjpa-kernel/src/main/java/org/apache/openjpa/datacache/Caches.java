@@ -26,6 +26,15 @@ import org.apache.openjpa.conf.OpenJPAConfiguration;
 
 class Caches {
 
+    /**
+     * Names of the eviction policies accepted by the concurrent data and
+     * query caches.
+     */
+    static final String EVICTION_RANDOM = "random";
+    static final String EVICTION_LRU = "lru";
+    static final String EVICTION_CLOCK = "clock";
+    static final String EVICTION_TINYLFU = "tinylfu";
+
     /**
      * Utility to build up a set of classes from their class names
      * when operating outside the context of a persistence manager.
@@ -18,9 +18,14 @@
  */
 package org.apache.openjpa.datacache;
 
+import java.util.List;
+import java.util.Map;
+
 import org.apache.openjpa.event.RemoteCommitListener;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.util.CacheMap;
+import org.apache.openjpa.util.ConcurrentCacheMap;
+import org.apache.openjpa.util.TinyLFUCacheMap;
 
 /**
  * A {@link DataCache} implementation that is optimized for concurrent
@@ -45,6 +50,9 @@ public class ConcurrentDataCache
     private int _cacheSize = Integer.MIN_VALUE;
     private int _softRefs = Integer.MIN_VALUE;
     protected boolean _lru = false;
+    private final CacheEvictionPolicy _eviction = new CacheEvictionPolicy();
+    private long _maxBytes = -1;
+    private PCDataWeigher _weigher = null;
 
     /**
      * Returns the underlying {@link CacheMap} that this cache is using.
@@ -93,17 +101,45 @@ public class ConcurrentDataCache
         return _cache.getSoftReferenceSize();
     }
 
+    /**
+     * Sets the maximum estimated number of bytes of unpinned objects to
+     * keep hard references to. The size of each object is estimated from
+     * the types and values of its fields, and objects are evicted by the
+     * eviction policy until the total fits. Unless a cache size is also
+     * set, the number of objects is not limited. Defaults to -1, which
+     * disables the byte budget.
+     *
+     * @since 4.0.1
+     */
+    public void setMaxBytes(long bytes) {
+        _maxBytes = bytes;
+    }
+
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+
     @Override
     public void initialize(DataCacheManager mgr) {
         super.initialize(mgr);
         conf.getRemoteCommitEventManager().addInternalListener(this);
+        if (_maxBytes >= 0)
+            _weigher = new PCDataWeigher(conf);
         // Wait to instantiate _cache so that we know the proper value of _cache
         _cache = newCacheMap();
+        if (_maxBytes >= 0) {
+            _cache.setMaxWeight(_maxBytes);
+            if (_cacheSize == Integer.MIN_VALUE)
+                _cache.setCacheSize(-1);
+        }
         if (_cacheSize != Integer.MIN_VALUE) {
             _cache.setCacheSize(_cacheSize);
         }
         if (_softRefs != Integer.MIN_VALUE) {
             _cache.setSoftReferenceSize(_softRefs);
+        } else if (isTiered()) {
+            // send overflow straight to the off-heap or overflow tier
+            _cache.setSoftReferenceSize(0);
         }
     }
 
@@ -126,17 +162,40 @@ public class ConcurrentDataCache
 
     /**
      * Return the map to use as an internal cache; entry expirations must
-     * invoke {@link AbstractDataCache#keyRemoved}.
+     * invoke {@link AbstractDataCache#keyRemoved}, passing the removed data
+     * so that it can move to the off-heap or overflow tier.
      */
     protected CacheMap newCacheMap() {
-        CacheMap res = new CacheMap(_lru) {
+        return _eviction.newCacheMap(_lru, new CacheEvictionPolicy.Listener() {
+            @Override
+            public void entryRemoved(Object key, Object value, boolean expired) {
+                keyRemoved(key, (DataCachePCData) value, expired);
+            }
+
             @Override
-            protected void entryRemoved(Object key, Object value, boolean expired) {
-                keyRemoved(key, expired);
+            public long weigh(Object key, Object value) {
+                return weighEntry(value);
             }
-        };
 
-        return res;
+            @Override
+            public void weightChanged(Object key, Object value, long delta) {
+                entryWeightChanged(value, delta);
+            }
+        });
+    }
+
+    /**
+     * The estimated number of bytes held by the given cached value.
+     */
+    private long weighEntry(Object value) {
+        return (_weigher == null) ? 1 : _weigher.weigh((DataCachePCData) value);
+    }
+
+    /**
+     * Account for a change in the bytes held by the given cached value.
+     */
+    private void entryWeightChanged(Object value, long delta) {
+        _stats.addBytes(((DataCachePCData) value).getType(), delta);
     }
 
     @Override
@@ -149,6 +208,16 @@ public class ConcurrentDataCache
         return (DataCachePCData) _cache.put(key, pc);
     }
 
+    @Override
+    protected Map<Object,DataCachePCData> getAllInternal(List<Object> keys) {
+        return _cache.getAll(keys);
+    }
+
+    @Override
+    protected void putAllInternal(Map<Object,DataCachePCData> pcs) {
+        _cache.putAll(pcs);
+    }
+
     @Override
     protected DataCachePCData removeInternal(Object key) {
         return (DataCachePCData) _cache.remove(key);
@@ -190,4 +259,40 @@ public class ConcurrentDataCache
     public boolean getLru() {
         return _lru;
     }
+
+    /**
+     * Sets the policy that chooses the values to remove when the cache fills
+     * up: <code>random</code> (the default), <code>lru</code>,
+     * <code>clock</code> or <code>tinylfu</code>. The <code>clock</code>
+     * policy uses a {@link ConcurrentCacheMap}, whose reads never block and
+     * whose eviction approximates LRU. The <code>tinylfu</code> policy uses
+     * a {@link TinyLFUCacheMap}, which also refuses to admit entries that
+     * are less frequently used than the ones they would replace.
+     *
+     * @since 4.0.1
+     */
+    public void setEvictionPolicy(String policy) {
+        Boolean lru = _eviction.setPolicy(policy);
+        if (lru != null)
+            _lru = lru;
+    }
+
+    public String getEvictionPolicy() {
+        return _eviction.getPolicy(_lru);
+    }
+
+    /**
+     * Sets the number of lock stripes used by the <code>clock</code> and
+     * <code>tinylfu</code> eviction policies. Defaults to four per available processor, and at
+     * least 16.
+     *
+     * @since 4.0.1
+     */
+    public void setConcurrencyLevel(int level) {
+        _eviction.setConcurrencyLevel(level);
+    }
+
+    public int getConcurrencyLevel() {
+        return _eviction.getConcurrencyLevel();
+    }
 }
@@ -40,6 +40,7 @@ public class ConcurrentQueryCache
     private static final long serialVersionUID = 1L;
     private CacheMap _cache;
     protected boolean _lru = false;
+    private final CacheEvictionPolicy _eviction = new CacheEvictionPolicy();
     private int _cacheSize = Integer.MIN_VALUE;
     private int _softRefs = Integer.MIN_VALUE;
 
@@ -103,6 +104,9 @@ public class ConcurrentQueryCache
         }
         if (_softRefs != Integer.MIN_VALUE) {
             _cache.setSoftReferenceSize(_softRefs);
+        } else if (isTiered()) {
+            // send overflow straight to the off-heap or overflow tier
+            _cache.setSoftReferenceSize(0);
         }
     }
 
@@ -119,12 +123,13 @@ public class ConcurrentQueryCache
     }
 
     /**
-     * Return the map to use as an internal cache.
+     * Return the map to use as an internal cache; entry expirations must
+     * invoke {@link AbstractQueryCache#keyRemoved} so that the removed
+     * result can move to the off-heap or overflow tier.
      */
     protected CacheMap newCacheMap() {
-        CacheMap res = new CacheMap(_lru);
-
-        return res;
+        return _eviction.newCacheMap(_lru,
+            (key, value, expired) -> keyRemoved((QueryKey) key, (QueryResult) value, expired));
     }
 
     @Override
@@ -177,4 +182,36 @@ public class ConcurrentQueryCache
     public boolean getLru() {
         return _lru;
     }
+
+    /**
+     * Sets the policy that chooses the results to remove when the cache
+     * fills up. Accepts the same policies as
+     * {@link ConcurrentDataCache#setEvictionPolicy}.
+     *
+     * @since 4.0.1
+     */
+    public void setEvictionPolicy(String policy) {
+        Boolean lru = _eviction.setPolicy(policy);
+        if (lru != null)
+            _lru = lru;
+    }
+
+    public String getEvictionPolicy() {
+        return _eviction.getPolicy(_lru);
+    }
+
+    /**
+     * Sets the number of lock stripes used by the <code>clock</code> and
+     * <code>tinylfu</code> eviction policies, as
+     * {@link ConcurrentDataCache#setConcurrencyLevel} does.
+     *
+     * @since 4.0.1
+     */
+    public void setConcurrencyLevel(int level) {
+        _eviction.setConcurrencyLevel(level);
+    }
+
+    public int getConcurrencyLevel() {
+        return _eviction.getConcurrencyLevel();
+    }
 }
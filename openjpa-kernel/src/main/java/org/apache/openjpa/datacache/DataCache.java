@@ -136,6 +136,18 @@ public interface DataCache
      */
     DataCachePCData put(DataCachePCData value);
 
+    /**
+     * Set the cached values for the given instances, as if by {@link #put},
+     * acquiring the locks of the cache once for all of them where the
+     * implementation allows. By default, puts the values one by one.
+     *
+     * @since 4.0.1
+     */
+    default void putAll(Collection<DataCachePCData> values) {
+        for (DataCachePCData value : values)
+            put(value);
+    }
+
     /**
      * Update the cached value for the given instance. This does
      * <em>not</em> result in an update of other caches. Rather, it should
@@ -268,6 +280,8 @@ public interface DataCache
 	 * The returned map has the same keys as the given keys.
 	 * If the cache does not contain data for a specific key,
 	 * the returned map still contains the key with a null value.
+	 * Implementations should acquire their locks once for all keys
+	 * rather than once per key.
 	 *
      */
     Map<Object,DataCachePCData> getAll(List<Object> keys);
@@ -18,20 +18,36 @@
  */
 package org.apache.openjpa.datacache;
 
+import java.io.File;
+import java.io.IOException;
+import java.security.AccessController;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.enhance.PCDataGenerator;
+import org.apache.openjpa.event.BrokerFactoryEvent;
+import org.apache.openjpa.event.BrokerFactoryListener;
+import org.apache.openjpa.kernel.BrokerFactory;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.lib.conf.ObjectValue;
+import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Closeable;
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.StringUtil;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.MetaDataRepository;
 import org.apache.openjpa.util.ImplHelper;
+import org.apache.openjpa.util.UserException;
 
 /**
  * Default data cache manager provides handle to utilities {@linkplain PCDataGenerator}, {@linkplain ClearableScheduler}
@@ -45,6 +61,12 @@ import org.apache.openjpa.util.ImplHelper;
 public class DataCacheManagerImpl
     implements Closeable, DataCacheManager {
 
+    private static final Localizer _loc = Localizer.forPackage(DataCacheManagerImpl.class);
+
+    private static final String SNAPSHOT_LAZY = "lazy";
+    private static final String SNAPSHOT_BACKGROUND = "background";
+    private static final String SNAPSHOT_NONE = "none";
+
     private OpenJPAConfiguration _conf;
     private DataCache _cache = null;
     private QueryCache _queryCache = null;
@@ -58,6 +80,31 @@ public class DataCacheManagerImpl
     private Set<String> _includedTypes;
     private Set<String> _excludedTypes;
 
+    // types whose evicted cache entries may be kept in the overflow tier
+    private Set<String> _overflowTypes;
+    private final Map<String, Boolean> _overflowOverrides = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Boolean> _overflow = new ConcurrentHashMap<>();
+
+    // warm restart from a snapshot of the caches
+    private String _snapshotFile;
+    private String _snapshotValidation = SNAPSHOT_LAZY;
+    private int _snapshotBatchSize = 100;
+    private SnapshotValidator _validator;
+
+    // refresh-ahead of entries about to expire
+    private int _refreshThreads = 1;
+    private int _refreshQueueSize = 1000;
+    private CacheRefresher _refresher;
+
+    // sweeps caches whose timed out entries are evicted proactively
+    private ScheduledThreadPoolExecutor _expirationTimer;
+
+    private volatile BrokerFactory _factory;
+    private boolean _closed = false;
+
+    // guards the lazily created executors
+    private final ReentrantLock _lock = new ReentrantLock();
+
     @Override
     public void initialize(OpenJPAConfiguration conf, ObjectValue dataCache, ObjectValue queryCache) {
         _conf = conf;
@@ -79,6 +126,10 @@ public class DataCacheManagerImpl
 
         _cache.initialize(this);
 
+        // restoring the snapshot and refreshing entries need the factory,
+        // and decoding the snapshot needs resolved metadata
+        if (_snapshotFile != null || _refresher != null)
+            conf.getBrokerFactoryEventManager().addListener((BrokerFactoryListener) this::factoryCreated);
     }
 
     @Override
@@ -123,6 +174,24 @@ public class DataCacheManagerImpl
 
     @Override
     public void close() {
+        if (_closed)
+            return;
+        _closed = true;
+        if (_validator != null)
+            _validator.stop();
+        if (_refresher != null)
+            _refresher.close();
+        _lock.lock();
+        try {
+            if (_expirationTimer != null)
+                _expirationTimer.shutdownNow();
+        } finally {
+            _lock.unlock();
+        }
+        // a factory that was never used has not restored the snapshot, so
+        // keep the existing one
+        if (_snapshotFile != null && _cache != null && _factory != null)
+            writeSnapshot();
         ImplHelper.close(_cache);
         ImplHelper.close(_queryCache);
         if (_scheduler != null)
@@ -227,6 +296,292 @@ public class DataCacheManagerImpl
         _cacheable.put(cmd, Boolean.FALSE);
     }
 
+    /**
+     * Semicolon-separated list of the names of the types whose entries may
+     * be kept in the overflow tier of the data and query caches once they
+     * are evicted from memory. Subclasses of a listed type are included.
+     * By default all types may overflow.
+     *
+     * @since 4.0.1
+     */
+    public void setOverflowTypes(String types) {
+        _overflowTypes = StringUtil.isEmpty(types) ? null
+            : new HashSet<>(Arrays.asList(StringUtil.split(types, ";", 0)));
+        _overflow.clear();
+    }
+
+    public String getOverflowTypes() {
+        return (_overflowTypes == null) ? null
+            : String.join(";", _overflowTypes);
+    }
+
+    /**
+     * Allow the entries of the given type and its subclasses to overflow
+     * to disk, overriding the configured {@link #setOverflowTypes types}.
+     *
+     * @since 4.0.1
+     */
+    public void startOverflow(String cls) {
+        _overflowOverrides.put(cls, Boolean.TRUE);
+        _overflow.clear();
+    }
+
+    /**
+     * Keep the entries of the given type and its subclasses from
+     * overflowing to disk, overriding the configured
+     * {@link #setOverflowTypes types}.
+     *
+     * @since 4.0.1
+     */
+    public void stopOverflow(String cls) {
+        _overflowOverrides.put(cls, Boolean.FALSE);
+        _overflow.clear();
+    }
+
+    /**
+     * Affirms if the cache entries of the given type may be kept in the
+     * overflow tier.
+     *
+     * @since 4.0.1
+     */
+    public boolean isOverflowEnabled(Class<?> cls) {
+        Boolean res = _overflow.get(cls);
+        if (res != null)
+            return res;
+        for (Class<?> c = cls; res == null && c != null; c = c.getSuperclass())
+            res = getOverflow(c.getName());
+        if (res == null)
+            res = _overflowTypes == null;
+        _overflow.put(cls, res);
+        return res;
+    }
+
+    /**
+     * Affirms if the cache entries of the named type may be kept in the
+     * overflow tier.
+     *
+     * @since 4.0.1
+     */
+    public boolean isOverflowEnabled(String cls) {
+        ClassMetaData meta = _conf.getMetaDataRepositoryInstance()
+            .getCachedMetaData(cls);
+        if (meta != null)
+            return isOverflowEnabled(meta.getDescribedType());
+        Boolean res = getOverflow(cls);
+        return (res == null) ? _overflowTypes == null : res;
+    }
+
+    /**
+     * Whether the named type itself is explicitly allowed to overflow or
+     * not, or null if it is not mentioned.
+     */
+    private Boolean getOverflow(String cls) {
+        Boolean res = _overflowOverrides.get(cls);
+        if (res == null && _overflowTypes != null && _overflowTypes.contains(cls))
+            res = Boolean.TRUE;
+        return res;
+    }
+
+    /**
+     * The file to which the contents of the data and query caches are
+     * written when this manager is closed, and from which they are restored
+     * when the broker factory is first used, so that a restarted application
+     * starts with warm caches. Defaults to null, which disables snapshots.
+     *
+     * @since 4.0.1
+     */
+    public void setSnapshotFile(String file) {
+        _snapshotFile = StringUtil.isEmpty(file) ? null : file;
+    }
+
+    public String getSnapshotFile() {
+        return _snapshotFile;
+    }
+
+    /**
+     * How data cache entries restored from the {@link #setSnapshotFile
+     * snapshot} are checked against the database: <code>lazy</code> (the
+     * default) validates the version of each entry in the background once
+     * it is first looked up, <code>background</code> validates all entries
+     * in the background right away, and <code>none</code> trusts the
+     * snapshot. Entries whose instance has changed or been deleted are
+     * evicted. Instances without a version are not written to the snapshot.
+     *
+     * @since 4.0.1
+     */
+    public void setSnapshotValidation(String mode) {
+        if (SNAPSHOT_LAZY.equalsIgnoreCase(mode))
+            _snapshotValidation = SNAPSHOT_LAZY;
+        else if (SNAPSHOT_BACKGROUND.equalsIgnoreCase(mode))
+            _snapshotValidation = SNAPSHOT_BACKGROUND;
+        else if (SNAPSHOT_NONE.equalsIgnoreCase(mode))
+            _snapshotValidation = SNAPSHOT_NONE;
+        else
+            throw new UserException(_loc.get("bad-snapshot-validation", mode));
+    }
+
+    public String getSnapshotValidation() {
+        return _snapshotValidation;
+    }
+
+    /**
+     * The number of restored entries validated with each database query.
+     * Defaults to 100.
+     *
+     * @since 4.0.1
+     */
+    public void setSnapshotBatchSize(int size) {
+        _snapshotBatchSize = size;
+    }
+
+    public int getSnapshotBatchSize() {
+        return _snapshotBatchSize;
+    }
+
+    /**
+     * The number of entries restored from the snapshot that have not been
+     * validated yet.
+     *
+     * @since 4.0.1
+     */
+    public int getSnapshotPendingCount() {
+        return (_validator == null) ? 0 : _validator.getPendingCount();
+    }
+
+    /**
+     * The number of threads that reload cache entries about to expire for
+     * caches with a {@link AbstractDataCache#setRefreshAheadWindow refresh
+     * ahead window}. Defaults to 1.
+     *
+     * @since 4.0.1
+     */
+    public void setRefreshThreads(int threads) {
+        _refreshThreads = threads;
+    }
+
+    public int getRefreshThreads() {
+        return _refreshThreads;
+    }
+
+    /**
+     * The maximum number of cache entries waiting to be reloaded. Entries
+     * that are due for a refresh while the queue is full are not refreshed
+     * ahead, and expire as usual. Defaults to 1000.
+     *
+     * @since 4.0.1
+     */
+    public void setRefreshQueueSize(int size) {
+        _refreshQueueSize = size;
+    }
+
+    public int getRefreshQueueSize() {
+        return _refreshQueueSize;
+    }
+
+    /**
+     * The number of cache entries reloaded ahead of their timeout.
+     *
+     * @since 4.0.1
+     */
+    public long getRefreshCount() {
+        _lock.lock();
+        try {
+            return (_refresher == null) ? 0 : _refresher.getRefreshCount();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * The executor reloading entries about to expire, created on first use.
+     */
+    CacheRefresher getRefresher() {
+        _lock.lock();
+        try {
+            if (_refresher == null)
+                _refresher = new CacheRefresher(this, _refreshThreads, _refreshQueueSize,
+                    _conf.getLog(OpenJPAConfiguration.LOG_DATACACHE));
+            return _refresher;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * The single daemon thread that sweeps the timed out entries of caches
+     * with an {@link AbstractDataCache#setExpirationTick expiration tick},
+     * created on first use.
+     */
+    ScheduledExecutorService getExpirationTimer() {
+        _lock.lock();
+        try {
+            if (_expirationTimer == null) {
+                String name = _loc.get("expiration-timer-name").getMessage();
+                _expirationTimer = new ScheduledThreadPoolExecutor(1, r -> AccessController.doPrivileged(
+                    J2DoPrivHelper.newDaemonThreadAction(r, name)));
+                _expirationTimer.setRemoveOnCancelPolicy(true);
+            }
+            return _expirationTimer;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * The broker factory using this manager, or null if it has not been
+     * used yet.
+     */
+    BrokerFactory getBrokerFactory() {
+        return _factory;
+    }
+
+    private void factoryCreated(BrokerFactoryEvent event) {
+        if (event.getEventType() != BrokerFactoryEvent.BROKER_FACTORY_CREATED)
+            return;
+        _factory = event.getBrokerFactory();
+        if (_snapshotFile != null)
+            restoreSnapshot();
+    }
+
+    /**
+     * Restore the caches from the snapshot file, if there is one.
+     */
+    private void restoreSnapshot() {
+        File file = new File(_snapshotFile);
+        if (!file.isFile())
+            return;
+
+        Log log = _conf.getLog(OpenJPAConfiguration.LOG_DATACACHE);
+        SnapshotValidator validator = null;
+        if (!SNAPSHOT_NONE.equals(_snapshotValidation))
+            validator = new SnapshotValidator(SNAPSHOT_LAZY.equals(_snapshotValidation), _snapshotBatchSize,
+                _queryCache, log);
+        try {
+            new CacheSnapshot(new PCDataCodec(_conf), log).read(file, this, validator);
+        } catch (IOException | RuntimeException e) {
+            if (log.isWarnEnabled())
+                log.warn(_loc.get("snapshot-read-fail", file, e));
+        }
+        if (validator != null) {
+            _validator = validator;
+            validator.start(_factory);
+        }
+    }
+
+    /**
+     * Write the caches to the snapshot file.
+     */
+    private void writeSnapshot() {
+        Log log = _conf.getLog(OpenJPAConfiguration.LOG_DATACACHE);
+        File file = new File(_snapshotFile);
+        try {
+            new CacheSnapshot(new PCDataCodec(_conf), log).write(file, _cache, _queryCache);
+        } catch (IOException | RuntimeException e) {
+            if (log.isWarnEnabled())
+                log.warn(_loc.get("snapshot-write-fail", file, e));
+        }
+    }
+
     @Override
     public Map<String, Boolean> listKnownTypes() {
         Map<String, Boolean> res = new HashMap<>();
@@ -61,6 +61,18 @@ public class DataCachePCDataImpl
             _exp = -1;
     }
 
+    /**
+     * Constructor for data restored from its serialized form, with the
+     * given expiration time or <code>-1</code> for none.
+     *
+     * @since 4.0.1
+     */
+    public DataCachePCDataImpl(Object oid, ClassMetaData meta, String name,
+        long exp) {
+        super(oid, meta, name);
+        _exp = exp;
+    }
+
     @Override
     public boolean isTimedOut() {
         return _exp != -1 && _exp < System.currentTimeMillis();
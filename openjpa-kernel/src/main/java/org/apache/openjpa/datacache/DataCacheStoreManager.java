@@ -157,39 +157,48 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
 
             // update pcdatas for updates
             if (_updates != null) {
-                BitSet fields;
-                OpenJPAStateManager sm;
-                for (Map.Entry<OpenJPAStateManager, BitSet> entry : _updates.entrySet()) {
-                    sm = entry.getKey();
-                    fields = entry.getValue();
-
+                // look the updated instances up in bulk, once per cache
+                Map<DataCache,List<OpenJPAStateManager>> caches = new HashMap<>();
+                for (OpenJPAStateManager sm : _updates.keySet()) {
                     cache = _mgr.selectCache(sm);
-                    if (cache == null) {
-                        continue;
+                    if (cache != null) {
+                        caches.computeIfAbsent(cache, k -> new ArrayList<>()).add(sm);
+                    }
+                }
+
+                for (Map.Entry<DataCache,List<OpenJPAStateManager>> entry : caches.entrySet()) {
+                    cache = entry.getKey();
+                    List<OpenJPAStateManager> sms = entry.getValue();
+                    List<Object> oids = new ArrayList<>(sms.size());
+                    for (OpenJPAStateManager sm : sms) {
+                        oids.add(sm.getObjectId());
                     }
 
-                    // it's ok not to clone the object that we get from the cache,
+                    // it's ok not to clone the objects that we get from the cache,
                     // since we're inside the commit() method, so any modifications
                     // to the underlying cache are valid. If the commit had not
                     // already succeeded, then we'd want to clone the retrieved
-                    // object.
-                    data = cache.get(sm.getObjectId());
+                    // objects.
+                    Map<Object,DataCachePCData> datas = cache.getAll(oids);
                     mods = getModifications(modMap, cache);
-
-                    // data should always be non-null, since the object is
-                    // dirty, but maybe it got dropped from the cache in the
-                    // interim
-                    if (data == null) {
-                        data = newPCData(sm, cache);
-                        data.store(sm);
-                        mods.newUpdates.add(new PCDataHolder(data, sm));
-                    } else {
-                        data.store(sm, fields);
-                        mods.existingUpdates.add(new PCDataHolder(data, sm));
-                    }
                     CacheStatistics stats = cache.getStatistics();
-                    if (stats.isEnabled()) {
-                        ((CacheStatisticsSPI)stats).newPut(data.getType());
+                    for (OpenJPAStateManager sm : sms) {
+                        data = datas.get(sm.getObjectId());
+
+                        // data should always be non-null, since the object is
+                        // dirty, but maybe it got dropped from the cache in the
+                        // interim
+                        if (data == null) {
+                            data = newPCData(sm, cache);
+                            data.store(sm);
+                            mods.newUpdates.add(new PCDataHolder(data, sm));
+                        } else {
+                            data.store(sm, _updates.get(sm));
+                            mods.existingUpdates.add(new PCDataHolder(data, sm));
+                        }
+                        if (stats.isEnabled()) {
+                            ((CacheStatisticsSPI)stats).newPut(data.getType());
+                        }
                     }
                 }
             }
@@ -370,44 +379,93 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
         CacheStatistics stats = cache.getStatistics();
         boolean fromDatabase = false;
         boolean alreadyCached = data != null;
-        if (sm.isEmbedded()
-         || fetch.getCacheRetrieveMode() == DataCacheRetrieveMode.BYPASS
-         || fetch.getCacheStoreMode() == DataCacheStoreMode.REFRESH) {
-            // stats -- Skipped reading from the cache, noop
-            fromDatabase = super.initialize(sm, state, fetch, edata);
-        } else {
-            if (alreadyCached && !isLocking(fetch)) {
-                if (stats.isEnabled()) {
-                    ((CacheStatisticsSPI)stats).newGet(data.getType(), true);
-                }
-                sm.initialize(data.getType(), state);
-                data.load(sm, fetch, edata);
+        LoadCoalescer loads = null;
+        Object load = null;
+        try {
+            if (sm.isEmbedded()
+             || fetch.getCacheRetrieveMode() == DataCacheRetrieveMode.BYPASS
+             || fetch.getCacheStoreMode() == DataCacheStoreMode.REFRESH) {
+                // stats -- Skipped reading from the cache, noop
+                fromDatabase = super.initialize(sm, state, fetch, edata);
             } else {
-                if (!alreadyCached) {
+                if (alreadyCached && !isLocking(fetch)) {
                     if (stats.isEnabled()) {
-                        // Get the classname from MetaData... but this won't be right in every case.
-                        ((CacheStatisticsSPI)stats).newGet(sm.getMetaData().getDescribedType(), false);
+                        ((CacheStatisticsSPI)stats).newGet(data.getType(), true);
+                    }
+                    sm.initialize(data.getType(), state);
+                    data.load(sm, fetch, edata);
+                } else {
+                    if (!alreadyCached) {
+                        if (stats.isEnabled()) {
+                            // Get the classname from MetaData... but this won't be right in every case.
+                            ((CacheStatisticsSPI)stats).newGet(sm.getMetaData().getDescribedType(), false);
+                        }
+                        // let a single thread load a missing instance, and the others wait for it to be cached
+                        loads = getLoadCoalescer(cache, fetch, edata);
+                        if (loads != null) {
+                            load = loads.begin(sm.getObjectId());
+                            data = (load == null) ? awaitLoad(cache, loads, sm.getObjectId()) : null;
+                            if (data != null) {
+                                sm.initialize(data.getType(), state);
+                                data.load(sm, fetch, edata);
+                                return true;
+                            }
+                        }
                     }
+                    fromDatabase = super.initialize(sm, state, fetch, edata);
                 }
-                fromDatabase = super.initialize(sm, state, fetch, edata);
             }
-        }
-        // update cache if the result came from the database and configured to use or refresh the cache.
-        boolean updateCache = fromDatabase && _ctx.getPopulateDataCache()
-                           && ((fetch.getCacheStoreMode() == DataCacheStoreMode.USE && !alreadyCached)
-                            || (fetch.getCacheStoreMode() == DataCacheStoreMode.REFRESH));
-        if (updateCache) {
-            // It is possible that the "cacheability" of the provided SM changed after hitting the DB. This can happen
-            // when we are operating against an Entity that is in some sort of inheritance structure.
-            cache = _mgr.selectCache(sm);
-            if (cache != null) {
-                cacheStateManager(cache, sm, data);
-                if (stats.isEnabled()) {
-                    ((CacheStatisticsSPI) stats).newPut(sm.getMetaData().getDescribedType());
+            // update cache if the result came from the database and configured to use or refresh the cache.
+            boolean updateCache = fromDatabase && _ctx.getPopulateDataCache()
+                               && ((fetch.getCacheStoreMode() == DataCacheStoreMode.USE && !alreadyCached)
+                                || (fetch.getCacheStoreMode() == DataCacheStoreMode.REFRESH));
+            if (updateCache) {
+                // It is possible that the "cacheability" of the provided SM changed after hitting the DB. This can
+                // happen when we are operating against an Entity that is in some sort of inheritance structure.
+                cache = _mgr.selectCache(sm);
+                if (cache != null) {
+                    cacheStateManager(cache, sm, data);
+                    if (stats.isEnabled()) {
+                        ((CacheStatisticsSPI) stats).newPut(sm.getMetaData().getDescribedType());
+                    }
                 }
             }
+            return fromDatabase || alreadyCached;
+        } finally {
+            if (load != null) {
+                loads.end(sm.getObjectId(), load);
+            }
+        }
+    }
+
+    /**
+     * Return the coalescer for loads of instances missing from the given
+     * cache, or null if loads into it should not be coalesced. Loads are
+     * only coalesced when their result will be cached, and not when the
+     * instance's data has already been fetched.
+     */
+    private LoadCoalescer getLoadCoalescer(DataCache cache, FetchConfiguration fetch, Object edata) {
+        if (edata != null || !(cache instanceof AbstractDataCache) || !_ctx.getPopulateDataCache()
+            || fetch.getCacheStoreMode() != DataCacheStoreMode.USE || isLocking(fetch)) {
+            return null;
         }
-        return fromDatabase || alreadyCached;
+        return ((AbstractDataCache) cache).getLoadCoalescer();
+    }
+
+    /**
+     * Wait for another thread's load of the given oid, and return the data
+     * it cached, if any.
+     */
+    private DataCachePCData awaitLoad(DataCache cache, LoadCoalescer loads, Object oid) {
+        if (!loads.await(oid)) {
+            return null;
+        }
+        DataCachePCData data = cache.get(oid);
+        CacheStatistics stats = cache.getStatistics();
+        if (data != null && stats.isEnabled()) {
+            ((CacheStatisticsSPI) stats).newCoalescedLoad(data.getType());
+        }
+        return data;
     }
 
     private void cacheStateManager(DataCache cache, OpenJPAStateManager sm, DataCachePCData data) {
@@ -439,16 +497,35 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
         }
     }
 
+    /**
+     * Replace the cached data of the given freshly loaded instance with new
+     * data, restarting its timeout, unless the cache holds a later version.
+     */
+    void recache(DataCache cache, OpenJPAStateManager sm) {
+        cache.writeLock();
+        try {
+            DataCachePCData data = cache.get(sm.getObjectId());
+            if (data != null && compareVersion(sm, sm.getVersion(), data.getVersion()) == VERSION_EARLIER) {
+                return;
+            }
+            data = newPCData(sm, cache);
+            data.store(sm);
+            cache.put(data);
+        } finally {
+            cache.writeUnlock();
+        }
+    }
+
     @Override
     public boolean load(OpenJPAStateManager sm, BitSet fields,
         FetchConfiguration fetch, int lockLevel, Object edata) {
         DataCache cache = _mgr.selectCache(sm);
 
         boolean found = false;
-        int loadedFieldsBefore = sm.getLoaded().cardinality();
+        int loadedFieldsBefore = sm.getLoadedCount();
         if (cache == null || sm.isEmbedded() || bypass(fetch, StoreManager.FORCE_LOAD_NONE)) {
             found = super.load(sm, fields, fetch, lockLevel, edata);
-            int loadedFieldsAfter = sm.getLoaded().cardinality();
+            int loadedFieldsAfter = sm.getLoadedCount();
             boolean changed = loadedFieldsAfter > loadedFieldsBefore;
             updateDataCache(found, sm, fetch, changed);
             return found;
@@ -456,26 +533,43 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
 
         CacheStatistics stats = cache.getStatistics();
         DataCachePCData data = cache.get(sm.getObjectId());
-        if (lockLevel == LockLevels.LOCK_NONE && !isLocking(fetch) && data != null)
-            data.load(sm, fields, fetch, edata);
-        if (fields.length() == 0){
-            if (stats.isEnabled()) {
-                Class<?> cls = (data == null) ? sm.getMetaData().getDescribedType() : data.getType();
-                ((CacheStatisticsSPI)stats).newGet(cls, true);
+        LoadCoalescer loads = null;
+        Object load = null;
+        if (data == null && lockLevel == LockLevels.LOCK_NONE) {
+            // let a single thread load a missing instance, and the others wait for it to be cached
+            loads = getLoadCoalescer(cache, fetch, edata);
+            if (loads != null) {
+                load = loads.begin(sm.getObjectId());
+                if (load == null)
+                    data = awaitLoad(cache, loads, sm.getObjectId());
             }
-            return true;
         }
+        try {
+            if (lockLevel == LockLevels.LOCK_NONE && !isLocking(fetch) && data != null)
+                data.load(sm, fields, fetch, edata);
+            if (fields.length() == 0){
+                if (stats.isEnabled()) {
+                    Class<?> cls = (data == null) ? sm.getMetaData().getDescribedType() : data.getType();
+                    ((CacheStatisticsSPI)stats).newGet(cls, true);
+                }
+                return true;
+            }
 
-        // load from store manager; clone the set of still-unloaded fields
-        // so that if the store manager decides to modify it it won't affect us
-        found = super.load(sm,(BitSet) fields.clone() , fetch, lockLevel, edata);
+            // load from store manager; clone the set of still-unloaded fields
+            // so that if the store manager decides to modify it it won't affect us
+            found = super.load(sm,(BitSet) fields.clone() , fetch, lockLevel, edata);
 
-        int loadedFieldsAfter = sm.getLoaded().cardinality();
-        boolean changed = loadedFieldsAfter > loadedFieldsBefore;
-        // Get new instance of cache after DB load since it may have changed
-        updateDataCache(found, sm, fetch, changed);
+            int loadedFieldsAfter = sm.getLoadedCount();
+            boolean changed = loadedFieldsAfter > loadedFieldsBefore;
+            // Get new instance of cache after DB load since it may have changed
+            updateDataCache(found, sm, fetch, changed);
 
-        return found;
+            return found;
+        } finally {
+            if (load != null) {
+                loads.end(sm.getObjectId(), load);
+            }
+        }
     }
 
     /**
@@ -583,7 +677,6 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
                     }
                 } else if (load != FORCE_LOAD_NONE
                         || sm.getPCState() == PCState.HOLLOW) {
-                    data = cache.get(sm.getObjectId());
                     if (data != null) {
                         // load unloaded fields
                         fields = sm.getUnloaded(fetch);
@@ -616,42 +709,54 @@ public class DataCacheStoreManager extends DelegatingStoreManager {
         if (!_ctx.getPopulateDataCache())
             return failed;
 
-        // for each loaded instance, merge loaded state into cached data
-
-        boolean isNew;
-
-        for(Map.Entry<OpenJPAStateManager, BitSet> entry : unloaded.entrySet()) {
-            OpenJPAStateManager sm = entry.getKey();
-            fields = entry.getValue();
-
+        // for each loaded instance, merge loaded state into cached data,
+        // once per cache
+        caches.clear();
+        for (OpenJPAStateManager sm : unloaded.keySet()) {
             cache = _mgr.selectCache(sm);
             if (cache == null || sm.isEmbedded() || (failed != null
                 && failed.contains(sm.getId())))
                 continue;
+            caches.computeIfAbsent(cache, k -> new ArrayList<>()).add(sm);
+        }
+
+        for (Entry<DataCache,List<OpenJPAStateManager>> entry : caches.entrySet()) {
+            cache = entry.getKey();
+            smList = entry.getValue();
+            List<Object> oidList = new ArrayList<>(smList.size());
+            for (OpenJPAStateManager sm : smList) {
+                oidList.add(sm.getObjectId());
+            }
 
+            CacheStatistics stats = cache.getStatistics();
+            List<DataCachePCData> added = new ArrayList<>(smList.size());
             // make sure that we're not trying to cache an old version
             cache.writeLock();
             try {
-                data = cache.get(sm.getObjectId());
-                if (data != null && compareVersion(sm, sm.getVersion(),
-                    data.getVersion()) == VERSION_EARLIER)
-                    continue;
+                Map<Object,DataCachePCData> dataMap = cache.getAll(oidList);
+                for (OpenJPAStateManager sm : smList) {
+                    data = dataMap.get(sm.getObjectId());
+                    if (data != null && compareVersion(sm, sm.getVersion(),
+                        data.getVersion()) == VERSION_EARLIER)
+                        continue;
 
-                isNew = data == null;
-                if (isNew)
-                    data = newPCData(sm, cache);
-                if (fields == null)
-                    data.store(sm);
-                else
-                    data.store(sm, fields);
-                if (isNew)
-                    cache.put(data);
-                else
-                    cache.update(data);
-                CacheStatistics stats = cache.getStatistics();
-                if (stats.isEnabled()) {
-                    ((CacheStatisticsSPI)stats).newPut(data.getType());
+                    fields = unloaded.get(sm);
+                    boolean isNew = data == null;
+                    if (isNew)
+                        data = newPCData(sm, cache);
+                    if (fields == null)
+                        data.store(sm);
+                    else
+                        data.store(sm, fields);
+                    if (isNew)
+                        added.add(data);
+                    else
+                        cache.update(data);
+                    if (stats.isEnabled()) {
+                        ((CacheStatisticsSPI)stats).newPut(data.getType());
+                    }
                 }
+                cache.putAll(added);
             } finally {
                 cache.writeUnlock();
             }
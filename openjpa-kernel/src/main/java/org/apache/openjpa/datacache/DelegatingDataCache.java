@@ -186,6 +186,17 @@ public class DelegatingDataCache
         }
     }
 
+    @Override
+    public void putAll(Collection<DataCachePCData> values) {
+        if (_cache == null)
+            return;
+        try {
+            _cache.putAll(values);
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
     @Override
     public void update(DataCachePCData value) {
         if (_cache == null)
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical timing wheel indexing cache keys by expiration time.
+ * Each level is a ring of slots; a slot of the first level spans one
+ * tick, and a slot of each following level spans a whole turn of the
+ * level below it. Scheduling, rescheduling and cancelling a key take
+ * constant time, and advancing the wheel costs one slot per elapsed tick
+ * plus the keys that expire or move down a level.
+ * Scheduling and cancelling do not lock the wheel: the requests are
+ * queued and applied by the next advance, or by the caller that fills
+ * the queue if the wheel is free.
+ *
+ * @since 4.0.1
+ */
+final class ExpirationWheel {
+
+    private static final int MAX_LEVELS = 8;
+    private static final int MAX_PENDING = 4096;
+
+    // expiration of a pending request to stop tracking a key
+    private static final long CANCEL = Long.MIN_VALUE;
+
+    private final long _tick;
+    private final int _size;
+    private final Map<Object, Node> _nodes = new HashMap<>();
+    private final List<Node[]> _levels = new ArrayList<>();
+    private final List<Long> _spans = new ArrayList<>();
+    private final Queue<Request> _pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _pendingCount = new AtomicInteger();
+    private final ReentrantLock _lock = new ReentrantLock();
+
+    // start of the current tick
+    private long _now;
+
+    /**
+     * Constructor.
+     *
+     * @param tick the number of milliseconds spanned by a slot of the
+     * first level
+     * @param size the number of slots of each level
+     * @param now the current time
+     */
+    ExpirationWheel(long tick, int size, long now) {
+        _tick = Math.max(1, tick);
+        _size = Math.max(2, size);
+        _now = now - now % _tick;
+        addLevel(_tick);
+    }
+
+    /**
+     * Schedule the given key to expire at the given time, replacing any
+     * previous expiration time of the key.
+     */
+    void schedule(Object key, long expiration) {
+        request(new Request(key, expiration));
+    }
+
+    /**
+     * Stop tracking the given key.
+     */
+    void cancel(Object key) {
+        request(new Request(key, CANCEL));
+    }
+
+    /**
+     * Stop tracking all keys.
+     */
+    void clear() {
+        _lock.lock();
+        try {
+            _pending.clear();
+            _pendingCount.set(0);
+            for (Node node : _nodes.values())
+                node.unlink();
+            _nodes.clear();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * The number of keys tracked.
+     */
+    int size() {
+        _lock.lock();
+        try {
+            applyPending();
+            return _nodes.size();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Advance the wheel to the given time, and return the keys that have
+     * expired since the last advance. The returned keys are no longer
+     * tracked.
+     */
+    List<Object> advance(long now) {
+        _lock.lock();
+        try {
+            applyPending();
+            return advanceTo(now);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Queue the given request, applying the queued requests if there are
+     * too many of them and the wheel is free.
+     */
+    private void request(Request request) {
+        _pending.add(request);
+        if (_pendingCount.incrementAndGet() > MAX_PENDING && _lock.tryLock()) {
+            try {
+                applyPending();
+            } finally {
+                _lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Apply the queued requests in order. Call with the lock held.
+     */
+    private void applyPending() {
+        Request request;
+        while ((request = _pending.poll()) != null) {
+            _pendingCount.decrementAndGet();
+            if (request._expiration == CANCEL) {
+                Node node = _nodes.remove(request._key);
+                if (node != null)
+                    node.unlink();
+                continue;
+            }
+
+            Node node = _nodes.get(request._key);
+            if (node == null) {
+                node = new Node(request._key);
+                _nodes.put(request._key, node);
+            } else if (node._expiration == request._expiration)
+                continue;
+            else
+                node.unlink();
+            node._expiration = request._expiration;
+            add(node);
+        }
+    }
+
+    private List<Object> advanceTo(long now) {
+        List<Object> expired = new ArrayList<>();
+        while (_now + _tick <= now) {
+            // the keys of the current tick have all expired
+            drain(0, index(0, _now), expired);
+            _now += _tick;
+
+            // cascade the slots of the higher levels that start now, from
+            // the top, so that keys can move down several levels at once
+            for (int i = _levels.size() - 1; i > 0; i--)
+                if (_now % _spans.get(i) == 0)
+                    drain(i, index(i, _now), null);
+        }
+        return expired;
+    }
+
+    /**
+     * Remove the keys of the given slot, adding them to the given list if
+     * it is not null, or placing them again otherwise.
+     */
+    private void drain(int level, int index, List<Object> expired) {
+        Node head = _levels.get(level)[index];
+        Node node = head._next;
+        if (node == head)
+            return;
+
+        // detach the whole list before placing the nodes again
+        head._next = head;
+        head._prev = head;
+        while (node != head) {
+            Node next = node._next;
+            node._prev = null;
+            node._next = null;
+            if (expired != null) {
+                _nodes.remove(node._key);
+                expired.add(node._key);
+            } else
+                add(node);
+            node = next;
+        }
+    }
+
+    /**
+     * Place the given node in the lowest level that spans its expiration.
+     */
+    private void add(Node node) {
+        long exp = node._expiration;
+        int level = 0;
+        int index;
+        if (exp / _tick < _now / _tick + _size)
+            index = index(0, Math.max(exp, _now));
+        else {
+            for (level = 1; ; level++) {
+                if (level == _levels.size() && !addLevel(_spans.get(level - 1) * _size))
+                    break;
+                long span = _spans.get(level);
+                if (exp / span < _now / span + _size)
+                    break;
+            }
+            if (level == _levels.size()) {
+                // beyond the top level; park in its last slot to be placed
+                // again when it comes around
+                level--;
+                index = (int) ((_now / _spans.get(level) + _size - 1) % _size);
+            } else
+                index = index(level, exp);
+        }
+        _levels.get(level)[index].append(node);
+    }
+
+    private int index(int level, long time) {
+        return (int) ((time / _spans.get(level)) % _size);
+    }
+
+    private boolean addLevel(long span) {
+        if (_levels.size() == MAX_LEVELS || span <= 0 || span > Long.MAX_VALUE / _size)
+            return false;
+        Node[] slots = new Node[_size];
+        for (int i = 0; i < _size; i++)
+            slots[i] = new Node(null);
+        _levels.add(slots);
+        _spans.add(span);
+        return true;
+    }
+
+    /**
+     * A queued request to schedule or cancel a key.
+     */
+    private static final class Request {
+        private final Object _key;
+        private final long _expiration;
+
+        private Request(Object key, long expiration) {
+            _key = key;
+            _expiration = expiration;
+        }
+    }
+
+    /**
+     * A key in a slot list. The slot heads are sentinel nodes.
+     */
+    private static final class Node {
+        private final Object _key;
+        private long _expiration;
+        private Node _prev = this;
+        private Node _next = this;
+
+        private Node(Object key) {
+            _key = key;
+        }
+
+        private void append(Node node) {
+            node._prev = _prev;
+            node._next = this;
+            _prev._next = node;
+            _prev = node;
+        }
+
+        private void unlink() {
+            if (_prev == null)
+                return;
+            _prev._next = _next;
+            _next._prev = _prev;
+            _prev = null;
+            _next = null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent loads of the same instance after a data cache miss,
+ * so that a single thread goes to the data store while the others wait for
+ * it to populate the cache. A thread never waits for a load it leads
+ * itself, and waiting threads give up after a timeout, so loads that
+ * depend on each other cannot deadlock.
+ *
+ * @since 4.0.1
+ */
+final class LoadCoalescer {
+
+    private final ConcurrentMap<Object, Load> _loads = new ConcurrentHashMap<>();
+    private final long _timeout;
+
+    /**
+     * Constructor.
+     *
+     * @param timeout the number of milliseconds to wait for another
+     * thread's load
+     */
+    LoadCoalescer(long timeout) {
+        _timeout = timeout;
+    }
+
+    /**
+     * Start loading the given oid. Returns a token to pass to {@link #end}
+     * if the calling thread should load it, or null if another thread is
+     * already loading it and the caller should {@link #await} that load.
+     */
+    Object begin(Object oid) {
+        Load load = new Load();
+        Load cur = _loads.putIfAbsent(oid, load);
+        if (cur == null)
+            return load;
+        return (cur._owner == Thread.currentThread()) ? Boolean.FALSE : null;
+    }
+
+    /**
+     * Wait for the load of the given oid in progress in another thread.
+     *
+     * @return true if the load ended, false if it did not end in time or
+     * the thread was interrupted
+     */
+    boolean await(Object oid) {
+        Load load = _loads.get(oid);
+        if (load == null)
+            return true;
+        try {
+            return load._done.await(_timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * End the load of the given oid started by {@link #begin}, releasing
+     * the threads waiting for it.
+     */
+    void end(Object oid, Object token) {
+        if (!(token instanceof Load))
+            return;
+        Load load = (Load) token;
+        _loads.remove(oid, load);
+        load._done.countDown();
+    }
+
+    /**
+     * The number of loads in progress.
+     */
+    int size() {
+        return _loads.size();
+    }
+
+    /**
+     * A load in progress.
+     */
+    private static final class Load {
+        private final Thread _owner = Thread.currentThread();
+        private final CountDownLatch _done = new CountDownLatch(1);
+    }
+}
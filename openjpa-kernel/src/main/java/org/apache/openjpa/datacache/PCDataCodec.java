@@ -0,0 +1,850 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.kernel.AbstractPCData;
+import org.apache.openjpa.kernel.PCDataImpl;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.ObjectId;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.Serialization;
+import org.apache.openjpa.util.StringId;
+
+/**
+ * Compact binary form of {@link DataCachePCDataImpl} instances and
+ * {@link QueryResult query results}. Field values whose metadata declares
+ * a primitive type are written as raw fixed-width values; all other values
+ * are written with a one byte tag, with dedicated encodings for strings,
+ * numbers, dates, OpenJPA oids, cached collections, maps, arrays and
+ * embedded instances. Class names are written once per record. Values of any other type fall back to Java
+ * serialization, and values that are not serializable make the instance
+ * unencodable.
+ *
+ * The format depends on the field layout of the metadata, so it is only
+ * meant to be decoded by the same or an identically configured
+ * persistence unit.
+ *
+ * @since 4.0.1
+ */
+public class PCDataCodec {
+
+    private static final byte FORMAT = 1;
+
+    // per-field flags
+    private static final int LOADED = 1;
+    private static final int RAW = 2;
+    private static final int INTERMEDIATE = 4;
+    private static final int IMPL = 8;
+
+    // value tags
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHAR = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte DATE = 11;
+    private static final byte SQL_DATE = 12;
+    private static final byte SQL_TIME = 13;
+    private static final byte SQL_TIMESTAMP = 14;
+    private static final byte BIG_DECIMAL = 15;
+    private static final byte BIG_INTEGER = 16;
+    private static final byte ENUM = 17;
+    private static final byte LONG_ID = 18;
+    private static final byte INT_ID = 19;
+    private static final byte STRING_ID = 20;
+    private static final byte OBJECT_ID = 21;
+    private static final byte PROXY_LIST = 22;
+    private static final byte LIST = 23;
+    private static final byte MAP = 24;
+    private static final byte EMPTY_MAP = 25;
+    private static final byte OBJECT_ARRAY = 26;
+    private static final byte BYTE_ARRAY = 27;
+    private static final byte CHAR_ARRAY = 28;
+    private static final byte INT_ARRAY = 29;
+    private static final byte LONG_ARRAY = 30;
+    private static final byte DOUBLE_ARRAY = 31;
+    private static final byte PCDATA = 32;
+    private static final byte DATA_CACHE_PCDATA = 33;
+    private static final byte SERIALIZED = 34;
+
+    private final MetaDataRepository _repos;
+    private final ClassLoader _loader;
+    private final Map<String, Class<?>> _types = new ConcurrentHashMap<>();
+
+    public PCDataCodec(OpenJPAConfiguration conf) {
+        _repos = conf.getMetaDataRepositoryInstance();
+        _loader = conf.getClassResolverInstance().getClassLoader(null, null);
+    }
+
+    /**
+     * Whether the given data can be encoded. Only
+     * {@link DataCachePCDataImpl} instances are supported.
+     */
+    public boolean isEncodable(DataCachePCData data) {
+        return data != null && data.getClass() == DataCachePCDataImpl.class;
+    }
+
+    /**
+     * Encode the given data.
+     *
+     * @throws IOException if the data or one of its values cannot be encoded
+     */
+    public byte[] encode(DataCachePCData data) throws IOException {
+        if (!isEncodable(data))
+            throw new NotSerializableException(String.valueOf(data));
+
+        Output out = new Output();
+        out.writeByte(FORMAT);
+        DataCachePCDataImpl pcdata = (DataCachePCDataImpl) data;
+        synchronized (pcdata) {
+            writePCData(out, pcdata, getMetaData(pcdata.getType()), true);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode data encoded by {@link #encode}.
+     *
+     * @throws IOException if the bytes are corrupt or refer to unknown types
+     */
+    public DataCachePCData decode(byte[] bytes) throws IOException {
+        Input in = new Input(bytes);
+        if (in.readByte() != FORMAT)
+            throw new StreamCorruptedException();
+        return (DataCachePCData) readPCData(in, true);
+    }
+
+    /**
+     * Encode the given query result, including its expiration time and
+     * timestamp.
+     *
+     * @throws IOException if one of the result's values cannot be encoded
+     */
+    public byte[] encode(QueryResult result) throws IOException {
+        Output out = new Output();
+        out.writeByte(FORMAT);
+        out.writeVarLong(result.getTimeoutTime());
+        out.writeVarLong(result.getTimestamp());
+        writeElements(out, result);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a query result encoded by {@link #encode(QueryResult)}.
+     *
+     * @throws IOException if the bytes are corrupt or refer to unknown types
+     */
+    public QueryResult decodeQueryResult(byte[] bytes) throws IOException {
+        Input in = new Input(bytes);
+        if (in.readByte() != FORMAT)
+            throw new StreamCorruptedException();
+        long ex = in.readVarLong();
+        long timestamp = in.readVarLong();
+        int size = in.readVarInt();
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            list.add(readValue(in));
+        QueryResult result = new QueryResult(list, ex);
+        result.setTimestamp(timestamp);
+        return result;
+    }
+
+    private ClassMetaData getMetaData(Class<?> type) {
+        return _repos.getMetaData(type, _loader, true);
+    }
+
+    /**
+     * Write an instance. Top-level instances are described by the metadata
+     * of their type, so primitive fields can be written raw; embedded
+     * instances tag all of their values.
+     */
+    private void writePCData(Output out, PCDataImpl data, ClassMetaData meta,
+        boolean raw) throws IOException {
+        writeClass(out, data.getType());
+        writeString(out, data.getCache());
+        writeValue(out, data.getId());
+        if (data instanceof DataCachePCData)
+            out.writeVarLong(((DataCachePCData) data).getTimeOut());
+        writeValue(out, data.getVersion());
+        writeValue(out, data.getImplData());
+
+        FieldMetaData[] fmds = meta.getFields();
+        out.writeVarInt(fmds.length);
+        for (int i = 0; i < fmds.length; i++) {
+            boolean loaded = data.isLoaded(i);
+            Object val = (loaded) ? data.getData(i) : data.getIntermediate(i);
+            Object impl = data.getImplData(i);
+
+            int flags = 0;
+            if (loaded) {
+                flags |= LOADED;
+                if (raw && isRaw(fmds[i].getDeclaredTypeCode(), val))
+                    flags |= RAW;
+            } else if (val != null)
+                flags |= INTERMEDIATE;
+            if (impl != null)
+                flags |= IMPL;
+
+            out.writeByte(flags);
+            if ((flags & RAW) != 0)
+                writeRaw(out, fmds[i].getDeclaredTypeCode(), val);
+            else if ((flags & (LOADED | INTERMEDIATE)) != 0)
+                writeValue(out, val);
+            if (impl != null)
+                writeValue(out, impl);
+        }
+    }
+
+    /**
+     * Read an instance written by {@link #writePCData}.
+     */
+    private PCDataImpl readPCData(Input in, boolean dataCache)
+        throws IOException {
+        ClassMetaData meta = getMetaData(readClass(in));
+        String cache = readString(in);
+        Object oid = readValue(in);
+        PCDataImpl data;
+        if (dataCache)
+            data = new DataCachePCDataImpl(oid, meta, cache, in.readVarLong());
+        else
+            data = new PCDataImpl(oid, meta, cache);
+        data.setVersion(readValue(in));
+        data.setImplData(readValue(in));
+
+        FieldMetaData[] fmds = meta.getFields();
+        int len = in.readVarInt();
+        if (len != fmds.length)
+            throw new StreamCorruptedException(meta.toString());
+        for (int i = 0; i < len; i++) {
+            int flags = in.readByte();
+            if ((flags & RAW) != 0)
+                data.setData(i, readRaw(in, fmds[i].getDeclaredTypeCode()));
+            else if ((flags & LOADED) != 0)
+                data.setData(i, readValue(in));
+            else if ((flags & INTERMEDIATE) != 0)
+                data.setIntermediate(i, readValue(in));
+            if ((flags & IMPL) != 0)
+                data.setImplData(i, readValue(in));
+        }
+        return data;
+    }
+
+    /**
+     * Whether the given value of a field of the given type code can be
+     * written without a tag.
+     */
+    private static boolean isRaw(int typeCode, Object val) {
+        switch (typeCode) {
+            case JavaTypes.BOOLEAN:
+                return val instanceof Boolean;
+            case JavaTypes.BYTE:
+                return val instanceof Byte;
+            case JavaTypes.CHAR:
+                return val instanceof Character;
+            case JavaTypes.DOUBLE:
+                return val instanceof Double;
+            case JavaTypes.FLOAT:
+                return val instanceof Float;
+            case JavaTypes.INT:
+                return val instanceof Integer;
+            case JavaTypes.LONG:
+                return val instanceof Long;
+            case JavaTypes.SHORT:
+                return val instanceof Short;
+            default:
+                return false;
+        }
+    }
+
+    private static void writeRaw(Output out, int typeCode, Object val) {
+        switch (typeCode) {
+            case JavaTypes.BOOLEAN:
+                out.writeByte((Boolean) val ? 1 : 0);
+                break;
+            case JavaTypes.BYTE:
+                out.writeByte((Byte) val);
+                break;
+            case JavaTypes.CHAR:
+                out.writeVarInt((Character) val);
+                break;
+            case JavaTypes.DOUBLE:
+                out.writeLong(Double.doubleToRawLongBits((Double) val));
+                break;
+            case JavaTypes.FLOAT:
+                out.writeInt(Float.floatToRawIntBits((Float) val));
+                break;
+            case JavaTypes.INT:
+                out.writeVarLong((Integer) val);
+                break;
+            case JavaTypes.LONG:
+                out.writeVarLong((Long) val);
+                break;
+            case JavaTypes.SHORT:
+                out.writeVarLong((Short) val);
+                break;
+        }
+    }
+
+    private static Object readRaw(Input in, int typeCode) throws IOException {
+        switch (typeCode) {
+            case JavaTypes.BOOLEAN:
+                return in.readByte() != 0;
+            case JavaTypes.BYTE:
+                return in.readByte();
+            case JavaTypes.CHAR:
+                return (char) in.readVarInt();
+            case JavaTypes.DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case JavaTypes.FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case JavaTypes.INT:
+                return (int) in.readVarLong();
+            case JavaTypes.LONG:
+                return in.readVarLong();
+            case JavaTypes.SHORT:
+                return (short) in.readVarLong();
+            default:
+                throw new StreamCorruptedException(String.valueOf(typeCode));
+        }
+    }
+
+    private void writeValue(Output out, Object val) throws IOException {
+        if (val == null) {
+            out.writeByte(NULL);
+            return;
+        }
+
+        Class<?> cls = val.getClass();
+        if (cls == String.class) {
+            out.writeByte(STRING);
+            writeString(out, (String) val);
+        } else if (cls == Integer.class) {
+            out.writeByte(INT);
+            out.writeVarLong((Integer) val);
+        } else if (cls == Long.class) {
+            out.writeByte(LONG);
+            out.writeVarLong((Long) val);
+        } else if (cls == Boolean.class)
+            out.writeByte((Boolean) val ? TRUE : FALSE);
+        else if (cls == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) val));
+        } else if (cls == Float.class) {
+            out.writeByte(FLOAT);
+            out.writeInt(Float.floatToRawIntBits((Float) val));
+        } else if (cls == Short.class) {
+            out.writeByte(SHORT);
+            out.writeVarLong((Short) val);
+        } else if (cls == Byte.class) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) val);
+        } else if (cls == Character.class) {
+            out.writeByte(CHAR);
+            out.writeVarInt((Character) val);
+        } else if (cls == Date.class) {
+            out.writeByte(DATE);
+            out.writeVarLong(((Date) val).getTime());
+        } else if (cls == java.sql.Date.class) {
+            out.writeByte(SQL_DATE);
+            out.writeVarLong(((Date) val).getTime());
+        } else if (cls == java.sql.Time.class) {
+            out.writeByte(SQL_TIME);
+            out.writeVarLong(((Date) val).getTime());
+        } else if (cls == java.sql.Timestamp.class) {
+            out.writeByte(SQL_TIMESTAMP);
+            out.writeVarLong(((Date) val).getTime());
+            out.writeVarInt(((java.sql.Timestamp) val).getNanos());
+        } else if (cls == BigDecimal.class) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeVarLong(((BigDecimal) val).scale());
+            writeBytes(out, ((BigDecimal) val).unscaledValue().toByteArray());
+        } else if (cls == BigInteger.class) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(out, ((BigInteger) val).toByteArray());
+        } else if (val instanceof Enum) {
+            out.writeByte(ENUM);
+            writeClass(out, ((Enum<?>) val).getDeclaringClass());
+            writeString(out, ((Enum<?>) val).name());
+        } else if (cls == LongId.class) {
+            out.writeByte(LONG_ID);
+            writeIdType(out, (LongId) val);
+            out.writeVarLong(((LongId) val).getId());
+        } else if (cls == IntId.class) {
+            out.writeByte(INT_ID);
+            writeIdType(out, (IntId) val);
+            out.writeVarLong(((IntId) val).getId());
+        } else if (cls == StringId.class) {
+            out.writeByte(STRING_ID);
+            writeIdType(out, (StringId) val);
+            writeString(out, ((StringId) val).getId());
+        } else if (cls == ObjectId.class) {
+            out.writeByte(OBJECT_ID);
+            writeIdType(out, (ObjectId) val);
+            writeValue(out, ((ObjectId) val).getId());
+        } else if (cls == AbstractPCData.ProxyDataList.class) {
+            AbstractPCData.ProxyDataList list = (AbstractPCData.ProxyDataList) val;
+            out.writeByte(PROXY_LIST);
+            out.writeVarInt(list.nextSequence);
+            writeElements(out, list);
+        } else if (cls == ArrayList.class) {
+            out.writeByte(LIST);
+            writeElements(out, (List<?>) val);
+        } else if (cls == HashMap.class) {
+            out.writeByte(MAP);
+            Map<?, ?> map = (Map<?, ?>) val;
+            out.writeVarInt(map.size());
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                writeValue(out, e.getKey());
+                writeValue(out, e.getValue());
+            }
+        } else if (val == Collections.EMPTY_MAP)
+            out.writeByte(EMPTY_MAP);
+        else if (cls == byte[].class) {
+            out.writeByte(BYTE_ARRAY);
+            writeBytes(out, (byte[]) val);
+        } else if (cls == char[].class) {
+            out.writeByte(CHAR_ARRAY);
+            writeString(out, new String((char[]) val));
+        } else if (cls == int[].class) {
+            int[] arr = (int[]) val;
+            out.writeByte(INT_ARRAY);
+            out.writeVarInt(arr.length);
+            for (int i : arr)
+                out.writeVarLong(i);
+        } else if (cls == long[].class) {
+            long[] arr = (long[]) val;
+            out.writeByte(LONG_ARRAY);
+            out.writeVarInt(arr.length);
+            for (long l : arr)
+                out.writeVarLong(l);
+        } else if (cls == double[].class) {
+            double[] arr = (double[]) val;
+            out.writeByte(DOUBLE_ARRAY);
+            out.writeVarInt(arr.length);
+            for (double d : arr)
+                out.writeLong(Double.doubleToRawLongBits(d));
+        } else if (cls.isArray() && !cls.getComponentType().isPrimitive()) {
+            Object[] arr = (Object[]) val;
+            out.writeByte(OBJECT_ARRAY);
+            writeClass(out, cls.getComponentType());
+            out.writeVarInt(arr.length);
+            for (Object o : arr)
+                writeValue(out, o);
+        } else if (cls == DataCachePCDataImpl.class || cls == PCDataImpl.class) {
+            out.writeByte((cls == PCDataImpl.class) ? PCDATA : DATA_CACHE_PCDATA);
+            PCDataImpl data = (PCDataImpl) val;
+            synchronized (data) {
+                writePCData(out, data, getMetaData(data.getType()), false);
+            }
+        } else if (val instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(val);
+            }
+            out.writeByte(SERIALIZED);
+            writeBytes(out, bytes.toByteArray());
+        } else
+            throw new NotSerializableException(cls.getName());
+    }
+
+    private Object readValue(Input in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return (short) in.readVarLong();
+            case CHAR:
+                return (char) in.readVarInt();
+            case INT:
+                return (int) in.readVarLong();
+            case LONG:
+                return in.readVarLong();
+            case FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case STRING:
+                return readString(in);
+            case DATE:
+                return new Date(in.readVarLong());
+            case SQL_DATE:
+                return new java.sql.Date(in.readVarLong());
+            case SQL_TIME:
+                return new java.sql.Time(in.readVarLong());
+            case SQL_TIMESTAMP:
+                java.sql.Timestamp ts = new java.sql.Timestamp(in.readVarLong());
+                ts.setNanos(in.readVarInt());
+                return ts;
+            case BIG_DECIMAL:
+                int scale = (int) in.readVarLong();
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case ENUM:
+                return toEnum(readClass(in), readString(in));
+            case LONG_ID: {
+                Class<?> type = readClass(in);
+                boolean subs = in.readByte() != 0;
+                return new LongId(type, in.readVarLong(), subs);
+            }
+            case INT_ID: {
+                Class<?> type = readClass(in);
+                boolean subs = in.readByte() != 0;
+                return new IntId(type, (int) in.readVarLong(), subs);
+            }
+            case STRING_ID: {
+                Class<?> type = readClass(in);
+                boolean subs = in.readByte() != 0;
+                return new StringId(type, readString(in), subs);
+            }
+            case OBJECT_ID: {
+                Class<?> type = readClass(in);
+                boolean subs = in.readByte() != 0;
+                return new ObjectId(type, readValue(in), subs);
+            }
+            case PROXY_LIST: {
+                int next = in.readVarInt();
+                int size = in.readVarInt();
+                AbstractPCData.ProxyDataList list = new AbstractPCData.ProxyDataList(size);
+                list.nextSequence = next;
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return list;
+            }
+            case LIST: {
+                int size = in.readVarInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return list;
+            }
+            case MAP: {
+                int size = in.readVarInt();
+                Map<Object, Object> map = new HashMap<>((int) (size / .75F) + 1);
+                for (int i = 0; i < size; i++)
+                    map.put(readValue(in), readValue(in));
+                return map;
+            }
+            case EMPTY_MAP:
+                return Collections.EMPTY_MAP;
+            case BYTE_ARRAY:
+                return readBytes(in);
+            case CHAR_ARRAY:
+                return readString(in).toCharArray();
+            case INT_ARRAY: {
+                int[] arr = new int[in.readVarInt()];
+                for (int i = 0; i < arr.length; i++)
+                    arr[i] = (int) in.readVarLong();
+                return arr;
+            }
+            case LONG_ARRAY: {
+                long[] arr = new long[in.readVarInt()];
+                for (int i = 0; i < arr.length; i++)
+                    arr[i] = in.readVarLong();
+                return arr;
+            }
+            case DOUBLE_ARRAY: {
+                double[] arr = new double[in.readVarInt()];
+                for (int i = 0; i < arr.length; i++)
+                    arr[i] = Double.longBitsToDouble(in.readLong());
+                return arr;
+            }
+            case OBJECT_ARRAY: {
+                Class<?> type = readClass(in);
+                Object[] arr = (Object[]) Array.newInstance(type, in.readVarInt());
+                for (int i = 0; i < arr.length; i++)
+                    arr[i] = readValue(in);
+                return arr;
+            }
+            case PCDATA:
+                return readPCData(in, false);
+            case DATA_CACHE_PCDATA:
+                return readPCData(in, true);
+            case SERIALIZED:
+                try {
+                    return new Serialization.ClassResolvingObjectInputStream(
+                        new ByteArrayInputStream(readBytes(in))).readObject();
+                } catch (ClassNotFoundException cnfe) {
+                    throw new IOException(cnfe);
+                }
+            default:
+                throw new StreamCorruptedException(String.valueOf(tag));
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object toEnum(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    private void writeElements(Output out, List<?> list) throws IOException {
+        out.writeVarInt(list.size());
+        for (Object o : list)
+            writeValue(out, o);
+    }
+
+    private void writeIdType(Output out, OpenJPAId oid) {
+        writeClass(out, oid.getType());
+        out.writeByte(oid.hasSubclasses() ? 1 : 0);
+    }
+
+    /**
+     * Write a class name, or a back reference to it if it was already
+     * written to the record.
+     */
+    private static void writeClass(Output out, Class<?> cls) {
+        Integer ref = out.classRefs.get(cls);
+        if (ref != null) {
+            out.writeVarInt(ref);
+            return;
+        }
+        out.writeVarInt(0);
+        writeString(out, cls.getName());
+        out.classRefs.put(cls, out.classRefs.size() + 1);
+    }
+
+    private Class<?> readClass(Input in) throws IOException {
+        int ref = in.readVarInt();
+        if (ref > 0) {
+            if (ref > in.classes.size())
+                throw new StreamCorruptedException(String.valueOf(ref));
+            return in.classes.get(ref - 1);
+        }
+
+        String name = readString(in);
+        Class<?> cls = _types.get(name);
+        if (cls == null) {
+            try {
+                cls = Class.forName(name, false, _loader);
+            } catch (ClassNotFoundException cnfe) {
+                throw new IOException(cnfe);
+            }
+            _types.put(name, cls);
+        }
+        in.classes.add(cls);
+        return cls;
+    }
+
+    private static void writeString(Output out, String str) {
+        if (str == null) {
+            out.writeVarInt(0);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeVarInt(bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(Input in) throws IOException {
+        int len = in.readVarInt() - 1;
+        if (len == -1)
+            return null;
+        return new String(in.buf, in.pos(len), len, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(Output out, byte[] bytes) {
+        out.writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(Input in) throws IOException {
+        int len = in.readVarInt();
+        byte[] bytes = new byte[len];
+        System.arraycopy(in.buf, in.pos(len), bytes, 0, len);
+        return bytes;
+    }
+
+    /**
+     * Growable output buffer with variable-length integer encodings.
+     */
+    private static class Output {
+
+        final Map<Class<?>, Integer> classRefs = new HashMap<>();
+        private byte[] _buf = new byte[256];
+        private int _len = 0;
+
+        private void ensure(int n) {
+            if (_len + n > _buf.length) {
+                byte[] buf = new byte[Math.max(_buf.length * 2, _len + n)];
+                System.arraycopy(_buf, 0, buf, 0, _len);
+                _buf = buf;
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            _buf[_len++] = (byte) b;
+        }
+
+        void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _buf, _len, bytes.length);
+            _len += bytes.length;
+        }
+
+        void writeInt(int i) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8)
+                _buf[_len++] = (byte) (i >>> shift);
+        }
+
+        void writeLong(long l) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                _buf[_len++] = (byte) (l >>> shift);
+        }
+
+        /**
+         * Write an unsigned int in 7-bit groups.
+         */
+        void writeVarInt(int i) {
+            ensure(5);
+            while ((i & ~0x7F) != 0) {
+                _buf[_len++] = (byte) ((i & 0x7F) | 0x80);
+                i >>>= 7;
+            }
+            _buf[_len++] = (byte) i;
+        }
+
+        /**
+         * Write a signed long in zig-zag 7-bit groups, so that small
+         * negative values stay short.
+         */
+        void writeVarLong(long l) {
+            ensure(10);
+            long v = (l << 1) ^ (l >> 63);
+            while ((v & ~0x7FL) != 0) {
+                _buf[_len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            _buf[_len++] = (byte) v;
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[_len];
+            System.arraycopy(_buf, 0, bytes, 0, _len);
+            return bytes;
+        }
+    }
+
+    /**
+     * Reader over an encoded record.
+     */
+    private static class Input {
+
+        final List<Class<?>> classes = new ArrayList<>();
+        final byte[] buf;
+        private int _pos = 0;
+
+        Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        /**
+         * Consume the given number of bytes, returning their offset.
+         */
+        int pos(int n) throws IOException {
+            if (n < 0 || _pos + n > buf.length)
+                throw new StreamCorruptedException();
+            int pos = _pos;
+            _pos += n;
+            return pos;
+        }
+
+        byte readByte() throws IOException {
+            return buf[pos(1)];
+        }
+
+        int readInt() throws IOException {
+            int p = pos(4);
+            int i = 0;
+            for (int k = 0; k < 4; k++)
+                i = (i << 8) | (buf[p + k] & 0xFF);
+            return i;
+        }
+
+        long readLong() throws IOException {
+            int p = pos(8);
+            long l = 0;
+            for (int k = 0; k < 8; k++)
+                l = (l << 8) | (buf[p + k] & 0xFF);
+            return l;
+        }
+
+        int readVarInt() throws IOException {
+            int i = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = readByte();
+                i |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return i;
+            }
+            throw new StreamCorruptedException();
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return (v >>> 1) ^ -(v & 1);
+            }
+            throw new StreamCorruptedException();
+        }
+    }
+}
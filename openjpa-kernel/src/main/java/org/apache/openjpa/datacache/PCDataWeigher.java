@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.kernel.PCDataImpl;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.util.OpenJPAId;
+
+/**
+ * Estimates the number of bytes of heap held by cached instance data. The
+ * estimate follows the layout of a 64-bit JVM with compressed references:
+ * fields of primitive and other fixed-size types are charged by their
+ * declared type from the {@link ClassMetaData}, and strings, LOBs,
+ * collections, maps and embedded instances by their actual contents.
+ * Values shared between instances, such as enum constants, are not
+ * charged.
+ *
+ * @since 4.0.1
+ */
+final class PCDataWeigher {
+
+    private static final int HEADER = 16;
+    private static final int REF = 4;
+    private static final int BOXED = 16;
+
+    // the data object with its id, loaded bit set and field arrays
+    private static final int PCDATA = 96;
+
+    // limits the cost of weighing deeply nested or very large values
+    private static final int MAX_DEPTH = 4;
+
+    private final MetaDataRepository _repos;
+
+    PCDataWeigher(OpenJPAConfiguration conf) {
+        _repos = conf.getMetaDataRepositoryInstance();
+    }
+
+    /**
+     * Return the estimated number of bytes held by the given data.
+     */
+    long weigh(DataCachePCData data) {
+        return weighPCData(data, 0);
+    }
+
+    private long weighPCData(DataCachePCData data, int depth) {
+        ClassMetaData meta = _repos.getCachedMetaData(data.getType());
+        FieldMetaData[] fmds = (meta == null) ? null : meta.getFields();
+        int count = (fmds == null) ? 0 : fmds.length;
+
+        long size = PCDATA + array(count) + sizeOf(data.getId(), depth)
+            + sizeOf(data.getVersion(), depth);
+        synchronized (data) {
+            for (int i = 0; i < count; i++) {
+                if (data.isLoaded(i))
+                    size += sizeOf(fmds[i].getDeclaredTypeCode(),
+                        data.getData(i), depth);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Size of a value of a field with the given declared type.
+     */
+    private long sizeOf(int typeCode, Object val, int depth) {
+        if (val == null)
+            return 0;
+        switch (typeCode) {
+            case JavaTypes.BOOLEAN:
+            case JavaTypes.BYTE:
+            case JavaTypes.ENUM:
+                // cached instances
+                return 0;
+            case JavaTypes.CHAR:
+            case JavaTypes.DOUBLE:
+            case JavaTypes.FLOAT:
+            case JavaTypes.INT:
+            case JavaTypes.LONG:
+            case JavaTypes.SHORT:
+            case JavaTypes.CHAR_OBJ:
+            case JavaTypes.DOUBLE_OBJ:
+            case JavaTypes.FLOAT_OBJ:
+            case JavaTypes.INT_OBJ:
+            case JavaTypes.LONG_OBJ:
+            case JavaTypes.SHORT_OBJ:
+                return BOXED;
+            default:
+                return sizeOf(val, depth);
+        }
+    }
+
+    /**
+     * Size of a value of unknown declared type.
+     */
+    private long sizeOf(Object val, int depth) {
+        if (val == null || val instanceof Boolean || val instanceof Enum)
+            return 0;
+        if (val instanceof String)
+            return HEADER + 8 + array(((String) val).length());
+        if (val instanceof Number || val instanceof Character) {
+            if (val instanceof BigDecimal)
+                return 40 + sizeOf(((BigDecimal) val).unscaledValue(), depth);
+            if (val instanceof BigInteger)
+                return 40 + array(((BigInteger) val).bitLength() / 8 + 1);
+            return BOXED;
+        }
+        if (val instanceof Date)
+            return 24;
+        if (val instanceof byte[])
+            return array(((byte[]) val).length);
+        if (val instanceof char[])
+            return array(((char[]) val).length * 2);
+        if (val instanceof OpenJPAId)
+            return 32 + sizeOf(((OpenJPAId) val).getIdObject(), depth);
+        if (depth >= MAX_DEPTH)
+            return HEADER;
+        if (val instanceof DataCachePCData)
+            return weighPCData((DataCachePCData) val, depth + 1);
+        if (val instanceof PCDataImpl)
+            return PCDATA;
+        if (val instanceof Collection) {
+            Collection<?> coll = (Collection<?>) val;
+            long size = 40 + array(coll.size() * REF);
+            for (Object o : coll)
+                size += sizeOf(o, depth + 1);
+            return size;
+        }
+        if (val instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) val;
+            long size = 48 + array(map.size() * REF) + 32L * map.size();
+            for (Map.Entry<?, ?> e : map.entrySet())
+                size += sizeOf(e.getKey(), depth + 1)
+                    + sizeOf(e.getValue(), depth + 1);
+            return size;
+        }
+        if (val instanceof Object[]) {
+            Object[] arr = (Object[]) val;
+            long size = array(arr.length * REF);
+            for (Object o : arr)
+                size += sizeOf(o, depth + 1);
+            return size;
+        }
+        if (val instanceof int[] || val instanceof float[])
+            return array(Array.getLength(val) * 4);
+        if (val instanceof long[] || val instanceof double[])
+            return array(Array.getLength(val) * 8);
+        return 2 * HEADER;
+    }
+
+    /**
+     * Size of an array with the given number of bytes of elements, aligned
+     * to 8 bytes.
+     */
+    private static long array(long bytes) {
+        return (HEADER + bytes + 7) & ~7L;
+    }
+}
@@ -20,15 +20,19 @@ package org.apache.openjpa.datacache;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.net.URI;
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
+import java.util.Currency;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.UUID;
 
 import org.apache.openjpa.datacache.AbstractQueryCache.EvictPolicy;
 import org.apache.openjpa.kernel.FetchConfiguration;
@@ -39,6 +43,7 @@ import org.apache.openjpa.kernel.ResultShape;
 import org.apache.openjpa.kernel.StoreContext;
 import org.apache.openjpa.kernel.StoreQuery;
 import org.apache.openjpa.kernel.exps.AggregateListener;
+import org.apache.openjpa.kernel.exps.EqualityPredicate;
 import org.apache.openjpa.kernel.exps.FilterListener;
 import org.apache.openjpa.kernel.exps.QueryExpressions;
 import org.apache.openjpa.lib.rop.ListResultObjectProvider;
@@ -48,6 +53,7 @@ import org.apache.openjpa.lib.util.collections.LinkedMap;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.JavaTypes;
 import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.util.ImplHelper;
 import org.apache.openjpa.util.ObjectNotFoundException;
 
 
@@ -194,14 +200,26 @@ public class QueryCacheStoreQuery
             case JavaTypes.BIGDECIMAL:
             case JavaTypes.BIGINTEGER:
             case JavaTypes.OID:
+            case JavaTypes.ENUM:
+            case JavaTypes.LOCAL_DATE:
+            case JavaTypes.LOCAL_TIME:
+            case JavaTypes.LOCAL_DATETIME:
+            case JavaTypes.OFFSET_TIME:
+            case JavaTypes.OFFSET_DATETIME:
                 return obj;
             case JavaTypes.DATE:
                 return ((Date) obj).clone();
             case JavaTypes.LOCALE:
                 return ((Locale) obj).clone();
+            case JavaTypes.CALENDAR:
+                return ((Calendar) obj).clone();
             default:
                 if (obj instanceof CachedObjectId)
                     return fromObjectId(((CachedObjectId) obj).oid, ctx, fc);
+                if (obj instanceof Date)
+                    return ((Date) obj).clone();
+                if (isImmutable(obj.getClass()))
+                    return obj;
                 Object oid = ctx.getObjectId(obj);
                 if (oid != null)
                     return new CachedObjectId(oid);
@@ -209,6 +227,50 @@ public class QueryCacheStoreQuery
         }
     }
 
+    /**
+     * Whether projections of the given declared type may be cached. Values
+     * of these types are either immutable or copied by
+     * {@link #copyProjection}. Values declared as plain objects are checked
+     * one by one as they are cached.
+     *
+     * @since 4.0.1
+     */
+    static boolean isCacheableProjectionType(Class<?> type) {
+        return type == Object.class || Date.class.isAssignableFrom(type)
+            || isImmutable(type);
+    }
+
+    /**
+     * Whether the given projection element may be cached. Arrays are
+     * mutable and shared by every hit, so they are never cached, as for
+     * projections declared as arrays.
+     */
+    static boolean isCacheableProjection(Object obj) {
+        if (obj == null)
+            return true;
+        switch (JavaTypes.getTypeCode(obj.getClass())) {
+            case JavaTypes.ARRAY:
+                return false;
+            case JavaTypes.OBJECT:
+            case JavaTypes.COLLECTION:
+            case JavaTypes.MAP:
+                return ImplHelper.isManageable(obj)
+                    || isCacheableProjectionType(obj.getClass());
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Whether instances of the given type are immutable values that cached
+     * projections can share.
+     */
+    private static boolean isImmutable(Class<?> type) {
+        return Enum.class.isAssignableFrom(type) || type == UUID.class
+            || type == URI.class || type == Currency.class
+            || type.getName().startsWith("java.time.");
+    }
+
     /**
      * Return the result object based on its cached oid.
      */
@@ -334,18 +396,48 @@ public class QueryCacheStoreQuery
         implements Executor {
 
         private final Executor _ex;
+        private final ClassMetaData _meta;
         private final Class<?> _candidate;
         private final boolean _subs;
         private final FetchConfiguration _fc;
 
+        // equality predicates of the filter, resolved on first use
+        private volatile boolean _predicatesResolved;
+        private List<EqualityPredicate> _predicates;
+
         public QueryCacheExecutor(Executor ex, ClassMetaData meta,
             boolean subs, FetchConfiguration fc) {
             _ex = ex;
+            _meta = meta;
             _candidate = (meta == null) ? null : meta.getDescribedType();
             _subs = subs;
             _fc = fc;
         }
 
+        /**
+         * Return the equality predicates of the query's filter, or null if
+         * it has none or cannot be compiled in memory. The predicates are
+         * read from the in-memory form of the query, whose expressions do
+         * not depend on the store.
+         */
+        private List<EqualityPredicate> getPredicates(StoreQuery q) {
+            if (!_predicatesResolved) {
+                List<EqualityPredicate> preds = null;
+                if (_meta != null && q.supportsInMemoryExecution()) {
+                    try {
+                        QueryExpressions[] exps = q.newInMemoryExecutor(_meta, _subs).getQueryExpressions();
+                        if (exps.length == 1)
+                            preds = EqualityPredicate.extract(exps[0]);
+                    } catch (RuntimeException re) {
+                        // invalidate the query by type
+                    }
+                }
+                _predicates = preds;
+                _predicatesResolved = true;
+            }
+            return _predicates;
+        }
+
         @Override
         public ResultObjectProvider executeQuery(StoreQuery q, Object[] params, Range range) {
             QueryCacheStoreQuery cq = (QueryCacheStoreQuery) q;
@@ -353,6 +445,9 @@ public class QueryCacheStoreQuery
             QueryKey key =
                 QueryKey.newInstance(cq.getContext(), _ex.isPacking(q), params, _candidate, _subs, range.start,
                     range.end, parsed);
+            if (key != null && cq.getCache() instanceof AbstractQueryCache
+                && ((AbstractQueryCache) cq.getCache()).getEvictPolicy() == EvictPolicy.PREDICATE)
+                key.setPredicates(getPredicates(cq.getDelegate()));
 
             // Create a new FetchConfiguration that will be used to ensure that any JOIN FETCHed fields are loaded
             StoreContext store = q.getContext().getStoreContext();
@@ -665,8 +760,13 @@ public class QueryCacheStoreQuery
                             else {
                                 Object[] arr = (Object[]) obj;
                                 Object[] cp = new Object[arr.length];
-                                for (int i = 0; i < arr.length; i++)
+                                for (int i = 0; i < arr.length; i++) {
+                                    if (!isCacheableProjection(arr[i])) {
+                                        abortCaching();
+                                        return;
+                                    }
                                     cp[i] = copyProjection(arr[i], _sctx, null);
+                                }
                                 cached = cp;
                             }
                             if (cached != null)
@@ -38,9 +38,11 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.apache.openjpa.enhance.PCRegistry;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.kernel.Query;
 import org.apache.openjpa.kernel.QueryContext;
 import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.kernel.exps.EqualityPredicate;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.JavaTypes;
 import org.apache.openjpa.meta.MetaDataRepository;
@@ -101,6 +103,10 @@ public class QueryKey
     // ### or not OIDs should be registered for expiration callbacks
     private int _timeout = -1;
 
+    // equality predicates every result satisfies; not externalized, so that
+    // a restored key falls back to invalidation by type
+    private transient List<EqualityPredicate> _predicates;
+
     /**
      * Return a key for the given query, or null if it is not cacheable.
      */
@@ -171,7 +177,8 @@ public class QueryKey
         if (q.getResultType() != null && packed)
             return null;
 
-        // can't cache non-serializable non-managed complex types
+        // can't cache non-managed complex types unless their values are
+        // immutable or copied by the query cache
         Class<?>[] types = q.getProjectionTypes();
         for (Class<?> type : types) {
             switch (JavaTypes.getTypeCode(type)) {
@@ -181,7 +188,8 @@ public class QueryKey
                 case JavaTypes.MAP:
                 case JavaTypes.OBJECT:
                     if (!ImplHelper.isManagedType(
-                            q.getStoreContext().getConfiguration(), type))
+                            q.getStoreContext().getConfiguration(), type)
+                        && !QueryCacheStoreQuery.isCacheableProjectionType(type))
                         return null;
                     break;
             }
@@ -375,6 +383,70 @@ public class QueryKey
         return intersects(_accessPathClassNames, changed);
     }
 
+    /**
+     * Returns <code>true</code> if the given changes may invalidate this
+     * query. The changed instances describe every change to the given
+     * classes, or are null if the changes are not known. When they are
+     * known, a change to the candidate class only invalidates this query if
+     * the changed instance, before or after the change, may satisfy the
+     * equality predicates of the query's filter. Changes to other classes
+     * in the access path invalidate the query as in
+     * {@link #changeInvalidatesQuery(Collection)}.
+     *
+     * @since 4.0.1
+     */
+    public boolean changeInvalidatesQuery(Collection<Class<?>> changed,
+        Collection<OpenJPAStateManager> instances) {
+        if (_predicates == null || instances == null)
+            return changeInvalidatesQuery(changed);
+
+        for (Class<?> cls : changed) {
+            if (!intersects(_accessPathClassNames, Collections.singleton(cls)))
+                continue;
+            if (!isCandidateType(cls))
+                return true;
+            boolean described = false;
+            for (OpenJPAStateManager sm : instances) {
+                if (sm.getMetaData().getDescribedType() != cls)
+                    continue;
+                described = true;
+                if (mayMatch(sm))
+                    return true;
+            }
+            if (!described)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the given class is the candidate class or one of its
+     * subclasses.
+     */
+    private boolean isCandidateType(Class<?> cls) {
+        for (; cls != null; cls = PCRegistry.getPersistentSuperclass(cls))
+            if (cls.getName().equals(_candidateClassName))
+                return true;
+        return false;
+    }
+
+    /**
+     * Whether the given instance may satisfy all the equality predicates.
+     */
+    private boolean mayMatch(OpenJPAStateManager sm) {
+        for (EqualityPredicate pred : _predicates)
+            if (!pred.mayMatch(sm, _params))
+                return false;
+        return true;
+    }
+
+    /**
+     * Set the equality predicates every result of the query satisfies.
+     */
+    void setPredicates(List<EqualityPredicate> predicates) {
+        _predicates = predicates;
+    }
+
     /**
      * Whether the given set of least-derived class names intersects with
      * the given set of changed classes.
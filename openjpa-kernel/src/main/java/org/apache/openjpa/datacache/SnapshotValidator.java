@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.security.AccessController;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.openjpa.kernel.Broker;
+import org.apache.openjpa.kernel.BrokerFactory;
+import org.apache.openjpa.kernel.DataCacheRetrieveMode;
+import org.apache.openjpa.kernel.DataCacheStoreMode;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.StoreManager;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
+import org.apache.openjpa.lib.util.Localizer;
+
+/**
+ * Validates the data cache entries restored from a {@link CacheSnapshot}
+ * against the database. Entries are validated in batches on a daemon
+ * thread: their instances are loaded bypassing the cache, and entries whose
+ * instance has been deleted or has a different version are evicted, along
+ * with the query results over their types. In lazy mode only the entries
+ * that are looked up are validated; otherwise all of them are. Restored
+ * entries may be served before they are validated.
+ *
+ * @since 4.0.1
+ */
+class SnapshotValidator
+    implements Runnable {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (SnapshotValidator.class);
+
+    private final Map<Object, AbstractDataCache> _pending = new ConcurrentHashMap<>();
+    private final Set<AbstractDataCache> _caches = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Object> _queue = new LinkedBlockingQueue<>();
+    private final boolean _lazy;
+    private final int _batchSize;
+    private final QueryCache _queryCache;
+    private final Log _log;
+    private BrokerFactory _factory = null;
+    private Thread _thread = null;
+    private volatile boolean _stop = false;
+
+    /**
+     * Constructor.
+     *
+     * @param lazy whether to validate only the entries that are looked up
+     * @param batchSize the number of entries to validate together
+     * @param queryCache the query cache whose results to invalidate, or null
+     */
+    SnapshotValidator(boolean lazy, int batchSize, QueryCache queryCache,
+        Log log) {
+        _lazy = lazy;
+        _batchSize = Math.max(1, batchSize);
+        _queryCache = queryCache;
+        _log = log;
+    }
+
+    /**
+     * Register an entry restored into the given cache.
+     */
+    void restored(AbstractDataCache cache, Object oid) {
+        _pending.put(oid, cache);
+        if (_caches.add(cache))
+            cache.setSnapshotValidator(this);
+    }
+
+    /**
+     * Notification that a cached entry was looked up.
+     */
+    void accessed(Object oid) {
+        if (_lazy && _pending.containsKey(oid))
+            _queue.offer(oid);
+    }
+
+    /**
+     * The number of restored entries that have not been validated yet.
+     */
+    int getPendingCount() {
+        return _pending.size();
+    }
+
+    /**
+     * Start validating, loading instances through the given factory.
+     */
+    synchronized void start(BrokerFactory factory) {
+        if (_pending.isEmpty()) {
+            detach();
+            return;
+        }
+        _factory = factory;
+        if (!_lazy)
+            _queue.addAll(_pending.keySet());
+        _thread = AccessController.doPrivileged(J2DoPrivHelper
+            .newDaemonThreadAction(this, _loc.get("snapshot-validator-name")
+                .getMessage()));
+        _thread.start();
+    }
+
+    /**
+     * Stop validating. Entries that have not been validated yet stay in
+     * the cache.
+     */
+    synchronized void stop() {
+        _stop = true;
+        if (_thread != null)
+            _thread.interrupt();
+        detach();
+    }
+
+    @Override
+    public void run() {
+        List<Object> batch = new ArrayList<>(_batchSize);
+        while (!_stop && !_pending.isEmpty()) {
+            try {
+                batch.add(_queue.take());
+            } catch (InterruptedException ie) {
+                break;
+            }
+            _queue.drainTo(batch, _batchSize - 1);
+            validate(batch);
+            batch.clear();
+        }
+        detach();
+    }
+
+    private void detach() {
+        for (AbstractDataCache cache : _caches)
+            cache.setSnapshotValidator(null);
+        _caches.clear();
+    }
+
+    /**
+     * Validate the given restored entries.
+     */
+    void validate(List<Object> oids) {
+        Map<Object, AbstractDataCache> caches = new LinkedHashMap<>();
+        for (Object oid : oids) {
+            AbstractDataCache cache = _pending.get(oid);
+            if (cache != null)
+                caches.put(oid, cache);
+        }
+        if (caches.isEmpty())
+            return;
+
+        Set<Class<?>> changed = new HashSet<>();
+        int stale = 0;
+        Broker broker = _factory.newBroker();
+        try {
+            FetchConfiguration fetch = broker.getFetchConfiguration();
+            fetch.setCacheRetrieveMode(DataCacheRetrieveMode.BYPASS);
+            fetch.setCacheStoreMode(DataCacheStoreMode.BYPASS);
+            List<Object> keys = new ArrayList<>(caches.keySet());
+            Object[] pcs = broker.findAll(keys, true, null);
+            for (int i = 0; i < pcs.length; i++) {
+                Object oid = keys.get(i);
+                AbstractDataCache cache = caches.get(oid);
+                DataCachePCData data = cache.get(oid);
+                if (data == null)
+                    continue;
+                if (pcs[i] != null) {
+                    OpenJPAStateManager sm = broker.getStateManager(pcs[i]);
+                    if (broker.getStoreManager().compareVersion(sm,
+                        sm.getVersion(), data.getVersion())
+                        == StoreManager.VERSION_SAME)
+                        continue;
+                }
+                cache.remove(oid);
+                changed.add(data.getType());
+                stale++;
+            }
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("snapshot-validated", caches.size(),
+                    stale));
+        } catch (RuntimeException re) {
+            // the factory is closing; leave the entries for the next snapshot
+            if (_stop)
+                return;
+            if (_log.isWarnEnabled())
+                _log.warn(_loc.get("snapshot-validate-fail", caches.size(),
+                    re));
+            for (Map.Entry<Object, AbstractDataCache> entry
+                : caches.entrySet()) {
+                DataCachePCData data = entry.getValue().remove(entry.getKey());
+                if (data != null)
+                    changed.add(data.getType());
+            }
+        } finally {
+            broker.close();
+        }
+        if (!changed.isEmpty() && _queryCache != null)
+            _queryCache.onTypesChanged(new TypesChangedEvent(this, changed));
+        _pending.keySet().removeAll(caches.keySet());
+    }
+}
@@ -21,6 +21,8 @@ package org.apache.openjpa.datacache;
 import java.util.Collection;
 import java.util.EventObject;
 
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+
 /**
  * An event indicating that instances of given persistent types have
  * been modified.
@@ -33,6 +35,7 @@ public class TypesChangedEvent
     
     private static final long serialVersionUID = 1L;
     private final Collection _types;
+    private final transient Collection<OpenJPAStateManager> _instances;
 
     /**
      * Constructor.
@@ -41,8 +44,23 @@ public class TypesChangedEvent
      * @param types the changed types
      */
     public TypesChangedEvent(Object source, Collection types) {
+        this(source, types, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param source the data or query cache
+     * @param types the changed types
+     * @param instances the changed instances, which must describe every
+     * change to the given types, or null if the changes are not known
+     * @since 4.0.1
+     */
+    public TypesChangedEvent(Object source, Collection types,
+        Collection<OpenJPAStateManager> instances) {
         super(source);
         _types = types;
+        _instances = instances;
     }
 
     /**
@@ -50,5 +68,15 @@ public class TypesChangedEvent
      */
     public Collection getTypes() {
         return _types;
-	}
+    }
+
+    /**
+     * Return the state managers of the changed instances, or null if the
+     * changes are not known.
+     *
+     * @since 4.0.1
+     */
+    public Collection<OpenJPAStateManager> getInstances() {
+        return _instances;
+    }
 }
@@ -916,19 +916,15 @@ public class PCDataGenerator extends DynamicStorageGenerator {
         instructions.add(new InsnNode(Opcodes.AALOAD));
         instructions.add(new VarInsnNode(Opcodes.ASTORE, interVarPos));
 
-        //    if (inter != null && !sm.getLoaded().get(index))
+        //    if (inter != null && !sm.isFieldLoaded(index))
         LabelNode lblEndIf = new LabelNode();
         instructions.add(new VarInsnNode(Opcodes.ALOAD, interVarPos));
         instructions.add(new JumpInsnNode(Opcodes.IFNULL, lblEndIf));
         instructions.add(new VarInsnNode(Opcodes.ALOAD, 1)); // 1st param
+        instructions.add(AsmHelper.getLoadConstantInsn(index));
         instructions.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE,
                                             Type.getInternalName(OpenJPAStateManager.class),
-                                            "getLoaded",
-                                            Type.getMethodDescriptor(Type.getType(BitSet.class))));
-        instructions.add(AsmHelper.getLoadConstantInsn(index));
-        instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL,
-                                            Type.getInternalName(BitSet.class),
-                                            "get",
+                                            "isFieldLoaded",
                                             Type.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.INT_TYPE)));
         instructions.add(new JumpInsnNode(Opcodes.IFNE, lblEndIf));
 
@@ -1013,16 +1009,12 @@ public class PCDataGenerator extends DynamicStorageGenerator {
                                                     Type.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.INT_TYPE)));
                 instructions.add(new JumpInsnNode(Opcodes.IFEQ, lblEndIf));
             } else {
-                // if (sm.getLoaded().get(index)))
+                // if (sm.isFieldLoaded(index)))
                 instructions.add(new VarInsnNode(Opcodes.ALOAD, 1)); // 1st parameter, OpenJPAStateManager
+                instructions.add(AsmHelper.getLoadConstantInsn(i));
                 instructions.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE,
                                                     Type.getInternalName(OpenJPAStateManager.class),
-                                                    "getLoaded",
-                                                    Type.getMethodDescriptor(Type.getType(BitSet.class))));
-                instructions.add(AsmHelper.getLoadConstantInsn(i));
-                instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL,
-                                                    Type.getInternalName(BitSet.class),
-                                                    "get",
+                                                    "isFieldLoaded",
                                                     Type.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.INT_TYPE)));
                 instructions.add(new JumpInsnNode(Opcodes.IFEQ, lblEndIf));
             }
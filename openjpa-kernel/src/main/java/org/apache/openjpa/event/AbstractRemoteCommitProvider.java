@@ -23,6 +23,7 @@ import java.util.Arrays;
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.lib.conf.Configurable;
 import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.conf.Configurations;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Localizer;
 
@@ -41,18 +42,107 @@ public abstract class AbstractRemoteCommitProvider
 
     protected RemoteCommitEventManager eventManager;
     protected Log log;
+    protected RemoteCommitEventCodec codec;
+    protected RemoteCommitSequencer sequencer;
+    private int _replayLogSize = 0;
+    private int _catchUpTimeoutMillis = 5000;
 
     @Override
     public void setConfiguration(Configuration config) {
         this.log = config.getLog(OpenJPAConfiguration.LOG_RUNTIME);
     }
 
+    /**
+     * The codec used to send events to peers, or null to use Java
+     * serialization.
+     *
+     * @since 4.0.1
+     */
+    public RemoteCommitEventCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Plugin string for the codec used to send events to peers. Use
+     * <code>binary</code> for the {@link BinaryRemoteCommitEventCodec}, or
+     * <code>java</code> to use Java serialization, the default.
+     *
+     * @since 4.0.1
+     */
+    public void setCodec(String codec) {
+        String name = Configurations.getClassName(codec);
+        if (name == null || "java".equals(name)) {
+            this.codec = null;
+            return;
+        }
+        if ("binary".equals(name))
+            name = BinaryRemoteCommitEventCodec.class.getName();
+        this.codec = (RemoteCommitEventCodec) Configurations.newInstance(name, null,
+            Configurations.getProperties(codec), getClass().getClassLoader());
+    }
+
+    /**
+     * The number of the last sent events kept to send them again to peers
+     * that missed them, or 0 to not number events. Defaults to 0.
+     *
+     * @since 4.0.1
+     */
+    public int getReplayLogSize() {
+        return _replayLogSize;
+    }
+
+    /**
+     * The number of the last sent events kept to send them again to peers
+     * that missed them, or 0 to not number events. Defaults to 0.
+     *
+     * @since 4.0.1
+     */
+    public void setReplayLogSize(int size) {
+        _replayLogSize = size;
+    }
+
+    /**
+     * The number of milliseconds to wait for the missed events of a peer to
+     * be sent again before notifying listeners that any type may have
+     * changed. Defaults to 5000.
+     *
+     * @since 4.0.1
+     */
+    public int getCatchUpTimeoutMillis() {
+        return _catchUpTimeoutMillis;
+    }
+
+    /**
+     * The number of milliseconds to wait for the missed events of a peer to
+     * be sent again before notifying listeners that any type may have
+     * changed. Defaults to 5000.
+     *
+     * @since 4.0.1
+     */
+    public void setCatchUpTimeoutMillis(int millis) {
+        _catchUpTimeoutMillis = millis;
+    }
+
     @Override
     public void startConfiguration() {
     }
 
     @Override
     public void endConfiguration() {
+        if (_replayLogSize > 0)
+            sequencer = new RemoteCommitSequencer(this, _replayLogSize, _catchUpTimeoutMillis);
+    }
+
+    /**
+     * Stop checking for missed events. Subclasses must invoke this method
+     * when closed.
+     *
+     * @since 4.0.1
+     */
+    @Override
+    public void close() {
+        if (sequencer != null)
+            sequencer.close();
     }
 
     @Override
@@ -60,10 +150,77 @@ public abstract class AbstractRemoteCommitProvider
         eventManager = mgr;
     }
 
+    /**
+     * Number the given event and keep it to send it again to peers that
+     * miss it, if enabled. Subclasses invoke this method before sending an
+     * event.
+     *
+     * @since 4.0.1
+     */
+    protected void sequence(RemoteCommitEvent event) {
+        if (sequencer != null)
+            sequencer.sequence(event);
+    }
+
+    /**
+     * Notify listeners that events sent by the given peer were lost, so
+     * any type may have changed.
+     *
+     * @since 4.0.1
+     */
+    protected void eventsLost(long senderId) {
+        if (log.isWarnEnabled())
+            log.warn(_loc.get("remote-events-lost", Long.toHexString(senderId)));
+        eventsLost();
+    }
+
+    /**
+     * Notify listeners that events were lost, so any type may have changed.
+     * Used when the peers that sent the lost events are unknown, after
+     * logging why they were lost.
+     *
+     * @since 4.0.1
+     */
+    protected void eventsLost() {
+        if (eventManager != null)
+            eventManager.fireEventsLost();
+    }
+
+    /**
+     * Send again the given event to the peer that requested it, given as
+     * the origin the request was received from, or null if unknown. This
+     * implementation broadcasts the event to all peers.
+     *
+     * @since 4.0.1
+     */
+    protected void resend(RemoteCommitEvent event, Object requester) {
+        broadcast(event);
+    }
+
+    /**
+     * Fire a remote commit event received from the given transport-specific
+     * origin, which catch-up requests are answered to. Other events are
+     * fired via {@link #fireEvent(RemoteCommitEvent)}.
+     *
+     * @since 4.0.1
+     */
+    protected void fireEvent(RemoteCommitEvent event, Object origin) {
+        if (sequencer != null && event.getPayloadType() == RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST)
+            sequencer.receive(event, origin);
+        else
+            fireEvent(event);
+    }
+
     /**
      * Fire a remote commit event via the cached event manager.
      */
     protected void fireEvent(RemoteCommitEvent event) {
+        if (sequencer != null) {
+            if (!sequencer.receive(event))
+                return;
+        } else if (RemoteCommitSequencer.isControl(event))
+            return;
+
         Exception[] es = eventManager.fireEvent(event);
         if (es.length > 0 && log.isWarnEnabled())
             log.warn(_loc.get("remote-listener-ex", Arrays.asList(es)));
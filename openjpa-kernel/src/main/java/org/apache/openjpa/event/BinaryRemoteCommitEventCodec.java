@@ -0,0 +1,587 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AccessController;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.MultiClassLoader;
+import org.apache.openjpa.util.BigDecimalId;
+import org.apache.openjpa.util.BigIntegerId;
+import org.apache.openjpa.util.BooleanId;
+import org.apache.openjpa.util.ByteId;
+import org.apache.openjpa.util.CharId;
+import org.apache.openjpa.util.DateId;
+import org.apache.openjpa.util.DoubleId;
+import org.apache.openjpa.util.FloatId;
+import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.Serialization;
+import org.apache.openjpa.util.ShortId;
+import org.apache.openjpa.util.StringId;
+
+/**
+ * {@link RemoteCommitEventCodec} writing a compact binary form of events.
+ * Class names are written once per event and referred to by index
+ * afterwards, and the built-in {@link OpenJPAId} types are written as their
+ * type and primitive key instead of as serialized objects. Other object ids
+ * fall back to Java serialization. Events larger than
+ * {@link #setCompressThreshold} bytes are compressed. Lengths read while
+ * decoding are checked against the remaining input, and compressed events
+ * against {@link #setMaxEventBytes}, before anything is allocated.
+ *
+ * @since 4.0.1
+ */
+public class BinaryRemoteCommitEventCodec
+    implements RemoteCommitEventCodec {
+
+    private static final Localizer s_loc = Localizer.forPackage(BinaryRemoteCommitEventCodec.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    // set in the payload type when a sequence follows
+    private static final int SEQUENCED = 0x100;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int SERIALIZED = 2;
+    private static final int DATASTORE_ID = 3;
+    private static final int LONG_ID = 4;
+    private static final int INT_ID = 5;
+    private static final int SHORT_ID = 6;
+    private static final int BYTE_ID = 7;
+    private static final int CHAR_ID = 8;
+    private static final int BOOLEAN_ID = 9;
+    private static final int DOUBLE_ID = 10;
+    private static final int FLOAT_ID = 11;
+    private static final int STRING_ID = 12;
+    private static final int DATE_ID = 13;
+    private static final int BIG_DECIMAL_ID = 14;
+    private static final int BIG_INTEGER_ID = 15;
+
+    // set on the tag of ids that may be of a subclass of their type
+    private static final int SUBS = 0x80;
+
+    private int _compressThreshold = 8192;
+    private int _maxEventBytes = 16 * 1024 * 1024;
+
+    /**
+     * The size in bytes above which encoded events are compressed, or a
+     * negative number to never compress. Defaults to 8192.
+     */
+    public int getCompressThreshold() {
+        return _compressThreshold;
+    }
+
+    /**
+     * The size in bytes above which encoded events are compressed, or a
+     * negative number to never compress. Defaults to 8192.
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        _compressThreshold = compressThreshold;
+    }
+
+    /**
+     * The maximum size in bytes of a decompressed event. Larger events are
+     * rejected as malformed. Defaults to 16 MB.
+     */
+    public int getMaxEventBytes() {
+        return _maxEventBytes;
+    }
+
+    /**
+     * The maximum size in bytes of a decompressed event. Larger events are
+     * rejected as malformed. Defaults to 16 MB.
+     */
+    public void setMaxEventBytes(int maxEventBytes) {
+        _maxEventBytes = maxEventBytes;
+    }
+
+    @Override
+    public byte[] encode(RemoteCommitEvent event) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer out = new Writer(baos);
+        int payload = event.getPayloadType();
+        boolean extents = payload == RemoteCommitEvent.PAYLOAD_EXTENTS;
+        if (event.getSequence() == 0)
+            out.writeVarInt(payload);
+        else {
+            out.writeVarInt(payload | SEQUENCED);
+            out.writeLong(event.getSenderId());
+            out.writeVarLong(event.getSequence());
+        }
+        if (payload == RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST) {
+            out.writeLong(event.getTargetId());
+            out.writeVarLong(event.getFromSequence());
+        }
+        out.writeCollection(event.getPersistedTypeNames());
+        if (payload == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS)
+            out.writeCollection(event.getPersistedObjectIds());
+        out.writeCollection((extents) ? event.getUpdatedTypeNames() : event.getUpdatedObjectIds());
+        out.writeCollection((extents) ? event.getDeletedTypeNames() : event.getDeletedObjectIds());
+        out.flush();
+        byte[] body = baos.toByteArray();
+
+        if (_compressThreshold >= 0 && body.length > _compressThreshold) {
+            byte[] compressed = compress(body);
+            if (compressed != null)
+                return compressed;
+        }
+        byte[] bytes = new byte[body.length + 2];
+        bytes[0] = FORMAT_VERSION;
+        System.arraycopy(body, 0, bytes, 2, body.length);
+        return bytes;
+    }
+
+    /**
+     * Return the compressed form of the given body, or null if it does not
+     * get smaller.
+     */
+    private static byte[] compress(byte[] body) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(body.length / 2);
+            Writer out = new Writer(baos);
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(FLAG_COMPRESSED);
+            out.writeVarInt(body.length);
+            out.flush();
+            byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                baos.write(buf, 0, deflater.deflate(buf));
+                if (baos.size() >= body.length)
+                    return null;
+            }
+            return baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public RemoteCommitEvent decode(byte[] bytes) throws IOException {
+        if (bytes.length < 2 || bytes[0] != FORMAT_VERSION)
+            throw new IOException(s_loc.get("codec-bad-format").getMessage());
+        InputStream body = new ByteArrayInputStream(bytes, 2, bytes.length - 2);
+        if ((bytes[1] & FLAG_COMPRESSED) != 0) {
+            Reader in = new Reader(body);
+            int length = in.readVarInt();
+            if (length < 0 || length > _maxEventBytes)
+                throw new IOException(s_loc.get("codec-too-large", String.valueOf(length),
+                    String.valueOf(_maxEventBytes)).getMessage());
+            body = new ByteArrayInputStream(decompress(bytes, bytes.length - body.available(), length));
+        }
+
+        Reader in = new Reader(body);
+        int payload = in.readVarInt();
+        long sender = 0;
+        long sequence = 0;
+        if ((payload & SEQUENCED) != 0) {
+            payload &= ~SEQUENCED;
+            sender = in.readLong();
+            sequence = in.readVarLong();
+        }
+        long target = 0;
+        long from = 0;
+        if (payload == RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST) {
+            target = in.readLong();
+            from = in.readVarLong();
+        }
+        Collection addClasses = in.readCollection();
+        Collection addIds = null;
+        if (payload == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS)
+            addIds = in.readCollection();
+        Collection updates = in.readCollection();
+        Collection deletes = in.readCollection();
+        RemoteCommitEvent event = new RemoteCommitEvent(payload, addIds, addClasses, updates, deletes);
+        event.setSequence(sender, sequence);
+        event.setCatchUp(target, from);
+        return event;
+    }
+
+    private static byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] body = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int n = inflater.inflate(body, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                read += n;
+            }
+            if (read != length)
+                throw new IOException(s_loc.get("codec-bad-format").getMessage());
+            return body;
+        } catch (DataFormatException dfe) {
+            throw new IOException(dfe);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Writes the values of an event, keeping the table of the strings
+     * written so far.
+     */
+    private static class Writer
+        extends DataOutputStream {
+
+        private final Map<String, Integer> _strings = new HashMap<>();
+
+        private Writer(ByteArrayOutputStream out) {
+            super(out);
+        }
+
+        private void writeVarInt(int val) throws IOException {
+            writeVarLong(val & 0xffffffffL);
+        }
+
+        private void writeVarLong(long val) throws IOException {
+            while ((val & ~0x7fL) != 0) {
+                writeByte((int) ((val & 0x7f) | 0x80));
+                val >>>= 7;
+            }
+            writeByte((int) val);
+        }
+
+        private void writeSignedVarLong(long val) throws IOException {
+            writeVarLong((val << 1) ^ (val >> 63));
+        }
+
+        /**
+         * Write the index of the given string in the table, followed by
+         * the string itself the first time it is written.
+         */
+        private void writeString(String str) throws IOException {
+            Integer idx = _strings.get(str);
+            if (idx != null) {
+                writeVarInt(idx);
+                return;
+            }
+            writeVarInt(_strings.size());
+            _strings.put(str, _strings.size());
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            write(bytes);
+        }
+
+        private void writeCollection(Collection<?> coll) throws IOException {
+            if (coll == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(coll.size() + 1);
+            for (Object o : coll)
+                writeValue(o);
+        }
+
+        private void writeValue(Object o) throws IOException {
+            if (o == null)
+                writeByte(NULL);
+            else if (o instanceof String) {
+                writeByte(STRING);
+                writeString((String) o);
+            } else if (!writeId(o)) {
+                writeByte(SERIALIZED);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                    oos.writeObject(o);
+                }
+                writeVarInt(baos.size());
+                baos.writeTo(out);
+            }
+        }
+
+        /**
+         * Write the given value if it is one of the built-in id types,
+         * returning false otherwise.
+         */
+        private boolean writeId(Object o) throws IOException {
+            if (!(o instanceof OpenJPAId))
+                return false;
+            OpenJPAId oid = (OpenJPAId) o;
+            if (oid.getType() == null)
+                return false;
+
+            int tag = idTag(oid);
+            if (tag == NULL)
+                return false;
+            writeByte(tag | ((oid.hasSubclasses()) ? SUBS : 0));
+            writeString(oid.getType().getName());
+            switch (tag) {
+                case DATASTORE_ID:
+                    writeSignedVarLong(((Id) oid).getId());
+                    break;
+                case LONG_ID:
+                    writeSignedVarLong(((LongId) oid).getId());
+                    break;
+                case INT_ID:
+                    writeSignedVarLong(((IntId) oid).getId());
+                    break;
+                case SHORT_ID:
+                    writeSignedVarLong(((ShortId) oid).getId());
+                    break;
+                case BYTE_ID:
+                    writeByte(((ByteId) oid).getId());
+                    break;
+                case CHAR_ID:
+                    writeVarInt(((CharId) oid).getId());
+                    break;
+                case BOOLEAN_ID:
+                    writeBoolean(((BooleanId) oid).getId());
+                    break;
+                case DOUBLE_ID:
+                    writeDouble(((DoubleId) oid).getId());
+                    break;
+                case FLOAT_ID:
+                    writeFloat(((FloatId) oid).getId());
+                    break;
+                case STRING_ID:
+                    byte[] bytes = ((StringId) oid).getId().getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(bytes.length);
+                    write(bytes);
+                    break;
+                case DATE_ID:
+                    writeSignedVarLong(((DateId) oid).getId().getTime());
+                    break;
+                case BIG_DECIMAL_ID:
+                    writeString(((BigDecimalId) oid).getId().toString());
+                    break;
+                case BIG_INTEGER_ID:
+                    byte[] val = ((BigIntegerId) oid).getId().toByteArray();
+                    writeVarInt(val.length);
+                    write(val);
+                    break;
+            }
+            return true;
+        }
+
+        /**
+         * Return the tag of the given id, or {@link #NULL} if it has to be
+         * serialized.
+         */
+        private static int idTag(OpenJPAId oid) {
+            Class<?> cls = oid.getClass();
+            if (cls == Id.class)
+                return DATASTORE_ID;
+            if (cls == LongId.class)
+                return LONG_ID;
+            if (cls == IntId.class)
+                return INT_ID;
+            if (cls == ShortId.class)
+                return SHORT_ID;
+            if (cls == ByteId.class)
+                return BYTE_ID;
+            if (cls == CharId.class)
+                return CHAR_ID;
+            if (cls == BooleanId.class)
+                return BOOLEAN_ID;
+            if (cls == DoubleId.class)
+                return DOUBLE_ID;
+            if (cls == FloatId.class)
+                return FLOAT_ID;
+            if (cls == StringId.class)
+                return (((StringId) oid).getId() == null) ? NULL : STRING_ID;
+            // subclasses of java.util.Date lose their extra state as millis
+            if (cls == DateId.class)
+                return (((DateId) oid).getId().getClass() == Date.class) ? DATE_ID : NULL;
+            if (cls == BigDecimalId.class)
+                return (((BigDecimalId) oid).getId() == null) ? NULL : BIG_DECIMAL_ID;
+            if (cls == BigIntegerId.class)
+                return (((BigIntegerId) oid).getId() == null) ? NULL : BIG_INTEGER_ID;
+            return NULL;
+        }
+    }
+
+    /**
+     * Reads the values written by a {@link Writer}.
+     */
+    private static class Reader
+        extends DataInputStream {
+
+        private final List<String> _strings = new ArrayList<>();
+        private final Map<String, Class<?>> _types = new HashMap<>();
+        private MultiClassLoader _loader;
+
+        private Reader(InputStream in) {
+            super(in);
+        }
+
+        private int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        private long readVarLong() throws IOException {
+            long val = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readUnsignedByte();
+                val |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return val;
+            }
+            throw new IOException(s_loc.get("codec-bad-format").getMessage());
+        }
+
+        private long readSignedVarLong() throws IOException {
+            long val = readVarLong();
+            return (val >>> 1) ^ -(val & 1);
+        }
+
+        /**
+         * Read a length in bytes, checking it against the remaining input.
+         */
+        private int readLength() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > available())
+                throw new IOException(s_loc.get("codec-bad-format").getMessage());
+            return length;
+        }
+
+        private byte[] readBytes() throws IOException {
+            byte[] bytes = new byte[readLength()];
+            readFully(bytes);
+            return bytes;
+        }
+
+        private String readString() throws IOException {
+            int idx = readVarInt();
+            if (idx < _strings.size())
+                return _strings.get(idx);
+            if (idx != _strings.size())
+                throw new IOException(s_loc.get("codec-bad-format").getMessage());
+            String str = new String(readBytes(), StandardCharsets.UTF_8);
+            _strings.add(str);
+            return str;
+        }
+
+        private Collection readCollection() throws IOException {
+            int size = readVarInt() - 1;
+            if (size < 0)
+                return null;
+            if (size > available())
+                throw new IOException(s_loc.get("codec-bad-format").getMessage());
+            List<Object> coll = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                coll.add(readValue());
+            return coll;
+        }
+
+        private Object readValue() throws IOException {
+            int tag = readUnsignedByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case SERIALIZED:
+                    try (ObjectInputStream ois = new Serialization.ClassResolvingObjectInputStream(
+                        new ByteArrayInputStream(readBytes()))) {
+                        return ois.readObject();
+                    } catch (ClassNotFoundException cnfe) {
+                        throw new IOException(cnfe);
+                    }
+            }
+
+            boolean subs = (tag & SUBS) != 0;
+            tag &= ~SUBS;
+            Class<?> type = readType();
+            switch (tag) {
+                case DATASTORE_ID:
+                    return new Id(type, readSignedVarLong(), subs);
+                case LONG_ID:
+                    return new LongId(type, readSignedVarLong(), subs);
+                case INT_ID:
+                    return new IntId(type, (int) readSignedVarLong(), subs);
+                case SHORT_ID:
+                    return new ShortId(type, (short) readSignedVarLong(), subs);
+                case BYTE_ID:
+                    return new ByteId(type, readByte(), subs);
+                case CHAR_ID:
+                    return new CharId(type, (char) readVarInt(), subs);
+                case BOOLEAN_ID:
+                    return new BooleanId(type, readBoolean(), subs);
+                case DOUBLE_ID:
+                    return new DoubleId(type, readDouble(), subs);
+                case FLOAT_ID:
+                    return new FloatId(type, readFloat(), subs);
+                case STRING_ID:
+                    return new StringId(type, new String(readBytes(), StandardCharsets.UTF_8), subs);
+                case DATE_ID:
+                    return new DateId(type, new Date(readSignedVarLong()), subs);
+                case BIG_DECIMAL_ID:
+                    return new BigDecimalId(type, new BigDecimal(readString()), subs);
+                case BIG_INTEGER_ID:
+                    return new BigIntegerId(type, new BigInteger(readBytes()), subs);
+                default:
+                    throw new IOException(s_loc.get("codec-bad-format").getMessage());
+            }
+        }
+
+        /**
+         * Read the name of an id type and resolve it with the same loaders
+         * as deserialized events.
+         */
+        private Class<?> readType() throws IOException {
+            String name = readString();
+            Class<?> type = _types.get(name);
+            if (type != null)
+                return type;
+            if (_loader == null) {
+                _loader = AccessController.doPrivileged(J2DoPrivHelper.newMultiClassLoaderAction());
+                _loader.addClassLoader(AccessController.doPrivileged(J2DoPrivHelper.getContextClassLoaderAction()));
+                _loader.addClassLoader(BinaryRemoteCommitEventCodec.class.getClassLoader());
+                _loader.addClassLoader(MultiClassLoader.SYSTEM_LOADER);
+            }
+            try {
+                type = Class.forName(name, false, _loader);
+            } catch (ClassNotFoundException cnfe) {
+                throw new IOException(cnfe);
+            }
+            _types.put(name, type);
+            return type;
+        }
+    }
+}
@@ -31,6 +31,8 @@ public abstract class DynamicTCPRemoteCommitProvider extends TCPRemoteCommitProv
 
     private int _cacheDurationMillis = 30000;
 
+    private Timer _timer;
+
     public DynamicTCPRemoteCommitProvider() throws UnknownHostException {
         super();
     }
@@ -54,70 +56,109 @@ public abstract class DynamicTCPRemoteCommitProvider extends TCPRemoteCommitProv
         TcpAddressesUpdater updater = new TcpAddressesUpdater();
         updater.run();
 
-        Timer timer = new Timer(true);
-        timer.scheduleAtFixedRate(updater, 0, _cacheDurationMillis);
+        if (_cacheDurationMillis > 0) {
+            _timer = new Timer(true);
+            _timer.scheduleAtFixedRate(updater, 0, _cacheDurationMillis);
+        }
 
         super.endConfiguration();
     }
 
-    protected abstract List<String> fetchDynamicAddresses();
-
-    private class TcpAddressesUpdater extends TimerTask {
-
-        @Override
-        public void run() {
-            List<String> dynamicAddresses = fetchDynamicAddresses();
-
-            _addressesLock.lock();
-            try {
-                String localhostAddress = InetAddress.getLocalHost().getHostAddress();
+    @Override
+    public void close() {
+        if (_timer != null) {
+            _timer.cancel();
+        }
+        super.close();
+    }
 
-                for (String dynamic : dynamicAddresses) {
-                    InetAddress tmpAddress = AccessController.doPrivileged(J2DoPrivHelper.getByNameAction(dynamic));
+    protected abstract List<String> fetchDynamicAddresses();
 
-                    if (localhostAddress.equals(dynamic)) {
-                        // This string matches the hostname for for ourselves, we
-                        // don't actually need to send ourselves messages.
+    /**
+     * Make the given addresses the peers of this provider, connecting to the new ones and closing the
+     * connections to the others.
+     *
+     * @since 4.0.1
+     */
+    protected void updateAddresses(final List<String> dynamicAddresses) {
+        _addressesLock.lock();
+        try {
+            String localhostAddress = InetAddress.getLocalHost().getHostAddress();
+
+            for (String dynamic : dynamicAddresses) {
+                InetAddress tmpAddress = AccessController.doPrivileged(J2DoPrivHelper.getByNameAction(dynamic));
+
+                if (localhostAddress.equals(dynamic)) {
+                    // This string matches the hostname for for ourselves, we
+                    // don't actually need to send ourselves messages.
+                    if (log.isTraceEnabled()) {
+                        log.trace(s_loc.get("tcp-address-asself", tmpAddress.getHostAddress() + ":" + _port));
+                    }
+                } else {
+                    HostAddress podAddress = new HostAddress(dynamic);
+                    if (_addresses.contains(podAddress)) {
                         if (log.isTraceEnabled()) {
-                            log.trace(s_loc.get("tcp-address-asself", tmpAddress.getHostAddress() + ":" + _port));
+                            log.trace(s_loc.get("dyntcp-address-not-set",
+                                    podAddress.getAddress().getHostAddress() + ":" + podAddress.getPort()));
                         }
                     } else {
-                        HostAddress podAddress = new HostAddress(dynamic);
-                        if (_addresses.contains(podAddress)) {
-                            if (log.isTraceEnabled()) {
-                                log.trace(s_loc.get("dyntcp-address-not-set",
-                                        podAddress.getAddress().getHostAddress() + ":" + podAddress.getPort()));
-                            }
-                        } else {
-                            _addresses.add(podAddress);
-
-                            if (log.isTraceEnabled()) {
-                                log.trace(s_loc.get("dyntcp-address-set",
-                                        podAddress.getAddress().getHostAddress() + ":" + podAddress.getPort()));
-                            }
+                        _addresses.add(podAddress);
+
+                        if (log.isTraceEnabled()) {
+                            log.trace(s_loc.get("dyntcp-address-set",
+                                    podAddress.getAddress().getHostAddress() + ":" + podAddress.getPort()));
                         }
                     }
                 }
+            }
 
-                List<HostAddress> toCloseAndRemove = _addresses.stream().
-                        filter(address -> !dynamicAddresses.contains(address.getAddress().getHostAddress())).
-                        collect(Collectors.toList());
-                toCloseAndRemove.forEach(address -> {
-                    address.close();
-                    _addresses.remove(address);
+            List<HostAddress> toCloseAndRemove = _addresses.stream().
+                    filter(address -> !dynamicAddresses.contains(address.getAddress().getHostAddress())).
+                    collect(Collectors.toList());
+            toCloseAndRemove.forEach(address -> {
+                address.close();
+                _addresses.remove(address);
 
-                    if (log.isTraceEnabled()) {
-                        log.trace(s_loc.get("tcp-address-unset",
-                                address.getAddress().getHostAddress() + ":" + address.getPort()));
-                    }
-                });
-            } catch (Exception e) {
-                if (log.isErrorEnabled()) {
-                    log.error(s_loc.get("dyntcp-updater-error"), e);
+                if (log.isTraceEnabled()) {
+                    log.trace(s_loc.get("tcp-address-unset",
+                            address.getAddress().getHostAddress() + ":" + address.getPort()));
                 }
-            } finally {
-                _addressesLock.unlock();
+            });
+        } catch (Exception e) {
+            if (log.isErrorEnabled()) {
+                log.error(s_loc.get("dyntcp-updater-error"), e);
             }
+        } finally {
+            _addressesLock.unlock();
+        }
+    }
+
+    /**
+     * Send the next events to the peer at the given address right away, even if sending to it failed less than
+     * the recovery time ago, as it is known to be up again.
+     *
+     * @since 4.0.1
+     */
+    protected void reconnect(final String address) {
+        _addressesLock.lock();
+        try {
+            _addresses.stream().
+                    filter(host -> host.getAddress().getHostAddress().equals(address)).
+                    forEach(host -> {
+                        host.clearAllSockets();
+                        host._isAvailable = true;
+                        host._infosIssued = 0;
+                    });
+        } finally {
+            _addressesLock.unlock();
+        }
+    }
+
+    private class TcpAddressesUpdater extends TimerTask {
+
+        @Override
+        public void run() {
+            updateAddresses(fetchDynamicAddresses());
         }
     }
 }
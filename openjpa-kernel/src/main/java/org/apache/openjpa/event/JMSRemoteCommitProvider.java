@@ -18,8 +18,10 @@
  */
 package org.apache.openjpa.event;
 
+import java.io.IOException;
 import java.util.Properties;
 
+import jakarta.jms.BytesMessage;
 import jakarta.jms.ExceptionListener;
 import jakarta.jms.JMSException;
 import jakarta.jms.Message;
@@ -121,6 +123,7 @@ public class JMSRemoteCommitProvider
 
     @Override
     public void broadcast(RemoteCommitEvent event) {
+        sequence(event);
         try {
             _publisher.publish(createMessage(event));
             if (log.isTraceEnabled())
@@ -133,6 +136,7 @@ public class JMSRemoteCommitProvider
 
     @Override
     public void close() {
+        super.close();
         try {
             if (_connection != null) {
                 _connection.close();
@@ -206,6 +210,10 @@ public class JMSRemoteCommitProvider
         return new MessageListener() {
             @Override
             public void onMessage(Message m) {
+                if (codec != null && m instanceof BytesMessage) {
+                    onBytesMessage((BytesMessage) m);
+                    return;
+                }
                 if (!(m instanceof ObjectMessage)) {
                     if (log.isWarnEnabled())
                         log.warn(s_loc.get("jms-receive-error-3",
@@ -246,13 +254,48 @@ public class JMSRemoteCommitProvider
         };
     }
 
+    /**
+     * Decode the event in the given message with the configured codec.
+     */
+    private void onBytesMessage(BytesMessage m) {
+        ClassLoader saveCls = Thread.currentThread().getContextClassLoader();
+        try {
+            if (saveCls != _appClassLoader)
+                Thread.currentThread().setContextClassLoader(_appClassLoader);
+            byte[] bytes = new byte[(int) m.getBodyLength()];
+            m.readBytes(bytes);
+            RemoteCommitEvent rce = codec.decode(bytes);
+            if (log.isTraceEnabled())
+                log.trace(s_loc.get("jms-received-update", _topicName));
+            fireEvent(rce);
+        } catch (JMSException | IOException e) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("jms-receive-error-1"), e);
+        } finally {
+            if (saveCls != _appClassLoader)
+                Thread.currentThread().setContextClassLoader(saveCls);
+        }
+    }
+
     /**
      * Returns a new {@link Message} to send to the topic. This
-     * implementation creates an {@link ObjectMessage}.
+     * implementation creates an {@link ObjectMessage}, or a
+     * {@link BytesMessage} holding the encoded event if a codec is
+     * configured.
      */
     protected Message createMessage(RemoteCommitEvent event)
         throws JMSException {
-        return _session.createObjectMessage(event);
+        if (codec == null)
+            return _session.createObjectMessage(event);
+        BytesMessage m = _session.createBytesMessage();
+        try {
+            m.writeBytes(codec.encode(event));
+        } catch (IOException ioe) {
+            JMSException jmse = new JMSException(ioe.toString());
+            jmse.setLinkedException(ioe);
+            throw jmse;
+        }
+        return m;
     }
 
     @Override
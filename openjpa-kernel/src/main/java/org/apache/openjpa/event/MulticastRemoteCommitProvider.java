@@ -0,0 +1,465 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.GeneralException;
+import org.apache.openjpa.util.Serialization;
+
+/**
+ * UDP multicast implementation of {@link RemoteCommitProvider}. Each event
+ * is sent once to a multicast group joined by all the providers of the
+ * cluster, so the cost of a broadcast does not depend on the size of the
+ * cluster. Events larger than a datagram are split into fragments.
+ *  Datagrams may be lost, so this provider numbers its events and keeps
+ * the last ones to send them again, see {@link #setReplayLogSize}. A
+ * provider missing events of a peer asks for them again; events that can no
+ * longer be recovered make listeners handle all types as changed.
+ *
+ * @since 4.0.1
+ */
+public class MulticastRemoteCommitProvider
+    extends AbstractRemoteCommitProvider {
+
+    private static final Localizer s_loc = Localizer.forPackage(MulticastRemoteCommitProvider.class);
+
+    private static final int PROTOCOL_VERSION = 0x4d435401;
+    // version, sender, message, fragment index and count, codec flag
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 2 + 2 + 1;
+    private static final int MAX_FRAGMENTS = Short.MAX_VALUE;
+    private static final int MAX_PARTIAL_MESSAGES = 1024;
+
+    /**
+     * The default number of sent events kept to send them again, as
+     * datagrams may be lost.
+     */
+    public static final int DEFAULT_REPLAY_LOG_SIZE = 1000;
+
+    private String _group = "239.255.76.67";
+    private int _port = 5637;
+    private String _interface;
+    private int _timeToLive = 1;
+    private int _maxDatagramSize = 1400;
+    private int _reassemblyTimeoutMillis = 5000;
+
+    private final long _id = new SecureRandom().nextLong();
+    private final AtomicInteger _messageId = new AtomicInteger();
+    private InetSocketAddress _groupAddress;
+    private MulticastSocket _socket;
+    private volatile boolean _running;
+    private Thread _receiver;
+
+    public MulticastRemoteCommitProvider() {
+        setReplayLogSize(DEFAULT_REPLAY_LOG_SIZE);
+    }
+
+    /**
+     * The number of the last sent events kept to send them again to peers
+     * whose datagrams were lost. Peers detect lost events from the numbers
+     * of later events and of the heartbeats each provider sends, as
+     * described in {@link RemoteCommitSequencer}. Defaults to
+     * {@link #DEFAULT_REPLAY_LOG_SIZE}; 0 disables recovery.
+     */
+    @Override
+    public int getReplayLogSize() {
+        return super.getReplayLogSize();
+    }
+
+    /**
+     * The number of the last sent events kept to send them again to peers
+     * whose datagrams were lost. Defaults to {@link #DEFAULT_REPLAY_LOG_SIZE};
+     * 0 disables recovery.
+     */
+    @Override
+    public void setReplayLogSize(int size) {
+        super.setReplayLogSize(size);
+    }
+
+    /**
+     * The multicast group address to send events to. Defaults to
+     * <code>239.255.76.67</code>.
+     */
+    public String getGroup() {
+        return _group;
+    }
+
+    /**
+     * The multicast group address to send events to. Defaults to
+     * <code>239.255.76.67</code>.
+     */
+    public void setGroup(String group) {
+        _group = group;
+    }
+
+    /**
+     * The UDP port of the multicast group. Defaults to 5637.
+     */
+    public int getPort() {
+        return _port;
+    }
+
+    /**
+     * The UDP port of the multicast group. Defaults to 5637.
+     */
+    public void setPort(int port) {
+        _port = port;
+    }
+
+    /**
+     * The name of the network interface to send and receive events on, or
+     * null for the default of the system.
+     */
+    public String getInterface() {
+        return _interface;
+    }
+
+    /**
+     * The name of the network interface to send and receive events on, or
+     * null for the default of the system.
+     */
+    public void setInterface(String name) {
+        _interface = name;
+    }
+
+    /**
+     * The number of network hops datagrams may cross. Defaults to 1, which
+     * keeps them in the local network.
+     */
+    public int getTimeToLive() {
+        return _timeToLive;
+    }
+
+    /**
+     * The number of network hops datagrams may cross. Defaults to 1, which
+     * keeps them in the local network.
+     */
+    public void setTimeToLive(int ttl) {
+        _timeToLive = ttl;
+    }
+
+    /**
+     * The maximum size in bytes of a datagram. Larger events are split into
+     * several datagrams. Defaults to 1400, which fits the usual Ethernet
+     * frame.
+     */
+    public int getMaxDatagramSize() {
+        return _maxDatagramSize;
+    }
+
+    /**
+     * The maximum size in bytes of a datagram. Larger events are split into
+     * several datagrams. Defaults to 1400, which fits the usual Ethernet
+     * frame.
+     */
+    public void setMaxDatagramSize(int size) {
+        _maxDatagramSize = size;
+    }
+
+    /**
+     * The number of milliseconds to wait for the missing fragments of an
+     * event before dropping the fragments received. Defaults to 5000.
+     */
+    public int getReassemblyTimeoutMillis() {
+        return _reassemblyTimeoutMillis;
+    }
+
+    /**
+     * The number of milliseconds to wait for the missing fragments of an
+     * event before dropping the fragments received. Defaults to 5000.
+     */
+    public void setReassemblyTimeoutMillis(int millis) {
+        _reassemblyTimeoutMillis = millis;
+    }
+
+    @Override
+    public void endConfiguration() {
+        super.endConfiguration();
+        if (_maxDatagramSize <= HEADER_SIZE)
+            throw new GeneralException(s_loc.get("mcast-datagram-size", String.valueOf(_maxDatagramSize),
+                String.valueOf(HEADER_SIZE))).setFatal(true);
+        try {
+            _groupAddress = new InetSocketAddress(InetAddress.getByName(_group), _port);
+            NetworkInterface ni = null;
+            if (_interface != null) {
+                ni = NetworkInterface.getByName(_interface);
+                if (ni == null)
+                    throw new SocketException(_interface);
+            }
+            _socket = new MulticastSocket(null);
+            _socket.setReuseAddress(true);
+            _socket.bind(new InetSocketAddress(_port));
+            if (ni != null)
+                _socket.setNetworkInterface(ni);
+            _socket.setTimeToLive(_timeToLive);
+            // peers may run on this host
+            _socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            _socket.joinGroup(_groupAddress, ni);
+        } catch (IOException ioe) {
+            if (_socket != null)
+                _socket.close();
+            throw new GeneralException(s_loc.get("mcast-init-error", _group + ":" + _port), ioe).setFatal(true);
+        }
+
+        _running = true;
+        _receiver = new Thread(new Receiver(), "openjpa-remote-commit-multicast");
+        _receiver.setDaemon(true);
+        _receiver.start();
+        if (log.isInfoEnabled())
+            log.info(s_loc.get("mcast-start", _group + ":" + _port));
+    }
+
+    @Override
+    public void broadcast(RemoteCommitEvent event) {
+        sequence(event);
+        byte[] bytes;
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            if (codec == null) {
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                    oos.writeObject(event);
+                }
+            } else
+                baos.write(codec.encode(event));
+            bytes = baos.toByteArray();
+        } catch (IOException ioe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("mcast-payload-create-error"), ioe);
+            return;
+        }
+
+        int fragmentSize = _maxDatagramSize - HEADER_SIZE;
+        int count = Math.max(1, (bytes.length + fragmentSize - 1) / fragmentSize);
+        if (count > MAX_FRAGMENTS) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("mcast-event-too-large", String.valueOf(bytes.length)));
+            return;
+        }
+        int message = _messageId.incrementAndGet();
+        try {
+            for (int i = 0; i < count; i++) {
+                int offset = i * fragmentSize;
+                int length = Math.min(fragmentSize, bytes.length - offset);
+                ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + length);
+                buf.putInt(PROTOCOL_VERSION);
+                buf.putLong(_id);
+                buf.putInt(message);
+                buf.putShort((short) i);
+                buf.putShort((short) count);
+                buf.put((byte) ((codec == null) ? 0 : 1));
+                buf.put(bytes, offset, length);
+                send(buf.array());
+            }
+        } catch (IOException ioe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("mcast-send-error", _group + ":" + _port), ioe);
+        }
+    }
+
+    /**
+     * Send the given datagram to the group.
+     */
+    protected void send(byte[] datagram) throws IOException {
+        _socket.send(new DatagramPacket(datagram, datagram.length, _groupAddress));
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        _running = false;
+        if (_socket != null)
+            _socket.close();
+        if (_receiver != null) {
+            try {
+                _receiver.join(5000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Receives the datagrams of the group and reassembles the events of the
+     * other providers.
+     */
+    private class Receiver
+        implements Runnable {
+
+        // fragments of the events being received, oldest first
+        private final Map<MessageKey, Partial> _partials = new LinkedHashMap<>();
+
+        @Override
+        public void run() {
+            byte[] buf = new byte[65535];
+            DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            while (_running) {
+                try {
+                    packet.setLength(buf.length);
+                    _socket.receive(packet);
+                    receive(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()), packet);
+                } catch (Throwable t) {
+                    if (!_running)
+                        break;
+                    if (log.isWarnEnabled())
+                        log.warn(s_loc.get("mcast-receive-error", _group + ":" + _port), t);
+                }
+            }
+            if (log.isInfoEnabled())
+                log.info(s_loc.get("mcast-stop", _group + ":" + _port));
+        }
+
+        private void receive(ByteBuffer buf, DatagramPacket packet)
+            throws IOException, ClassNotFoundException {
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != PROTOCOL_VERSION) {
+                if (log.isWarnEnabled())
+                    log.warn(s_loc.get("mcast-bad-datagram", String.valueOf(packet.getSocketAddress())));
+                return;
+            }
+            long sender = buf.getLong();
+            if (sender == _id)
+                return;
+            int message = buf.getInt();
+            int index = buf.getShort();
+            int count = buf.getShort();
+            boolean encoded = buf.get() != 0;
+            if (count < 1 || index < 0 || index >= count)
+                return;
+
+            byte[] bytes;
+            if (count == 1) {
+                bytes = new byte[buf.remaining()];
+                buf.get(bytes);
+            } else {
+                bytes = reassemble(new MessageKey(sender, message), index, count, buf);
+                if (bytes == null)
+                    return;
+            }
+            fireEvent(decode(bytes, encoded));
+        }
+
+        /**
+         * Keep the given fragment, returning the bytes of its event if all
+         * its fragments are received.
+         */
+        private byte[] reassemble(MessageKey key, int index, int count, ByteBuffer buf) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Partial> itr = _partials.values().iterator(); itr.hasNext();) {
+                Partial partial = itr.next();
+                if (now - partial.created <= _reassemblyTimeoutMillis && _partials.size() <= MAX_PARTIAL_MESSAGES)
+                    break;
+                // the event is missed; the sequence of its sender tells
+                itr.remove();
+            }
+
+            Partial partial = _partials.get(key);
+            if (partial == null) {
+                partial = new Partial(count, now);
+                _partials.put(key, partial);
+            }
+            if (partial.fragments.length != count || partial.fragments[index] != null)
+                return null;
+            byte[] fragment = new byte[buf.remaining()];
+            buf.get(fragment);
+            partial.fragments[index] = fragment;
+            partial.size += fragment.length;
+            if (++partial.received < count)
+                return null;
+
+            _partials.remove(key);
+            ByteBuffer bytes = ByteBuffer.allocate(partial.size);
+            for (byte[] b : partial.fragments)
+                bytes.put(b);
+            return bytes.array();
+        }
+
+        private RemoteCommitEvent decode(byte[] bytes, boolean encoded)
+            throws IOException, ClassNotFoundException {
+            if (encoded) {
+                if (codec == null)
+                    throw new IOException(s_loc.get("codec-missing", _group + ":" + _port).getMessage());
+                return codec.decode(bytes);
+            }
+            try (ObjectInputStream ois = new Serialization.ClassResolvingObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+                return (RemoteCommitEvent) ois.readObject();
+            }
+        }
+    }
+
+    /**
+     * Identifies an event by its sender.
+     */
+    private static class MessageKey {
+
+        private final long _sender;
+        private final int _message;
+
+        private MessageKey(long sender, int message) {
+            _sender = sender;
+            _message = message;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof MessageKey))
+                return false;
+            MessageKey key = (MessageKey) other;
+            return _sender == key._sender && _message == key._message;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_sender, _message);
+        }
+    }
+
+    /**
+     * The fragments of an event received so far.
+     */
+    private static class Partial {
+
+        private final byte[][] fragments;
+        private final long created;
+        private int received = 0;
+        private int size = 0;
+
+        private Partial(int count, long created) {
+            this.fragments = new byte[count][];
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,899 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.openjpa.lib.conf.Configurable;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.StringUtil;
+import org.apache.openjpa.util.GeneralException;
+import org.apache.openjpa.util.Serialization;
+import org.apache.openjpa.util.UserException;
+
+/**
+ * TCP-based implementation of {@link RemoteCommitProvider} that uses
+ * non-blocking sockets. A single event loop thread per listen port accepts
+ * and reads connections from peers, and connects and writes to peers. Each
+ * peer has its own queue of pending events, bounded by
+ * {@link #setMaxQueuedBytes}, so that a peer that stops reading neither
+ * blocks the committing thread nor delays delivery to the other peers.
+ * Received events are handed to the listeners on a separate dispatch
+ * thread, so that slow listeners do not delay sending. Received frames
+ * larger than {@link #setMaxFrameBytes} close their connection.
+ * Events are framed by their length, so this provider only talks to other
+ * instances of itself, not to {@link TCPRemoteCommitProvider}.
+ *
+ * @since 4.0.1
+ */
+public class NIORemoteCommitProvider
+    extends AbstractRemoteCommitProvider
+    implements Configurable {
+
+    private static final int DEFAULT_PORT = 5636;
+    private static final int PROTOCOL_VERSION = 0x4e494f01;
+    // events written by a RemoteCommitEventCodec
+    private static final int CODEC_PROTOCOL_VERSION = 0x4e494f02;
+    private static final long SELECT_TIMEOUT = 1000;
+    // received frames waiting to be fired before the loop stops reading
+    private static final int MAX_DISPATCH_FRAMES = 1024;
+
+    private static final Localizer s_loc = Localizer.forPackage(NIORemoteCommitProvider.class);
+    private static long s_idSequence = System.currentTimeMillis();
+
+    // event loops by listen port; providers of different factories in this
+    // JVM listening on the same port share a loop
+    private static final Map<Integer, EventLoop> s_loops = new HashMap<>();
+
+    private final long _id;
+    private final byte[] _localhost;
+    private int _port = DEFAULT_PORT;
+    private int _recoveryTimeMillis = 15000;
+    private int _connectTimeoutMillis = 10000;
+    private long _maxQueuedBytes = 4 * 1024 * 1024;
+    private int _maxFrameBytes = 16 * 1024 * 1024;
+    private volatile List<Peer> _peers = new ArrayList<>();
+    private EventLoop _loop;
+
+    public NIORemoteCommitProvider() throws UnknownHostException {
+        synchronized (NIORemoteCommitProvider.class) {
+            _id = s_idSequence++;
+        }
+        _localhost = InetAddress.getLocalHost().getAddress();
+    }
+
+    /**
+     * The port that this provider listens on.
+     */
+    public int getPort() {
+        return _port;
+    }
+
+    /**
+     * The port that this provider listens on. Set once only.
+     */
+    public void setPort(int port) {
+        _port = port;
+    }
+
+    /**
+     * The number of milliseconds to wait before retrying to send to a peer
+     * after it becomes unreachable. Events for the peer are dropped in the
+     * meantime.
+     */
+    public int getRecoveryTimeMillis() {
+        return _recoveryTimeMillis;
+    }
+
+    /**
+     * The number of milliseconds to wait before retrying to send to a peer
+     * after it becomes unreachable. Events for the peer are dropped in the
+     * meantime.
+     */
+    public void setRecoveryTimeMillis(int recoveryTime) {
+        _recoveryTimeMillis = recoveryTime;
+    }
+
+    /**
+     * The number of milliseconds to wait for a connection to a peer to be
+     * established.
+     */
+    public int getConnectTimeoutMillis() {
+        return _connectTimeoutMillis;
+    }
+
+    /**
+     * The number of milliseconds to wait for a connection to a peer to be
+     * established.
+     */
+    public void setConnectTimeoutMillis(int connectTimeout) {
+        _connectTimeoutMillis = connectTimeout;
+    }
+
+    /**
+     * The maximum number of bytes of events queued for a single peer. When
+     * a peer falls further behind, its queued events are dropped, its
+     * connection is closed, and it is treated as unreachable.
+     */
+    public long getMaxQueuedBytes() {
+        return _maxQueuedBytes;
+    }
+
+    /**
+     * The maximum number of bytes of events queued for a single peer. When
+     * a peer falls further behind, its queued events are dropped, its
+     * connection is closed, and it is treated as unreachable.
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        _maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * The maximum size in bytes of a single event received from a peer.
+     * A peer sending a larger event has its connection closed. Providers
+     * sharing a listen port accept the largest of their maximums.
+     */
+    public int getMaxFrameBytes() {
+        return _maxFrameBytes;
+    }
+
+    /**
+     * The maximum size in bytes of a single event received from a peer.
+     * A peer sending a larger event has its connection closed. Providers
+     * sharing a listen port accept the largest of their maximums.
+     */
+    public void setMaxFrameBytes(int maxFrameBytes) {
+        _maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * The peers to send events to, as a semicolon-separated list of
+     * <code>host:port</code> entries. Entries naming this host are ignored.
+     */
+    public void setAddresses(String names) throws UnknownHostException {
+        String[] toks = StringUtil.split(names, ";", 0);
+        List<Peer> peers = new ArrayList<>(toks.length);
+        String localhostName = InetAddress.getLocalHost().getHostName();
+        try {
+            for (String host : toks) {
+                String hostname = host;
+                int port = DEFAULT_PORT;
+                int colon = host.indexOf(':');
+                if (colon != -1) {
+                    hostname = host.substring(0, colon);
+                    port = Integer.parseInt(host.substring(colon + 1));
+                }
+                InetAddress address = AccessController.doPrivileged(J2DoPrivHelper.getByNameAction(hostname));
+                if (localhostName.equals(hostname)) {
+                    if (log != null && log.isTraceEnabled())
+                        log.trace(s_loc.get("tcp-address-asself", hostname + ":" + port));
+                    continue;
+                }
+                peers.add(new Peer(new InetSocketAddress(address, port)));
+                if (log != null && log.isTraceEnabled())
+                    log.trace(s_loc.get("tcp-address-set", hostname + ":" + port));
+            }
+        } catch (PrivilegedActionException pae) {
+            throw (UnknownHostException) pae.getException();
+        }
+
+        List<Peer> old = _peers;
+        _peers = peers;
+        old.forEach(Peer::close);
+    }
+
+    @Override
+    public void endConfiguration() {
+        super.endConfiguration();
+        synchronized (s_loops) {
+            _loop = s_loops.get(_port);
+            if (_loop == null) {
+                try {
+                    _loop = new EventLoop(_port, log);
+                } catch (IOException ioe) {
+                    throw new GeneralException(s_loc.get("tcp-init-exception", String.valueOf(_port)), ioe).
+                        setFatal(true);
+                }
+                s_loops.put(_port, _loop);
+                _loop.start();
+            } else if (!_loop.acceptsCodec(codec))
+                throw new UserException(s_loc.get("nio-codec-mismatch", String.valueOf(_port))).setFatal(true);
+            _loop.addProvider(this);
+        }
+    }
+
+    @Override
+    public void broadcast(RemoteCommitEvent event) {
+        sequence(event);
+        byte[] frame = toFrame(event);
+        if (frame == null)
+            return;
+
+        boolean queued = false;
+        for (Peer peer : _peers)
+            queued |= peer.offer(frame);
+        if (queued)
+            _loop.execute(this::flushPeers);
+    }
+
+    /**
+     * Send the given event only to the peer that requested it, if it is
+     * one of the peers of this provider.
+     */
+    @Override
+    protected void resend(RemoteCommitEvent event, Object requester) {
+        if (!(requester instanceof Peer) || !_peers.contains(requester)) {
+            broadcast(event);
+            return;
+        }
+        byte[] frame = toFrame(event);
+        if (frame != null && ((Peer) requester).offer(frame))
+            _loop.execute(this::flushPeers);
+    }
+
+    /**
+     * Return the frame holding the given event, or null if it cannot be
+     * written.
+     */
+    private byte[] toFrame(RemoteCommitEvent event) {
+        byte[] frame;
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            // reserve room for the length of the frame
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(0);
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeInt((codec == null) ? PROTOCOL_VERSION : CODEC_PROTOCOL_VERSION);
+            oos.writeLong(_id);
+            oos.writeInt(_port);
+            oos.writeObject(_localhost);
+            if (codec == null)
+                oos.writeObject(event);
+            else
+                oos.writeObject(codec.encode(event));
+            oos.flush();
+            frame = baos.toByteArray();
+        } catch (IOException ioe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("tcp-payload-create-error"), ioe);
+            return null;
+        }
+        ByteBuffer.wrap(frame).putInt(frame.length - 4);
+        return frame;
+    }
+
+    /**
+     * Return the peer listening on the given port of the host with one of
+     * the given addresses, or null if none.
+     */
+    private Peer findPeer(int port, byte[]... addresses) {
+        for (Peer peer : _peers) {
+            if (peer._address.getPort() != port || peer._address.getAddress() == null)
+                continue;
+            byte[] address = peer._address.getAddress().getAddress();
+            for (byte[] candidate : addresses)
+                if (Arrays.equals(address, candidate))
+                    return peer;
+        }
+        return null;
+    }
+
+    /**
+     * Start writing the queued events of each peer. Runs on the event loop.
+     */
+    private void flushPeers() {
+        for (Peer peer : _peers)
+            peer.flush();
+    }
+
+    /**
+     * The number of received frames waiting to be fired by the event loop
+     * of this provider.
+     */
+    int getQueuedDispatches() {
+        return (_loop == null) ? 0 : _loop._queued.get();
+    }
+
+    /**
+     * Fail connections that have not been established in time. Runs on the
+     * event loop.
+     */
+    private void checkConnectTimeouts(long now) {
+        for (Peer peer : _peers)
+            peer.checkConnectTimeout(now);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        List<Peer> peers = _peers;
+        _peers = new ArrayList<>();
+        peers.forEach(Peer::close);
+        if (_loop == null)
+            return;
+        synchronized (s_loops) {
+            if (_loop.removeProvider(this))
+                s_loops.remove(_port);
+        }
+    }
+
+    /**
+     * A peer to send events to. Events are queued by committing threads
+     * and written by the event loop.
+     */
+    private class Peer {
+
+        private final InetSocketAddress _address;
+        private final Queue<ByteBuffer> _queue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong _queuedBytes = new AtomicLong();
+        private final AtomicBoolean _overflow = new AtomicBoolean();
+        private volatile boolean _closed = false;
+        private volatile boolean _available = true;
+        private volatile long _timeLastError;
+        private int _infosIssued = 0;
+
+        // only accessed by the event loop
+        private SocketChannel _channel;
+        private SelectionKey _key;
+        private long _connectStart;
+
+        private Peer(InetSocketAddress address) {
+            _address = address;
+        }
+
+        /**
+         * Queue the given frame for sending, returning false if it was
+         * dropped.
+         */
+        private boolean offer(byte[] frame) {
+            if (_closed)
+                return false;
+            if (!_available && System.currentTimeMillis() - _timeLastError < _recoveryTimeMillis)
+                return false;
+            if (_queuedBytes.addAndGet(frame.length) > _maxQueuedBytes) {
+                _queuedBytes.addAndGet(-frame.length);
+                _overflow.set(true);
+                return true;
+            }
+            _queue.add(ByteBuffer.wrap(frame));
+            return true;
+        }
+
+        private void flush() {
+            if (_overflow.compareAndSet(true, false)) {
+                if (log.isWarnEnabled())
+                    log.warn(s_loc.get("nio-peer-overflow", toString(), String.valueOf(_maxQueuedBytes)));
+                failed(null);
+                _available = false;
+                _timeLastError = System.currentTimeMillis();
+                return;
+            }
+            if (_closed || _queue.isEmpty())
+                return;
+            if (_channel == null)
+                connect();
+            else if (_channel.isConnected())
+                write();
+        }
+
+        private void connect() {
+            try {
+                _channel = SocketChannel.open();
+                _channel.configureBlocking(false);
+                _channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                _connectStart = System.currentTimeMillis();
+                if (_channel.connect(_address)) {
+                    _key = _loop.register(_channel, 0, this);
+                    connected();
+                } else
+                    _key = _loop.register(_channel, SelectionKey.OP_CONNECT, this);
+            } catch (IOException ioe) {
+                failed(ioe);
+            }
+        }
+
+        private void finishConnect() {
+            try {
+                if (_channel.finishConnect())
+                    connected();
+            } catch (IOException ioe) {
+                failed(ioe);
+            }
+        }
+
+        private void connected() {
+            if (log.isTraceEnabled())
+                log.trace(s_loc.get("tcp-open-connection", toString(),
+                    String.valueOf(_channel.socket().getLocalPort())));
+            write();
+        }
+
+        private void checkConnectTimeout(long now) {
+            if (_channel != null && _channel.isConnectionPending()
+                && now - _connectStart > _connectTimeoutMillis)
+                failed(new SocketTimeoutException(toString()));
+        }
+
+        /**
+         * Write as much of the queue as the socket accepts without blocking.
+         */
+        private void write() {
+            try {
+                ByteBuffer buf;
+                while ((buf = _queue.peek()) != null) {
+                    _channel.write(buf);
+                    if (buf.hasRemaining()) {
+                        _key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    _queue.poll();
+                    _queuedBytes.addAndGet(-buf.capacity());
+                    if (log.isTraceEnabled())
+                        log.trace(s_loc.get("tcp-sent-update", toString(),
+                            String.valueOf(_channel.socket().getLocalPort())));
+                }
+                // peers never write back, so readiness to read means that
+                // the peer closed the connection
+                _key.interestOps(SelectionKey.OP_READ);
+                _available = true;
+                _infosIssued = 0;
+            } catch (IOException ioe) {
+                failed(ioe);
+            }
+        }
+
+        /**
+         * The peer closed the connection. Reconnect on the next event.
+         */
+        private void closedByPeer() {
+            if (log.isTraceEnabled())
+                log.trace(s_loc.get("tcp-close-socket", toString()));
+            closeChannel();
+            if (!_queue.isEmpty())
+                connect();
+        }
+
+        /**
+         * Drop the connection and the queued events after an error, and
+         * treat the peer as unreachable until the recovery time passes.
+         */
+        private void failed(IOException ioe) {
+            closeChannel();
+            ByteBuffer buf;
+            while ((buf = _queue.poll()) != null)
+                _queuedBytes.addAndGet(-buf.capacity());
+            if (ioe == null)
+                return;
+
+            long now = System.currentTimeMillis();
+            if (_available) {
+                if (log.isWarnEnabled())
+                    log.warn(s_loc.get("tcp-send-error", toString()), ioe);
+                _available = false;
+                _timeLastError = now;
+            } else if (now - _timeLastError > _recoveryTimeMillis && _infosIssued < 5) {
+                _timeLastError = now;
+                if (log.isInfoEnabled())
+                    log.info(s_loc.get("tcp-send-still-error", toString()), ioe);
+                _infosIssued++;
+            }
+        }
+
+        private void closeChannel() {
+            if (_channel == null)
+                return;
+            if (_key != null)
+                _key.cancel();
+            try {
+                _channel.close();
+            } catch (IOException ioe) {
+                if (log.isWarnEnabled())
+                    log.warn(s_loc.get("tcp-close-socket-error", toString()), ioe);
+            }
+            _channel = null;
+            _key = null;
+        }
+
+        private void close() {
+            _closed = true;
+            if (_loop != null)
+                _loop.execute(() -> failed(null));
+        }
+
+        @Override
+        public String toString() {
+            return _address.getAddress().getHostAddress() + ":" + _address.getPort();
+        }
+    }
+
+    /**
+     * The event loop of a listen port. Accepts connections from peers and
+     * reads their events, and runs the connects and writes of the providers
+     * listening on the port. The providers of a loop must use the same
+     * codec, since frames cannot be told apart by receiving provider, and
+     * the loop logs to the log of the provider that started it.
+     * Received events are fired on a dispatch thread. When too many are
+     * waiting, the loop stops reading from peers until half have been fired.
+     */
+    private static final class EventLoop
+        implements Runnable {
+
+        private final int _port;
+        private final Log _log;
+        private final Selector _selector;
+        private final ServerSocketChannel _server;
+        private final byte[] _localhost;
+        private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+        private final Set<NIORemoteCommitProvider> _providers = new CopyOnWriteArraySet<>();
+        private final Thread _thread;
+        // fires received events, so that listeners do not hold up the loop
+        private final ExecutorService _dispatcher;
+        private final AtomicInteger _queued = new AtomicInteger();
+        // connections not read from until the dispatch queue drains
+        private final List<Inbound> _paused = new ArrayList<>();
+        private volatile boolean _running = true;
+
+        private EventLoop(int port, Log log) throws IOException {
+            _port = port;
+            _log = log;
+            _localhost = InetAddress.getLocalHost().getAddress();
+            _selector = Selector.open();
+            try {
+                _server = ServerSocketChannel.open();
+                _server.bind(new InetSocketAddress(port));
+                _server.configureBlocking(false);
+                _server.register(_selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException ioe) {
+                _selector.close();
+                throw ioe;
+            }
+            _thread = new Thread(this, "openjpa-remote-commit-" + port);
+            _thread.setDaemon(true);
+            _dispatcher = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "openjpa-remote-commit-dispatch-" + port);
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (_log.isInfoEnabled())
+                _log.info(s_loc.get("tcp-start-listener", String.valueOf(port)));
+        }
+
+        private void start() {
+            _thread.start();
+        }
+
+        /**
+         * Whether a provider with the given codec can share this loop.
+         */
+        private boolean acceptsCodec(RemoteCommitEventCodec codec) {
+            Class<?> cls = (codec == null) ? null : codec.getClass();
+            for (NIORemoteCommitProvider provider : _providers) {
+                Class<?> other = (provider.codec == null) ? null : provider.codec.getClass();
+                if (cls != other)
+                    return false;
+            }
+            return true;
+        }
+
+        private void addProvider(NIORemoteCommitProvider provider) {
+            _providers.add(provider);
+        }
+
+        /**
+         * Remove the given provider, stopping the loop if no provider is
+         * left. Returns true if the loop was stopped.
+         */
+        private boolean removeProvider(NIORemoteCommitProvider provider) {
+            _providers.remove(provider);
+            if (!_providers.isEmpty())
+                return false;
+            _running = false;
+            _selector.wakeup();
+            return true;
+        }
+
+        /**
+         * Run the given task on the event loop.
+         */
+        private void execute(Runnable task) {
+            _tasks.add(task);
+            _selector.wakeup();
+        }
+
+        private SelectionKey register(SocketChannel channel, int ops, Object attachment)
+            throws IOException {
+            return channel.register(_selector, ops, attachment);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (_running) {
+                    _selector.select(SELECT_TIMEOUT);
+                    Runnable task;
+                    while ((task = _tasks.poll()) != null)
+                        task.run();
+                    for (SelectionKey key : _selector.selectedKeys())
+                        handle(key);
+                    _selector.selectedKeys().clear();
+
+                    long now = System.currentTimeMillis();
+                    for (NIORemoteCommitProvider provider : _providers)
+                        provider.checkConnectTimeouts(now);
+                }
+            } catch (Throwable t) {
+                if (_log.isWarnEnabled())
+                    _log.warn(s_loc.get("tcp-receive-error"), t);
+            } finally {
+                shutdown();
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid())
+                return;
+            Object att = key.attachment();
+            if (att instanceof Peer) {
+                Peer peer = (Peer) att;
+                if (key.isConnectable())
+                    peer.finishConnect();
+                else if (key.isWritable())
+                    peer.write();
+                else if (key.isReadable())
+                    peer.closedByPeer();
+            } else if (att instanceof Inbound)
+                ((Inbound) att).read();
+            else if (key.isAcceptable())
+                accept();
+        }
+
+        private void accept() {
+            SocketChannel channel = null;
+            try {
+                channel = _server.accept();
+                if (channel == null)
+                    return;
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Inbound in = new Inbound(channel);
+                in._key = channel.register(_selector, SelectionKey.OP_READ, in);
+                if (_log.isTraceEnabled())
+                    _log.trace(s_loc.get("tcp-received-connection", in));
+            } catch (IOException ioe) {
+                if (_log.isWarnEnabled())
+                    _log.warn(s_loc.get("tcp-accept-error"), ioe);
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+        /**
+         * The largest frame accepted from a peer.
+         */
+        private int getMaxFrameBytes() {
+            int max = 0;
+            for (NIORemoteCommitProvider provider : _providers)
+                max = Math.max(max, provider._maxFrameBytes);
+            return max;
+        }
+
+        /**
+         * Hand a received frame to the providers of this port on the
+         * dispatch thread.
+         */
+        private void dispatchLater(Inbound in, byte[] frame) {
+            _queued.incrementAndGet();
+            _dispatcher.execute(() -> {
+                try {
+                    dispatch(in, frame);
+                } catch (Exception e) {
+                    if (_log.isWarnEnabled())
+                        _log.warn(s_loc.get("tcp-receive-error"), e);
+                } finally {
+                    if (_queued.decrementAndGet() == MAX_DISPATCH_FRAMES / 2)
+                        execute(this::resumeReads);
+                }
+            });
+        }
+
+        /**
+         * Read again from the connections paused while the dispatch queue
+         * was full. Runs on the event loop.
+         */
+        private void resumeReads() {
+            for (Inbound in : _paused)
+                if (in._key.isValid())
+                    in._key.interestOps(SelectionKey.OP_READ);
+            _paused.clear();
+        }
+
+        /**
+         * Hand a received frame to the providers of this port.
+         */
+        private void dispatch(Inbound in, byte[] frame)
+            throws IOException, ClassNotFoundException {
+            ObjectInputStream ois = new Serialization.ClassResolvingObjectInputStream(
+                new ByteArrayInputStream(frame));
+            int version = ois.readInt();
+            if (version != PROTOCOL_VERSION && version != CODEC_PROTOCOL_VERSION) {
+                if (_log.isWarnEnabled())
+                    _log.warn(s_loc.get("tcp-wrong-version-error", in));
+                return;
+            }
+            long senderId = ois.readLong();
+            int senderPort = ois.readInt();
+            byte[] senderAddress = (byte[]) ois.readObject();
+            RemoteCommitEvent rce;
+            if (version == CODEC_PROTOCOL_VERSION) {
+                byte[] bytes = (byte[]) ois.readObject();
+                RemoteCommitEventCodec codec = _providers.stream().map(provider -> provider.codec).
+                    filter(Objects::nonNull).findFirst().orElse(null);
+                if (codec == null) {
+                    if (_log.isWarnEnabled())
+                        _log.warn(s_loc.get("codec-missing", in));
+                    return;
+                }
+                rce = codec.decode(bytes);
+            } else
+                rce = (RemoteCommitEvent) ois.readObject();
+            if (_log.isTraceEnabled())
+                _log.trace(s_loc.get("tcp-received-event", in));
+
+            boolean fromSelf = senderPort == _port && Arrays.equals(senderAddress, _localhost);
+            byte[] remoteAddress = in._channel.socket().getInetAddress().getAddress();
+            for (NIORemoteCommitProvider provider : _providers)
+                if (!fromSelf || senderId != provider._id)
+                    provider.fireEvent(rce, provider.findPeer(senderPort, remoteAddress, senderAddress));
+        }
+
+        private void shutdown() {
+            _dispatcher.shutdown();
+            for (SelectionKey key : _selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ioe) {
+                    if (_log.isWarnEnabled())
+                        _log.warn(s_loc.get("tcp-close-error"), ioe);
+                }
+            }
+            try {
+                _selector.close();
+            } catch (IOException ioe) {
+                if (_log.isWarnEnabled())
+                    _log.warn(s_loc.get("tcp-close-error"), ioe);
+            }
+            if (_log.isTraceEnabled())
+                _log.trace(s_loc.get("tcp-close-listener", String.valueOf(_port)));
+        }
+
+        /**
+         * A connection from a peer, read as a sequence of frames each
+         * preceded by its length.
+         */
+        private final class Inbound {
+
+            private final SocketChannel _channel;
+            private final ByteBuffer _length = ByteBuffer.allocate(4);
+            private ByteBuffer _frame;
+            private SelectionKey _key;
+
+            private Inbound(SocketChannel channel) {
+                _channel = channel;
+            }
+
+            private void read() {
+                try {
+                    while (true) {
+                        ByteBuffer buf = (_frame == null) ? _length : _frame;
+                        int read = _channel.read(buf);
+                        if (read == -1) {
+                            if (_log.isTraceEnabled())
+                                _log.trace(s_loc.get("tcp-close-socket", this));
+                            close();
+                            return;
+                        }
+                        if (buf.hasRemaining())
+                            return;
+
+                        if (_frame == null) {
+                            _length.flip();
+                            int length = _length.getInt();
+                            _length.clear();
+                            if (length < 0)
+                                throw new IOException(s_loc.get("nio-bad-frame", this,
+                                    String.valueOf(length)).getMessage());
+                            int max = getMaxFrameBytes();
+                            if (length > max)
+                                throw new IOException(s_loc.get("nio-frame-too-large", this,
+                                    String.valueOf(length), String.valueOf(max)).getMessage());
+                            _frame = ByteBuffer.allocate(length);
+                        } else {
+                            _frame = null;
+                            dispatchLater(this, buf.array());
+                            if (_queued.get() >= MAX_DISPATCH_FRAMES) {
+                                // leave the rest in the socket until the
+                                // dispatch thread catches up
+                                _key.interestOps(0);
+                                _paused.add(this);
+                                return;
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    if (_log.isWarnEnabled())
+                        _log.warn(s_loc.get("tcp-receive-error"), e);
+                    close();
+                }
+            }
+
+            private void close() {
+                try {
+                    _channel.close();
+                } catch (IOException ioe) {
+                    if (_log.isWarnEnabled())
+                        _log.warn(s_loc.get("tcp-close-socket-error", this), ioe);
+                }
+            }
+
+            @Override
+            public String toString() {
+                java.net.Socket s = _channel.socket();
+                return s.getInetAddress().getHostAddress() + ":" + s.getPort();
+            }
+        }
+    }
+}
@@ -65,6 +65,29 @@ public class RemoteCommitEvent
      */
     public static final int PAYLOAD_LOCAL_STALE_DETECTION = 3;
 
+    /**
+     * Request for the provider identified by the {@link #getTargetId target
+     * id} to send again its events from the {@link #getFromSequence from
+     * sequence} number on. Such events are handled by the providers and never
+     * reach listeners.
+     *
+     * @since 4.0.1
+     */
+    public static final int PAYLOAD_CATCH_UP_REQUEST = 4;
+
+    /**
+     * Announcement of the {@link #getSequence sequence} number of the last
+     * event sent by the provider identified by the {@link #getSenderId sender
+     * id}, so that peers detect the loss of its last events. Such events are
+     * handled by the providers and never reach listeners.
+     *
+     * @since 4.0.1
+     */
+    public static final int PAYLOAD_HEARTBEAT = 5;
+
+    // set in the externalized payload type when a sequence follows
+    private static final int SEQUENCED = 0x100;
+
     private static final Localizer s_loc = Localizer.forPackage
         (RemoteCommitEvent.class);
 
@@ -73,6 +96,10 @@ public class RemoteCommitEvent
     private Collection _addClasses = null;
     private Collection _updates = null;
     private Collection _deletes = null;
+    private long _sender = 0;
+    private long _sequence = 0;
+    private long _target = 0;
+    private long _from = 0;
 
     /**
      * Constructor used during externalization.
@@ -109,6 +136,68 @@ public class RemoteCommitEvent
         return _payload;
     }
 
+    /**
+     * The identifier of the provider that sent this event, or 0 if the
+     * event is not sequenced.
+     *
+     * @since 4.0.1
+     */
+    public long getSenderId() {
+        return _sender;
+    }
+
+    /**
+     * The number of this event in the events sent by its provider, starting
+     * at 1, or 0 if the event is not sequenced.
+     *
+     * @since 4.0.1
+     */
+    public long getSequence() {
+        return _sequence;
+    }
+
+    /**
+     * Set the identifier of the provider that sent this event and its number
+     * in the events sent by that provider.
+     *
+     * @since 4.0.1
+     */
+    public void setSequence(long senderId, long sequence) {
+        _sender = senderId;
+        _sequence = sequence;
+    }
+
+    /**
+     * When the event type is PAYLOAD_CATCH_UP_REQUEST, the identifier of
+     * the provider asked to send its events again.
+     *
+     * @since 4.0.1
+     */
+    public long getTargetId() {
+        return _target;
+    }
+
+    /**
+     * When the event type is PAYLOAD_CATCH_UP_REQUEST, the sequence number
+     * of the first event to send again.
+     *
+     * @since 4.0.1
+     */
+    public long getFromSequence() {
+        return _from;
+    }
+
+    /**
+     * Set the provider asked to send its events again by this catch-up
+     * request, and the sequence number of the first event to send.
+     *
+     * @since 4.0.1
+     */
+    public void setCatchUp(long targetId, long fromSequence) {
+        _target = targetId;
+        _from = fromSequence;
+    }
+
     /**
      * When the event type is PAYLOAD_OIDS_WITH_ADDS, return the set of
      * object IDs for added objects. This will only be callable when the
@@ -176,7 +265,17 @@ public class RemoteCommitEvent
     @Override
     public void writeExternal(ObjectOutput out)
         throws IOException {
-        out.writeInt(_payload);
+        if (_sequence == 0)
+            out.writeInt(_payload);
+        else {
+            out.writeInt(_payload | SEQUENCED);
+            out.writeLong(_sender);
+            out.writeLong(_sequence);
+        }
+        if (_payload == PAYLOAD_CATCH_UP_REQUEST) {
+            out.writeLong(_target);
+            out.writeLong(_from);
+        }
         out.writeObject(_addClasses);
         if (_payload == PAYLOAD_OIDS_WITH_ADDS)
             out.writeObject(_addIds);
@@ -189,6 +288,15 @@ public class RemoteCommitEvent
         throws IOException {
         try {
             _payload = in.readInt();
+            if ((_payload & SEQUENCED) != 0) {
+                _payload &= ~SEQUENCED;
+                _sender = in.readLong();
+                _sequence = in.readLong();
+            }
+            if (_payload == PAYLOAD_CATCH_UP_REQUEST) {
+                _target = in.readLong();
+                _from = in.readLong();
+            }
             _addClasses = (Collection) in.readObject();
             if (_payload == PAYLOAD_OIDS_WITH_ADDS)
                 _addIds = (Collection) in.readObject();
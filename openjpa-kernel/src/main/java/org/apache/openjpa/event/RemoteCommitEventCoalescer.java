@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.util.OpenJPAId;
+
+/**
+ * Merges the remote commit events of the transactions committed within a
+ * time window into a single event before handing it to the
+ * {@link RemoteCommitProvider}. Object ids are deduplicated, and once the
+ * merged event refers to more than a maximum number of object ids it is
+ * turned into an event naming only the changed types.
+ *
+ * @since 4.0.1
+ */
+public class RemoteCommitEventCoalescer {
+
+    private final RemoteCommitProvider _provider;
+    private final long _windowMillis;
+    private final int _maxObjectIds;
+    private final MetaDataRepository _repos;
+    private final Timer _timer = new Timer("openjpa-remote-commit-coalescer", true);
+
+    // the pending merged event
+    private boolean _scheduled = false;
+    private boolean _extents = false;
+    private boolean _withAdds = false;
+    private Set<Object> _addIds = new LinkedHashSet<>();
+    private Set<Object> _updates = new LinkedHashSet<>();
+    private Set<Object> _deletes = new LinkedHashSet<>();
+    private Set<String> _addClasses = new LinkedHashSet<>();
+    private Set<String> _updateTypes = new LinkedHashSet<>();
+    private Set<String> _deleteTypes = new LinkedHashSet<>();
+    private boolean _closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param provider the provider to broadcast merged events with
+     * @param windowMillis the time in milliseconds to merge events for
+     * @param maxObjectIds the number of object ids above which the merged
+     * event only names the changed types
+     * @param repos the repository used to find the types of application
+     * identity object ids, or null
+     */
+    public RemoteCommitEventCoalescer(RemoteCommitProvider provider,
+        long windowMillis, int maxObjectIds, MetaDataRepository repos) {
+        _provider = provider;
+        _windowMillis = windowMillis;
+        _maxObjectIds = maxObjectIds;
+        _repos = repos;
+    }
+
+    /**
+     * Merge the given event into the pending event, starting a new time
+     * window if none is open.
+     */
+    public void add(RemoteCommitEvent event) {
+        int payload = event.getPayloadType();
+        if (payload == RemoteCommitEvent.PAYLOAD_LOCAL_STALE_DETECTION)
+            return;
+
+        RemoteCommitEvent flush = null;
+        synchronized (this) {
+            if (_closed) {
+                flush = event;
+            } else {
+                boolean extents = payload == RemoteCommitEvent.PAYLOAD_EXTENTS;
+                if (isEmpty())
+                    _extents = extents;
+                if ((extents && !_extents && !toExtents()) || !merge(event, extents)) {
+                    // the type of some id is not known; send the pending
+                    // event on its own
+                    flush = takePending();
+                    _extents = extents;
+                    merge(event, extents);
+                }
+                if (!_extents && _addIds.size() + _updates.size() + _deletes.size() > _maxObjectIds)
+                    toExtents();
+                if (!_scheduled) {
+                    _scheduled = true;
+                    _timer.schedule(new FlushTask(), _windowMillis);
+                }
+            }
+        }
+        if (flush != null)
+            _provider.broadcast(flush);
+    }
+
+    private boolean isEmpty() {
+        return _addClasses.isEmpty() && _updates.isEmpty() && _deletes.isEmpty()
+            && _updateTypes.isEmpty() && _deleteTypes.isEmpty();
+    }
+
+    /**
+     * Merge the given event into the pending event, returning false if the
+     * pending event only names types and the type of some id of the given
+     * event is not known.
+     */
+    private boolean merge(RemoteCommitEvent event, boolean extents) {
+        if (extents) {
+            _addClasses.addAll(event.getPersistedTypeNames());
+            _updateTypes.addAll(event.getUpdatedTypeNames());
+            _deleteTypes.addAll(event.getDeletedTypeNames());
+            return true;
+        }
+        if (_extents) {
+            Set<String> updateTypes = new LinkedHashSet<>();
+            Set<String> deleteTypes = new LinkedHashSet<>();
+            if (!addTypes(event.getUpdatedObjectIds(), updateTypes)
+                || !addTypes(event.getDeletedObjectIds(), deleteTypes))
+                return false;
+            _addClasses.addAll(event.getPersistedTypeNames());
+            _updateTypes.addAll(updateTypes);
+            _deleteTypes.addAll(deleteTypes);
+            return true;
+        }
+
+        _addClasses.addAll(event.getPersistedTypeNames());
+        if (event.getPayloadType() == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS) {
+            _withAdds = true;
+            _addIds.addAll(event.getPersistedObjectIds());
+        }
+        for (Object oid : event.getUpdatedObjectIds())
+            if (!_deletes.contains(oid))
+                _updates.add(oid);
+        for (Object oid : event.getDeletedObjectIds()) {
+            _updates.remove(oid);
+            _deletes.add(oid);
+        }
+        return true;
+    }
+
+    /**
+     * Turn the pending event into one naming only types, returning false
+     * if the type of some pending id is not known.
+     */
+    private boolean toExtents() {
+        Set<String> updateTypes = new LinkedHashSet<>(_updateTypes);
+        Set<String> deleteTypes = new LinkedHashSet<>(_deleteTypes);
+        if (!addTypes(_updates, updateTypes) || !addTypes(_deletes, deleteTypes))
+            return false;
+        _extents = true;
+        _updateTypes = updateTypes;
+        _deleteTypes = deleteTypes;
+        _addIds.clear();
+        _updates.clear();
+        _deletes.clear();
+        return true;
+    }
+
+    /**
+     * Add the names of the types of the given ids, including the
+     * subclasses they may refer to, returning false if the type of some
+     * id is not known.
+     */
+    private boolean addTypes(Collection<?> oids, Set<String> names) {
+        boolean known = true;
+        for (Object oid : oids) {
+            Class<?> type = null;
+            boolean subs = true;
+            if (oid instanceof OpenJPAId) {
+                type = ((OpenJPAId) oid).getType();
+                subs = ((OpenJPAId) oid).hasSubclasses();
+            }
+            ClassMetaData meta = null;
+            if (_repos != null) {
+                meta = (type != null) ? _repos.getMetaData(type, null, false)
+                    : _repos.getMetaData(oid, null, false);
+                if (type == null && meta != null)
+                    type = meta.getDescribedType();
+            }
+            if (type == null) {
+                known = false;
+                continue;
+            }
+            names.add(type.getName());
+            if (subs && meta != null)
+                for (Class<?> sub : meta.getPCSubclasses())
+                    names.add(sub.getName());
+        }
+        return known;
+    }
+
+    /**
+     * Return the pending event and start a new one.
+     */
+    private RemoteCommitEvent takePending() {
+        RemoteCommitEvent event = null;
+        if (_extents) {
+            if (!_addClasses.isEmpty() || !_updateTypes.isEmpty() || !_deleteTypes.isEmpty())
+                event = new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null,
+                    _addClasses, _updateTypes, _deleteTypes);
+        } else if (!_addClasses.isEmpty() || !_updates.isEmpty() || !_deletes.isEmpty()) {
+            int payload = (_withAdds) ? RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS
+                : RemoteCommitEvent.PAYLOAD_OIDS;
+            event = new RemoteCommitEvent(payload, (_withAdds) ? _addIds : null,
+                _addClasses, _updates, _deletes);
+        }
+        _extents = false;
+        _withAdds = false;
+        _addIds = new LinkedHashSet<>();
+        _updates = new LinkedHashSet<>();
+        _deletes = new LinkedHashSet<>();
+        _addClasses = new LinkedHashSet<>();
+        _updateTypes = new LinkedHashSet<>();
+        _deleteTypes = new LinkedHashSet<>();
+        return event;
+    }
+
+    /**
+     * Broadcast the pending event now.
+     */
+    public void flush() {
+        RemoteCommitEvent event;
+        synchronized (this) {
+            _scheduled = false;
+            event = takePending();
+        }
+        if (event != null)
+            _provider.broadcast(event);
+    }
+
+    /**
+     * Broadcast the pending event and stop merging events. Events added
+     * afterwards are broadcast immediately.
+     */
+    public void close() {
+        synchronized (this) {
+            _closed = true;
+        }
+        _timer.cancel();
+        flush();
+    }
+
+    private class FlushTask
+        extends TimerTask {
+
+        @Override
+        public void run() {
+            flush();
+        }
+    }
+}
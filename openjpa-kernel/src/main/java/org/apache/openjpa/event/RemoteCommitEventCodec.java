@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.IOException;
+
+/**
+ * Converts {@link RemoteCommitEvent}s to and from the bytes that a
+ * {@link RemoteCommitProvider} sends to its peers. Providers without a
+ * codec send events with Java serialization. All peers of a cluster must
+ * use the same codec.
+ *
+ * @since 4.0.1
+ */
+public interface RemoteCommitEventCodec {
+
+    /**
+     * Return the bytes representing the given event.
+     */
+    byte[] encode(RemoteCommitEvent event) throws IOException;
+
+    /**
+     * Return the event represented by the given bytes.
+     */
+    RemoteCommitEvent decode(byte[] bytes) throws IOException;
+}
@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.kernel.Broker;
@@ -30,6 +31,7 @@ import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.lib.util.Closeable;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.concurrent.AbstractConcurrentEventManager;
+import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.util.UserException;
 
 /**
@@ -53,12 +55,18 @@ public class RemoteCommitEventManager
         (RemoteCommitEventManager.class);
 
     private final RemoteCommitProvider _provider;
+    private final transient OpenJPAConfiguration _conf;
     private boolean _transmitPersIds = false;
+    private int _coalesceMillis = 0;
+    private int _coalesceMaxObjectIds = 1000;
+    private transient RemoteCommitEventCoalescer _coalescer;
+    private final ReentrantLock _lock = new ReentrantLock();
 
     /**
      * Constructor. Supply configuration.
      */
     public RemoteCommitEventManager(OpenJPAConfiguration conf) {
+        _conf = conf;
         _provider = conf.newRemoteCommitProviderInstance();
         if (_provider != null) {
             _provider.setRemoteCommitEventManager(this);
@@ -95,6 +103,64 @@ public class RemoteCommitEventManager
         _transmitPersIds = transmit;
     }
 
+    /**
+     * The number of milliseconds for which the events of committed
+     * transactions are merged into a single event before being broadcast,
+     * or 0 to broadcast the event of each transaction on its own.
+     *
+     * @since 4.0.1
+     */
+    public int getCoalesceMillis() {
+        return _coalesceMillis;
+    }
+
+    /**
+     * The number of milliseconds for which the events of committed
+     * transactions are merged into a single event before being broadcast,
+     * or 0 to broadcast the event of each transaction on its own.
+     *
+     * @since 4.0.1
+     */
+    public void setCoalesceMillis(int millis) {
+        _coalesceMillis = millis;
+    }
+
+    /**
+     * The number of object ids above which a merged event names only the
+     * changed types instead.
+     *
+     * @since 4.0.1
+     */
+    public int getCoalesceMaxObjectIds() {
+        return _coalesceMaxObjectIds;
+    }
+
+    /**
+     * The number of object ids above which a merged event names only the
+     * changed types instead.
+     *
+     * @since 4.0.1
+     */
+    public void setCoalesceMaxObjectIds(int max) {
+        _coalesceMaxObjectIds = max;
+    }
+
+    /**
+     * Return the coalescer merging outgoing events, or null if events are
+     * broadcast on their own.
+     */
+    private RemoteCommitEventCoalescer getCoalescer() {
+        _lock.lock();
+        try {
+            if (_coalescer == null && _coalesceMillis > 0)
+                _coalescer = new RemoteCommitEventCoalescer(_provider, _coalesceMillis,
+                    _coalesceMaxObjectIds, _conf.getMetaDataRepositoryInstance());
+            return _coalescer;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
     /**
      * Adds an OpenJPA-internal listener to this RemoteCommitEventManager.
      * Listeners so registered will be fired before any that are registered
@@ -122,6 +188,13 @@ public class RemoteCommitEventManager
     @Override
     public void close() {
         if (_provider != null) {
+            _lock.lock();
+            try {
+                if (_coalescer != null)
+                    _coalescer.close();
+            } finally {
+                _lock.unlock();
+            }
             _provider.close();
             Collection listeners = getListeners();
             for (Object listener : listeners) {
@@ -150,6 +223,25 @@ public class RemoteCommitEventManager
         fireEvent(ev);
     }
 
+    /**
+     * Fire an event to local listeners only notifying them that remote
+     * commit events were lost, naming every persistent type known to the
+     * metadata repository as changed.
+     *
+     * @since 4.0.1
+     */
+    public void fireEventsLost() {
+        if (_conf == null)
+            return;
+        List<String> names = new ArrayList<>();
+        for (ClassMetaData meta : _conf.getMetaDataRepositoryInstance().getMetaDatas())
+            names.add(meta.getDescribedType().getName());
+        if (names.isEmpty())
+            return;
+        fireEvent(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS,
+            null, null, names, null));
+    }
+
     //////////////////////////////////////
     // TransactionListener implementation
     //////////////////////////////////////
@@ -158,7 +250,12 @@ public class RemoteCommitEventManager
     public void afterCommit(TransactionEvent event) {
         if (_provider != null) {
             RemoteCommitEvent rce = createRemoteCommitEvent(event);
-            if (rce != null)
+            if (rce == null)
+                return;
+            RemoteCommitEventCoalescer coalescer = getCoalescer();
+            if (coalescer != null)
+                coalescer.add(rce);
+            else
                 _provider.broadcast(rce);
         }
     }
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Numbers the events sent by a {@link AbstractRemoteCommitProvider} and
+ * detects the events it missed from its peers. Each provider keeps its last
+ * sent events in a bounded replay log. When a receiver sees a gap in the
+ * sequence of a peer, it broadcasts a
+ * {@link RemoteCommitEvent#PAYLOAD_CATCH_UP_REQUEST catch-up request} and the
+ * peer sends the events of its log again, to the requester alone if the
+ * transport knows where the request came from. Events that cannot be recovered
+ * within a timeout are reported to the provider, which then notifies its
+ * listeners that any type may have changed.
+ *  As a gap is only seen once a later event arrives, each provider also
+ * broadcasts a {@link RemoteCommitEvent#PAYLOAD_HEARTBEAT heartbeat} with the
+ * number of its last sent event every half timeout, so that the loss of its
+ * last events is detected too. Heartbeats stop once the provider has not sent
+ * for {@link #PEER_EXPIRY_TIMEOUTS} times the timeout.
+ *  Events may arrive out of order, as committing threads send them
+ * concurrently; they are delivered as they arrive, and duplicates are dropped.
+ *  Peers not heard from for {@link #PEER_EXPIRY_TIMEOUTS} times the timeout
+ * are forgotten, as restarted peers send under a new identifier.
+ *
+ * @since 4.0.1
+ */
+public class RemoteCommitSequencer {
+
+    /**
+     * The number of timeouts after which a silent peer is forgotten.
+     */
+    public static final int PEER_EXPIRY_TIMEOUTS = 10;
+
+    private final AbstractRemoteCommitProvider _provider;
+    private final int _logSize;
+    private final long _timeoutMillis;
+    private final long _requestDelayMillis;
+    private final long _id;
+
+    // sent events, guarded by the log
+    private final ArrayDeque<RemoteCommitEvent> _log;
+    private long _next = 1;
+    private long _lastSent = 0;
+    private long _lastHeartbeat = 0;
+
+    // received events by sender, guarded by the map
+    private final Map<Long, Peer> _peers = new HashMap<>();
+    private final Timer _timer = new Timer("openjpa-remote-commit-sequencer", true);
+
+    /**
+     * Constructor.
+     *
+     * @param provider the provider whose events to number
+     * @param logSize the number of sent events kept for replay
+     * @param timeoutMillis the time in milliseconds to wait for missed
+     * events before reporting them lost
+     */
+    public RemoteCommitSequencer(AbstractRemoteCommitProvider provider,
+        int logSize, long timeoutMillis) {
+        _provider = provider;
+        _logSize = logSize;
+        _timeoutMillis = timeoutMillis;
+        _requestDelayMillis = Math.max(1, timeoutMillis / 10);
+        _log = new ArrayDeque<>(Math.min(logSize, 1024));
+
+        long id;
+        do {
+            id = new SecureRandom().nextLong();
+        } while (id == 0);
+        _id = id;
+        _timer.schedule(new CatchUpTask(), _requestDelayMillis, _requestDelayMillis);
+    }
+
+    /**
+     * The identifier of the provider in the events it sends.
+     */
+    public long getId() {
+        return _id;
+    }
+
+    /**
+     * Number the given event and keep it in the replay log, unless it is
+     * already numbered.
+     */
+    public void sequence(RemoteCommitEvent event) {
+        if (event.getSequence() != 0 || isControl(event))
+            return;
+        synchronized (_log) {
+            _lastSent = System.currentTimeMillis();
+            event.setSequence(_id, _next++);
+            _log.addLast(event);
+            if (_log.size() > _logSize)
+                _log.removeFirst();
+        }
+    }
+
+    /**
+     * Handle the given received event, returning true if it should be
+     * delivered to the listeners.
+     */
+    public boolean receive(RemoteCommitEvent event) {
+        return receive(event, null);
+    }
+
+    /**
+     * Handle the given event received from the given transport-specific
+     * origin, returning true if it should be delivered to the listeners.
+     * Catch-up requests are answered to their origin if known.
+     */
+    public boolean receive(RemoteCommitEvent event, Object origin) {
+        if (event.getPayloadType() == RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST) {
+            if (event.getTargetId() == _id)
+                replay(event.getFromSequence(), origin);
+            return false;
+        }
+        boolean heartbeat = event.getPayloadType() == RemoteCommitEvent.PAYLOAD_HEARTBEAT;
+        long seq = event.getSequence();
+        if (seq == 0)
+            return !heartbeat;
+        long sender = event.getSenderId();
+        if (sender == _id)
+            return false;
+
+        boolean lost = false;
+        long now = System.currentTimeMillis();
+        synchronized (_peers) {
+            Peer peer = _peers.get(sender);
+            if (peer == null) {
+                // events sent before this provider knew the peer are not
+                // missed, as its caches were loaded after them
+                _peers.put(sender, new Peer(seq + 1, now));
+                return !heartbeat;
+            }
+            peer.lastHeard = now;
+            if (seq < peer.next)
+                return !heartbeat && peer.missing.remove(seq) != null;
+
+            // a heartbeat announces an event that was missed as well
+            long end = (heartbeat) ? seq + 1 : seq;
+            if (end - peer.next > _logSize)
+                lost = true;
+            else {
+                for (long s = peer.next; s < end; s++)
+                    peer.missing.put(s, now);
+                while (peer.missing.size() > _logSize) {
+                    peer.missing.pollFirstEntry();
+                    lost = true;
+                }
+            }
+            peer.next = seq + 1;
+        }
+        if (lost)
+            _provider.eventsLost(sender);
+        return !heartbeat;
+    }
+
+    /**
+     * Whether the given event is handled by the providers rather than
+     * delivered to listeners.
+     */
+    static boolean isControl(RemoteCommitEvent event) {
+        return event.getPayloadType() == RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST
+            || event.getPayloadType() == RemoteCommitEvent.PAYLOAD_HEARTBEAT;
+    }
+
+    /**
+     * Send again the logged events from the given sequence number on to
+     * the given requester.
+     */
+    private void replay(long from, Object requester) {
+        List<RemoteCommitEvent> events = new ArrayList<>();
+        synchronized (_log) {
+            for (RemoteCommitEvent event : _log)
+                if (event.getSequence() >= from)
+                    events.add(event);
+        }
+        for (RemoteCommitEvent event : events)
+            _provider.resend(event, requester);
+    }
+
+    /**
+     * Return a heartbeat announcing the last sent event if one is due, or
+     * null otherwise.
+     */
+    private RemoteCommitEvent heartbeat(long now) {
+        synchronized (_log) {
+            if (_next == 1 || now - _lastHeartbeat < _timeoutMillis / 2
+                || now - _lastSent > PEER_EXPIRY_TIMEOUTS * _timeoutMillis)
+                return null;
+            _lastHeartbeat = now;
+            RemoteCommitEvent event = new RemoteCommitEvent(
+                RemoteCommitEvent.PAYLOAD_HEARTBEAT, null, null, null, null);
+            event.setSequence(_id, _next - 1);
+            return event;
+        }
+    }
+
+    /**
+     * Request the missed events of each peer, report those missed for
+     * longer than the timeout, forget the peers silent for longer than the
+     * expiry, and announce the last sent event.
+     */
+    private void catchUp() {
+        long now = System.currentTimeMillis();
+        List<RemoteCommitEvent> requests = new ArrayList<>();
+        List<Long> lost = new ArrayList<>();
+        synchronized (_peers) {
+            for (Iterator<Map.Entry<Long, Peer>> peers = _peers.entrySet().iterator(); peers.hasNext();) {
+                Map.Entry<Long, Peer> entry = peers.next();
+                Peer peer = entry.getValue();
+                if (peer.missing.isEmpty()
+                    && now - peer.lastHeard > PEER_EXPIRY_TIMEOUTS * _timeoutMillis) {
+                    peers.remove();
+                    continue;
+                }
+                boolean expired = false;
+                long request = 0;
+                for (Iterator<Map.Entry<Long, Long>> itr = peer.missing.entrySet().iterator(); itr.hasNext();) {
+                    Map.Entry<Long, Long> missing = itr.next();
+                    if (now - missing.getValue() > _timeoutMillis) {
+                        itr.remove();
+                        expired = true;
+                    } else if (request == 0 && missing.getKey() > peer.requested
+                        && now - missing.getValue() >= _requestDelayMillis)
+                        request = missing.getKey();
+                }
+                if (expired)
+                    lost.add(entry.getKey());
+                if (request != 0) {
+                    // ask once for the events missed since the last request
+                    RemoteCommitEvent event = new RemoteCommitEvent(
+                        RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST, null, null, null, null);
+                    event.setCatchUp(entry.getKey(), request);
+                    requests.add(event);
+                    peer.requested = peer.next - 1;
+                }
+            }
+        }
+        for (RemoteCommitEvent request : requests)
+            _provider.broadcast(request);
+        for (Long sender : lost)
+            _provider.eventsLost(sender);
+        RemoteCommitEvent heartbeat = heartbeat(now);
+        if (heartbeat != null)
+            _provider.broadcast(heartbeat);
+    }
+
+    /**
+     * The number of peers currently tracked.
+     */
+    int getPeerCount() {
+        synchronized (_peers) {
+            return _peers.size();
+        }
+    }
+
+    /**
+     * Stop checking for missed events.
+     */
+    public void close() {
+        _timer.cancel();
+    }
+
+    /**
+     * Events received from a peer.
+     */
+    private static class Peer {
+
+        // the sequence number following the highest received
+        private long next;
+        // the sequence numbers of the missed events, with the time their
+        // gap was seen
+        private final TreeMap<Long, Long> missing = new TreeMap<>();
+        // the highest sequence number requested again
+        private long requested = 0;
+        // the time the last event was received
+        private long lastHeard;
+
+        private Peer(long next, long lastHeard) {
+            this.next = next;
+            this.lastHeard = lastHeard;
+        }
+    }
+
+    private class CatchUpTask
+        extends TimerTask {
+
+        @Override
+        public void run() {
+            try {
+                catchUp();
+            } catch (RuntimeException re) {
+                _provider.log.warn(re);
+            }
+        }
+    }
+}
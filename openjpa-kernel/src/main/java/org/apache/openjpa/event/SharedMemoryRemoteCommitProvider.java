@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.GeneralException;
+import org.apache.openjpa.util.Serialization;
+
+/**
+ * {@link RemoteCommitProvider} for factories in JVMs running on the same
+ * host. Events are appended to a ring buffer in a memory-mapped file shared
+ * by all providers configured with the same {@link #setFile file}, and each
+ * provider polls the buffer for the events appended by the others. Any
+ * number of providers may append and read concurrently.
+ *  The buffer is a broadcast log: appending never waits for readers. A
+ * provider that falls more than the {@link #setCapacity capacity} of the
+ * buffer behind misses events, and logs a warning when it does.
+ *
+ * @since 4.0.1
+ */
+public class SharedMemoryRemoteCommitProvider
+    extends AbstractRemoteCommitProvider {
+
+    private static final Localizer s_loc = Localizer.forPackage(SharedMemoryRemoteCommitProvider.class);
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class,
+        ByteOrder.nativeOrder());
+
+    // file header: magic, capacity of the ring and the position of the
+    // next record to append, all positions being absolute byte offsets
+    // that only grow and are mapped into the ring modulo its capacity
+    private static final long MAGIC = 0x4f4a5041524e4701L;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int TAIL_OFFSET = 64;
+    private static final int HEADER_SIZE = 128;
+
+    // record header: its position plus one once published, then its length,
+    // or -1 for the padding before the end of the ring
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int PADDING = -1;
+
+    private String _file = new File(System.getProperty("java.io.tmpdir"),
+        "openjpa-remote-commit.ring").getPath();
+    private int _capacity = 8 * 1024 * 1024;
+    private int _pollMicros = 50;
+    private int _stallTimeoutMillis = 1000;
+
+    private final long _id = new SecureRandom().nextLong();
+    private MappedByteBuffer _buf;
+    private long _ring;
+    private volatile boolean _running;
+    private Thread _poller;
+
+    /**
+     * The file holding the ring buffer shared by the providers to connect.
+     * Defaults to <code>openjpa-remote-commit.ring</code> in the temporary
+     * directory.
+     */
+    public String getFile() {
+        return _file;
+    }
+
+    /**
+     * The file holding the ring buffer shared by the providers to connect.
+     * Defaults to <code>openjpa-remote-commit.ring</code> in the temporary
+     * directory.
+     */
+    public void setFile(String file) {
+        _file = file;
+    }
+
+    /**
+     * The size in bytes of the ring buffer. Only used by the provider that
+     * creates the file; the others use the size found in the file.
+     * Defaults to 8 MB.
+     */
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     * The size in bytes of the ring buffer. Only used by the provider that
+     * creates the file; the others use the size found in the file.
+     * Defaults to 8 MB.
+     */
+    public void setCapacity(int capacity) {
+        _capacity = capacity;
+    }
+
+    /**
+     * The number of microseconds to wait between polls of the ring buffer
+     * when no event is available. Defaults to 50.
+     */
+    public int getPollMicros() {
+        return _pollMicros;
+    }
+
+    /**
+     * The number of microseconds to wait between polls of the ring buffer
+     * when no event is available. Defaults to 50.
+     */
+    public void setPollMicros(int pollMicros) {
+        _pollMicros = pollMicros;
+    }
+
+    /**
+     * The number of milliseconds to wait for an event whose space has been
+     * reserved to be published before skipping it, in case its process died
+     * while appending it. Defaults to 1000.
+     */
+    public int getStallTimeoutMillis() {
+        return _stallTimeoutMillis;
+    }
+
+    /**
+     * The number of milliseconds to wait for an event whose space has been
+     * reserved to be published before skipping it, in case its process died
+     * while appending it. Defaults to 1000.
+     */
+    public void setStallTimeoutMillis(int stallTimeoutMillis) {
+        _stallTimeoutMillis = stallTimeoutMillis;
+    }
+
+    @Override
+    public void endConfiguration() {
+        super.endConfiguration();
+        try {
+            _buf = map(new File(_file));
+        } catch (IOException ioe) {
+            throw new GeneralException(s_loc.get("shm-init-error", _file), ioe).setFatal(true);
+        }
+        _ring = _buf.getLong(CAPACITY_OFFSET);
+        _running = true;
+        _poller = new Thread(new Poller((long) LONG.getVolatile(_buf, TAIL_OFFSET)),
+            "openjpa-remote-commit-poller");
+        _poller.setDaemon(true);
+        _poller.start();
+        if (log.isInfoEnabled())
+            log.info(s_loc.get("shm-start", _file, String.valueOf(_ring)));
+    }
+
+    /**
+     * Map the given file, creating and initializing it if it does not
+     * exist yet. File locks are held by the JVM, so providers of the same
+     * JVM also synchronize with each other.
+     */
+    private MappedByteBuffer map(File file) throws IOException {
+        synchronized (SharedMemoryRemoteCommitProvider.class) {
+            return mapLocked(file);
+        }
+    }
+
+    private MappedByteBuffer mapLocked(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null)
+            dir.mkdirs();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            FileLock lock = channel.lock()) {
+            long ring;
+            if (raf.length() < HEADER_SIZE) {
+                ring = align(_capacity);
+                raf.setLength(HEADER_SIZE + ring);
+            } else
+                ring = raf.length() - HEADER_SIZE;
+
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ring);
+            buf.order(ByteOrder.nativeOrder());
+            if (buf.getLong(MAGIC_OFFSET) != MAGIC) {
+                buf.putLong(CAPACITY_OFFSET, ring);
+                LONG.setVolatile(buf, TAIL_OFFSET, 0L);
+                LONG.setVolatile(buf, MAGIC_OFFSET, MAGIC);
+            }
+            return buf;
+        }
+    }
+
+    @Override
+    public void broadcast(RemoteCommitEvent event) {
+        sequence(event);
+        byte[] bytes;
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            if (codec == null) {
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                    oos.writeObject(event);
+                }
+            } else
+                baos.write(codec.encode(event));
+            bytes = baos.toByteArray();
+        } catch (IOException ioe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("shm-payload-create-error"), ioe);
+            return;
+        }
+
+        // sender id, codec flag and the event
+        int length = 9 + bytes.length;
+        long size = align(RECORD_HEADER_SIZE + length);
+        if (size > _ring / 2) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("shm-event-too-large", String.valueOf(length), String.valueOf(_ring)));
+            return;
+        }
+
+        // reserve the space of the record, plus the padding up to the end
+        // of the ring if the record does not fit before it
+        long tail;
+        long pos;
+        do {
+            tail = (long) LONG.getVolatile(_buf, TAIL_OFFSET);
+            long offset = tail % _ring;
+            pos = (offset + size > _ring) ? tail + _ring - offset : tail;
+        } while (!LONG.compareAndSet(_buf, TAIL_OFFSET, tail, pos + size));
+
+        if (pos != tail)
+            publish(tail, PADDING, null);
+        publish(pos, length, bytes);
+    }
+
+    /**
+     * Write the record at the given position, making it visible to readers
+     * once complete.
+     */
+    private void publish(long pos, int length, byte[] bytes) {
+        int offset = HEADER_SIZE + (int) (pos % _ring);
+        ByteBuffer buf = _buf.duplicate().order(ByteOrder.nativeOrder());
+        buf.putInt(offset + 8, length);
+        if (bytes != null) {
+            buf.position(offset + RECORD_HEADER_SIZE);
+            buf.putLong(_id);
+            buf.put((byte) ((codec == null) ? 0 : 1));
+            buf.put(bytes);
+        }
+        LONG.setRelease(_buf, offset, pos + 1);
+    }
+
+    /**
+     * Round the given size up to a multiple of the record header size, so
+     * that the header of the padding always fits before the end of the ring.
+     */
+    private static long align(long size) {
+        return (size + RECORD_HEADER_SIZE - 1) & -RECORD_HEADER_SIZE;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        _running = false;
+        if (_poller != null) {
+            LockSupport.unpark(_poller);
+            try {
+                _poller.join(5000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads the records appended to the ring, starting with the first one
+     * appended after this provider was configured.
+     */
+    private class Poller
+        implements Runnable {
+
+        private long _pos;
+        private long _stallStart = 0;
+
+        Poller(long pos) {
+            _pos = pos;
+        }
+
+        @Override
+        public void run() {
+            while (_running) {
+                try {
+                    if (!readNext())
+                        LockSupport.parkNanos(_pollMicros * 1000L);
+                } catch (Throwable t) {
+                    if (log.isWarnEnabled())
+                        log.warn(s_loc.get("shm-receive-error", _file), t);
+                }
+            }
+            if (log.isInfoEnabled())
+                log.info(s_loc.get("shm-stop", _file));
+        }
+
+        /**
+         * Read the record at the current position, returning false if none
+         * is available yet.
+         */
+        private boolean readNext() throws IOException, ClassNotFoundException {
+            int offset = HEADER_SIZE + (int) (_pos % _ring);
+            long tail = (long) LONG.getVolatile(_buf, TAIL_OFFSET);
+            if (tail - _pos > _ring) {
+                skip(tail, "shm-lapped");
+                return true;
+            }
+            if ((long) LONG.getAcquire(_buf, offset) != _pos + 1) {
+                if (tail == _pos)
+                    return false;
+                // space is reserved but not yet published
+                long now = System.currentTimeMillis();
+                if (_stallStart == 0)
+                    _stallStart = now;
+                else if (now - _stallStart > _stallTimeoutMillis)
+                    skip(tail, "shm-stalled");
+                return false;
+            }
+            _stallStart = 0;
+
+            ByteBuffer buf = _buf.duplicate().order(ByteOrder.nativeOrder());
+            int length = buf.getInt(offset + 8);
+            if (length == PADDING) {
+                _pos += _ring - (_pos % _ring);
+                return true;
+            }
+            buf.position(offset + RECORD_HEADER_SIZE);
+            long sender = buf.getLong();
+            boolean encoded = buf.get() != 0;
+            byte[] bytes = null;
+            if (sender != _id) {
+                bytes = new byte[length - 9];
+                buf.get(bytes);
+            }
+
+            // the record may have been overwritten while it was read
+            tail = (long) LONG.getVolatile(_buf, TAIL_OFFSET);
+            if (tail - _pos > _ring) {
+                skip(tail, "shm-lapped");
+                return true;
+            }
+            _pos += align(RECORD_HEADER_SIZE + length);
+            if (bytes != null)
+                fireEvent(decode(bytes, encoded));
+            return true;
+        }
+
+        /**
+         * Jump to the given tail, dropping the records in between, and
+         * notify listeners that their events were lost.
+         */
+        private void skip(long tail, String msg) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get(msg, _file, String.valueOf(tail - _pos)));
+            _pos = tail;
+            _stallStart = 0;
+            eventsLost();
+        }
+
+        private RemoteCommitEvent decode(byte[] bytes, boolean encoded)
+            throws IOException, ClassNotFoundException {
+            if (encoded) {
+                if (codec == null)
+                    throw new IOException(s_loc.get("codec-missing", _file).getMessage());
+                return codec.decode(bytes);
+            }
+            try (ObjectInputStream ois = new Serialization.ClassResolvingObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+                return (RemoteCommitEvent) ois.readObject();
+            }
+        }
+    }
+}
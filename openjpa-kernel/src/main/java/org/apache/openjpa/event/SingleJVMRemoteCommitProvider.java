@@ -61,6 +61,7 @@ public class SingleJVMRemoteCommitProvider
 
     @Override
     public void close() {
+        super.close();
         s_providers.remove(this);
     }
 }
@@ -332,31 +332,92 @@ public class TCPRemoteCommitProvider
     // 3.3 Preview 	= 0x1428acfd;
     // 3.4 			= 0x1428acff;
     private static final long PROTOCOL_VERSION = 0x1428acff;
+    // events written by a RemoteCommitEventCodec
+    private static final long CODEC_PROTOCOL_VERSION = 0x1428ad00;
 
     @Override
     public void broadcast(final RemoteCommitEvent event) {
-        // build a packet notifying other JVMs of object changes.
+        sequence(event);
+        byte[] bytes = toPacket(event);
+        if (bytes == null)
+            return;
+        if (_broadcastThreads.isEmpty()) {
+            sendUpdatePacket(bytes);
+        } else {
+            _broadcastQueue.addPacket(bytes);
+        }
+    }
+
+    /**
+     * Send the given event again to the address the catch-up request came
+     * from, or to all addresses if it is unknown.
+     */
+    @Override
+    protected void resend(RemoteCommitEvent event, Object requester) {
+        HostAddress address = null;
+        if (requester instanceof HostAddress) {
+            _addressesLock.lock();
+            try {
+                int index = _addresses.indexOf(requester);
+                if (index != -1)
+                    address = _addresses.get(index);
+            } finally {
+                _addressesLock.unlock();
+            }
+        }
+        if (address == null) {
+            broadcast(event);
+            return;
+        }
+        byte[] bytes = toPacket(event);
+        if (bytes != null)
+            address.sendUpdatePacket(bytes);
+    }
+
+    /**
+     * Return the address listening on the given port of one of the given
+     * hosts, or null if none.
+     */
+    private HostAddress findAddress(int port, byte[]... hosts) {
+        _addressesLock.lock();
+        try {
+            for (HostAddress address : _addresses) {
+                if (address._port != port)
+                    continue;
+                byte[] host = address._address.getAddress();
+                for (byte[] candidate : hosts)
+                    if (Arrays.equals(host, candidate))
+                        return address;
+            }
+            return null;
+        } finally {
+            _addressesLock.unlock();
+        }
+    }
+
+    /**
+     * Return the packet notifying other JVMs of the given event, or null if
+     * it cannot be built.
+     */
+    private byte[] toPacket(RemoteCommitEvent event) {
         try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 ObjectOutputStream oos = new ObjectOutputStream(baos)) {
 
-            oos.writeLong(PROTOCOL_VERSION);
+            oos.writeLong((codec == null) ? PROTOCOL_VERSION : CODEC_PROTOCOL_VERSION);
             oos.writeLong(_id);
             oos.writeInt(_port);
             oos.writeObject(_localhost);
-            oos.writeObject(event);
+            if (codec == null)
+                oos.writeObject(event);
+            else
+                oos.writeObject(codec.encode(event));
             oos.flush();
-
-            byte[] bytes = baos.toByteArray();
-            baos.close();
-            if (_broadcastThreads.isEmpty()) {
-                sendUpdatePacket(bytes);
-            } else {
-                _broadcastQueue.addPacket(bytes);
-            }
+            return baos.toByteArray();
         } catch (IOException ioe) {
             if (log.isWarnEnabled()) {
                 log.warn(s_loc.get("tcp-payload-create-error"), ioe);
             }
+            return null;
         }
     }
 
@@ -375,6 +436,7 @@ public class TCPRemoteCommitProvider
 
     @Override
     public void close() {
+        super.close();
         if (_listener != null) {
             _listener.removeProvider(this);
         }
@@ -703,6 +765,16 @@ public class TCPRemoteCommitProvider
                 }
             }
 
+            /**
+             * Return the codec of the providers listening on this port.
+             */
+            private RemoteCommitEventCodec getCodec() {
+                synchronized (_providers) {
+                    return _providers.stream().map(provider -> provider.codec).
+                            filter(Objects::nonNull).findFirst().orElse(null);
+                }
+            }
+
             /**
              * Process an {@link InputStream} containing objects written
              * by {@link TCPRemoteCommitProvider#broadcast(RemoteCommitEvent)}.
@@ -712,7 +784,7 @@ public class TCPRemoteCommitProvider
                 ObjectInputStream ois = new Serialization.ClassResolvingObjectInputStream(in);
 
                 long protocolVersion = ois.readLong();
-                if (protocolVersion != PROTOCOL_VERSION) {
+                if (protocolVersion != PROTOCOL_VERSION && protocolVersion != CODEC_PROTOCOL_VERSION) {
                     if (_log.isWarnEnabled()) {
                         _log.warn(s_loc.get("tcp-wrong-version-error",
                             _s.getInetAddress().getHostAddress() + ":" + _s.getPort()));
@@ -723,7 +795,21 @@ public class TCPRemoteCommitProvider
                 long senderId = ois.readLong();
                 int senderPort = ois.readInt();
                 byte[] senderAddress = (byte[]) ois.readObject();
-                RemoteCommitEvent rce = (RemoteCommitEvent) ois.readObject();
+                RemoteCommitEvent rce;
+                if (protocolVersion == CODEC_PROTOCOL_VERSION) {
+                    byte[] bytes = (byte[]) ois.readObject();
+                    RemoteCommitEventCodec codec = getCodec();
+                    if (codec == null) {
+                        if (_log.isWarnEnabled()) {
+                            _log.warn(s_loc.get("codec-missing",
+                                _s.getInetAddress().getHostAddress() + ":" + _s.getPort()));
+                        }
+                        return;
+                    }
+                    rce = codec.decode(bytes);
+                } else {
+                    rce = (RemoteCommitEvent) ois.readObject();
+                }
                 if (_log.isTraceEnabled()) {
                     _log.trace(s_loc.get("tcp-received-event",
                         _s.getInetAddress().getHostAddress() + ":"
@@ -731,11 +817,13 @@ public class TCPRemoteCommitProvider
                 }
 
                 boolean fromSelf = senderPort == _port && Arrays.equals(senderAddress, _localhost);
+                byte[] remoteAddress = _s.getInetAddress().getAddress();
                 synchronized (_providers) {
                     // bleair: We're iterating, but currenlty there can really
                     // only be a single provider.
                     _providers.stream().filter(provider -> senderId != provider._id || !fromSelf).
-                            forEach(provider -> provider.eventManager.fireEvent(rce));
+                            forEach(provider -> provider.fireEvent(rce,
+                                provider.findAddress(senderPort, remoteAddress, senderAddress)));
                 }
             }
         }
@@ -201,6 +201,22 @@ public abstract class AbstractDataCacheInstrument extends AbstractInstrument imp
         return NO_STATS;
     }
 
+    @Override
+    public long getCoalescedLoadCount(String c) {
+        CacheStatistics stats = getStatistics();
+        if (stats != null)
+            return stats.getCoalescedLoadCount(c);
+        return NO_STATS;
+    }
+
+    @Override
+    public long getCoalescedLoadCount() {
+        CacheStatistics stats = getStatistics();
+        if (stats != null)
+            return stats.getCoalescedLoadCount();
+        return NO_STATS;
+    }
+
     @Override
     public InstrumentationLevel getLevel() {
         return InstrumentationLevel.FACTORY;
@@ -56,6 +56,23 @@ public interface DataCacheInstrument {
      */
     long getTotalWriteCount(String className);
 
+    /**
+     * Gets number of read requests for the given class since last reset that
+     * were served from the cache after waiting for another thread's load.
+     *
+     * @since 4.0.1
+     */
+    long getCoalescedLoadCount(String className);
+
+    /**
+     * Returns the number of read requests since cache statistics were last
+     * reset that were served from the cache after waiting for another
+     * thread's load.
+     *
+     * @since 4.0.1
+     */
+    long getCoalescedLoadCount();
+
     /**
      * Returns the name of the cache
      */
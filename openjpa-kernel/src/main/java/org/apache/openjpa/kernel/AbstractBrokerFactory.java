@@ -55,6 +55,7 @@ import org.apache.openjpa.event.RemoteCommitEventManager;
 import org.apache.openjpa.instrumentation.InstrumentationManager;
 import org.apache.openjpa.lib.conf.Configuration;
 import org.apache.openjpa.lib.conf.Configurations;
+import org.apache.openjpa.lib.conf.PluginValue;
 import org.apache.openjpa.lib.instrumentation.InstrumentationLevel;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.J2DoPrivHelper;
@@ -82,8 +83,7 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
     private static final Localizer _loc = Localizer.forPackage(AbstractBrokerFactory.class);
 
     // static mapping of configurations to pooled broker factories
-    private static final Map<Object,AbstractBrokerFactory> _pool =
-       Collections.synchronizedMap(new HashMap<>());
+    private static final Map<Object,AbstractBrokerFactory> _pool = new ConcurrentHashMap<>();
 
     // configuration
     private final OpenJPAConfiguration _conf;
@@ -134,11 +134,10 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
      * @since 1.1.0
      */
     protected static void pool(Object key, AbstractBrokerFactory factory) {
-        synchronized(_pool) {
-            _pool.put(key, factory);
-            factory.setPoolKey(key);
-            factory.makeReadOnly();
-        }
+        // freeze the factory before publishing it to other threads
+        factory.setPoolKey(key);
+        factory.makeReadOnly();
+        _pool.put(key, factory);
     }
 
     /**
@@ -146,7 +145,7 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
      * if none. The key must be of the form created by {@link #getPoolKey}.
      */
     public static AbstractBrokerFactory getPooledFactoryForKey(Object key) {
-        return _pool.get(key);
+        return (key == null) ? null : _pool.get(key);
     }
 
     /**
@@ -386,10 +385,8 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
             assertNoActiveTransaction();
 
             // remove from factory pool
-            synchronized (_pool) {
-                if (_pool.get(_poolKey) == this)
-                    _pool.remove(_poolKey);
-            }
+            if (_poolKey != null)
+                _pool.remove(_poolKey, this);
 
             // close all brokers
             for (Broker broker : _brokers) {
@@ -615,6 +612,15 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
         broker.setPostLoadOnMerge(_conf.getPostLoadOnMerge());
     }
 
+    /**
+     * Whether a data or query cache is configured, so that the data cache
+     * manager has caches to manage.
+     */
+    private boolean isCachingConfigured() {
+        return ((PluginValue) _conf.getValue("DataCache")).getClassName() != null
+            || ((PluginValue) _conf.getValue("QueryCache")).getClassName() != null;
+    }
+
     /**
      * Freezes the configuration of this factory.
      */
@@ -666,6 +672,10 @@ public abstract class AbstractBrokerFactory implements BrokerFactory {
             if (_conf.isInitializeEagerly()) {
                 _conf.setReadOnly(Configuration.INIT_STATE_FROZEN);
             }
+            // the data cache manager listens for the event below to restore
+            // cache snapshots, so create it before the first broker does
+            if (isCachingConfigured())
+                _conf.getDataCacheManagerInstance();
             // fire an event for all the broker factory listeners
             // registered on the configuration.
             _conf.getBrokerFactoryEventManager().fireEvent(
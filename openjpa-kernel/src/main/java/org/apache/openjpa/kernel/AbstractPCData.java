@@ -407,9 +407,10 @@ public abstract class AbstractPCData
     }
 
     /**
-     * Tracks proxy data along with list elements.
+     * Tracks proxy data along with list elements. Cached collection values
+     * are always stored in this form.
      */
-    private static class ProxyDataList
+    public static class ProxyDataList
         extends ArrayList {
 
         
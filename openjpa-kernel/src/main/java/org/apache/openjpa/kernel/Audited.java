@@ -18,7 +18,8 @@
  */
 package org.apache.openjpa.kernel;
 
-import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.openjpa.audit.AuditableOperation;
 import org.apache.openjpa.enhance.PersistenceCapable;
@@ -71,13 +72,13 @@ public final class Audited {
 	 * the array contains all the fields.
 	 */
 	public String[] getUpdatedFields() {
-		BitSet dirty = _sm.getDirty();
-		String[] names = new String[dirty.cardinality()];
-		int j = 0;
-		for (int pos = dirty.nextSetBit(0); pos != -1; pos = dirty.nextSetBit(pos+1)) {
-			names[j++] = _sm.getMetaData().getField(pos).getName();
+		FieldMetaData[] fields = _sm.getMetaData().getFields();
+		List<String> names = new ArrayList<>();
+		for (int pos = 0; pos < fields.length; pos++) {
+			if (_sm.isFieldDirty(pos))
+				names.add(fields[pos].getName());
 		}
-		return names;
+		return names.toArray(new String[names.size()]);
 	}
 
 	/**
@@ -102,6 +102,30 @@ public interface Broker
      */
     void setIgnoreChanges(boolean ignore);
 
+    /**
+     * Whether the broker is read-only. A read-only broker does not allow
+     * write operations, does not proxy the fields it loads, and detaches the
+     * instances loaded by each outermost operation at the end of that
+     * operation, so that they are not kept in its persistence context.
+     * Instances are still loaded through state managers, which are dropped
+     * with the persistence context.
+     *
+     * @since 4.0.1
+     */
+    boolean getReadOnly();
+
+    /**
+     * Whether the broker is read-only. A read-only broker does not allow
+     * write operations, does not proxy the fields it loads, and detaches the
+     * instances loaded by each outermost operation at the end of that
+     * operation, so that they are not kept in its persistence context.
+     * Instances are still loaded through state managers, which are dropped
+     * with the persistence context.
+     *
+     * @since 4.0.1
+     */
+    void setReadOnly(boolean readOnly);
+
     /**
      * Whether to allow nontransactional access to persistent state.
      */
@@ -46,6 +46,8 @@ import jakarta.transaction.Synchronization;
 
 import org.apache.openjpa.conf.Compatibility;
 import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.datacache.AbstractQueryCache;
+import org.apache.openjpa.datacache.AbstractQueryCache.EvictPolicy;
 import org.apache.openjpa.datacache.DataCache;
 import org.apache.openjpa.datacache.QueryCache;
 import org.apache.openjpa.datacache.TypesChangedEvent;
@@ -89,6 +91,7 @@ import org.apache.openjpa.util.InvalidStateException;
 import org.apache.openjpa.util.NoTransactionException;
 import org.apache.openjpa.util.ObjectExistsException;
 import org.apache.openjpa.util.ObjectId;
+import org.apache.openjpa.util.ObjectIdMap;
 import org.apache.openjpa.util.ObjectNotFoundException;
 import org.apache.openjpa.util.OpenJPAException;
 import org.apache.openjpa.util.OptimisticException;
@@ -147,6 +150,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     private static final int FLAG_REMOTE_LISTENER = 2 << 9;
     private static final int FLAG_RETAINED_CONN = 2 << 10;
     private static final int FLAG_TRANS_ENDING = 2 << 11;
+    private static final int FLAG_TYPES_DIRTIED = 2 << 12;
 
     private static final Object[] EMPTY_OBJECTS = new Object[0];
 
@@ -227,6 +231,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     private int _restoreState = RESTORE_IMMUTABLE;
     private boolean _optimistic = false;
     private boolean _ignoreChanges = false;
+    private boolean _readOnly = false;
     private boolean _multithreaded = false;
     private boolean _managed = false;
     private boolean _syncManaged = false;
@@ -288,6 +293,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                 "PopulateDataCache",
                 "RestoreState",
                 "RetainState",
+                "ReadOnly",
                 }));
     }
 
@@ -429,9 +435,12 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     /**
      * Create a {@link Map} to be used for the primary managed object cache.
      * Maps oids to state managers. By default, this creates a
-     * {@link ReferenceMap} with soft values.
+     * {@link ReferenceMap} with soft values, or an {@link ObjectIdMap} when
+     * the configured {@link ManagedObjectCache} is compact.
      */
     protected Map<?,?> newManagedObjectCache() {
+        if (_conf.getManagedObjectCacheConstant() == ManagedObjectCache.CACHE_COMPACT)
+            return new ObjectIdMap<>();
         return new ReferenceHashMap(
                 AbstractReferenceMap.ReferenceStrength.HARD, AbstractReferenceMap.ReferenceStrength.SOFT);
     }
@@ -570,6 +579,19 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         _ignoreChanges = val;
     }
 
+    @Override
+    public boolean getReadOnly() {
+        return _readOnly;
+    }
+
+    @Override
+    public void setReadOnly(boolean val) {
+        assertOpen();
+        if (val && (_flags & FLAG_FLUSH_REQUIRED) != 0)
+            throw new InvalidStateException(_loc.get("read-only-dirty"));
+        _readOnly = val;
+    }
+
     @Override
     public boolean getNontransactionalRead() {
         return _nontransRead;
@@ -1525,6 +1547,26 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         }
     }
 
+    /**
+     * Return the state managers of the instances changed in the current
+     * transaction if the given query cache evicts results by predicate, and
+     * if they describe every change made in the transaction. Returns null
+     * otherwise.
+     */
+    private Collection<OpenJPAStateManager> getChangedStates(QueryCache queryCache) {
+        if (!(queryCache instanceof AbstractQueryCache)
+            || ((AbstractQueryCache) queryCache).getEvictPolicy() != EvictPolicy.PREDICATE
+            || _largeTransaction || (_flags & FLAG_TYPES_DIRTIED) != 0)
+            return null;
+        Collection<StateManagerImpl> states = getTransactionalStates();
+        List<OpenJPAStateManager> changed = new ArrayList<>(states.size());
+        for (StateManagerImpl sm : states) {
+            if (sm.isNew() || sm.isDeleted() || sm.isDirty())
+                changed.add(sm);
+        }
+        return changed;
+    }
+
     /**
      * End the current store manager transaction. Throws an
      * exception to signal a forced rollback after failed commit, otherwise
@@ -1553,7 +1595,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                             types.addAll(pers);
                             types.addAll(del);
                             types.addAll(up);
-                            queryCache.onTypesChanged(new TypesChangedEvent(this, types));
+                            queryCache.onTypesChanged(new TypesChangedEvent(this, types,
+                                getChangedStates(queryCache)));
                         }
                     }
                     _store.commit();
@@ -2075,7 +2118,10 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     @Override
     public boolean endOperation() {
         try {
-            if (_operationCount == 1 && (_autoDetach & DETACH_NONTXREAD) != 0
+            if (_operationCount == 1 && _readOnly) {
+                // instances are never kept beyond the operation loading them
+                detachAllInternalLite();
+            } else if (_operationCount == 1 && (_autoDetach & DETACH_NONTXREAD) != 0
                 && (_flags & FLAG_ACTIVE) == 0) {
                 detachAllInternal(null);
             }
@@ -2217,7 +2263,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     protected void flush(int reason) {
         // this will enlist proxied states as necessary so we know whether we
         // have anything to flush
-        Collection transactional = getTransactionalStates();
+        hasTransactionalObjects();
 
         // do we actually have to flush?  only if our flags say so, or if
         // we have transaction listeners that need to be invoked for commit
@@ -2232,6 +2278,14 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         if (!flush && (reason != FLUSH_COMMIT || !listeners))
             return;
 
+        // only the changed instances take part in the flush, unless the
+        // transaction listeners are given all transactional instances or the
+        // versions of flushed instances are being rolled back
+        boolean all = reason == FLUSH_ROLLBACK || (listeners
+            && (reason == FLUSH_COMMIT || _transEventManager.hasFlushListeners()));
+        Collection transactional = (all) ? getTransactionalStates()
+            : getFlushableStates();
+
         Collection mobjs = null;
         _flags |= FLAG_PRESTORING;
         try {
@@ -2524,6 +2578,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
             _updatedClss = null;
         if (_deletedClss != null)
             _deletedClss = null;
+        _flags &= ~FLAG_TYPES_DIRTIED;
 
         // new cache would get cleared anyway during transitions, but doing so
         // immediately saves us some lookups
@@ -3633,6 +3688,39 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         }
         _dmLite.detachAll(states);
     }
+
+    /**
+     * Detach the given instances in place and remove them from the
+     * persistence context, so that the context does not grow with a streamed
+     * query result. New, dirty and deleted instances stay managed.
+     */
+    void detachConsumed(Collection<?> objs) {
+        lock();
+        try {
+            if (_closed)
+                return;
+            List<StateManagerImpl> states = new ArrayList<>(objs.size());
+            for (Object obj : objs) {
+                StateManagerImpl sm = getStateManagerImpl(obj, false);
+                if (sm == null || !sm.isPersistent() || sm.isNew()
+                    || sm.isDirty() || sm.isDeleted() || sm.isEmbedded())
+                    continue;
+                if (!sm.getMetaData().isDetachable()) {
+                    sm.release(true);
+                    continue;
+                }
+                _cache.remove(sm.getObjectId(), sm);
+                removeFromTransaction(sm);
+                states.add(sm);
+            }
+            if (_dmLite == null)
+                _dmLite = new DetachManagerLite(_conf);
+            _dmLite.detachAll(states);
+        } finally {
+            unlock();
+        }
+    }
+
     @Override
     public Object attach(Object obj, boolean copyNew, OpCallbacks call) {
         if (obj == null)
@@ -4274,6 +4362,31 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         return _transCache != null;
     }
 
+    /**
+     * Return a copy of the state managers that take part in a flush: the
+     * dirty ones and those that need a version check or update.
+     */
+    protected Collection<StateManagerImpl> getFlushableStates() {
+        if (!hasTransactionalObjects())
+            return new LinkedHashSet<>();
+        return _transCache.copyFlushable();
+    }
+
+    /**
+     * Notification that the given transactional instance needs a version
+     * check or update on the next flush.
+     */
+    void setVersioned(StateManagerImpl sm) {
+        lock();
+        try {
+            if (!hasTransactionalObjects())
+                _transCache = new TransactionalCache(_orderDirty);
+            _transCache.addVersioned(sm);
+        } finally {
+            unlock();
+        }
+    }
+
     /**
      * Return a copy of all dirty state managers.
      */
@@ -4510,6 +4623,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
             if (_updatedClss == null)
                 _updatedClss = new HashSet<>();
             _updatedClss.add(cls);
+            _flags |= FLAG_TYPES_DIRTIED;
         } finally {
             endOperation();
         }
@@ -4928,6 +5042,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
 
     @Override
     public void assertWriteOperation() {
+        if (_readOnly)
+            throw new InvalidStateException(_loc.get("read-only-write"));
         if ((_flags & FLAG_ACTIVE) == 0 && (!_nontransWrite
             || (_autoDetach & DETACH_NONTXREAD) != 0))
             throw new NoTransactionException(_loc.get("write-operation"));
@@ -5040,6 +5156,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         private final boolean _orderDirty;
         private Set<StateManagerImpl> _dirty = null;
         private Set<StateManagerImpl> _clean = null;
+        // clean instances that need a version check or update on flush
+        private Set<StateManagerImpl> _versioned = null;
 
         public TransactionalCache(boolean orderDirty) {
             _orderDirty = orderDirty;
@@ -5078,6 +5196,37 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
             return new LinkedHashSet<>(_dirty);
         }
 
+        /**
+         * Return a copy of the state managers that take part in a flush: the
+         * dirty ones, followed by the clean ones that need a version check
+         * or update.
+         */
+        public Collection copyFlushable() {
+            Set copy = new LinkedHashSet();
+            if (_dirty != null)
+                copy.addAll(_dirty);
+            if (_versioned != null) {
+                for (Iterator<StateManagerImpl> itr = _versioned.iterator(); itr.hasNext();) {
+                    StateManagerImpl sm = itr.next();
+                    if (sm.isVersionCheckRequired() || sm.isVersionUpdateRequired())
+                        copy.add(sm);
+                    else
+                        itr.remove();
+                }
+            }
+            return copy;
+        }
+
+        /**
+         * Record that the given clean instance needs a version check or
+         * update on the next flush.
+         */
+        public void addVersioned(StateManagerImpl sm) {
+            if (_versioned == null)
+                _versioned = new HashSet<>();
+            _versioned.add(sm);
+        }
+
         /**
          * Transfer the given instance from the dirty cache to the clean cache.
          */
@@ -5118,6 +5267,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
          * Remove the given instance from the cache.
          */
         public boolean remove(StateManagerImpl sm) {
+            if (_versioned != null)
+                _versioned.remove(sm);
             return removeCleanInternal(sm)
                 || (_dirty != null && _dirty.remove(sm));
         }
@@ -5156,6 +5307,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                 _dirty = null;
             if (_clean != null)
                 _clean = null;
+            if (_versioned != null)
+                _versioned = null;
         }
 
         @Override
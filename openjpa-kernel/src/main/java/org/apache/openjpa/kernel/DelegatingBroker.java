@@ -669,6 +669,24 @@ public class DelegatingBroker
         }
     }
 
+    @Override
+    public boolean getReadOnly() {
+        try {
+            return _broker.getReadOnly();
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        try {
+            _broker.setReadOnly(readOnly);
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
     @Override
     public boolean getNontransactionalRead() {
         try {
@@ -170,6 +170,15 @@ public class DelegatingQuery
         }
     }
 
+    @Override
+    public boolean isStreaming() {
+        try {
+            return _query.isStreaming();
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
     @Override
     public Object getCompilation() {
         try {
@@ -712,6 +721,15 @@ public class DelegatingQuery
         }
     }
 
+    @Override
+    public void setStreaming(boolean streaming) {
+        try {
+            _query.setStreaming(streaming);
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
     @Override
     public void assertOpen() {
         try {
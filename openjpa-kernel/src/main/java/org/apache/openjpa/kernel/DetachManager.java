@@ -174,16 +174,18 @@ public class DetachManager
         // create bitset of fields to detach; if mode is all we can use
         // currently loaded bitset clone, since we know all fields are loaded
         if (idxs != null) {
-            if (detachMode == DETACH_FETCH_GROUPS)
+            boolean fetchGroups = detachMode == DETACH_FETCH_GROUPS;
+            if (fetchGroups)
                 setFetchGroupFields(broker, sm, idxs);
-            else
-                idxs.or(sm.getLoaded());
 
-            // clear lrs fields
+            // add loaded fields and clear lrs fields
             FieldMetaData[] fmds = sm.getMetaData().getFields();
-            for (int i = 0; i < fmds.length; i++)
+            for (int i = 0; i < fmds.length; i++) {
                 if (fmds[i].isLRS())
                     idxs.clear(i);
+                else if (!fetchGroups && sm.isFieldLoaded(i))
+                    idxs.set(i);
+            }
         }
     }
 
@@ -225,18 +227,13 @@ public class DetachManager
             return false;
 
         // only flush if there are actually any dirty non-flushed fields
-        BitSet dirtyFields = sm.getDirty();
-        BitSet flushedFields = sm.getFlushed();
-        for (int i = 0; i < dirtyFields.size(); i++) {
-            if (dirtyFields.get(i) && !flushedFields.get(i)) {
-                if (sm.getBroker().getRollbackOnly())
-                    sm.getBroker().preFlush();
-                else
-                    sm.getBroker().flush();
-                return true;
-            }
-        }
-        return false;
+        if (!sm.hasUnflushedDirtyFields())
+            return false;
+        if (sm.getBroker().getRollbackOnly())
+            sm.getBroker().preFlush();
+        else
+            sm.getBroker().flush();
+        return true;
     }
 
     /**
@@ -169,10 +169,16 @@ class DetachedStateAttachStrategy
         if (state != null && !embedded) {
             // make sure that all the fields in the original FG are loaded
             // before we try to compare version
-            if (fields != null && !fields.equals(sm.getLoaded())) {
-                BitSet toLoad = (BitSet) fields.clone();
-                toLoad.andNot(sm.getLoaded()); // skip already loaded fields
-                if (toLoad.length() > 0)
+            if (fields != null) {
+                BitSet toLoad = null;
+                for (int i = fields.nextSetBit(0); i != -1; i = fields.nextSetBit(i + 1)) {
+                    if (sm.isFieldLoaded(i))
+                        continue; // skip already loaded fields
+                    if (toLoad == null)
+                        toLoad = new BitSet(fields.length());
+                    toLoad.set(i);
+                }
+                if (toLoad != null)
                     sm.loadFields(toLoad, null, LockLevels.LOCK_NONE, null);
                 //### we should calculate lock level above
             }
@@ -212,7 +212,7 @@ public class InverseManager implements Configurable {
      * Return whether the given field is loaded for the given instance.
      */
     private boolean isLoaded(OpenJPAStateManager sm, int field) {
-        if (sm.getLoaded().get(field))
+        if (sm.isFieldLoaded(field))
             return true;
 
         // if the field isn't loaded in the state manager, it still might be
@@ -241,7 +241,7 @@ public class InverseManager implements Configurable {
     protected void clearInverseRelations(OpenJPAStateManager sm,
         FieldMetaData fmd, FieldMetaData[] inverses, Object newValue) {
         // don't bother clearing unflushed new instances
-        if (sm.isNew() && !sm.getFlushed().get(fmd.getIndex()))
+        if (sm.isNew() && !sm.isFieldFlushed(fmd.getIndex()))
             return;
         if (fmd.getDeclaredTypeCode() == JavaTypes.PC) {
             Object initial = sm.fetchInitialField(fmd.getIndex());
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+/**
+ * Managed object cache constants.
+ *
+ * @since 4.0.1
+ */
+public interface ManagedObjectCache {
+
+    /**
+     * Track managed objects in a map with soft values, so that unmodified
+     * objects no longer referenced by the application may be reclaimed.
+     */
+    int CACHE_SOFT = 0;
+
+    /**
+     * Track managed objects in a compact open-addressing map that stores
+     * numeric ids without allocating per entry. Managed objects are held
+     * strongly until the context is cleared or closed.
+     */
+    int CACHE_COMPACT = 1;
+}
@@ -145,6 +145,50 @@ public interface OpenJPAStateManager
      */
     BitSet getFlushed();
 
+    /**
+     * Return whether the given field is loaded. Prefer this method to
+     * {@link #getLoaded} when testing single fields, as the mask may be
+     * created on each call.
+     *
+     * @since 4.0.1
+     */
+    default boolean isFieldLoaded(int field) {
+        BitSet loaded = getLoaded();
+        return loaded != null && loaded.get(field);
+    }
+
+    /**
+     * Return the number of loaded fields.
+     *
+     * @see #isFieldLoaded
+     * @since 4.0.1
+     */
+    default int getLoadedCount() {
+        BitSet loaded = getLoaded();
+        return (loaded == null) ? 0 : loaded.cardinality();
+    }
+
+    /**
+     * Return whether the given field is dirty.
+     *
+     * @see #isFieldLoaded
+     * @since 4.0.1
+     */
+    default boolean isFieldDirty(int field) {
+        return getDirty().get(field);
+    }
+
+    /**
+     * Return whether the given field has been flushed since it was last
+     * changed.
+     *
+     * @see #isFieldLoaded
+     * @since 4.0.1
+     */
+    default boolean isFieldFlushed(int field) {
+        return getFlushed().get(field);
+    }
+
     /**
      * Return a mutable mask of the unloaded fields that need loading based
      * on the given fetch configuration. Pass in null to retrieve all
@@ -50,6 +50,24 @@ public interface Query
      */
     void setIgnoreChanges(boolean ignore);
 
+    /**
+     * Whether results are returned as a forward-only list that can be
+     * traversed once and that detaches the instances it has returned
+     * once the traversal moves past them.
+     *
+     * @since 4.0.1
+     */
+    boolean isStreaming();
+
+    /**
+     * Whether results are returned as a forward-only list that can be
+     * traversed once and that detaches the instances it has returned
+     * once the traversal moves past them.
+     *
+     * @since 4.0.1
+     */
+    void setStreaming(boolean streaming);
+
     /**
      * Register a filter listener for the query.
      */
@@ -108,4 +108,13 @@ public interface QueryHints {
      * if possible.
      */
     String HINT_USE_LITERAL_IN_SQL = "openjpa.hint.UseLiteralInSQL";
+
+    /**
+     * A boolean directive to stream query results from an open cursor and
+     * detach the streamed instances once the stream has moved past them,
+     * instead of returning managed instances.
+     *
+     * @since 4.0.1
+     */
+    String HINT_STREAM_DETACH = "openjpa.hint.StreamDetach";
 }
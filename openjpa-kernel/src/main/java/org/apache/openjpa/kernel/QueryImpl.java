@@ -31,6 +31,7 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
@@ -49,6 +50,7 @@ import org.apache.openjpa.lib.rop.MergedResultObjectProvider;
 import org.apache.openjpa.lib.rop.RangeResultObjectProvider;
 import org.apache.openjpa.lib.rop.ResultList;
 import org.apache.openjpa.lib.rop.ResultObjectProvider;
+import org.apache.openjpa.lib.rop.StreamingResultList;
 import org.apache.openjpa.lib.util.ClassUtil;
 import org.apache.openjpa.lib.util.J2DoPrivHelper;
 import org.apache.openjpa.lib.util.Localizer;
@@ -88,7 +90,9 @@ public class QueryImpl implements Query {
     private transient ClassLoader _loader = null;
 
     // query has its own internal lock
-    private ReentrantLock _lock;
+    private volatile ReentrantLock _lock;
+    private static final AtomicReferenceFieldUpdater<QueryImpl, ReentrantLock> LOCK =
+        AtomicReferenceFieldUpdater.newUpdater(QueryImpl.class, ReentrantLock.class, "_lock");
 
     // unparsed state
     private Class<?> _class = null;
@@ -113,6 +117,7 @@ public class QueryImpl implements Query {
     // configuration for loading objects
     private FetchConfiguration _fc = null;
     private boolean _ignoreChanges = false;
+    private transient boolean _streaming = false;
     private Class<?> _resultMappingScope = null;
     private String _resultMappingName = null;
 
@@ -200,6 +205,24 @@ public class QueryImpl implements Query {
         }
     }
 
+    @Override
+    public boolean isStreaming() {
+        assertOpen();
+        return _streaming;
+    }
+
+    @Override
+    public void setStreaming(boolean streaming) {
+        lock();
+        try {
+            assertOpen();
+            // allowed modification: no read-only check
+            _streaming = streaming;
+        } finally {
+            unlock();
+        }
+    }
+
     @Override
     public boolean isReadOnly() {
         assertOpen();
@@ -691,15 +714,10 @@ public class QueryImpl implements Query {
                 comp = newCompilation();
                 // only cache those queries that can be compiled
                 if (comp.storeData != null) {
-
-                    synchronized (compCache) {
-                        Compilation existingComp = (Compilation) compCache.get(key);
-                        if (existingComp == null) {
-                            compCache.put(key, comp);
-                        } else {
-                            comp = existingComp;
-                        }
-                    }
+                    // prefer a compilation cached concurrently by another query
+                    Compilation existingComp = (Compilation) compCache.putIfAbsent(key, comp);
+                    if (existingComp != null)
+                        comp = existingComp;
                 }
             } else {
                 _storeQuery.populateFromCompilation(comp.storeData);
@@ -1055,7 +1073,7 @@ public class QueryImpl implements Query {
 
         // execute; if we have a result class or we have only one result
         // and so need to remove it from its array, wrap in a packing rop
-        range.lrs = isLRS(range.start, range.end);
+        range.lrs = _streaming || isLRS(range.start, range.end);
         ResultObjectProvider rop = ex.executeQuery(q, params, range);
         try {
             return toResult(q, ex, rop, range);
@@ -1306,12 +1324,16 @@ public class QueryImpl implements Query {
 
         // now that we've executed the query, we can call isAggregate and
         // hasGrouping efficiently
-        boolean detach = (_broker.getAutoDetach() &
-            AutoDetach.DETACH_NONTXREAD) > 0 && !_broker.isActive();
+        boolean detach = ((_broker.getAutoDetach() &
+            AutoDetach.DETACH_NONTXREAD) > 0 && !_broker.isActive())
+            || _broker.getReadOnly();
         boolean lrs = range.lrs && !ex.isAggregate(q) && !ex.hasGrouping(q);
         ResultList<?> res;
         try {
-            res = (!detach && lrs) ? _fc.newResultList(rop) : new EagerResultList(rop);
+            if (_streaming && lrs)
+                res = new DetachingStreamingResultList(rop);
+            else
+                res = (!detach && lrs) ? _fc.newResultList(rop) : new EagerResultList(rop);
             res.setUserObject(new Object[]{rop,ex});
             _resultLists.add(decorateResultList(res));
         } catch (OpenJPAException e) {
@@ -1681,25 +1703,26 @@ public class QueryImpl implements Query {
 
     @Override
     public void lock() {
-        if (_lock != null)
-            _lock.lock();
+        ReentrantLock lock = _lock;
+        if (lock != null)
+            lock.lock();
     }
 
     @Override
     public void unlock() {
-        if (_lock != null)
-            _lock.unlock();
+        ReentrantLock lock = _lock;
+        if (lock != null)
+            lock.unlock();
     }
 
-    public synchronized void startLocking() {
-    	if (_lock == null) {
-    		_lock = new ReentrantLock();
-    	}
+    public void startLocking() {
+        LOCK.compareAndSet(this, null, new ReentrantLock());
     }
 
-    public synchronized void stopLocking() {
-    	if (_lock != null && !_broker.getMultithreaded())
-    		_lock = null;
+    public void stopLocking() {
+        ReentrantLock lock = _lock;
+        if (lock != null && !_broker.getMultithreaded())
+            LOCK.compareAndSet(this, lock, null);
     }
 
 
@@ -1808,6 +1831,7 @@ public class QueryImpl implements Query {
     private void assertBulkModify(StoreQuery q, StoreQuery.Executor ex,
         Object[] params) {
         _broker.assertActiveTransaction();
+        _broker.assertWriteOperation();
         if (_startIdx != 0 || _endIdx != Long.MAX_VALUE)
             throw new UserException(_loc.get("no-modify-range"));
         if (_resultClass != null)
@@ -2240,6 +2264,46 @@ public class QueryImpl implements Query {
         }
     }
 
+    /**
+     * Streaming result list that detaches the instances the traversal has
+     * moved past in batches of the fetch batch size, so that the
+     * persistence context does not grow with the result.
+     */
+    private class DetachingStreamingResultList
+        extends StreamingResultList {
+
+        private static final long serialVersionUID = 1L;
+        private final List<Object> _consumed = new ArrayList<>();
+        private final int _batch = Math.max(1, _fc.getFetchBatchSize());
+
+        private DetachingStreamingResultList(ResultObjectProvider rop) {
+            super(rop);
+        }
+
+        @Override
+        protected void consumed(Object obj) {
+            if (obj instanceof Object[])
+                _consumed.addAll(Arrays.asList((Object[]) obj));
+            else
+                _consumed.add(obj);
+            if (_consumed.size() >= _batch)
+                detach();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            detach();
+        }
+
+        private void detach() {
+            if (_consumed.isEmpty())
+                return;
+            _broker.detachConsumed(_consumed);
+            _consumed.clear();
+        }
+    }
+
     /**
      * Result list that removes itself from the query's open result list
      * when it is closed. Public for testing.
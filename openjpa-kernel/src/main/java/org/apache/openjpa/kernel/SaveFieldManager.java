@@ -67,7 +67,7 @@ public class SaveFieldManager
         if (_sm.isNew() || !_sm.isPersistent() || dirty == null)
             _unloaded = new BitSet(fields.length);
         else {
-            _unloaded = (BitSet) dirty.clone();
+            _unloaded = dirty;
             for (int i = 0; i < fields.length; i++)
                 if (fields[i].getManagement() != FieldMetaData.MANAGE_PERSISTENT)
                     _unloaded.clear(i);
@@ -95,7 +95,7 @@ public class SaveFieldManager
      */
     public boolean saveField(int field) {
         // if not loaded we can't save orig value; mark as unloaded on rollback
-        if (_sm.getLoaded() != null && !_sm.getLoaded().get(field)) {
+        if (_sm._loaded != null && !_sm._loaded.get(field)) {
             _unloaded.set(field);
             return false;
         }
@@ -59,6 +59,7 @@ import org.apache.openjpa.meta.ValueMetaData;
 import org.apache.openjpa.meta.ValueStrategies;
 import org.apache.openjpa.util.ApplicationIds;
 import org.apache.openjpa.util.Exceptions;
+import org.apache.openjpa.util.FieldSet;
 import org.apache.openjpa.util.ImplHelper;
 import org.apache.openjpa.util.InternalException;
 import org.apache.openjpa.util.InvalidStateException;
@@ -114,14 +115,14 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
     // information about the instance
     private transient PersistenceCapable _pc = null;
     protected transient ClassMetaData _meta = null;
-    protected BitSet _loaded = null;
+    protected FieldSet _loaded = null;
 
     // Care needs to be taken when accessing these fields as they will can be null if no fields are
     // dirty, or have been flushed.
-    private BitSet _dirty = null;
-    private BitSet _flush = null;
+    private FieldSet _dirty = null;
+    private FieldSet _flush = null;
 
-    private BitSet _delayed = null;
+    private FieldSet _delayed = null;
     private int _flags = 0;
 
     // id is the state manager identity; oid is the persistent identity.  oid
@@ -220,10 +221,10 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         _pc.pcReplaceStateManager(this);
         _state = newState;
 
-        // clone the field bitsets.
-        _dirty=(BitSet)sm.getDirty().clone();
-        _loaded = (BitSet)sm.getLoaded().clone();
-        _flush = (BitSet) sm.getFlushed().clone();
+        // clone the field sets.
+        _dirty = (sm._dirty == null) ? null : sm._dirty.copy();
+        _loaded = sm._loaded.copy();
+        _flush = (sm._flush == null) ? null : sm._flush.copy();
         _version = sm.getVersion();
 
         _oid = sm.getObjectId();
@@ -358,7 +359,7 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         pc.pcReplaceStateManager(this);
 
         FieldMetaData[] fmds = _meta.getFields();
-        _loaded = new BitSet(fmds.length);
+        _loaded = FieldSet.newInstance(fmds.length);
 
         // mark primary key and non-persistent fields as loaded
         for(int i : _meta.getPkAndNonPersistentManagedFmdIndexes()){
@@ -504,7 +505,17 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
 
     @Override
     public BitSet getLoaded() {
-        return _loaded;
+        return (_loaded == null) ? null : _loaded.toBitSet();
+    }
+
+    @Override
+    public boolean isFieldLoaded(int field) {
+        return _loaded != null && _loaded.get(field);
+    }
+
+    @Override
+    public int getLoadedCount() {
+        return (_loaded == null) ? 0 : _loaded.cardinality();
     }
 
     @Override
@@ -1129,10 +1140,10 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
             boolean needPostUpdate = !(wasNew && !wasFlushed)
                     && (ImplHelper.getUpdateFields(this) != null);
 
-            // all dirty fields were flushed, we are referencing the _dirty BitSet directly here
+            // all dirty fields were flushed, we are referencing the _dirty set directly here
             // because we don't want to instantiate it if we don't have to.
             if (_dirty != null) {
-                getFlushed().or(_dirty);
+                flushedFields().or(_dirty);
             }
 
             // important to set flushed bit after calling _state.flush so
@@ -1232,9 +1243,10 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
                 replaceField(_pc, savepoint, i);
             }
         }
-        _loaded = loaded;
-        _dirty = savepoint.getDirty();
-        _flush = savepoint.getFlushed();
+        int fields = _meta.getFields().length;
+        _loaded = FieldSet.valueOf(loaded, fields);
+        _dirty = FieldSet.valueOf(savepoint.getDirty(), fields);
+        _flush = FieldSet.valueOf(savepoint.getFlushed(), fields);
         _version = savepoint.getVersion();
         _loadVersion = savepoint.getLoadVersion();
     }
@@ -1692,7 +1704,7 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
     @Override
     public void setDelayed(int field, boolean delay) {
         if (_delayed == null) {
-            _delayed = new BitSet();
+            _delayed = FieldSet.newInstance(_meta.getFields().length);
         }
         if (delay) {
             _delayed.set(field);
@@ -2805,7 +2817,10 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         lock();
         try {
             _single.storeObjectField(field, curVal);
-            _single.proxy(true, false);
+            // instances of a read-only broker are detached at the end of the
+            // operation loading them, so there are no changes to track
+            if (!_broker.getReadOnly())
+                _single.proxy(true, false);
             replaceField(_pc, _single, field);
             setLoaded(field, true);
             postLoad(field, null);
@@ -3510,10 +3525,12 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
      * Set whether this instance requires a version check on the next flush.
      */
     void setCheckVersion(boolean versionCheck) {
-        if (versionCheck)
+        if (versionCheck) {
             _flags |= FLAG_VERSION_CHECK;
-        else
+            _broker.setVersioned(this);
+        } else {
             _flags &= ~FLAG_VERSION_CHECK;
+        }
     }
 
     /**
@@ -3528,10 +3545,12 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
      * Set whether this instance requires a version update on the next flush.
      */
     void setUpdateVersion(boolean versionUpdate) {
-        if (versionUpdate)
+        if (versionUpdate) {
             _flags |= FLAG_VERSION_UPDATE;
-        else
+            _broker.setVersioned(this);
+        } else {
             _flags &= ~FLAG_VERSION_UPDATE;
+        }
     }
 
     /**
@@ -3641,12 +3660,23 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
     @Override
     public BitSet getFlushed() {
         if (_flush == null) {
-            _flush = new BitSet(_meta.getFields().length);
+            return new BitSet(_meta.getFields().length);
+        }
+        return _flush.toBitSet();
+    }
+
+    /**
+     * Return the flushed fields, creating the set if needed.
+     */
+    private FieldSet flushedFields() {
+        if (_flush == null) {
+            _flush = FieldSet.newInstance(_meta.getFields().length);
         }
         return _flush;
     }
 
-    private boolean isFieldFlushed(int index) {
+    @Override
+    public boolean isFieldFlushed(int index) {
         if (_flush == null) {
             return false;
         }
@@ -3654,39 +3684,70 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
     }
 
     /**
-     * Will clear the bit at the specified if the _flush BetSet has been created.
+     * Will clear the bit at the specified if the _flush set has been created.
      */
     private void clearFlushField(int index) {
         if (_flush != null) {
-            getFlushed().clear(index);
+            _flush.clear(index);
         }
     }
 
     @Override
     public BitSet getDirty() {
         if (_dirty == null) {
-            _dirty = new BitSet(_meta.getFields().length);
+            return new BitSet(_meta.getFields().length);
+        }
+        return _dirty.toBitSet();
+    }
+
+    /**
+     * Return the dirty fields, creating the set if needed.
+     */
+    private FieldSet dirtyFields() {
+        if (_dirty == null) {
+            _dirty = FieldSet.newInstance(_meta.getFields().length);
         }
         return _dirty;
     }
 
-    private boolean isFieldDirty(int index) {
+    @Override
+    public boolean isFieldDirty(int index) {
         if (_dirty == null) {
             return false;
         }
         return _dirty.get(index);
     }
 
+    /**
+     * Return whether any field is dirty, without copying the dirty mask.
+     */
+    boolean hasDirtyFields() {
+        return _dirty != null && !_dirty.isEmpty();
+    }
+
+    /**
+     * Return whether any dirty field has not been flushed since it was
+     * last changed, without copying the masks.
+     */
+    boolean hasUnflushedDirtyFields() {
+        if (_dirty == null)
+            return false;
+        for (int i = _dirty.nextSetBit(0); i != -1; i = _dirty.nextSetBit(i + 1))
+            if (_flush == null || !_flush.get(i))
+                return true;
+        return false;
+    }
+
     private void setFieldDirty(int index) {
-        getDirty().set(index);
+        dirtyFields().set(index);
     }
 
     /**
-     * Will clear the bit at the specified index if the _dirty BetSet has been created.
+     * Will clear the bit at the specified index if the _dirty set has been created.
      */
     private void clearDirty(int index) {
         if (_dirty != null) {
-            getDirty().clear(index);
+            _dirty.clear(index);
         }
     }
 
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel.exps;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.openjpa.kernel.Filters;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+
+/**
+ * An equality predicate of a query filter that every result must satisfy:
+ * a field of the candidate, or the primary key field of an entity the
+ * candidate refers to, compared to a parameter or a literal. Used to decide
+ * whether a change to an instance may affect the results of a query.
+ *
+ * @since 4.0.1
+ */
+public class EqualityPredicate
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String[] _path;
+    private final boolean _param;
+    private final Object _value;
+
+    private EqualityPredicate(String[] path, boolean param, Object value) {
+        _path = path;
+        _param = param;
+        _value = value;
+    }
+
+    /**
+     * Return the equality predicates that are conjuncts of the filter of the
+     * given in-memory query expressions, or null if there are none.
+     */
+    public static List<EqualityPredicate> extract(QueryExpressions exps) {
+        if (exps == null || !(exps.filter instanceof Exp))
+            return null;
+        List<EqualityPredicate> preds = new ArrayList<>();
+        addConjuncts((Exp) exps.filter, preds);
+        return (preds.isEmpty()) ? null : preds;
+    }
+
+    private static void addConjuncts(Exp exp, List<EqualityPredicate> preds) {
+        if (exp instanceof AndExpression) {
+            addConjuncts(((AndExpression) exp).getExpression1(), preds);
+            addConjuncts(((AndExpression) exp).getExpression2(), preds);
+        } else if (exp instanceof EqualExpression) {
+            Val v1 = ((EqualExpression) exp).getValue1();
+            Val v2 = ((EqualExpression) exp).getValue2();
+            EqualityPredicate pred = newInstance(v1, v2);
+            if (pred == null)
+                pred = newInstance(v2, v1);
+            if (pred != null)
+                preds.add(pred);
+        }
+    }
+
+    /**
+     * Return a predicate comparing the given path to the given parameter or
+     * literal, or null if the values are of another form.
+     */
+    private static EqualityPredicate newInstance(Val path, Val val) {
+        if (path.getClass() != CandidatePath.class)
+            return null;
+        boolean param;
+        Object value = null;
+        if (val instanceof Param) {
+            param = true;
+            value = ((Param) val).getParameterKey();
+        } else if (val instanceof Lit) {
+            param = false;
+            value = ((Lit) val).getValue();
+        } else
+            return null;
+
+        CandidatePath cand = (CandidatePath) path;
+        if (cand._correlationVar != null || cand._actions == null
+            || cand._actions.isEmpty() || cand._actions.size() > 2)
+            return null;
+        String[] names = new String[cand._actions.size()];
+        FieldMetaData prev = null;
+        for (int i = 0; i < names.length; i++) {
+            Object action = cand._actions.get(i);
+            if (!(action instanceof CandidatePath.Traversal))
+                return null;
+            FieldMetaData fmd = ((CandidatePath.Traversal) action).field;
+            if (fmd.isEmbeddedPC())
+                return null;
+            switch (fmd.getDeclaredTypeCode()) {
+                case JavaTypes.ARRAY:
+                case JavaTypes.COLLECTION:
+                case JavaTypes.MAP:
+                    return null;
+            }
+            // the second step must be the primary key of a related entity
+            if (prev != null && (prev.getDeclaredTypeCode() != JavaTypes.PC
+                || !fmd.isPrimaryKey()))
+                return null;
+            names[i] = fmd.getName();
+            prev = fmd;
+        }
+        return new EqualityPredicate(names, param, value);
+    }
+
+    /**
+     * Whether the given instance, in its current or its initial state, may
+     * satisfy this predicate when the query runs with the given parameters.
+     * Returns true whenever the values involved are not known.
+     */
+    public boolean mayMatch(OpenJPAStateManager sm, Map<Object,Object> params) {
+        Object expected;
+        if (_param) {
+            if (params == null || !params.containsKey(_value))
+                return true;
+            expected = params.get(_value);
+        } else
+            expected = _value;
+        if (expected == null)
+            return true;
+
+        ClassMetaData meta = sm.getMetaData();
+        FieldMetaData fmd = meta.getField(_path[0]);
+        if (fmd == null)
+            return true;
+        int idx = fmd.getIndex();
+        if (!sm.isFieldLoaded(idx))
+            return true;
+        try {
+            if (matches(sm, fmd, sm.fetch(idx), expected))
+                return true;
+            if (sm.isNew() || !sm.isFieldDirty(idx))
+                return false;
+            return matches(sm, fmd, sm.fetchInitialField(idx), expected);
+        } catch (RuntimeException re) {
+            // the value or the initial value is not available
+            return true;
+        }
+    }
+
+    /**
+     * Whether the given value of the first field of the path may equal the
+     * expected value.
+     */
+    private boolean matches(OpenJPAStateManager sm, FieldMetaData fmd,
+        Object val, Object expected) {
+        if (val == null)
+            return false;
+        if (fmd.getDeclaredTypeCode() == JavaTypes.PC) {
+            OpenJPAStateManager rel = sm.getContext().getStateManager(val);
+            if (rel == null)
+                return true;
+            if (_path.length == 1)
+                return Objects.equals(rel.getObjectId(), expected);
+            FieldMetaData pk = rel.getMetaData().getField(_path[1]);
+            if (pk == null)
+                return true;
+            val = rel.fetch(pk.getIndex());
+        }
+        return equal(val, expected);
+    }
+
+    private static boolean equal(Object val, Object expected) {
+        if (val == null)
+            return false;
+        if (val.getClass() != expected.getClass()) {
+            Class<?> c = Filters.promote(val.getClass(), expected.getClass());
+            val = Filters.convert(val, c);
+            expected = Filters.convert(expected, c);
+        }
+        return val.equals(expected);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(".", _path) + " = " + ((_param) ? ":" : "") + _value;
+    }
+}
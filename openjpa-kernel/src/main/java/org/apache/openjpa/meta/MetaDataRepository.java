@@ -34,6 +34,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.enhance.DynamicPersistenceCapable;
@@ -158,6 +159,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
     protected boolean _preload = false;
     protected boolean _preloadComplete = false;
     protected boolean _locking = true;
+    private final ReentrantLock _lock = new ReentrantLock();
     private static final String PRELOAD_STR = "Preload";
 
     // A boolean used to decide whether or not we need to call to PCEnhancer to check whether we have any down level
@@ -313,7 +315,16 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      * If the openjpa.MetaDataRepository plugin value Preload=true is set, this method will load all
      * MetaData for all persistent classes and will remove locking from this class.
      */
-    public synchronized void preload() {
+    public void preload() {
+        lock();
+        try {
+            preloadInternal();
+        } finally {
+            unlock();
+        }
+    }
+
+    private void preloadInternal() {
         if (!_preload) {
             return;
         }
@@ -390,8 +401,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public ClassMetaData getMetaData(Class<?> cls, ClassLoader envLoader, boolean mustExist) {
         if (_locking) {
-            synchronized(this){
+            lock();
+            try {
                 return getMetaDataInternal(cls, envLoader, mustExist);
+            } finally {
+                unlock();
             }
         } else {
             return getMetaDataInternal(cls, envLoader, mustExist);
@@ -642,7 +656,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      * <li>Always make sure the superclass metadata is resolved before the subclass metadata so that
      * the subclass can access the super's list of fields.</li>
      * </ol>
-     * Note that the code calling this method is synchronized, so this method doesn't have to be.
+     * Note that the code calling this method holds the repository lock, so this method doesn't have to.
      */
     private void resolve(ClassMetaData meta) {
         // return anything that has its metadata resolved, because that means
@@ -863,8 +877,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public ClassMetaData[] getMetaDatas() {
         if (_locking) {
-            synchronized(this){
+            lock();
+            try {
                 return getMetaDatasInternal();
+            } finally {
+                unlock();
             }
         } else {
             return getMetaDatasInternal();
@@ -929,11 +946,14 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         ClassMetaData meta = newClassMetaData(cls);
         _factory.getDefaults().populate(meta, access, ignoreTransient);
 
-        // synchronize on this rather than the map, because all other methods
-        // that access _metas are synchronized on this
+        // lock the repository rather than the map, because all other methods
+        // that access _metas hold the repository lock
         if (_locking) {
-            synchronized(this){
+            lock();
+            try {
                 return metasPutInternal(cls, meta);
+            } finally {
+                unlock();
             }
         } else {
             return metasPutInternal(cls, meta);
@@ -1079,8 +1099,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public boolean removeMetaData(Class<?> cls) {
         if(_locking){
-            synchronized(this){
+            lock();
+            try {
                 return removeMetaDataInternal(cls);
+            } finally {
+                unlock();
             }
         }else{
             return removeMetaDataInternal(cls);
@@ -1128,8 +1151,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     void setInterfaceImpl(ClassMetaData meta, Class<?> impl) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 setInterfaceImplInternal(meta, impl);
+            } finally {
+                unlock();
             }
         } else {
             setInterfaceImplInternal(meta, impl);
@@ -1270,9 +1296,12 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         ClassMetaData[] mapped = null;
         if (vals != null) {
             if (_locking) {
+                // copy so that the metadata is not resolved while holding the monitor of the collection
+                Collection<Class<?>> copy;
                 synchronized (vals) {
-                    mapped = getImplementorMetaDatasInternal(vals, envLoader, mustExist);
+                    copy = new ArrayList<>(vals);
                 }
+                mapped = getImplementorMetaDatasInternal(copy, envLoader, mustExist);
             } else {
                 mapped = getImplementorMetaDatasInternal(vals, envLoader, mustExist);
             }
@@ -1346,8 +1375,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         if (cls == null)
             return null;
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return addPersistenceAwareInternal(cls);
+            } finally {
+                unlock();
             }
         } else {
             return addPersistenceAwareInternal(cls);
@@ -1415,8 +1447,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         if (!iface.isInterface())
             throw new MetaDataException(_loc.get("not-non-mapped", iface));
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return addNonMappedInterfaceInternal(iface);
+            } finally {
+                unlock();
             }
         } else {
             return addNonMappedInterfaceInternal(iface);
@@ -1451,8 +1486,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
             if (_log.isTraceEnabled())
             _log.trace(_loc.get("clear-repos", this));
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 clearInternal();
+            } finally {
+                unlock();
             }
         } else {
             clearInternal();
@@ -1485,8 +1523,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public Set<String> getPersistentTypeNames(boolean devpath, ClassLoader envLoader) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return getPersistentTypeNamesInternal(devpath, envLoader);
+            } finally {
+                unlock();
             }
         } else {
             return getPersistentTypeNamesInternal(devpath, envLoader);
@@ -1528,8 +1569,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public Collection<Class<?>> loadPersistentTypes(boolean devpath, ClassLoader envLoader, boolean mustExist) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return loadPersistentTypesInternal(devpath, envLoader, mustExist);
+            } finally {
+                unlock();
             }
         } else {
             return loadPersistentTypesInternal(devpath, envLoader, mustExist);
@@ -1652,10 +1696,19 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
     /**
      * Updates our data structures with the latest registered classes.
      * 
-     * This method is synchronized to make sure that all data structures are fully updated
+     * This method holds the repository lock to make sure that all data structures are fully updated
      *  before other threads attempt to call this method
      */
-    synchronized Class<?>[] processRegisteredClasses(ClassLoader envLoader) {
+    Class<?>[] processRegisteredClasses(ClassLoader envLoader) {
+        lock();
+        try {
+            return processRegisteredClassesInternal(envLoader);
+        } finally {
+            unlock();
+        }
+    }
+
+    private Class<?>[] processRegisteredClassesInternal(ClassLoader envLoader) {
 
         Class<?>[] reg;
         /*Synchronize `_registered` cache to block MetaDataRepository.register() from adding
@@ -1748,10 +1801,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         if (_log.isTraceEnabled())
             _log.trace(_loc.get("process-registered", cls));
 
-        // update subclass lists; synchronize on this because accessing _metas
+        // update subclass lists; lock the repository because accessing _metas
         // requires it
         Class<?> leastDerived = cls;
-        synchronized (this) {
+        lock();
+        try {
             ClassMetaData meta;
             for (Class<?> anc = cls; (anc = PCRegistry.getPersistentSuperclass(anc)) != null;) {
                 addToCollection(_subs, anc, cls, true);
@@ -1760,6 +1814,8 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
                     meta.clearSubclassCache();
                 leastDerived = anc;
             }
+        } finally {
+            unlock();
         }
 
         // update oid mappings if this is a base concrete class
@@ -2000,8 +2056,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public QueryMetaData getQueryMetaData(Class<?> cls, String name, ClassLoader envLoader, boolean mustExist) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return getQueryMetaDataInternal(cls, name, envLoader, mustExist);
+            } finally {
+                unlock();
             }
         } else {
             return getQueryMetaDataInternal(cls, name, envLoader, mustExist);
@@ -2075,8 +2134,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public QueryMetaData[] getQueryMetaDatas() {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return _queries.values().toArray(new QueryMetaData[_queries.size()]);
+            } finally {
+                unlock();
             }
         } else {
             return _queries.values().toArray(new QueryMetaData[_queries.size()]);
@@ -2093,8 +2155,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public QueryMetaData getCachedQueryMetaData(String name) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return _queries.get(name);
+            } finally {
+                unlock();
             }
         } else {
             return _queries.get(name);
@@ -2106,10 +2171,13 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public QueryMetaData addQueryMetaData(Class<?> cls, String name) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 QueryMetaData meta = newQueryMetaData(cls, name);
                 _queries.put(name, meta);
                 return meta;
+            } finally {
+                unlock();
             }
         }else{
             QueryMetaData meta = newQueryMetaData(cls, name);
@@ -2120,9 +2188,12 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
 
     public QueryMetaData addQueryMetaData(QueryMetaData meta) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 final QueryMetaData queryMetaData = _queries.get(meta.getName());
                 return queryMetaData != null ? queryMetaData : _queries.put(meta.getName(), meta);
+            } finally {
+                unlock();
             }
         } else {
             final QueryMetaData queryMetaData = _queries.get(meta.getName());
@@ -2147,8 +2218,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         if (meta == null)
             return false;
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return _queries.remove(meta.getName()) != null;
+            } finally {
+                unlock();
             }
         } else {
             return _queries.remove(meta.getName()) != null;
@@ -2160,10 +2234,13 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public boolean removeQueryMetaData(Class<?> cls, String name) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 if (name == null)
                     return false;
                 return _queries.remove(name) != null;
+            } finally {
+                unlock();
             }
         } else {
             if (name == null)
@@ -2200,8 +2277,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public SequenceMetaData getSequenceMetaData(String name, ClassLoader envLoader, boolean mustExist) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return getSequenceMetaDataInternal(name, envLoader, mustExist);
+            } finally {
+                unlock();
             }
         } else {
             return getSequenceMetaDataInternal(name, envLoader, mustExist);
@@ -2277,8 +2357,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public SequenceMetaData[] getSequenceMetaDatas() {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return _seqs.values().toArray(new SequenceMetaData[_seqs.size()]);
+            } finally {
+                unlock();
             }
         } else {
             return _seqs.values().toArray(new SequenceMetaData[_seqs.size()]);
@@ -2290,8 +2373,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public SequenceMetaData getCachedSequenceMetaData(String name) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return _seqs.get(name);
+            } finally {
+                unlock();
             }
         } else {
             return _seqs.get(name);
@@ -2303,10 +2389,13 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public SequenceMetaData addSequenceMetaData(String name) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 SequenceMetaData meta = newSequenceMetaData(name);
                 _seqs.put(name, meta);
                 return meta;
+            } finally {
+                unlock();
             }
         } else {
             SequenceMetaData meta = newSequenceMetaData(name);
@@ -2329,8 +2418,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         if (meta == null)
             return false;
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return _seqs.remove(meta.getName()) != null;
+            } finally {
+                unlock();
             }
         } else {
             return _seqs.remove(meta.getName()) != null;
@@ -2344,8 +2436,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         if (name == null)
             return false;
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return _seqs.remove(name) != null;
+            } finally {
+                unlock();
             }
         } else {
             return _seqs.remove(name) != null;
@@ -2366,13 +2461,16 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public void addSystemListener(Object listener) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 // copy to avoid issues with ListenerList and avoid unncessary
                 // locking on the list during runtime
                 LifecycleEventManager.ListenerList listeners = new LifecycleEventManager.ListenerList(_listeners);
                 listeners.add(listener);
                 _listeners = listeners;
                 _systemListenersActivated = true;
+            } finally {
+                unlock();
             }
         } else {
             LifecycleEventManager.ListenerList listeners = new LifecycleEventManager.ListenerList(_listeners);
@@ -2387,8 +2485,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public boolean removeSystemListener(Object listener) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return removeSystemListenerInternal(listener);
+            } finally {
+                unlock();
             }
         } else {
             return removeSystemListenerInternal(listener);
@@ -2420,8 +2521,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
     @Override
     public void close() {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 closeInternal();
+            } finally {
+                unlock();
             }
         } else {
             closeInternal();
@@ -2436,6 +2540,25 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         clear();
     }
 
+    /**
+     * Acquire the repository lock. Unlike a monitor, the lock does not pin
+     * the carrier thread of a virtual thread that blocks while holding it.
+     *
+     * @since 4.0.1
+     */
+    protected void lock() {
+        _lock.lock();
+    }
+
+    /**
+     * Release the repository lock.
+     *
+     * @since 4.0.1
+     */
+    protected void unlock() {
+        _lock.unlock();
+    }
+
     /**
      * Query key struct.
      */
@@ -2472,8 +2595,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      */
     public XMLMetaData getXMLMetaData(Class<?> cls) {
         if (_locking) {
-            synchronized (this) {
+            lock();
+            try {
                 return getXMLMetaDataInternal(cls);
+            } finally {
+                unlock();
             }
         } else {
             return getXMLMetaDataInternal(cls);
@@ -2506,8 +2632,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
     public XMLClassMetaData addXMLClassMetaData(Class<?> type) {
         XMLClassMetaData meta = newXMLClassMetaData(type);
         if(_locking){
-            synchronized(this){
+            lock();
+            try {
                 _xmlmetas.put(type, meta);
+            } finally {
+                unlock();
             }
         }else{
             _xmlmetas.put(type, meta);
@@ -22,9 +22,11 @@ import java.util.AbstractCollection;
 import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
@@ -35,6 +37,7 @@ import org.apache.openjpa.lib.util.collections.AbstractReferenceMap;
 import org.apache.openjpa.lib.util.collections.FilterIterator;
 import org.apache.openjpa.lib.util.collections.IteratorChain;
 import org.apache.openjpa.lib.util.concurrent.ConcurrentHashMap;
+import org.apache.openjpa.lib.util.concurrent.ConcurrentMap;
 import org.apache.openjpa.lib.util.concurrent.ConcurrentReferenceHashMap;
 
 /**
@@ -65,6 +68,11 @@ public class CacheMap
     // number of pinned values (not including keys not mapped to values)
     private int _pinnedSize = 0;
 
+    // estimated weight of the hard references, tracked when bounded
+    private long _maxWeight = -1;
+    private final Map _weights = new ConcurrentHashMap();
+    private final AtomicLong _weight = new AtomicLong();
+
     private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock(true);
     private final Lock _readLock = rwl.readLock();
     private final Lock _writeLock = rwl.writeLock();
@@ -126,19 +134,25 @@ public class CacheMap
         };
         pinnedMap = new ConcurrentHashMap();
 
+        cacheMap = newCacheMap(lru, size, load, concurrencyLevel);
+        if (max < 0)
+            max = Integer.MAX_VALUE;
+        cacheMap.setMaxSize(max);
+    }
+
+    /**
+     * Create the map for non-expired and non-pinned references. Invoked from
+     * the constructor, so implementations must not rely on subclass state.
+     * The returned map must call {@link #cacheMapOverflowRemoved} from its
+     * {@link SizedMap#overflowRemoved} callback.
+     *
+     * @since 4.0.1
+     */
+    protected SizedMap newCacheMap(boolean lru, int size, float load,
+        int concurrencyLevel) {
         if (!lru) {
-            cacheMap = new ConcurrentHashMap(size, load) {
-                
-                private static final long serialVersionUID = 1L;
+            return new ConcurrentHashMap(size, load) {
 
-                @Override
-                public void overflowRemoved(Object key, Object value) {
-                    cacheMapOverflowRemoved(key, value);
-                }
-            };
-        } else {
-            cacheMap = new LRUMap(size, load) {
-                
                 private static final long serialVersionUID = 1L;
 
                 @Override
@@ -147,15 +161,22 @@ public class CacheMap
                 }
             };
         }
-        if (max < 0)
-            max = Integer.MAX_VALUE;
-        cacheMap.setMaxSize(max);
+        return new LRUMap(size, load) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void overflowRemoved(Object key, Object value) {
+                cacheMapOverflowRemoved(key, value);
+            }
+        };
     }
 
     /**
      * Called from {@link SizedMap#overflowRemoved} in the cache map.
      */
     protected void cacheMapOverflowRemoved(Object key, Object value) {
+        releaseWeight(key, value);
         if (softMap.size() < softMap.getMaxSize())
             put(softMap, key, value);
         else
@@ -181,7 +202,10 @@ public class CacheMap
      * take additional actions.
      */
     protected Object put(Map map, Object key, Object value) {
-        return map.put(key, value);
+        Object val = map.put(key, value);
+        if (map == cacheMap && _maxWeight >= 0)
+            addWeight(key, value);
+        return val;
     }
 
     /**
@@ -189,7 +213,10 @@ public class CacheMap
      * take additional actions.
      */
     protected Object remove(Map map, Object key) {
-        return map.remove(key);
+        Object val = map.remove(key);
+        if (map == cacheMap && val != null)
+            releaseWeight(key, val);
+        return val;
     }
 
     /**
@@ -247,6 +274,137 @@ public class CacheMap
         return (max == Integer.MAX_VALUE) ? -1 : max;
     }
 
+    /**
+     * The maximum total {@link #weigh weight} of the hard references to
+     * maintain, or -1 for no limit. When the limit is exceeded, entries are
+     * evicted as if the map had overflowed its size until the weight is
+     * back within it. Set the limit before adding entries; the weight of
+     * the entries already in the map is not known.
+     *
+     * @since 4.0.1
+     */
+    public void setMaxWeight(long weight) {
+        _maxWeight = (weight < 0) ? -1 : weight;
+        evictOverweight();
+    }
+
+    /**
+     * The maximum total weight of the hard references to maintain, or -1
+     * for no limit.
+     *
+     * @since 4.0.1
+     */
+    public long getMaxWeight() {
+        return _maxWeight;
+    }
+
+    /**
+     * The total weight of the hard references in the map, if the weight is
+     * {@link #setMaxWeight bounded}.
+     *
+     * @since 4.0.1
+     */
+    public long getWeight() {
+        return _weight.get();
+    }
+
+    /**
+     * Return the weight of the given entry for a {@link #setMaxWeight
+     * bounded} map. Returns 1 by default, so that the weight of the map is
+     * its number of hard references.
+     *
+     * @since 4.0.1
+     */
+    protected long weigh(Object key, Object value) {
+        return 1;
+    }
+
+    /**
+     * Invoked when the weight of the hard references changes by the given
+     * amount because the given entry was added, replaced or removed.
+     *
+     * @since 4.0.1
+     */
+    protected void weightChanged(Object key, Object value, long delta) {
+    }
+
+    private void addWeight(Object key, Object value) {
+        long weight = weigh(key, value);
+        Long prev = (Long) _weights.put(key, weight);
+        long delta = (prev == null) ? weight : weight - prev;
+        if (delta != 0) {
+            _weight.addAndGet(delta);
+            weightChanged(key, value, delta);
+        }
+    }
+
+    private void releaseWeight(Object key, Object value) {
+        if (_maxWeight < 0)
+            return;
+        Long prev = (Long) _weights.remove(key);
+        if (prev != null) {
+            _weight.addAndGet(-prev);
+            weightChanged(key, value, -prev);
+        }
+    }
+
+    /**
+     * Release the weight of all the hard references before the cache map
+     * is cleared.
+     */
+    protected void releaseWeights() {
+        if (_maxWeight < 0)
+            return;
+        for (Object o : cacheMap.entrySet()) {
+            Entry entry = (Entry) o;
+            releaseWeight(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Evict entries until the weight of the hard references is within its
+     * {@link #setMaxWeight limit}.
+     *
+     * @since 4.0.1
+     */
+    protected void evictOverweight() {
+        if (_maxWeight < 0 || _weight.get() <= _maxWeight)
+            return;
+        writeLock();
+        try {
+            while (_weight.get() > _maxWeight && evictForWeight())
+                ;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Evict the entry the cache map would evict next, as if it had
+     * overflowed.
+     *
+     * @return false if there was no entry to evict
+     */
+    protected boolean evictForWeight() {
+        Object key;
+        Object value;
+        if (cacheMap instanceof LRUMap) {
+            if (cacheMap.isEmpty())
+                return false;
+            key = ((LRUMap) cacheMap).firstKey();
+            value = cacheMap.remove(key);
+        } else if (cacheMap instanceof ConcurrentMap) {
+            Entry entry = ((ConcurrentMap) cacheMap).removeRandom();
+            if (entry == null)
+                return false;
+            key = entry.getKey();
+            value = entry.getValue();
+        } else
+            return false;
+        cacheMapOverflowRemoved(key, value);
+        return true;
+    }
+
     /**
      * The maximum number of soft references to maintain, or -1 for no limit.
      */
@@ -417,24 +575,89 @@ public class CacheMap
                 entryRemoved(key, val, false);
                 entryAdded(key, value);
             }
+            evictOverweight();
+            return val;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Put the given value unless the key is already mapped, atomically
+     * with respect to the other operations of this map.
+     *
+     * @since 4.0.1
+     */
+    @Override
+    public Object putIfAbsent(Object key, Object value) {
+        writeLock();
+        try {
+            Object val = get(key);
+            if (val == null)
+                put(key, value);
             return val;
         } finally {
             writeUnlock();
         }
     }
 
+    /**
+     * Return the values of the given keys, acquiring the read lock once for
+     * all of them. The returned map contains every given key, mapped to
+     * null if this map holds no value for it.
+     *
+     * @since 4.0.1
+     */
+    public Map getAll(Collection keys) {
+        Map vals = new HashMap((int) (keys.size() / .75F) + 1);
+        Map soft = null;
+        readLock();
+        try {
+            Object val;
+            for (Object key : keys) {
+                val = softMap.get(key);
+                if (val == null) {
+                    val = cacheMap.get(key);
+                    if (val == null)
+                        val = pinnedMap.get(key);
+                } else {
+                    if (soft == null)
+                        soft = new HashMap();
+                    soft.put(key, val);
+                }
+                vals.put(key, val);
+            }
+        } finally {
+            readUnlock();
+        }
+
+        //cannot obtain a write lock while holding a read lock
+        if (soft != null)
+            putAll(soft);
+        return vals;
+    }
+
     @Override
     public void putAll(Map map) {
         putAll(map, true);
     }
 
+    /**
+     * Put all of the given entries, acquiring the write lock once for all
+     * of them.
+     */
     public void putAll(Map map, boolean replaceExisting) {
         Map.Entry entry;
-        for (Object o : map.entrySet()) {
-            entry = (Entry) o;
-            if (replaceExisting || !containsKey(entry.getKey())) {
-                put(entry.getKey(), entry.getValue());
+        writeLock();
+        try {
+            for (Object o : map.entrySet()) {
+                entry = (Entry) o;
+                if (replaceExisting || !containsKey(entry.getKey())) {
+                    put(entry.getKey(), entry.getValue());
+                }
             }
+        } finally {
+            writeUnlock();
         }
     }
 
@@ -483,6 +706,7 @@ public class CacheMap
             _pinnedSize = 0;
 
             notifyEntryRemovals(cacheMap.entrySet());
+            releaseWeights();
             cacheMap.clear();
 
             notifyEntryRemovals(softMap.entrySet());
@@ -0,0 +1,415 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.openjpa.lib.util.SizedMap;
+import org.apache.openjpa.lib.util.concurrent.StripedClockMap;
+
+/**
+ * {@link CacheMap} whose reads never take a lock. Hard references are kept
+ * in a {@link StripedClockMap}, which approximates LRU eviction with a
+ * per-stripe CLOCK sweep. Mutations of a key are serialized on that key's
+ * stripe only, so writers to different stripes proceed in parallel.
+ * {@link #writeLock} acquires every stripe and so still excludes every
+ * mutation, which preserves the
+ * check-then-put semantics callers such as the data cache store manager
+ * rely on, but it no longer blocks readers. Pinning and soft-reference
+ * overflow behave as in the superclass.
+ *
+ * @since 4.0.1
+ */
+public class ConcurrentCacheMap
+    extends CacheMap {
+
+    // number of pinned values (not including keys not mapped to values)
+    private final AtomicInteger _pinnedSize = new AtomicInteger();
+
+    /**
+     * Create a cache map with a size of 1000.
+     */
+    public ConcurrentCacheMap() {
+        this(1000);
+    }
+
+    /**
+     * Create a cache map with the given maximum size.
+     */
+    public ConcurrentCacheMap(int max) {
+        this(max, max / 2, .75F, defaultConcurrencyLevel());
+    }
+
+    /**
+     * Create a cache map with the given properties. The concurrency level is
+     * the number of lock stripes used for mutations.
+     */
+    public ConcurrentCacheMap(int max, int size, float load,
+        int concurrencyLevel) {
+        super(true, max, size, load, concurrencyLevel);
+    }
+
+    /**
+     * Default number of lock stripes: enough for every core to mutate a
+     * different stripe most of the time.
+     */
+    public static int defaultConcurrencyLevel() {
+        return Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @Override
+    protected SizedMap newCacheMap(boolean lru, int size, float load,
+        int concurrencyLevel) {
+        return new StripedClockMap(size, load, concurrencyLevel) {
+            @Override
+            public void overflowRemoved(Object key, Object value) {
+                cacheMapOverflowRemoved(key, value);
+            }
+        };
+    }
+
+    /**
+     * The number of lock stripes guarding mutations.
+     */
+    public int getConcurrencyLevel() {
+        return ((StripedClockMap) cacheMap).getConcurrencyLevel();
+    }
+
+    /**
+     * Reads never block, so this is a no-op.
+     */
+    @Override
+    public void readLock() {
+    }
+
+    /**
+     * Reads never block, so this is a no-op.
+     */
+    @Override
+    public void readUnlock() {
+    }
+
+    /**
+     * Acquire every stripe lock, excluding all other mutations. Readers are
+     * not blocked. Stripes are always acquired in index order, and
+     * mutators only ever block on a single stripe, so this cannot deadlock.
+     */
+    @Override
+    public void writeLock() {
+        StripedClockMap striped = (StripedClockMap) cacheMap;
+        for (int i = 0; i < striped.getConcurrencyLevel(); i++)
+            striped.lockStripe(i);
+    }
+
+    @Override
+    public void writeUnlock() {
+        StripedClockMap striped = (StripedClockMap) cacheMap;
+        for (int i = striped.getConcurrencyLevel() - 1; i >= 0; i--)
+            striped.unlockStripe(i);
+    }
+
+    /**
+     * Eviction from this map approximates LRU order.
+     */
+    @Override
+    public boolean isLRU() {
+        return true;
+    }
+
+    @Override
+    public boolean pin(Object key) {
+        lock(key);
+        try {
+            if (pinnedMap.containsKey(key))
+                return pinnedMap.get(key) != null;
+
+            // pin before removing from the other maps so that concurrent
+            // readers keep finding the value
+            Object val = cacheMap.get(key);
+            if (val == null)
+                val = softMap.get(key);
+            put(pinnedMap, key, val);
+            remove(cacheMap, key);
+            remove(softMap, key);
+            if (val != null) {
+                _pinnedSize.incrementAndGet();
+                return true;
+            }
+            return false;
+        } finally {
+            unlock(key);
+        }
+    }
+
+    @Override
+    public boolean unpin(Object key) {
+        lock(key);
+        try {
+            Object val = pinnedMap.get(key);
+            if (val == null) {
+                remove(pinnedMap, key);
+                return false;
+            }
+            _pinnedSize.decrementAndGet();
+            if (cacheMap.getMaxSize() != 0)
+                put(cacheMap, key, val);
+            remove(pinnedMap, key);
+        } finally {
+            unlock(key);
+        }
+        evictOverweight();
+        return true;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object val = cacheMap.get(key);
+        if (val != null)
+            return val;
+        val = pinnedMap.get(key);
+        if (val != null)
+            return val;
+        val = softMap.get(key);
+        if (val != null)
+            promote(key, val);
+        return val;
+    }
+
+    /**
+     * Move a value found in the soft map back to the hard references, unless
+     * it has been replaced or removed in the meantime.
+     */
+    private void promote(Object key, Object val) {
+        lock(key);
+        try {
+            if (softMap.get(key) != val || cacheMap.getMaxSize() == 0)
+                return;
+            put(cacheMap, key, val);
+            remove(softMap, key);
+        } finally {
+            unlock(key);
+        }
+        evictOverweight();
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        Object val = putLocked(key, value);
+        evictOverweight();
+        return val;
+    }
+
+    /**
+     * Reads never block, so the values are looked up one by one.
+     */
+    @Override
+    public Map getAll(Collection keys) {
+        Map vals = new HashMap((int) (keys.size() / .75F) + 1);
+        for (Object key : keys)
+            vals.put(key, get(key));
+        return vals;
+    }
+
+    /**
+     * Put all of the given entries, grouping them by stripe so that each
+     * stripe lock is acquired once.
+     */
+    @Override
+    public void putAll(Map map, boolean replaceExisting) {
+        StripedClockMap striped = (StripedClockMap) cacheMap;
+        List[] stripes = new List[striped.getConcurrencyLevel()];
+        int index;
+        for (Object o : map.entrySet()) {
+            index = striped.stripeOf(((Map.Entry) o).getKey());
+            if (stripes[index] == null)
+                stripes[index] = new ArrayList();
+            stripes[index].add(o);
+        }
+
+        Map.Entry entry;
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[i] == null)
+                continue;
+            striped.lockStripe(i);
+            try {
+                for (Object o : stripes[i]) {
+                    entry = (Map.Entry) o;
+                    if (replaceExisting || !containsKey(entry.getKey()))
+                        putInStripe(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                striped.unlockStripe(i);
+            }
+        }
+        evictOverweight();
+    }
+
+    private Object putLocked(Object key, Object value) {
+        lock(key);
+        try {
+            return putInStripe(key, value);
+        } finally {
+            unlock(key);
+        }
+    }
+
+    /**
+     * Put the given entry. The stripe of the key is locked by the current
+     * thread.
+     */
+    private Object putInStripe(Object key, Object value) {
+        // if the key is pinned, just interact directly with the pinned map
+        Object val;
+        if (pinnedMap.containsKey(key)) {
+            val = put(pinnedMap, key, value);
+            if (val == null)
+                _pinnedSize.incrementAndGet();
+            else
+                entryRemoved(key, val, false);
+            entryAdded(key, value);
+            return val;
+        }
+
+        // if no hard refs, don't put anything
+        if (cacheMap.getMaxSize() == 0)
+            return null;
+
+        val = put(cacheMap, key, value);
+        if (val == null)
+            val = remove(softMap, key);
+        if (val != null)
+            entryRemoved(key, val, false);
+        entryAdded(key, value);
+        return val;
+    }
+
+    /**
+     * Evict entries without a global lock. Each eviction holds the stripe
+     * lock of its victim only, so it does not block writers to other
+     * stripes.
+     */
+    @Override
+    protected void evictOverweight() {
+        if (getMaxWeight() < 0 || getWeight() <= getMaxWeight())
+            return;
+        while (getWeight() > getMaxWeight() && evictForWeight())
+            ;
+    }
+
+    /**
+     * Evict the next entry, moving it to the soft map while its stripe is
+     * still locked, so that a concurrent removal of the key cannot be
+     * undone by the eviction.
+     */
+    @Override
+    protected boolean evictForWeight() {
+        return ((StripedClockMap) cacheMap).evictOne();
+    }
+
+    @Override
+    public Object remove(Object key) {
+        lock(key);
+        try {
+            Object val;
+            if (pinnedMap.containsKey(key)) {
+                // re-put with null value; we still want key pinned
+                val = put(pinnedMap, key, null);
+                if (val != null) {
+                    _pinnedSize.decrementAndGet();
+                    entryRemoved(key, val, false);
+                }
+                return val;
+            }
+
+            val = remove(cacheMap, key);
+            if (val == null)
+                val = remove(softMap, key);
+            if (val != null)
+                entryRemoved(key, val, false);
+            return val;
+        } finally {
+            unlock(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        writeLock();
+        try {
+            notifyEntryRemovals(pinnedMap.entrySet());
+            pinnedMap.clear();
+            _pinnedSize.set(0);
+
+            notifyEntryRemovals(cacheMap.entrySet());
+            releaseWeights();
+            cacheMap.clear();
+
+            notifyEntryRemovals(softMap.entrySet());
+            softMap.clear();
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    private void notifyEntryRemovals(Set set) {
+        Map.Entry entry;
+        for (Object o : set) {
+            entry = (Map.Entry) o;
+            if (entry.getValue() != null)
+                entryRemoved(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    @Override
+    public int size() {
+        return _pinnedSize.get() + cacheMap.size() + softMap.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return cacheMap.containsKey(key) || pinnedMap.get(key) != null
+            || softMap.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object val) {
+        return cacheMap.containsValue(val) || pinnedMap.containsValue(val)
+            || softMap.containsValue(val);
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentCacheMap:" + cacheMap.toString() + "::"
+            + softMap.toString();
+    }
+
+    private void lock(Object key) {
+        ((StripedClockMap) cacheMap).lock(key);
+    }
+
+    private void unlock(Object key) {
+        ((StripedClockMap) cacheMap).unlock(key);
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * Fixed-size set of field indexes. Sets of up to 64 fields are held in a
+ * single <code>long</code>, avoiding the array that a {@link BitSet}
+ * allocates; wider sets fall back to an array of words. Indexes beyond the
+ * size of the set are never contained, and may not be added.
+ *
+ * @since 4.0.1
+ */
+public abstract class FieldSet
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Return an empty set for the given number of fields.
+     */
+    public static FieldSet newInstance(int fields) {
+        if (fields <= Long.SIZE)
+            return new SmallFieldSet();
+        return new LargeFieldSet(fields);
+    }
+
+    /**
+     * Return a set for the given number of fields holding the given bits.
+     */
+    public static FieldSet valueOf(BitSet bits, int fields) {
+        FieldSet set = newInstance(fields);
+        if (bits != null)
+            for (int i = bits.nextSetBit(0); i >= 0 && i < fields; i = bits.nextSetBit(i + 1))
+                set.set(i);
+        return set;
+    }
+
+    /**
+     * The number of words of the set.
+     */
+    protected abstract int words();
+
+    /**
+     * The given word of the set.
+     */
+    protected abstract long word(int i);
+
+    /**
+     * Replace the given word of the set.
+     */
+    protected abstract void word(int i, long word);
+
+    /**
+     * Whether the given field is in the set.
+     */
+    public boolean get(int field) {
+        int i = field >>> 6;
+        return field >= 0 && i < words() && (word(i) & (1L << field)) != 0;
+    }
+
+    /**
+     * Add the given field to the set.
+     */
+    public void set(int field) {
+        int i = field >>> 6;
+        word(i, word(i) | (1L << field));
+    }
+
+    /**
+     * Remove the given field from the set.
+     */
+    public void clear(int field) {
+        int i = field >>> 6;
+        if (field >= 0 && i < words())
+            word(i, word(i) & ~(1L << field));
+    }
+
+    /**
+     * Remove all fields from the set.
+     */
+    public void clear() {
+        for (int i = 0; i < words(); i++)
+            word(i, 0);
+    }
+
+    /**
+     * Whether the set is empty.
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < words(); i++)
+            if (word(i) != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * One plus the highest field in the set, as in {@link BitSet#length}.
+     */
+    public int length() {
+        for (int i = words() - 1; i >= 0; i--)
+            if (word(i) != 0)
+                return i * Long.SIZE + Long.SIZE - Long.numberOfLeadingZeros(word(i));
+        return 0;
+    }
+
+    /**
+     * The number of fields in the set.
+     */
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < words(); i++)
+            count += Long.bitCount(word(i));
+        return count;
+    }
+
+    /**
+     * The first field in the set from the given index on, or -1.
+     */
+    public int nextSetBit(int from) {
+        int i = from >>> 6;
+        if (i >= words())
+            return -1;
+        long word = word(i) & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return i * Long.SIZE + Long.numberOfTrailingZeros(word);
+            if (++i == words())
+                return -1;
+            word = word(i);
+        }
+    }
+
+    /**
+     * Add the fields of the given set to this one.
+     */
+    public void or(FieldSet fields) {
+        for (int i = 0, len = Math.min(words(), fields.words()); i < len; i++)
+            word(i, word(i) | fields.word(i));
+    }
+
+    /**
+     * Remove the fields of the given set from this one.
+     */
+    public void andNot(FieldSet fields) {
+        for (int i = 0, len = Math.min(words(), fields.words()); i < len; i++)
+            word(i, word(i) & ~fields.word(i));
+    }
+
+    /**
+     * Remove the given fields from this set.
+     */
+    public void andNot(BitSet fields) {
+        for (int i = fields.nextSetBit(0); i >= 0; i = fields.nextSetBit(i + 1))
+            clear(i);
+    }
+
+    /**
+     * Return a copy of this set.
+     */
+    public FieldSet copy() {
+        FieldSet copy = (words() == 1) ? new SmallFieldSet() : new LargeFieldSet(words() * Long.SIZE);
+        copy.or(this);
+        return copy;
+    }
+
+    /**
+     * Return a new {@link BitSet} holding the fields of this set.
+     */
+    public BitSet toBitSet() {
+        long[] words = new long[words()];
+        for (int i = 0; i < words.length; i++)
+            words[i] = word(i);
+        return BitSet.valueOf(words);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this)
+            return true;
+        if (!(other instanceof FieldSet))
+            return false;
+        FieldSet fields = (FieldSet) other;
+        int len = Math.max(words(), fields.words());
+        for (int i = 0; i < len; i++) {
+            long word = (i < words()) ? word(i) : 0;
+            if (word != ((i < fields.words()) ? fields.word(i) : 0))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return toBitSet().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toBitSet().toString();
+    }
+
+    /**
+     * Set of up to 64 fields.
+     */
+    private static final class SmallFieldSet
+        extends FieldSet {
+
+        private static final long serialVersionUID = 1L;
+
+        private long _bits = 0;
+
+        @Override
+        protected int words() {
+            return 1;
+        }
+
+        @Override
+        protected long word(int i) {
+            if (i != 0)
+                throw new IndexOutOfBoundsException(String.valueOf(i));
+            return _bits;
+        }
+
+        @Override
+        protected void word(int i, long word) {
+            if (i != 0)
+                throw new IndexOutOfBoundsException(String.valueOf(i));
+            _bits = word;
+        }
+
+        // the single-word operations used on every field access
+
+        @Override
+        public boolean get(int field) {
+            return field >= 0 && field < Long.SIZE && (_bits & (1L << field)) != 0;
+        }
+
+        @Override
+        public void set(int field) {
+            if (field < 0 || field >= Long.SIZE)
+                throw new IndexOutOfBoundsException(String.valueOf(field));
+            _bits |= 1L << field;
+        }
+
+        @Override
+        public void clear(int field) {
+            if (field >= 0 && field < Long.SIZE)
+                _bits &= ~(1L << field);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return _bits == 0;
+        }
+    }
+
+    /**
+     * Set of more than 64 fields.
+     */
+    private static final class LargeFieldSet
+        extends FieldSet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] _words;
+
+        private LargeFieldSet(int fields) {
+            _words = new long[(fields + Long.SIZE - 1) >>> 6];
+        }
+
+        @Override
+        protected int words() {
+            return _words.length;
+        }
+
+        @Override
+        protected long word(int i) {
+            return _words[i];
+        }
+
+        @Override
+        protected void word(int i, long word) {
+            _words[i] = word;
+        }
+    }
+}
@@ -186,8 +186,11 @@ public class ImplHelper {
             || (sm.getPCState() == PCState.PNEW && sm.isFlushedDirty())) {
             BitSet dirty = sm.getDirty();
             if (sm.isFlushed()) {
-                dirty = (BitSet) dirty.clone();
-                dirty.andNot(sm.getFlushed());
+                BitSet unflushed = new BitSet(dirty.length());
+                for (int i = dirty.nextSetBit(0); i != -1; i = dirty.nextSetBit(i + 1))
+                    if (!sm.isFieldFlushed(i))
+                        unflushed.set(i);
+                dirty = unflushed;
             }
             if (dirty.length() > 0)
                 return dirty;
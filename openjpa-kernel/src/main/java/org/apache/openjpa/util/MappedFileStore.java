@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import org.apache.openjpa.lib.util.Localizer;
+
+/**
+ * {@link OffHeapStore} whose slabs are memory-mapped files, so that the
+ * stored records live in the operating system's page cache and on local
+ * disk rather than in process memory. The files are created in a private
+ * subdirectory of the given directory when first needed, and are deleted
+ * when the store is closed or the JVM exits; they do not outlive the store.
+ *
+ * @since 4.0.1
+ */
+public class MappedFileStore
+    extends OffHeapStore {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (MappedFileStore.class);
+
+    private final File _parent;
+    private final String _prefix;
+    private File _dir = null;
+
+    /**
+     * Create a store of the given capacity in bytes, keeping its files in
+     * the given directory.
+     *
+     * @param prefix prefix of the name of the store's subdirectory
+     */
+    public MappedFileStore(File dir, String prefix, long capacity) {
+        this(dir, prefix, capacity, defaultSlabSize(capacity));
+    }
+
+    /**
+     * Create a store of the given capacity in bytes, divided into files of
+     * the given size.
+     *
+     * @param prefix prefix of the name of the store's subdirectory
+     */
+    public MappedFileStore(File dir, String prefix, long capacity,
+        int slabSize) {
+        super(capacity, slabSize);
+        _parent = dir;
+        _prefix = prefix;
+    }
+
+    /**
+     * The directory holding the files of this store, or null if none has
+     * been created yet.
+     */
+    public File getDirectory() {
+        return _dir;
+    }
+
+    @Override
+    protected ByteBuffer allocate(int slab, int size) {
+        File file = null;
+        try {
+            if (_dir == null) {
+                _parent.mkdirs();
+                _dir = Files.createTempDirectory(_parent.toPath(), _prefix)
+                    .toFile();
+                _dir.deleteOnExit();
+            }
+            file = new File(_dir, "slab-" + slab + ".bin");
+            file.deleteOnExit();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                // the mapping stays valid after the channel is closed
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    0, size);
+            }
+        } catch (IOException ioe) {
+            throw new GeneralException(_loc.get("mapped-file-err",
+                (file == null) ? _parent : file), ioe);
+        }
+    }
+
+    @Override
+    protected void release(int slab, ByteBuffer buffer) {
+        new File(_dir, "slab-" + slab + ".bin").delete();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (_dir != null)
+            _dir.delete();
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map keyed by object ids that stores its entries in parallel arrays with
+ * open addressing, so that it allocates no object per entry. The keys of
+ * {@link LongId} and {@link IntId} ids are stored as their primitive value
+ * and type, and compared the way {@link OpenJPAId#equals} compares them;
+ * other keys are stored as is. Null keys are not supported.
+ *  Iterators do not support removal. Not thread safe.
+ *
+ * @since 4.0.1
+ */
+public class ObjectIdMap<V>
+    extends AbstractMap<Object, V>
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte EMPTY = 0;
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte OBJECT = 3;
+    // set with LONG and INT when the id matches subclasses of its type
+    private static final byte SUBS = 4;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private byte[] _kinds;
+    private int[] _hashes;
+    // primitive keys of LONG and INT entries
+    private long[] _keys;
+    // types of LONG and INT entries, keys of OBJECT entries
+    private Object[] _objects;
+    private Object[] _values;
+    private int _size = 0;
+    private int _threshold;
+    private transient int _modCount = 0;
+
+    public ObjectIdMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructor; supply the expected number of entries.
+     */
+    public ObjectIdMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 2 / 3 < expectedSize)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        _kinds = new byte[capacity];
+        _hashes = new int[capacity];
+        _keys = new long[capacity];
+        _objects = new Object[capacity];
+        _values = new Object[capacity];
+        _threshold = capacity * 2 / 3;
+    }
+
+    private int slot(int hash) {
+        int h = hash * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & (_kinds.length - 1);
+    }
+
+    /**
+     * Return the slot of the given key, or -1 if not present.
+     */
+    private int indexOf(Object key) {
+        if (key == null)
+            return -1;
+        int hash = key.hashCode();
+        int mask = _kinds.length - 1;
+        for (int i = slot(hash); ; i = (i + 1) & mask) {
+            byte kind = _kinds[i];
+            if (kind == EMPTY)
+                return -1;
+            if (_hashes[i] == hash && matches(i, kind, key))
+                return i;
+        }
+    }
+
+    private boolean matches(int i, byte kind, Object key) {
+        if (kind == OBJECT)
+            return key.equals(_objects[i]);
+        long val;
+        if (key instanceof LongId) {
+            if ((kind & ~SUBS) != LONG)
+                return false;
+            val = ((LongId) key).getId();
+        } else if (key instanceof IntId) {
+            if ((kind & ~SUBS) != INT)
+                return false;
+            val = ((IntId) key).getId();
+        } else
+            return false;
+        if (_keys[i] != val)
+            return false;
+
+        // as in OpenJPAId.equals
+        OpenJPAId id = (OpenJPAId) key;
+        Class<?> type = (Class<?>) _objects[i];
+        return type.isAssignableFrom(id.getType())
+            || (id.hasSubclasses() && id.getType().isAssignableFrom(type));
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = indexOf(key);
+        return (i == -1) ? null : (V) _values[i];
+    }
+
+    @Override
+    public V put(Object key, V value) {
+        if (key == null)
+            throw new NullPointerException();
+        int i = indexOf(key);
+        if (i != -1) {
+            V old = (V) _values[i];
+            _values[i] = value;
+            return old;
+        }
+
+        if (_size >= _threshold)
+            resize(_kinds.length << 1);
+        int hash = key.hashCode();
+        int mask = _kinds.length - 1;
+        for (i = slot(hash); _kinds[i] != EMPTY; i = (i + 1) & mask);
+        _hashes[i] = hash;
+        _values[i] = value;
+        if (key instanceof LongId || key instanceof IntId) {
+            OpenJPAId id = (OpenJPAId) key;
+            byte kind = (key instanceof LongId) ? LONG : INT;
+            if (id.hasSubclasses())
+                kind |= SUBS;
+            _kinds[i] = kind;
+            _keys[i] = (key instanceof LongId) ? ((LongId) key).getId() : ((IntId) key).getId();
+            _objects[i] = id.getType();
+        } else {
+            _kinds[i] = OBJECT;
+            _objects[i] = key;
+        }
+        _size++;
+        _modCount++;
+        return null;
+    }
+
+    private void resize(int capacity) {
+        byte[] kinds = _kinds;
+        int[] hashes = _hashes;
+        long[] keys = _keys;
+        Object[] objects = _objects;
+        Object[] values = _values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < kinds.length; j++) {
+            if (kinds[j] == EMPTY)
+                continue;
+            int i = slot(hashes[j]);
+            while (_kinds[i] != EMPTY)
+                i = (i + 1) & mask;
+            _kinds[i] = kinds[j];
+            _hashes[i] = hashes[j];
+            _keys[i] = keys[j];
+            _objects[i] = objects[j];
+            _values[i] = values[j];
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i == -1)
+            return null;
+        V old = (V) _values[i];
+        delete(i);
+        return old;
+    }
+
+    /**
+     * Empty the given slot, shifting back the entries that follow it in
+     * its probe sequence so that lookups need no deletion markers.
+     */
+    private void delete(int i) {
+        int mask = _kinds.length - 1;
+        for (int j = (i + 1) & mask; _kinds[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(_hashes[j]);
+            // the entry may move to i if its home slot is not between i
+            // and j, cyclically
+            boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (between)
+                continue;
+            _kinds[i] = _kinds[j];
+            _hashes[i] = _hashes[j];
+            _keys[i] = _keys[j];
+            _objects[i] = _objects[j];
+            _values[i] = _values[j];
+            i = j;
+        }
+        _kinds[i] = EMPTY;
+        _objects[i] = null;
+        _values[i] = null;
+        _size--;
+        _modCount++;
+    }
+
+    @Override
+    public void clear() {
+        if (_size == 0)
+            return;
+        Arrays.fill(_kinds, EMPTY);
+        Arrays.fill(_objects, null);
+        Arrays.fill(_values, null);
+        _size = 0;
+        _modCount++;
+    }
+
+    /**
+     * Return the key of the given slot, creating it for primitive keys.
+     */
+    private Object keyAt(int i) {
+        byte kind = _kinds[i];
+        if (kind == OBJECT)
+            return _objects[i];
+        boolean subs = (kind & SUBS) != 0;
+        Class<?> type = (Class<?>) _objects[i];
+        if ((kind & ~SUBS) == LONG)
+            return new LongId(type, _keys[i], subs);
+        return new IntId(type, (int) _keys[i], subs);
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @Override
+                    V at(int i) {
+                        return (V) _values[i];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Object> keySet() {
+        return new AbstractSet<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                return new SlotIterator<Object>() {
+                    @Override
+                    Object at(int i) {
+                        return keyAt(i);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<Object, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Object, V>>() {
+            @Override
+            public Iterator<Map.Entry<Object, V>> iterator() {
+                return new SlotIterator<Map.Entry<Object, V>>() {
+                    @Override
+                    Map.Entry<Object, V> at(int i) {
+                        return new SimpleImmutableEntry<>(keyAt(i), (V) _values[i]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the used slots.
+     */
+    private abstract class SlotIterator<E>
+        implements Iterator<E> {
+
+        private final int _expectedModCount = _modCount;
+        private int _next = advance(0);
+
+        private int advance(int i) {
+            while (i < _kinds.length && _kinds[i] == EMPTY)
+                i++;
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _next < _kinds.length;
+        }
+
+        @Override
+        public E next() {
+            if (_modCount != _expectedModCount)
+                throw new ConcurrentModificationException();
+            if (_next >= _kinds.length)
+                throw new NoSuchElementException();
+            E e = at(_next);
+            _next = advance(_next + 1);
+            return e;
+        }
+
+        abstract E at(int i);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded store of byte records kept outside the Java heap. Records
+ * are appended to a ring of fixed-size direct {@link ByteBuffer} slabs;
+ * only a small index entry per key lives on the heap. When the ring wraps
+ * around, the oldest slab is reclaimed as a whole and every record still
+ * stored in it is evicted, so eviction is FIFO and never fragments the
+ * store. Replaced and removed records keep occupying their slab until it is
+ * reclaimed.
+ *
+ * Writers are serialized on a single lock while copying the record into
+ * its slab. Readers take no lock: they copy the record out and then verify
+ * that its slab was not reclaimed in the meantime.
+ *
+ * @since 4.0.1
+ */
+public class OffHeapStore {
+
+    /**
+     * Largest slab size used by default.
+     */
+    public static final int DEFAULT_MAX_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final ConcurrentHashMap<Object, Location> _index =
+        new ConcurrentHashMap<>();
+    private final ReentrantLock _writeLock = new ReentrantLock();
+    private final AtomicLong _liveBytes = new AtomicLong();
+    private final long _capacity;
+    private final int _slabSize;
+    private final ByteBuffer[] _slabs;
+    private final List<Object>[] _slabKeys;
+    private final AtomicLongArray _generations;
+    private int _slab = 0;
+    private int _position = 0;
+
+    /**
+     * Create a store of the given capacity in bytes, using the default slab
+     * size.
+     */
+    public OffHeapStore(long capacity) {
+        this(capacity, defaultSlabSize(capacity));
+    }
+
+    /**
+     * Create a store of the given capacity in bytes, divided into slabs of
+     * the given size. Records larger than a slab are never stored.
+     */
+    @SuppressWarnings("unchecked")
+    public OffHeapStore(long capacity, int slabSize) {
+        if (capacity <= 0 || slabSize <= 0)
+            throw new IllegalArgumentException(capacity + ", " + slabSize);
+        int slabs = (int) Math.max(2, (capacity + slabSize - 1) / slabSize);
+        _capacity = capacity;
+        _slabSize = slabSize;
+        _slabs = new ByteBuffer[slabs];
+        _slabKeys = new List[slabs];
+        for (int i = 0; i < slabs; i++)
+            _slabKeys[i] = new ArrayList<>();
+        _generations = new AtomicLongArray(slabs);
+    }
+
+    /**
+     * Default slab size for the given capacity: one sixteenth of the
+     * capacity, between 64 KB and {@link #DEFAULT_MAX_SLAB_SIZE}.
+     */
+    public static int defaultSlabSize(long capacity) {
+        return (int) Math.min(DEFAULT_MAX_SLAB_SIZE,
+            Math.max(64 * 1024, capacity / 16));
+    }
+
+    /**
+     * Capacity of this store in bytes.
+     */
+    public long getCapacity() {
+        return _capacity;
+    }
+
+    public int getSlabSize() {
+        return _slabSize;
+    }
+
+    /**
+     * Number of bytes held by records that can still be read.
+     */
+    public long getLiveBytes() {
+        return _liveBytes.get();
+    }
+
+    /**
+     * Number of records in the store.
+     */
+    public int size() {
+        return _index.size();
+    }
+
+    /**
+     * Unmodifiable, weakly consistent view of the keys in the store.
+     */
+    public Set<Object> keySet() {
+        return Collections.unmodifiableSet(_index.keySet());
+    }
+
+    /**
+     * Store the given bytes under the given key, replacing any previous
+     * record. Returns false if the record is larger than a slab.
+     */
+    public boolean put(Object key, byte[] bytes, int off, int len) {
+        if (len > _slabSize)
+            return false;
+
+        _writeLock.lock();
+        try {
+            if (_position + len > _slabSize) {
+                _slab = (_slab + 1) % _slabs.length;
+                _position = 0;
+                reclaim(_slab);
+            }
+            ByteBuffer slab = _slabs[_slab];
+            if (slab == null) {
+                slab = allocate(_slab, _slabSize);
+                _slabs[_slab] = slab;
+            }
+            ByteBuffer dup = slab.duplicate();
+            dup.position(_position);
+            dup.put(bytes, off, len);
+
+            Location loc = new Location(_slab, _position, len,
+                _generations.get(_slab));
+            _position += len;
+            _slabKeys[loc.slab].add(key);
+            _liveBytes.addAndGet(len);
+            Location old = _index.put(key, loc);
+            if (old != null)
+                _liveBytes.addAndGet(-old.length);
+            return true;
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    /**
+     * Return a copy of the record stored under the given key, or null if
+     * there is none.
+     */
+    public byte[] get(Object key) {
+        Location loc = _index.get(key);
+        if (loc == null)
+            return null;
+
+        ByteBuffer slab = _slabs[loc.slab];
+        if (slab == null)
+            return null;
+        byte[] bytes = new byte[loc.length];
+        ByteBuffer dup = slab.duplicate();
+        dup.position(loc.offset);
+        dup.get(bytes);
+
+        // the slab may have been reclaimed and overwritten while copying
+        VarHandle.loadLoadFence();
+        if (_generations.get(loc.slab) != loc.generation)
+            return null;
+        return bytes;
+    }
+
+    /**
+     * Whether a record is stored under the given key.
+     */
+    public boolean containsKey(Object key) {
+        return _index.containsKey(key);
+    }
+
+    /**
+     * Remove the record under the given key, returning whether there was
+     * one.
+     */
+    public boolean remove(Object key) {
+        // wait for any eviction of the key in progress, so that once this
+        // method returns the record is not being handed to entryEvicted
+        _writeLock.lock();
+        try {
+            Location loc = _index.remove(key);
+            if (loc == null)
+                return false;
+            _liveBytes.addAndGet(-loc.length);
+            return true;
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove the records whose keys match the given predicate.
+     */
+    public void removeIf(Predicate<Object> keys) {
+        for (Object key : _index.keySet())
+            if (keys.test(key))
+                remove(key);
+    }
+
+    /**
+     * Remove all records.
+     */
+    public void clear() {
+        _writeLock.lock();
+        try {
+            for (int i = 0; i < _slabs.length; i++) {
+                _generations.incrementAndGet(i);
+                _slabKeys[i].clear();
+            }
+            _index.clear();
+            _liveBytes.set(0);
+            _slab = 0;
+            _position = 0;
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove all records and release the slabs.
+     */
+    public void close() {
+        _writeLock.lock();
+        try {
+            clear();
+            for (int i = 0; i < _slabs.length; i++) {
+                if (_slabs[i] != null)
+                    release(i, _slabs[i]);
+                _slabs[i] = null;
+            }
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    /**
+     * Allocate the buffer backing the given slab. Returns a direct buffer
+     * by default.
+     */
+    protected ByteBuffer allocate(int slab, int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Release the buffer backing the given slab on {@link #close}. Does
+     * nothing by default; direct buffers are freed once unreachable.
+     */
+    protected void release(int slab, ByteBuffer buffer) {
+    }
+
+    /**
+     * Invoked while holding the write lock when a record is evicted because
+     * its slab is reclaimed. The given buffer holds the record between its
+     * position and limit, and is only valid during the call. Does nothing by
+     * default.
+     */
+    protected void entryEvicted(Object key, ByteBuffer record) {
+    }
+
+    /**
+     * Evict the records of the given slab before it is overwritten.
+     */
+    private void reclaim(int slab) {
+        long generation = _generations.getAndIncrement(slab);
+        List<Object> keys = _slabKeys[slab];
+        for (Object key : keys) {
+            Location loc = _index.get(key);
+            if (loc != null && loc.slab == slab
+                && loc.generation == generation && _index.remove(key, loc)) {
+                _liveBytes.addAndGet(-loc.length);
+                ByteBuffer record = _slabs[slab].asReadOnlyBuffer();
+                record.limit(loc.offset + loc.length);
+                record.position(loc.offset);
+                entryEvicted(key, record);
+            }
+        }
+        keys.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapStore[" + size() + " records, " + _liveBytes.get()
+            + "/" + _capacity + " bytes]";
+    }
+
+    /**
+     * Position of a record.
+     */
+    private static class Location {
+
+        final int slab;
+        final int offset;
+        final int length;
+        final long generation;
+
+        Location(int slab, int offset, int length, long generation) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import org.apache.openjpa.lib.util.SizedMap;
+import org.apache.openjpa.lib.util.concurrent.TinyLFUMap;
+
+/**
+ * {@link ConcurrentCacheMap} whose hard references are admitted by a
+ * frequency-aware W-TinyLFU policy rather than plain recency, so that
+ * entries read only once cannot flush out frequently used ones. Entries
+ * refused admission overflow to the soft map like any other eviction.
+ *
+ * @since 4.0.1
+ */
+public class TinyLFUCacheMap
+    extends ConcurrentCacheMap {
+
+    /**
+     * Create a cache map with a size of 1000.
+     */
+    public TinyLFUCacheMap() {
+        this(1000);
+    }
+
+    /**
+     * Create a cache map with the given maximum size.
+     */
+    public TinyLFUCacheMap(int max) {
+        this(max, max / 2, .75F, defaultConcurrencyLevel());
+    }
+
+    /**
+     * Create a cache map with the given properties.
+     */
+    public TinyLFUCacheMap(int max, int size, float load,
+        int concurrencyLevel) {
+        super(max, size, load, concurrencyLevel);
+    }
+
+    @Override
+    protected SizedMap newCacheMap(boolean lru, int size, float load,
+        int concurrencyLevel) {
+        return new TinyLFUMap(size, load, concurrencyLevel) {
+            @Override
+            public void overflowRemoved(Object key, Object value) {
+                cacheMapOverflowRemoved(key, value);
+            }
+        };
+    }
+}
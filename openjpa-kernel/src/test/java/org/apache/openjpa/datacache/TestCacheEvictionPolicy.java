@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openjpa.util.CacheMap;
+import org.apache.openjpa.util.ConcurrentCacheMap;
+import org.apache.openjpa.util.TinyLFUCacheMap;
+import org.apache.openjpa.util.UserException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link CacheEvictionPolicy} shared by the concurrent caches.
+ */
+public class TestCacheEvictionPolicy {
+
+    @Test
+    public void testPolicyNames() {
+        CacheEvictionPolicy policy = new CacheEvictionPolicy();
+        assertEquals(Boolean.FALSE, policy.setPolicy("Random"));
+        assertEquals("random", policy.getPolicy(false));
+        assertEquals(Boolean.TRUE, policy.setPolicy("LRU"));
+        assertEquals("lru", policy.getPolicy(true));
+        assertNull(policy.setPolicy("clock"));
+        assertEquals("clock", policy.getPolicy(true));
+        assertNull(policy.setPolicy("TinyLFU"));
+        assertEquals("tinylfu", policy.getPolicy(false));
+        try {
+            policy.setPolicy("fifo");
+            fail();
+        } catch (UserException ue) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCacheMaps() {
+        CacheEvictionPolicy policy = new CacheEvictionPolicy();
+        List<Object> removed = new ArrayList<>();
+        CacheEvictionPolicy.Listener listener = (key, value, expired) -> removed.add(key);
+
+        CacheMap map = policy.newCacheMap(true, listener);
+        assertEquals(CacheMap.class, map.getClass().getSuperclass());
+        assertTrue(map.isLRU());
+
+        policy.setPolicy("clock");
+        policy.setConcurrencyLevel(4);
+        map = policy.newCacheMap(false, listener);
+        assertTrue(map instanceof ConcurrentCacheMap);
+        assertEquals(4, ((ConcurrentCacheMap) map).getConcurrencyLevel());
+
+        policy.setPolicy("tinylfu");
+        map = policy.newCacheMap(false, listener);
+        assertTrue(map instanceof TinyLFUCacheMap);
+        map.put("a", 1);
+        map.remove("a");
+        assertEquals(1, removed.size());
+        assertEquals("a", removed.get(0));
+    }
+}
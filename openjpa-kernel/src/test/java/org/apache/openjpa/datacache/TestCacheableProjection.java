@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests which projection values the query cache may hold.
+ */
+public class TestCacheableProjection {
+
+    @Test
+    public void testValues() {
+        assertTrue(QueryCacheStoreQuery.isCacheableProjection(null));
+        assertTrue(QueryCacheStoreQuery.isCacheableProjection("a"));
+        assertTrue(QueryCacheStoreQuery.isCacheableProjection(1L));
+        assertTrue(QueryCacheStoreQuery.isCacheableProjection(UUID.randomUUID()));
+        assertTrue(QueryCacheStoreQuery.isCacheableProjection(LocalDate.now()));
+        assertTrue(QueryCacheStoreQuery.isCacheableProjection(new Timestamp(0L)));
+        assertFalse(QueryCacheStoreQuery.isCacheableProjection(new ArrayList<>()));
+    }
+
+    @Test
+    public void testArraysAreNotCached() {
+        assertFalse(QueryCacheStoreQuery.isCacheableProjection(new byte[]{ 1 }));
+        assertFalse(QueryCacheStoreQuery.isCacheableProjection(new String[]{ "a" }));
+        assertFalse(QueryCacheStoreQuery.isCacheableProjection(new Object[0]));
+    }
+}
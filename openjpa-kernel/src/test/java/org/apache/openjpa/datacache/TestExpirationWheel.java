@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ExpirationWheel}.
+ */
+public class TestExpirationWheel {
+
+    @Test
+    public void testKeysExpireAfterTheirTick() {
+        ExpirationWheel wheel = new ExpirationWheel(10, 8, 1000);
+        wheel.schedule("a", 1015);
+        wheel.schedule("b", 1035);
+        wheel.schedule("c", 900);
+        assertEquals(3, wheel.size());
+
+        assertEquals(Collections.singletonList("c"), wheel.advance(1010));
+        assertTrue(wheel.advance(1019).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(1020));
+        assertEquals(Collections.singletonList("b"), wheel.advance(1100));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRescheduleAndCancel() {
+        ExpirationWheel wheel = new ExpirationWheel(10, 8, 0);
+        wheel.schedule("a", 15);
+        wheel.schedule("b", 15);
+        wheel.schedule("a", 55);
+        wheel.cancel("b");
+        assertTrue(wheel.advance(50).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(60));
+
+        wheel.schedule("c", 75);
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(1000).isEmpty());
+    }
+
+    @Test
+    public void testKeysCascadeFromHigherLevels() {
+        // 4 slots of 10ms per level; 5000ms is three levels up
+        ExpirationWheel wheel = new ExpirationWheel(10, 4, 0);
+        wheel.schedule("far", 5000);
+        wheel.schedule("near", 25);
+        wheel.schedule("mid", 170);
+        assertEquals(Collections.singletonList("near"), wheel.advance(100));
+        assertTrue(wheel.advance(169).isEmpty());
+        assertEquals(Collections.singletonList("mid"), wheel.advance(180));
+        assertTrue(wheel.advance(4999).isEmpty());
+        assertEquals(Collections.singletonList("far"), wheel.advance(5010));
+    }
+
+    @Test
+    public void testConcurrentScheduling() throws InterruptedException {
+        // more requests than are queued before they are applied
+        ExpirationWheel wheel = new ExpirationWheel(10, 8, 0);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int base = t * 5000;
+            threads[t] = new Thread(() -> {
+                for (int i = base; i < base + 5000; i++) {
+                    wheel.schedule(i, 100 + i % 50);
+                    if (i % 2 == 1)
+                        wheel.cancel(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(10000, wheel.size());
+        assertEquals(10000, wheel.advance(1000).size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRandomExpirations() {
+        Random random = new Random(42);
+        ExpirationWheel wheel = new ExpirationWheel(5, 16, 0);
+        long[] expirations = new long[2000];
+        for (int i = 0; i < expirations.length; i++) {
+            expirations[i] = random.nextInt(100000);
+            wheel.schedule(i, expirations[i]);
+        }
+
+        List<Object> expired = new ArrayList<>();
+        for (long now = 0; now <= 100010; now += 1 + random.nextInt(500)) {
+            for (Object key : wheel.advance(now)) {
+                // never early
+                long exp = expirations[(Integer) key];
+                assertTrue(exp <= now);
+                expired.add(key);
+            }
+        }
+        assertEquals(expirations.length, expired.size());
+        Object[] keys = expired.toArray();
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++)
+            assertEquals(i, keys[i]);
+    }
+}
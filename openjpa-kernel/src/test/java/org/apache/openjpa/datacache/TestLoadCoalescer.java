@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link LoadCoalescer}.
+ */
+public class TestLoadCoalescer {
+
+    @Test
+    public void testOnlyOneThreadLeads() throws Exception {
+        LoadCoalescer loads = new LoadCoalescer(10000);
+        Object token = loads.begin("a");
+        assertNotNull(token);
+        assertEquals(1, loads.size());
+
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean led = new AtomicBoolean();
+        AtomicBoolean ended = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            led.set(loads.begin("a") != null);
+            started.countDown();
+            ended.set(loads.await("a"));
+        });
+        waiter.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertFalse(led.get());
+
+        // a different oid is not coalesced
+        Object other = loads.begin("b");
+        assertNotNull(other);
+        loads.end("b", other);
+
+        loads.end("a", token);
+        waiter.join(10000);
+        assertFalse(waiter.isAlive());
+        assertTrue(ended.get());
+        assertEquals(0, loads.size());
+        assertNotNull(loads.begin("a"));
+    }
+
+    @Test
+    public void testLeaderDoesNotWaitForItself() {
+        LoadCoalescer loads = new LoadCoalescer(10000);
+        Object token = loads.begin("a");
+        Object nested = loads.begin("a");
+        assertNotNull(nested);
+
+        // ending the nested load leaves the outer one in progress
+        loads.end("a", nested);
+        assertEquals(1, loads.size());
+        loads.end("a", token);
+        assertEquals(0, loads.size());
+    }
+
+    @Test
+    public void testWaitTimesOut() throws Exception {
+        LoadCoalescer loads = new LoadCoalescer(50);
+        Object token = loads.begin("a");
+        AtomicBoolean ended = new AtomicBoolean(true);
+        Thread waiter = new Thread(() -> ended.set(loads.await("a")));
+        waiter.start();
+        waiter.join(10000);
+        assertFalse(ended.get());
+        loads.end("a", token);
+        assertTrue(loads.await("a"));
+    }
+}
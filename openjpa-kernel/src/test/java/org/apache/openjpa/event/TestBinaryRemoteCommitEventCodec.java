@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.openjpa.util.BigDecimalId;
+import org.apache.openjpa.util.BigIntegerId;
+import org.apache.openjpa.util.BooleanId;
+import org.apache.openjpa.util.ByteId;
+import org.apache.openjpa.util.CharId;
+import org.apache.openjpa.util.DateId;
+import org.apache.openjpa.util.DoubleId;
+import org.apache.openjpa.util.FloatId;
+import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.ObjectId;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.ShortId;
+import org.apache.openjpa.util.StringId;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link BinaryRemoteCommitEventCodec}.
+ */
+public class TestBinaryRemoteCommitEventCodec {
+
+    private final BinaryRemoteCommitEventCodec _codec = new BinaryRemoteCommitEventCodec();
+
+    private RemoteCommitEvent roundTrip(RemoteCommitEvent event) throws IOException {
+        return _codec.decode(_codec.encode(event));
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(o);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testBuiltInIds() throws IOException {
+        List<Object> ids = Arrays.asList(
+            new Id(String.class, 42L, false),
+            new LongId(String.class, -7L),
+            new IntId(Integer.class, Integer.MAX_VALUE),
+            new ShortId(String.class, (short) -3),
+            new ByteId(String.class, (byte) 5),
+            new CharId(String.class, 'x'),
+            new BooleanId(String.class, true),
+            new DoubleId(String.class, 1.5d),
+            new FloatId(String.class, -2.5f),
+            new StringId(String.class, "kéy"),
+            new DateId(String.class, new Date(123456789L)),
+            new BigDecimalId(String.class, new BigDecimal("12.345")),
+            new BigIntegerId(String.class, new BigInteger("-123456789012345678901234567890")),
+            new DateId(String.class, new Timestamp(987654321L)),
+            new ObjectId(String.class, "serialized"));
+        List<Object> deletes = Arrays.asList(new LongId(Long.class, 1L), null);
+        RemoteCommitEvent event = new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS,
+            ids, Arrays.asList("a.A", "b.B"), ids, deletes);
+
+        RemoteCommitEvent copy = roundTrip(event);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, copy.getPayloadType());
+        assertEquals(Arrays.asList("a.A", "b.B"), new ArrayList<>(copy.getPersistedTypeNames()));
+        assertIdsEqual(ids, copy.getPersistedObjectIds());
+        assertIdsEqual(ids, copy.getUpdatedObjectIds());
+        assertIdsEqual(deletes, copy.getDeletedObjectIds());
+    }
+
+    private static void assertIdsEqual(Collection<?> expected, Collection<?> actual) {
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        Iterator<?> itr = actual.iterator();
+        for (Object o : expected) {
+            Object copy = itr.next();
+            if (o == null)
+                continue;
+            assertEquals(o.getClass(), copy.getClass());
+            assertEquals(((OpenJPAId) o).getType(), ((OpenJPAId) copy).getType());
+            assertEquals(((OpenJPAId) o).hasSubclasses(), ((OpenJPAId) copy).hasSubclasses());
+            assertEquals(((OpenJPAId) o).getIdObject().getClass(), ((OpenJPAId) copy).getIdObject().getClass());
+        }
+    }
+
+    @Test
+    public void testExtents() throws IOException {
+        RemoteCommitEvent event = new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS,
+            null, null, Arrays.asList("a.A", "b.B"), Arrays.asList("a.A"));
+        RemoteCommitEvent copy = roundTrip(event);
+        assertEquals(RemoteCommitEvent.PAYLOAD_EXTENTS, copy.getPayloadType());
+        assertTrue(copy.getPersistedTypeNames().isEmpty());
+        assertEquals(Arrays.asList("a.A", "b.B"), new ArrayList<>(copy.getUpdatedTypeNames()));
+        assertEquals(Arrays.asList("a.A"), new ArrayList<>(copy.getDeletedTypeNames()));
+    }
+
+    @Test
+    public void testSmallerThanSerialization() throws IOException {
+        List<Object> ids = new ArrayList<>();
+        for (long i = 0; i < 1000; i++)
+            ids.add(new LongId(TestBinaryRemoteCommitEventCodec.class, i));
+        RemoteCommitEvent event = new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS,
+            null, null, ids, null);
+
+        _codec.setCompressThreshold(-1);
+        byte[] bytes = _codec.encode(event);
+        assertTrue(bytes.length * 5 < serialize(event).length);
+        assertIdsEqual(ids, _codec.decode(bytes).getUpdatedObjectIds());
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+        List<Object> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            ids.add(new StringId(TestBinaryRemoteCommitEventCodec.class, "customer-00000" + (i % 10)));
+        RemoteCommitEvent event = new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS,
+            null, null, null, ids);
+
+        _codec.setCompressThreshold(-1);
+        byte[] plain = _codec.encode(event);
+        _codec.setCompressThreshold(1024);
+        byte[] compressed = _codec.encode(event);
+        assertTrue(compressed.length * 4 < plain.length);
+        assertIdsEqual(ids, _codec.decode(compressed).getDeletedObjectIds());
+    }
+
+    @Test
+    public void testCorruptBytes() throws IOException {
+        byte[] bytes = _codec.encode(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS,
+            null, null, Arrays.asList("a.A"), null));
+        bytes[0] = 99;
+        try {
+            _codec.decode(bytes);
+            fail("Decoded corrupt event");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUntrustedLengths() {
+        int payload = RemoteCommitEvent.PAYLOAD_EXTENTS;
+        // a collection claiming more elements than there are bytes
+        assertRejected(new byte[] { 1, 0, (byte) payload, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 7 });
+        // a string claiming more bytes than there are
+        assertRejected(new byte[] { 1, 0, (byte) payload, 2, 1, 0, (byte) 0xff, (byte) 0xff, 3 });
+        // a compressed event claiming to be larger than the maximum
+        _codec.setMaxEventBytes(1024);
+        assertRejected(new byte[] { 1, 1, (byte) 0x81, 8, 0 });
+    }
+
+    private void assertRejected(byte[] bytes) {
+        try {
+            _codec.decode(bytes);
+            fail("Decoded corrupt event");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPluginString() {
+        ProviderStub provider = new ProviderStub();
+        provider.setCodec("binary(CompressThreshold=100)");
+        assertEquals(100, ((BinaryRemoteCommitEventCodec) provider.getCodec()).getCompressThreshold());
+        provider.setCodec("java");
+        assertNull(provider.getCodec());
+    }
+
+    private static class ProviderStub
+        extends AbstractRemoteCommitProvider {
+
+        @Override
+        public void broadcast(RemoteCommitEvent event) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.openjpa.lib.log.NoneLogFactory;
+import org.apache.openjpa.util.LongId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link MulticastRemoteCommitProvider} over the loopback
+ * interface.
+ */
+public class TestMulticastRemoteCommitProvider {
+
+    private final List<MulticastRemoteCommitProvider> _providers = new ArrayList<>();
+    private int _port;
+    private String _interface;
+
+    @Before
+    public void setUp() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            _port = socket.getLocalPort();
+        }
+        _interface = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()).getName();
+    }
+
+    @After
+    public void tearDown() {
+        for (MulticastRemoteCommitProvider provider : _providers)
+            provider.close();
+    }
+
+    /**
+     * Return a configured provider adding the events it receives to the
+     * given queue and the peers whose events were lost to the other.
+     */
+    private MulticastRemoteCommitProvider newProvider(BlockingQueue<RemoteCommitEvent> received,
+        BlockingQueue<Long> lost, Dropper dropper) {
+        MulticastRemoteCommitProvider provider = new MulticastRemoteCommitProvider() {
+            @Override
+            protected void fireEvent(RemoteCommitEvent event) {
+                if (sequencer.receive(event))
+                    received.add(event);
+            }
+
+            @Override
+            protected void eventsLost(long senderId) {
+                lost.add(senderId);
+            }
+
+            @Override
+            protected void send(byte[] datagram) throws IOException {
+                if (dropper == null || !dropper.drop())
+                    super.send(datagram);
+            }
+        };
+        provider.log = new NoneLogFactory().getLog(getClass().getName());
+        provider.setPort(_port);
+        provider.setInterface(_interface);
+        provider.setMaxDatagramSize(512);
+        provider.setCatchUpTimeoutMillis(2000);
+        _providers.add(provider);
+        return provider;
+    }
+
+    private static RemoteCommitEvent newEvent(String name) {
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null, null,
+            Collections.singleton(name), null);
+    }
+
+    private static String name(RemoteCommitEvent event) {
+        return (String) event.getUpdatedTypeNames().iterator().next();
+    }
+
+    @Test
+    public void testEventsAreDelivered() throws Exception {
+        BlockingQueue<RemoteCommitEvent> received1 = new LinkedBlockingQueue<>();
+        BlockingQueue<RemoteCommitEvent> received2 = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> lost = new LinkedBlockingQueue<>();
+        MulticastRemoteCommitProvider sender = newProvider(received1, lost, null);
+        sender.endConfiguration();
+        newProvider(received2, lost, null).endConfiguration();
+
+        sender.broadcast(newEvent("A"));
+        assertEquals("A", name(received2.poll(10, TimeUnit.SECONDS)));
+        // the sender does not receive its own events
+        assertNull(received1.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(lost.isEmpty());
+    }
+
+    @Test
+    public void testLargeEventsAreFragmented() throws Exception {
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> lost = new LinkedBlockingQueue<>();
+        MulticastRemoteCommitProvider sender = newProvider(new LinkedBlockingQueue<>(), lost, null);
+        MulticastRemoteCommitProvider receiver = newProvider(received, lost, null);
+        sender.setCodec("binary");
+        receiver.setCodec("binary");
+        sender.endConfiguration();
+        receiver.endConfiguration();
+
+        List<Object> ids = new ArrayList<>();
+        for (long i = 0; i < 2000; i++)
+            ids.add(new LongId(TestMulticastRemoteCommitProvider.class, i * 1000003));
+        sender.broadcast(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS, null, null, ids, null));
+        RemoteCommitEvent event = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(ids, new ArrayList<>(event.getUpdatedObjectIds()));
+    }
+
+    @Test
+    public void testLostDatagramIsRecovered() throws Exception {
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> lost = new LinkedBlockingQueue<>();
+        Dropper dropper = new Dropper();
+        MulticastRemoteCommitProvider sender = newProvider(new LinkedBlockingQueue<>(), lost, dropper);
+        sender.endConfiguration();
+        newProvider(received, lost, null).endConfiguration();
+
+        sender.broadcast(newEvent("A"));
+        assertEquals("A", name(received.poll(10, TimeUnit.SECONDS)));
+        dropper.drops.set(1);
+        sender.broadcast(newEvent("B"));
+        sender.broadcast(newEvent("C"));
+
+        assertEquals("C", name(received.poll(10, TimeUnit.SECONDS)));
+        assertEquals("B", name(received.poll(10, TimeUnit.SECONDS)));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(lost.isEmpty());
+    }
+
+    @Test
+    public void testLostLastDatagramIsRecovered() throws Exception {
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> lost = new LinkedBlockingQueue<>();
+        Dropper dropper = new Dropper();
+        MulticastRemoteCommitProvider sender = newProvider(new LinkedBlockingQueue<>(), lost, dropper);
+        sender.endConfiguration();
+        newProvider(received, lost, null).endConfiguration();
+
+        sender.broadcast(newEvent("A"));
+        assertEquals("A", name(received.poll(10, TimeUnit.SECONDS)));
+        dropper.drops.set(1);
+        sender.broadcast(newEvent("B"));
+
+        // nothing follows B; the heartbeat of the sender reveals its loss
+        assertEquals("B", name(received.poll(10, TimeUnit.SECONDS)));
+        assertTrue(lost.isEmpty());
+    }
+
+    @Test
+    public void testReplayLogSizeDefault() {
+        MulticastRemoteCommitProvider provider = newProvider(new LinkedBlockingQueue<>(),
+            new LinkedBlockingQueue<>(), null);
+        assertEquals(MulticastRemoteCommitProvider.DEFAULT_REPLAY_LOG_SIZE, provider.getReplayLogSize());
+        provider.setReplayLogSize(10);
+        assertEquals(10, provider.getReplayLogSize());
+    }
+
+    @Test
+    public void testUnrecoverableLossIsReported() throws Exception {
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> lost = new LinkedBlockingQueue<>();
+        Dropper dropper = new Dropper();
+        MulticastRemoteCommitProvider sender = newProvider(new LinkedBlockingQueue<>(), lost, dropper);
+        sender.setReplayLogSize(2);
+        sender.endConfiguration();
+        MulticastRemoteCommitProvider receiver = newProvider(received, lost, null);
+        receiver.setReplayLogSize(2);
+        receiver.endConfiguration();
+
+        sender.broadcast(newEvent("A"));
+        assertEquals("A", name(received.poll(10, TimeUnit.SECONDS)));
+        dropper.drops.set(5);
+        for (int i = 0; i < 5; i++)
+            sender.broadcast(newEvent("B" + i));
+        sender.broadcast(newEvent("C"));
+
+        assertEquals("C", name(received.poll(10, TimeUnit.SECONDS)));
+        assertEquals(Long.valueOf(sender.sequencer.getId()), lost.poll(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Drops a number of datagrams.
+     */
+    private static class Dropper {
+
+        private final AtomicInteger drops = new AtomicInteger();
+
+        private boolean drop() {
+            return drops.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+        }
+    }
+}
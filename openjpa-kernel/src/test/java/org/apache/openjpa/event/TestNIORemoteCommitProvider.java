@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.lib.log.NoneLogFactory;
+import org.apache.openjpa.util.UserException;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link NIORemoteCommitProvider}.
+ */
+public class TestNIORemoteCommitProvider {
+
+    private final List<NIORemoteCommitProvider> _providers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (NIORemoteCommitProvider provider : _providers)
+            provider.close();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Return a configured provider that adds the events it receives to the
+     * given queue.
+     */
+    private NIORemoteCommitProvider newProvider(int port, String addresses,
+        BlockingQueue<RemoteCommitEvent> received) throws IOException {
+        NIORemoteCommitProvider provider = new NIORemoteCommitProvider() {
+            @Override
+            protected void fireEvent(RemoteCommitEvent event) {
+                received.add(event);
+            }
+        };
+        provider.log = new NoneLogFactory().getLog(getClass().getName());
+        provider.setPort(port);
+        if (addresses != null)
+            provider.setAddresses(addresses);
+        provider.endConfiguration();
+        _providers.add(provider);
+        return provider;
+    }
+
+    private static RemoteCommitEvent newEvent(String... classes) {
+        List<String> names = new ArrayList<>();
+        Collections.addAll(names, classes);
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null, null, names, null);
+    }
+
+    @Test
+    public void testEventsAreDelivered() throws Exception {
+        int port1 = freePort();
+        int port2 = freePort();
+        BlockingQueue<RemoteCommitEvent> received1 = new LinkedBlockingQueue<>();
+        BlockingQueue<RemoteCommitEvent> received2 = new LinkedBlockingQueue<>();
+        NIORemoteCommitProvider provider1 = newProvider(port1, "127.0.0.1:" + port2, received1);
+        NIORemoteCommitProvider provider2 = newProvider(port2, "127.0.0.1:" + port1, received2);
+
+        for (int i = 0; i < 100; i++)
+            provider1.broadcast(newEvent("C" + i));
+        for (int i = 0; i < 100; i++) {
+            RemoteCommitEvent event = received2.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals("C" + i, event.getUpdatedTypeNames().iterator().next());
+        }
+
+        provider2.broadcast(newEvent("Back"));
+        RemoteCommitEvent event = received1.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals("Back", event.getUpdatedTypeNames().iterator().next());
+
+        // the sender is not notified of its own events
+        assertNull(received1.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testEventsAreDeliveredWithCodec() throws Exception {
+        int port1 = freePort();
+        int port2 = freePort();
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        NIORemoteCommitProvider provider1 = newProvider(port1, "127.0.0.1:" + port2, new LinkedBlockingQueue<>());
+        NIORemoteCommitProvider provider2 = newProvider(port2, "127.0.0.1:" + port1, received);
+        provider1.setCodec("binary");
+        provider2.setCodec("binary");
+
+        provider1.broadcast(newEvent("Encoded"));
+        RemoteCommitEvent event = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals("Encoded", event.getUpdatedTypeNames().iterator().next());
+    }
+
+    @Test
+    public void testMismatchedCodecOnSharedPortIsRejected() throws Exception {
+        int port = freePort();
+        newProvider(port, null, new LinkedBlockingQueue<>());
+        NIORemoteCommitProvider provider = new NIORemoteCommitProvider();
+        provider.log = new NoneLogFactory().getLog(getClass().getName());
+        provider.setPort(port);
+        provider.setCodec("binary");
+        try {
+            provider.endConfiguration();
+            fail();
+        } catch (UserException ue) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFullDispatchQueueStopsReading() throws Exception {
+        int port1 = freePort();
+        int port2 = freePort();
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        NIORemoteCommitProvider slow = new NIORemoteCommitProvider() {
+            @Override
+            protected void fireEvent(RemoteCommitEvent event) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(event);
+            }
+        };
+        slow.log = new NoneLogFactory().getLog(getClass().getName());
+        slow.setPort(port1);
+        slow.endConfiguration();
+        _providers.add(slow);
+        NIORemoteCommitProvider sender = newProvider(port2, "127.0.0.1:" + port1, new LinkedBlockingQueue<>());
+
+        try {
+            for (int i = 0; i < 1500; i++)
+                sender.broadcast(newEvent("C" + i));
+            long start = System.currentTimeMillis();
+            while (slow.getQueuedDispatches() < 1024 && System.currentTimeMillis() - start < 10000)
+                Thread.sleep(10);
+            Thread.sleep(200);
+            // the rest stays unread until the listener catches up
+            assertEquals(1024, slow.getQueuedDispatches());
+        } finally {
+            release.countDown();
+        }
+        for (int i = 0; i < 1500; i++) {
+            RemoteCommitEvent event = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals("C" + i, event.getUpdatedTypeNames().iterator().next());
+        }
+    }
+
+    @Test
+    public void testStalledPeerDoesNotBlockOthers() throws Exception {
+        int port = freePort();
+        try (ServerSocket stalled = new ServerSocket(0)) {
+            BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+            newProvider(port, null, received);
+            NIORemoteCommitProvider sender = newProvider(freePort(),
+                "127.0.0.1:" + stalled.getLocalPort() + ";127.0.0.1:" + port, new LinkedBlockingQueue<>());
+            sender.setMaxQueuedBytes(64 * 1024);
+            sender.setRecoveryTimeMillis(100);
+
+            // the stalled peer accepts the connection but never reads
+            String[] classes = new String[1000];
+            for (int i = 0; i < classes.length; i++)
+                classes[i] = "org.apache.openjpa.event.StalledPeerClass" + i;
+            RemoteCommitEvent big = newEvent(classes);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < 500; i++)
+                sender.broadcast(big);
+            assertTrue(System.currentTimeMillis() - start < 10000);
+
+            // events are delivered to the other peer once it has caught up
+            Thread.sleep(200);
+            sender.broadcast(newEvent("Marker"));
+            RemoteCommitEvent event;
+            do {
+                event = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull(event);
+            } while (event.getUpdatedTypeNames().size() != 1);
+            assertEquals("Marker", event.getUpdatedTypeNames().iterator().next());
+        }
+    }
+
+    @Test
+    public void testUnreachablePeerIsSkipped() throws Exception {
+        int port = freePort();
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        newProvider(port, null, received);
+        NIORemoteCommitProvider sender = newProvider(freePort(),
+            "127.0.0.1:" + freePort() + ";127.0.0.1:" + port, new LinkedBlockingQueue<>());
+
+        for (int i = 0; i < 10; i++)
+            sender.broadcast(newEvent("C" + i));
+        for (int i = 0; i < 10; i++)
+            assertNotNull(received.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOversizedFrameClosesConnection() throws Exception {
+        int port = freePort();
+        NIORemoteCommitProvider provider = newProvider(port, null, new LinkedBlockingQueue<>());
+        provider.setMaxFrameBytes(1024);
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(10000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(Integer.MAX_VALUE);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockSends() throws Exception {
+        int port1 = freePort();
+        int port2 = freePort();
+        int port3 = freePort();
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        NIORemoteCommitProvider slow = new NIORemoteCommitProvider() {
+            @Override
+            protected void fireEvent(RemoteCommitEvent event) {
+                threads.add(Thread.currentThread().getName());
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        slow.log = new NoneLogFactory().getLog(getClass().getName());
+        slow.setPort(port1);
+        slow.setAddresses("127.0.0.1:" + port3);
+        slow.endConfiguration();
+        _providers.add(slow);
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        NIORemoteCommitProvider sender = newProvider(port2, "127.0.0.1:" + port1, new LinkedBlockingQueue<>());
+        newProvider(port3, null, received);
+
+        try {
+            // the slow provider's listener blocks while it sends on the same loop
+            sender.broadcast(newEvent("Blocked"));
+            long start = System.currentTimeMillis();
+            while (threads.isEmpty() && System.currentTimeMillis() - start < 10000)
+                Thread.sleep(10);
+            assertEquals(1, threads.size());
+            assertNotEquals("openjpa-remote-commit-" + port1, threads.get(0));
+
+            slow.broadcast(newEvent("Sent"));
+            RemoteCommitEvent event = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals("Sent", event.getUpdatedTypeNames().iterator().next());
+        } finally {
+            release.countDown();
+        }
+    }
+}
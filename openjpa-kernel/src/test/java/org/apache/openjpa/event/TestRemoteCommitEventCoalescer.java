@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.StringId;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link RemoteCommitEventCoalescer}.
+ */
+public class TestRemoteCommitEventCoalescer {
+
+    private final BlockingQueue<RemoteCommitEvent> _sent = new LinkedBlockingQueue<>();
+    private final RemoteCommitProvider _provider = new RemoteCommitProvider() {
+        @Override
+        public void setRemoteCommitEventManager(RemoteCommitEventManager mgr) {
+        }
+
+        @Override
+        public void broadcast(RemoteCommitEvent event) {
+            _sent.add(event);
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private RemoteCommitEventCoalescer _coalescer;
+
+    @After
+    public void tearDown() {
+        if (_coalescer != null)
+            _coalescer.close();
+    }
+
+    private static LongId oid(Class<?> type, long id) {
+        return new LongId(type, id, false);
+    }
+
+    private static RemoteCommitEvent oids(List<?> updates, List<?> deletes) {
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS, null,
+            Collections.singleton("a.A"), updates, deletes);
+    }
+
+    @Test
+    public void testEventsInWindowAreMerged() throws Exception {
+        _coalescer = new RemoteCommitEventCoalescer(_provider, 200, 1000, null);
+        _coalescer.add(oids(Arrays.asList(oid(String.class, 1), oid(String.class, 2)), null));
+        _coalescer.add(oids(Arrays.asList(oid(String.class, 2), oid(String.class, 3)), null));
+        _coalescer.add(oids(null, Arrays.asList(oid(String.class, 3))));
+        assertNull(_sent.poll(50, TimeUnit.MILLISECONDS));
+
+        RemoteCommitEvent event = _sent.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS, event.getPayloadType());
+        assertEquals(Collections.singleton("a.A"), new HashSet<>(event.getPersistedTypeNames()));
+        assertEquals(Arrays.asList(oid(String.class, 1), oid(String.class, 2)),
+            new ArrayList<>(event.getUpdatedObjectIds()));
+        assertEquals(Arrays.asList(oid(String.class, 3)), new ArrayList<>(event.getDeletedObjectIds()));
+
+        // the next event opens a new window
+        _coalescer.add(oids(Arrays.asList(oid(String.class, 4)), null));
+        event = _sent.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(Arrays.asList(oid(String.class, 4)), new ArrayList<>(event.getUpdatedObjectIds()));
+        assertNull(_sent.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTooManyIdsUpgradeToTypes() throws Exception {
+        _coalescer = new RemoteCommitEventCoalescer(_provider, 60000, 10, null);
+        for (int i = 0; i < 8; i++)
+            _coalescer.add(oids(Arrays.asList(oid(String.class, i)), null));
+        _coalescer.add(oids(Arrays.asList(oid(Integer.class, 1), oid(Integer.class, 2)),
+            Arrays.asList(oid(Long.class, 1))));
+        // further ids only add their types
+        _coalescer.add(oids(Arrays.asList(oid(Short.class, 1)), null));
+        _coalescer.flush();
+
+        RemoteCommitEvent event = _sent.poll();
+        assertNotNull(event);
+        assertEquals(RemoteCommitEvent.PAYLOAD_EXTENTS, event.getPayloadType());
+        assertEquals(new HashSet<>(Arrays.asList(String.class.getName(), Integer.class.getName(),
+            Short.class.getName())), new HashSet<>(event.getUpdatedTypeNames()));
+        assertEquals(Collections.singleton(Long.class.getName()), new HashSet<>(event.getDeletedTypeNames()));
+        assertNull(_sent.poll());
+    }
+
+    @Test
+    public void testExtentEventsAreMerged() {
+        _coalescer = new RemoteCommitEventCoalescer(_provider, 60000, 1000, null);
+        _coalescer.add(oids(Arrays.asList(oid(String.class, 1)), null));
+        _coalescer.add(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null, null,
+            Collections.singleton("b.B"), null));
+        _coalescer.flush();
+
+        RemoteCommitEvent event = _sent.poll();
+        assertNotNull(event);
+        assertEquals(RemoteCommitEvent.PAYLOAD_EXTENTS, event.getPayloadType());
+        assertEquals(new HashSet<>(Arrays.asList(String.class.getName(), "b.B")),
+            new HashSet<>(event.getUpdatedTypeNames()));
+        assertNull(_sent.poll());
+    }
+
+    @Test
+    public void testIdsOfUnknownTypeAreNotUpgraded() {
+        _coalescer = new RemoteCommitEventCoalescer(_provider, 60000, 1, null);
+        _coalescer.add(oids(Arrays.asList("app-id-1", "app-id-2"), null));
+        _coalescer.add(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null, null,
+            Collections.singleton("b.B"), null));
+
+        // the ids are sent on their own before the types
+        RemoteCommitEvent event = _sent.poll();
+        assertNotNull(event);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS, event.getPayloadType());
+        assertEquals(Arrays.asList("app-id-1", "app-id-2"), new ArrayList<>(event.getUpdatedObjectIds()));
+
+        _coalescer.flush();
+        event = _sent.poll();
+        assertNotNull(event);
+        assertEquals(Collections.singleton("b.B"), new HashSet<>(event.getUpdatedTypeNames()));
+    }
+
+    @Test
+    public void testCloseFlushesPendingEvent() {
+        _coalescer = new RemoteCommitEventCoalescer(_provider, 60000, 1000, null);
+        _coalescer.add(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS,
+            Arrays.asList(new StringId(String.class, "x")), Collections.singleton("a.A"), null, null));
+        _coalescer.close();
+
+        RemoteCommitEvent event = _sent.poll();
+        assertNotNull(event);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS, event.getPayloadType());
+        assertEquals(Arrays.asList(new StringId(String.class, "x")),
+            new ArrayList<>(event.getPersistedObjectIds()));
+
+        // events after closing are sent immediately
+        _coalescer.add(oids(Arrays.asList(oid(String.class, 1)), null));
+        assertNotNull(_sent.poll());
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.apache.openjpa.lib.log.NoneLogFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link RemoteCommitSequencer}.
+ */
+public class TestRemoteCommitSequencer {
+
+    private final List<ProviderStub> _providers = new ArrayList<>();
+    // events the network drops
+    private volatile Predicate<RemoteCommitEvent> _drop = e -> false;
+    // provider the network drops all events to
+    private volatile ProviderStub _dropTo;
+
+    @After
+    public void tearDown() {
+        for (ProviderStub provider : _providers)
+            provider.close();
+    }
+
+    private ProviderStub newProvider(int logSize, int timeoutMillis) {
+        ProviderStub provider = new ProviderStub();
+        provider.log = new NoneLogFactory().getLog(getClass().getName());
+        provider.setReplayLogSize(logSize);
+        provider.setCatchUpTimeoutMillis(timeoutMillis);
+        provider.endConfiguration();
+        _providers.add(provider);
+        return provider;
+    }
+
+    private static RemoteCommitEvent newEvent(String name) {
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null, null,
+            Collections.singleton(name), null);
+    }
+
+    private static String name(RemoteCommitEvent event) {
+        return (String) event.getUpdatedTypeNames().iterator().next();
+    }
+
+    @Test
+    public void testMissedEventIsSentAgain() throws Exception {
+        ProviderStub sender = newProvider(100, 10000);
+        ProviderStub receiver = newProvider(100, 10000);
+        sender.broadcast(newEvent("A"));
+        _drop = e -> true;
+        sender.broadcast(newEvent("B"));
+        _drop = e -> false;
+        sender.broadcast(newEvent("C"));
+
+        assertEquals("A", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals("C", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        RemoteCommitEvent event = receiver.received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals("B", name(event));
+        assertEquals(2, event.getSequence());
+
+        // the replayed events already received are dropped
+        assertNull(receiver.received.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, receiver.lost.size());
+        // the catch-up request never reaches the listeners of the sender
+        assertTrue(sender.received.isEmpty());
+    }
+
+    @Test
+    public void testLostLastEventIsSentAgainAfterHeartbeat() throws Exception {
+        ProviderStub sender = newProvider(100, 1000);
+        ProviderStub receiver = newProvider(100, 1000);
+        sender.broadcast(newEvent("A"));
+        _drop = e -> e.getPayloadType() != RemoteCommitEvent.PAYLOAD_HEARTBEAT;
+        sender.broadcast(newEvent("B"));
+        _drop = e -> false;
+
+        // no later event reveals the gap; the heartbeat does
+        assertEquals("A", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        RemoteCommitEvent event = receiver.received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals("B", name(event));
+        assertEquals(0, receiver.lost.size());
+        assertTrue(sender.received.isEmpty());
+    }
+
+    @Test
+    public void testDuplicatesAreDropped() throws Exception {
+        ProviderStub sender = newProvider(100, 10000);
+        ProviderStub receiver = newProvider(100, 10000);
+        RemoteCommitEvent event = newEvent("A");
+        sender.broadcast(event);
+        sender.broadcast(event);
+        assertEquals("A", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertNull(receiver.received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testEventsLostWhenNoLongerLogged() throws Exception {
+        ProviderStub sender = newProvider(3, 500);
+        ProviderStub receiver = newProvider(3, 500);
+        sender.broadcast(newEvent("A"));
+        _drop = e -> true;
+        sender.broadcast(newEvent("B"));
+        sender.broadcast(newEvent("C"));
+        _drop = e -> false;
+        sender.broadcast(newEvent("D"));
+        sender.broadcast(newEvent("E"));
+
+        assertEquals("A", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals("D", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals("E", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        // only C is still logged when B and C are requested
+        assertEquals("C", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals(Long.valueOf(sender.sequencer.getId()), receiver.lost.poll(10, TimeUnit.SECONDS));
+        assertNull(receiver.lost.poll(600, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testGapLargerThanLogIsLost() throws Exception {
+        ProviderStub sender = newProvider(2, 10000);
+        ProviderStub receiver = newProvider(2, 10000);
+        sender.broadcast(newEvent("A"));
+        _drop = e -> true;
+        for (int i = 0; i < 5; i++)
+            sender.broadcast(newEvent("B"));
+        _drop = e -> false;
+        sender.broadcast(newEvent("C"));
+
+        assertEquals("A", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals("C", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals(Long.valueOf(sender.sequencer.getId()), receiver.lost.poll());
+    }
+
+    @Test
+    public void testReplayIsSentToRequester() throws Exception {
+        ProviderStub sender = newProvider(100, 10000);
+        ProviderStub receiver1 = newProvider(100, 10000);
+        ProviderStub receiver2 = newProvider(100, 10000);
+        sender.broadcast(newEvent("A"));
+        _dropTo = receiver1;
+        sender.broadcast(newEvent("B"));
+        _dropTo = null;
+        sender.broadcast(newEvent("C"));
+
+        assertEquals("A", name(receiver1.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals("C", name(receiver1.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals("B", name(receiver1.received.poll(10, TimeUnit.SECONDS)));
+        Thread.sleep(200);
+        // the log from the missed event on is sent again to the requester only
+        assertEquals(4, receiver1.delivered.get());
+        assertEquals(3, receiver2.delivered.get());
+    }
+
+    @Test
+    public void testSilentPeersAreForgotten() throws Exception {
+        ProviderStub sender = newProvider(100, 20);
+        ProviderStub receiver = newProvider(100, 20);
+        sender.broadcast(newEvent("A"));
+        assertEquals("A", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals(1, receiver.sequencer.getPeerCount());
+
+        long start = System.currentTimeMillis();
+        while (receiver.sequencer.getPeerCount() > 0 && System.currentTimeMillis() - start < 10000)
+            Thread.sleep(20);
+        assertEquals(0, receiver.sequencer.getPeerCount());
+
+        // the peer is known again once it sends
+        sender.broadcast(newEvent("B"));
+        assertEquals("B", name(receiver.received.poll(10, TimeUnit.SECONDS)));
+        assertEquals(1, receiver.sequencer.getPeerCount());
+        assertEquals(0, receiver.lost.size());
+    }
+
+    @Test
+    public void testSequenceIsSerialized() throws Exception {
+        RemoteCommitEvent event = newEvent("A");
+        event.setSequence(-5L, 42L);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(event);
+        }
+        RemoteCommitEvent copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy = (RemoteCommitEvent) ois.readObject();
+        }
+        assertEquals(RemoteCommitEvent.PAYLOAD_EXTENTS, copy.getPayloadType());
+        assertEquals(-5L, copy.getSenderId());
+        assertEquals(42L, copy.getSequence());
+        assertEquals("A", name(copy));
+
+        BinaryRemoteCommitEventCodec codec = new BinaryRemoteCommitEventCodec();
+        copy = codec.decode(codec.encode(event));
+        assertEquals(RemoteCommitEvent.PAYLOAD_EXTENTS, copy.getPayloadType());
+        assertEquals(-5L, copy.getSenderId());
+        assertEquals(42L, copy.getSequence());
+    }
+
+    @Test
+    public void testCatchUpRequestIsSerialized() throws Exception {
+        RemoteCommitEvent request = new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST,
+            null, null, null, null);
+        request.setCatchUp(-7L, 12L);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(request);
+        }
+        RemoteCommitEvent copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy = (RemoteCommitEvent) ois.readObject();
+        }
+        assertEquals(RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST, copy.getPayloadType());
+        assertEquals(-7L, copy.getTargetId());
+        assertEquals(12L, copy.getFromSequence());
+        assertEquals(0L, copy.getSequence());
+
+        BinaryRemoteCommitEventCodec codec = new BinaryRemoteCommitEventCodec();
+        copy = codec.decode(codec.encode(request));
+        assertEquals(RemoteCommitEvent.PAYLOAD_CATCH_UP_REQUEST, copy.getPayloadType());
+        assertEquals(-7L, copy.getTargetId());
+        assertEquals(12L, copy.getFromSequence());
+    }
+
+    /**
+     * Provider sending events to the other providers of the test.
+     */
+    private class ProviderStub
+        extends AbstractRemoteCommitProvider {
+
+        private final BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Long> lost = new LinkedBlockingQueue<>();
+        // the sequenced events reaching the provider, including duplicates
+        private final AtomicInteger delivered = new AtomicInteger();
+
+        @Override
+        public void broadcast(RemoteCommitEvent event) {
+            sequence(event);
+            if (_drop.test(event))
+                return;
+            for (ProviderStub provider : _providers)
+                if (provider != this && provider != _dropTo)
+                    provider.fireEvent(event, this);
+        }
+
+        @Override
+        protected void resend(RemoteCommitEvent event, Object requester) {
+            ((ProviderStub) requester).fireEvent(event, this);
+        }
+
+        @Override
+        protected void fireEvent(RemoteCommitEvent event) {
+            if (event.getSequence() != 0 && event.getPayloadType() != RemoteCommitEvent.PAYLOAD_HEARTBEAT)
+                delivered.incrementAndGet();
+            if (sequencer.receive(event))
+                received.add(event);
+        }
+
+        @Override
+        protected void eventsLost(long senderId) {
+            lost.add(senderId);
+        }
+    }
+}
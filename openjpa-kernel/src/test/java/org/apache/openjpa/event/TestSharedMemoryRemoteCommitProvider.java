@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.lib.log.NoneLogFactory;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link SharedMemoryRemoteCommitProvider}.
+ */
+public class TestSharedMemoryRemoteCommitProvider {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<SharedMemoryRemoteCommitProvider> _providers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (SharedMemoryRemoteCommitProvider provider : _providers)
+            provider.close();
+    }
+
+    /**
+     * Return a configured provider that adds the events it receives to the
+     * given queue.
+     */
+    private SharedMemoryRemoteCommitProvider newProvider(File file, int capacity,
+        BlockingQueue<RemoteCommitEvent> received) {
+        SharedMemoryRemoteCommitProvider provider = new SharedMemoryRemoteCommitProvider() {
+            @Override
+            protected void fireEvent(RemoteCommitEvent event) {
+                received.add(event);
+            }
+        };
+        provider.log = new NoneLogFactory().getLog(getClass().getName());
+        provider.setFile(file.getPath());
+        provider.setCapacity(capacity);
+        provider.endConfiguration();
+        _providers.add(provider);
+        return provider;
+    }
+
+    private static RemoteCommitEvent newEvent(String name) {
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null, null,
+            Collections.singleton(name), null);
+    }
+
+    private static String name(RemoteCommitEvent event) {
+        return (String) event.getUpdatedTypeNames().iterator().next();
+    }
+
+    @Test
+    public void testEventsAreDelivered() throws Exception {
+        File file = new File(folder.getRoot(), "ring");
+        BlockingQueue<RemoteCommitEvent> received1 = new LinkedBlockingQueue<>();
+        BlockingQueue<RemoteCommitEvent> received2 = new LinkedBlockingQueue<>();
+        BlockingQueue<RemoteCommitEvent> received3 = new LinkedBlockingQueue<>();
+        SharedMemoryRemoteCommitProvider provider1 = newProvider(file, 64 * 1024, received1);
+        newProvider(file, 64 * 1024, received2);
+        SharedMemoryRemoteCommitProvider provider3 = newProvider(file, 64 * 1024, received3);
+        provider3.setCodec("binary");
+
+        provider1.broadcast(newEvent("A"));
+        assertEquals("A", name(received2.poll(10, TimeUnit.SECONDS)));
+        RemoteCommitEvent event = received3.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals("A", name(event));
+
+        // the sender is not notified of its own events
+        assertNull(received1.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        File file = new File(folder.getRoot(), "ring");
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        SharedMemoryRemoteCommitProvider sender = newProvider(file, 4096, new LinkedBlockingQueue<>());
+        newProvider(file, 4096, received);
+
+        // each event fills a varying part of the ring, so records are
+        // padded at its end at various offsets
+        for (int i = 0; i < 200; i++) {
+            String name = "Event" + i + String.join("", Collections.nCopies(i % 37, "x"));
+            sender.broadcast(newEvent(name));
+            RemoteCommitEvent event = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals(name, name(event));
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        File file = new File(folder.getRoot(), "ring");
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        newProvider(file, 4 * 1024 * 1024, received);
+        int producers = 4;
+        int events = 250;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            SharedMemoryRemoteCommitProvider sender = newProvider(file, 4 * 1024 * 1024,
+                new LinkedBlockingQueue<>());
+            String prefix = "P" + p + "-";
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < events; i++)
+                    sender.broadcast(newEvent(prefix + i));
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        // every event arrives once, in the order of its producer
+        Map<String, Integer> next = new HashMap<>();
+        for (int i = 0; i < producers * events; i++) {
+            RemoteCommitEvent event = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            String[] parts = name(event).split("-");
+            int expected = next.getOrDefault(parts[0], 0);
+            assertEquals(expected, Integer.parseInt(parts[1]));
+            next.put(parts[0], expected + 1);
+        }
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testLappedReaderReportsLostEvents() throws Exception {
+        File file = new File(folder.getRoot(), "ring");
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch lost = new CountDownLatch(1);
+        SharedMemoryRemoteCommitProvider reader = new SharedMemoryRemoteCommitProvider() {
+            @Override
+            protected void fireEvent(RemoteCommitEvent event) {
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            protected void eventsLost() {
+                lost.countDown();
+            }
+        };
+        reader.log = new NoneLogFactory().getLog(getClass().getName());
+        reader.setFile(file.getPath());
+        reader.setCapacity(4096);
+        reader.endConfiguration();
+        _providers.add(reader);
+        SharedMemoryRemoteCommitProvider sender = newProvider(file, 4096, new LinkedBlockingQueue<>());
+
+        // the reader is held in its listener while the ring wraps past it
+        sender.broadcast(newEvent("First"));
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 200; i++)
+            sender.broadcast(newEvent("Event" + i));
+        release.countDown();
+        assertTrue(lost.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEventTooLargeIsDropped() throws Exception {
+        File file = new File(folder.getRoot(), "ring");
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        SharedMemoryRemoteCommitProvider sender = newProvider(file, 1024, new LinkedBlockingQueue<>());
+        newProvider(file, 1024, received);
+
+        sender.broadcast(newEvent(String.join("", Collections.nCopies(1000, "x"))));
+        sender.broadcast(newEvent("Small"));
+        assertEquals("Small", name(received.poll(10, TimeUnit.SECONDS)));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.lib.log.NoneLogFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link TCPRemoteCommitProvider}.
+ */
+public class TestTCPRemoteCommitProvider {
+
+    private final List<TCPRemoteCommitProvider> _providers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (TCPRemoteCommitProvider provider : _providers)
+            provider.close();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Return a configured provider numbering its events, that adds the
+     * events it delivers to the given queue.
+     */
+    private TCPRemoteCommitProvider newProvider(int port, String addresses,
+        BlockingQueue<RemoteCommitEvent> received) throws IOException {
+        TCPRemoteCommitProvider provider = new TCPRemoteCommitProvider() {
+            @Override
+            protected void fireEvent(RemoteCommitEvent event) {
+                if (sequencer.receive(event))
+                    received.add(event);
+            }
+        };
+        provider.log = new NoneLogFactory().getLog(getClass().getName());
+        provider.setPort(port);
+        provider.setAddresses(addresses);
+        provider.setReplayLogSize(100);
+        provider.endConfiguration();
+        _providers.add(provider);
+        return provider;
+    }
+
+    private static RemoteCommitEvent newEvent(String name) {
+        return new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS, null, null,
+            Collections.singleton(name), null);
+    }
+
+    private static String name(RemoteCommitEvent event) {
+        return (String) event.getUpdatedTypeNames().iterator().next();
+    }
+
+    @Test
+    public void testMissedEventIsSentAgain() throws Exception {
+        int port1 = freePort();
+        int port2 = freePort();
+        BlockingQueue<RemoteCommitEvent> received = new LinkedBlockingQueue<>();
+        TCPRemoteCommitProvider sender = newProvider(port1, "127.0.0.1:" + port2, new LinkedBlockingQueue<>());
+        newProvider(port2, "127.0.0.1:" + port1, received);
+
+        sender.broadcast(newEvent("A"));
+        assertEquals("A", name(received.poll(10, TimeUnit.SECONDS)));
+        // number an event without sending it, as if it were lost
+        sender.sequence(newEvent("B"));
+        sender.broadcast(newEvent("C"));
+
+        assertEquals("C", name(received.poll(10, TimeUnit.SECONDS)));
+        RemoteCommitEvent event = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals("B", name(event));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
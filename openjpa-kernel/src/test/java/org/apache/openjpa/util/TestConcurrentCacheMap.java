@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.openjpa.lib.util.concurrent.StripedClockMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ConcurrentCacheMap}.
+ */
+public class TestConcurrentCacheMap {
+
+    @Test
+    public void testBasics() {
+        ConcurrentCacheMap map = new ConcurrentCacheMap(10);
+        assertTrue(map.isEmpty());
+        assertNull(map.put("a", 1));
+        assertEquals(1, map.get("a"));
+        assertEquals(1, map.put("a", 2));
+        assertEquals(2, map.get("a"));
+        assertTrue(map.containsKey("a"));
+        assertTrue(map.containsValue(2));
+        assertEquals(1, map.size());
+        assertEquals(2, map.remove("a"));
+        assertNull(map.get("a"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testOverflowMovesToSoftMap() {
+        ConcurrentCacheMap map = new ConcurrentCacheMap(5, 5, .75F, 4);
+        for (int i = 0; i < 20; i++)
+            map.put(i, "v" + i);
+        assertEquals(5, map.cacheMap.size());
+        assertEquals(20, map.size());
+        for (int i = 0; i < 20; i++)
+            assertEquals("v" + i, map.get(i));
+        assertTrue(map.cacheMap.size() <= 5);
+    }
+
+    @Test
+    public void testOverflowWithoutSoftReferences() {
+        final List<Object> removed = new ArrayList<>();
+        ConcurrentCacheMap map = new ConcurrentCacheMap(5, 5, .75F, 4) {
+            @Override
+            protected void entryRemoved(Object key, Object value,
+                boolean expired) {
+                if (expired)
+                    removed.add(key);
+            }
+        };
+        map.setSoftReferenceSize(0);
+        for (int i = 0; i < 20; i++)
+            map.put(i, i);
+        assertEquals(5, map.size());
+        assertEquals(15, removed.size());
+    }
+
+    @Test
+    public void testReferencedEntriesSurviveEviction() {
+        ConcurrentCacheMap map = new ConcurrentCacheMap(10, 10, .75F, 1);
+        map.setSoftReferenceSize(0);
+        for (int i = 0; i < 10; i++)
+            map.put(i, i);
+        for (int i = 0; i < 5; i++)
+            map.get(i);
+        for (int i = 10; i < 15; i++)
+            map.put(i, i);
+        for (int i = 0; i < 5; i++)
+            assertEquals(i, map.get(i));
+        for (int i = 5; i < 10; i++)
+            assertNull(map.get(i));
+    }
+
+    @Test
+    public void testPinning() {
+        ConcurrentCacheMap map = new ConcurrentCacheMap(2, 2, .75F, 1);
+        map.setSoftReferenceSize(0);
+        map.put("pinned", "p");
+        assertTrue(map.pin("pinned"));
+        assertFalse(map.pin("absent"));
+        for (int i = 0; i < 10; i++)
+            map.put(i, i);
+        assertEquals("p", map.get("pinned"));
+        assertEquals(3, map.size());
+        assertTrue(map.getPinnedKeys().contains("pinned"));
+
+        assertEquals("p", map.remove("pinned"));
+        assertNull(map.get("pinned"));
+        assertTrue(map.getPinnedKeys().contains("pinned"));
+        map.put("pinned", "q");
+        assertTrue(map.unpin("pinned"));
+        assertEquals("q", map.get("pinned"));
+        assertFalse(map.getPinnedKeys().contains("pinned"));
+    }
+
+    @Test
+    public void testClear() {
+        final AtomicInteger removals = new AtomicInteger();
+        ConcurrentCacheMap map = new ConcurrentCacheMap(10) {
+            @Override
+            protected void entryRemoved(Object key, Object value,
+                boolean expired) {
+                removals.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < 5; i++)
+            map.put(i, i);
+        map.pin(0);
+        map.clear();
+        assertEquals(5, removals.get());
+        assertTrue(map.isEmpty());
+        assertTrue(map.getPinnedKeys().isEmpty());
+    }
+
+    @Test
+    public void testBulkGetAndPut() {
+        CacheMap[] maps = { new CacheMap(true, 10, 10, .75F, 4),
+            new ConcurrentCacheMap(10, 10, .75F, 4) };
+        for (CacheMap map : maps) {
+            Map<Object, Object> vals = new LinkedHashMap<>();
+            for (int i = 0; i < 15; i++)
+                vals.put(i, "v" + i);
+            map.putAll(vals);
+            assertEquals(10, map.getCacheSize());
+            assertEquals(15, map.size());
+            map.pin(14);
+
+            List<Object> keys = new ArrayList<>(vals.keySet());
+            keys.add(99);
+            Map<?, ?> found = map.getAll(keys);
+            assertEquals(keys.size(), found.size());
+            assertTrue(found.containsKey(99));
+            assertNull(found.get(99));
+            for (int i = 0; i < 15; i++)
+                assertEquals("v" + i, found.get(i));
+            assertEquals("v14", map.get(14));
+
+            Map<Object, Object> more = new HashMap<>();
+            more.put(0, "w0");
+            more.put(20, "w20");
+            map.putAll(more, false);
+            assertEquals("v0", map.get(0));
+            assertEquals("w20", map.get(20));
+        }
+    }
+
+    @Test
+    public void testConcurrentAccessHonorsSizeLimit() throws Exception {
+        final ConcurrentCacheMap map = new ConcurrentCacheMap(100, 100, .75F, 8);
+        map.setSoftReferenceSize(0);
+        final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int base = t * 10000;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5000; i++) {
+                        Integer key = base + i % 500;
+                        if (map.get(key) == null)
+                            map.put(key, key);
+                        else if (i % 7 == 0)
+                            map.remove(key);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+        // evictors never wait on a busy stripe, so each thread may leave
+        // the map one entry over its limit
+        assertTrue(String.valueOf(map.size()),
+            map.size() <= 100 + threads.length);
+        int count = 0;
+        for (Object key : map.keySet()) {
+            assertEquals(key, map.get(key));
+            count++;
+        }
+        assertEquals(map.size(), count);
+    }
+
+    @Test
+    public void testWriteLockExcludesMutations() throws Exception {
+        final ConcurrentCacheMap map = new ConcurrentCacheMap(100, 100, .75F, 8);
+        map.writeLock();
+        Thread writer = new Thread(() -> map.put("a", 1));
+        try {
+            writer.start();
+            writer.join(200);
+            assertTrue(writer.isAlive());
+            assertNull(map.get("a"));
+        } finally {
+            map.writeUnlock();
+        }
+        writer.join();
+        assertEquals(1, map.get("a"));
+    }
+
+    @Test
+    public void testRemoveIsNotUndoneByEviction() throws Exception {
+        final Thread[] remover = new Thread[1];
+        final ConcurrentCacheMap map = new ConcurrentCacheMap(100, 100, .75F, 8) {
+            @Override
+            protected void cacheMapOverflowRemoved(Object key, Object value) {
+                // invalidate the victim while it is being evicted
+                remover[0] = new Thread(() -> remove(key));
+                remover[0].start();
+                try {
+                    remover[0].join(200);
+                } catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+                assertTrue(remover[0].isAlive());
+                super.cacheMapOverflowRemoved(key, value);
+            }
+        };
+        map.setMaxWeight(2);
+        map.put("a", 1);
+        map.put("b", 2);
+        map.setMaxWeight(1);
+        remover[0].join();
+        assertEquals(1, map.size());
+        assertEquals(1, map.getWeight());
+    }
+
+    @Test
+    public void testStripeLockDoesNotBlockOtherStripes() throws Exception {
+        final ConcurrentCacheMap map = new ConcurrentCacheMap(100, 100, .75F, 8);
+        final StripedClockMap striped = (StripedClockMap) map.cacheMap;
+        Integer other = 1;
+        while (striped.stripeOf(other) == striped.stripeOf(0))
+            other++;
+        final Integer key = other;
+        striped.lock(0);
+        try {
+            Thread writer = new Thread(() -> map.put(key, key));
+            writer.start();
+            writer.join(5000);
+            assertFalse(writer.isAlive());
+            assertEquals(key, map.get(key));
+        } finally {
+            striped.unlock(0);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link FieldSet} against {@link BitSet}.
+ */
+public class TestFieldSet {
+
+    private static void assertSame(BitSet expected, FieldSet actual) {
+        assertEquals(expected, actual.toBitSet());
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        for (int i = expected.nextSetBit(0), j = actual.nextSetBit(0); ;
+            i = expected.nextSetBit(i + 1), j = actual.nextSetBit(j + 1)) {
+            assertEquals(i, j);
+            if (i == -1)
+                break;
+        }
+    }
+
+    private static void testBehavesLikeBitSet(int fields) {
+        Random random = new Random(fields);
+        BitSet expected = new BitSet();
+        FieldSet actual = FieldSet.newInstance(fields);
+        BitSet other = new BitSet();
+        for (int i = 0; i < 5000; i++) {
+            int field = random.nextInt(fields);
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1:
+                    expected.set(field);
+                    actual.set(field);
+                    break;
+                case 2:
+                    expected.clear(field);
+                    actual.clear(field);
+                    break;
+                case 3:
+                    other.set(field);
+                    expected.or(other);
+                    actual.or(FieldSet.valueOf(other, fields));
+                    break;
+                case 4:
+                    expected.andNot(other);
+                    actual.andNot(other);
+                    other.clear();
+                    break;
+                default:
+                    assertEquals(expected.get(field), actual.get(field));
+            }
+            assertSame(expected, actual);
+        }
+        assertEquals(actual, actual.copy());
+        actual.clear();
+        assertTrue(actual.isEmpty());
+        assertEquals(-1, actual.nextSetBit(0));
+    }
+
+    @Test
+    public void testSmall() {
+        testBehavesLikeBitSet(1);
+        testBehavesLikeBitSet(64);
+    }
+
+    @Test
+    public void testLarge() {
+        testBehavesLikeBitSet(65);
+        testBehavesLikeBitSet(300);
+    }
+
+    @Test
+    public void testBounds() {
+        FieldSet small = FieldSet.newInstance(10);
+        assertFalse(small.get(64));
+        assertFalse(small.get(-1));
+        small.clear(100);
+        small.set(63);
+        assertEquals(64, small.length());
+        assertEquals(-1, small.nextSetBit(64));
+        try {
+            small.set(64);
+            fail();
+        } catch (IndexOutOfBoundsException ioobe) {
+            // expected
+        }
+
+        FieldSet large = FieldSet.newInstance(100);
+        large.set(99);
+        assertFalse(large.get(200));
+        assertEquals(100, large.length());
+        assertEquals(99, large.nextSetBit(64));
+        assertEquals(-1, large.nextSetBit(200));
+    }
+}
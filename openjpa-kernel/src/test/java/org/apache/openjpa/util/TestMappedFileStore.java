@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link MappedFileStore}.
+ */
+public class TestMappedFileStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] record(int key, int len) {
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++)
+            bytes[i] = (byte) (key * 7 + i);
+        return bytes;
+    }
+
+    @Test
+    public void testFilesAreCreatedLazilyAndDeletedOnClose() {
+        MappedFileStore store = new MappedFileStore(folder.getRoot(), "test-",
+            4096, 1024);
+        assertNull(store.getDirectory());
+
+        assertTrue(store.put("a", record(1, 100), 0, 100));
+        File dir = store.getDirectory();
+        assertNotNull(dir);
+        assertTrue(dir.getName().startsWith("test-"));
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(1024, dir.listFiles()[0].length());
+        assertArrayEquals(record(1, 100), store.get("a"));
+
+        store.close();
+        assertFalse(dir.exists());
+    }
+
+    @Test
+    public void testWrapAroundReusesFiles() {
+        final List<Object> evicted = new ArrayList<>();
+        MappedFileStore store = new MappedFileStore(folder.getRoot(), "test-",
+            300, 100) {
+            @Override
+            protected void entryEvicted(Object key, ByteBuffer record) {
+                evicted.add(key);
+            }
+        };
+        for (int i = 0; i < 10; i++)
+            assertTrue(store.put(i, record(i, 50), 0, 50));
+        assertEquals(3, store.getDirectory().listFiles().length);
+        assertEquals(4, evicted.size());
+        for (int i = 0; i < 4; i++)
+            assertNull(store.get(i));
+        for (int i = 4; i < 10; i++)
+            assertArrayEquals(record(i, 50), store.get(i));
+        store.close();
+    }
+
+    @Test
+    public void testUnwritableDirectoryFails() throws Exception {
+        File file = folder.newFile("not-a-dir");
+        MappedFileStore store = new MappedFileStore(file, "test-", 4096);
+        try {
+            store.put("a", record(1, 10), 0, 10);
+            fail("Expected an exception");
+        } catch (GeneralException ge) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link ObjectIdMap}.
+ */
+public class TestObjectIdMap {
+
+    private static Object newId(Random random) {
+        long key = random.nextInt(500);
+        switch (random.nextInt(3)) {
+            case 0:
+                return new LongId(Base.class, key);
+            case 1:
+                return new IntId(Sub.class, (int) key);
+            default:
+                return new StringId(Base.class, String.valueOf(key));
+        }
+    }
+
+    @Test
+    public void testBehavesLikeHashMap() {
+        Random random = new Random(42);
+        Map<Object, Integer> expected = new HashMap<>();
+        ObjectIdMap<Integer> map = new ObjectIdMap<>();
+        for (int i = 0; i < 50000; i++) {
+            Object id = newId(random);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(id, i), map.put(id, i));
+                    break;
+                case 2:
+                    assertEquals(expected.remove(id), map.remove(id));
+                    break;
+                default:
+                    assertEquals(expected.get(id), map.get(id));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.keySet(), map.keySet());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(new LongId(Base.class, 1)));
+    }
+
+    @Test
+    public void testTypesMatchLikeIds() {
+        ObjectIdMap<String> map = new ObjectIdMap<>();
+        map.put(new LongId(Sub.class, 1), "sub");
+        // an id of the base type that may be a subclass finds the entry
+        assertEquals("sub", map.get(new LongId(Base.class, 1, true)));
+        assertNull(map.get(new LongId(Base.class, 1, false)));
+        assertNull(map.get(new IntId(Sub.class, 1)));
+        assertNull(map.get(new LongId(Sub.class, 2)));
+
+        map.put(new IntId(Base.class, 2, false), "base");
+        // a subclass id matches the stored id of its base type
+        assertEquals("base", map.get(new IntId(Sub.class, 2)));
+        assertEquals("base", map.remove(new IntId(Sub.class, 2)));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testRemoveKeepsProbeSequences() {
+        // a small table forces collisions and wrap-around
+        ObjectIdMap<Long> map = new ObjectIdMap<>(4);
+        for (long i = 0; i < 10; i++)
+            map.put(new LongId(Base.class, i), i);
+        for (long i = 0; i < 10; i += 2)
+            assertEquals(Long.valueOf(i), map.remove(new LongId(Base.class, i)));
+        for (long i = 0; i < 10; i++)
+            assertEquals(i % 2 == 0 ? null : Long.valueOf(i), map.get(new LongId(Base.class, i)));
+        assertEquals(5, map.size());
+    }
+
+    @Test
+    public void testIteration() {
+        ObjectIdMap<String> map = new ObjectIdMap<>();
+        map.put(new LongId(Base.class, 1, true), "a");
+        map.put(new IntId(Base.class, 2), "b");
+        map.put("c", "c");
+
+        Map<Object, String> copy = new HashMap<>(map);
+        assertEquals(3, copy.size());
+        assertEquals("a", copy.get(new LongId(Base.class, 1)));
+        assertEquals("b", copy.get(new IntId(Base.class, 2)));
+        assertEquals("c", copy.get("c"));
+        for (Object key : map.keySet())
+            if (key instanceof LongId)
+                assertTrue(((LongId) key).hasSubclasses());
+        assertEquals(3, map.values().size());
+        assertTrue(map.values().contains("b"));
+
+        Iterator<String> itr = map.values().iterator();
+        itr.next();
+        map.put("d", "d");
+        try {
+            itr.next();
+            fail();
+        } catch (ConcurrentModificationException cme) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ObjectIdMap<String> map = new ObjectIdMap<>();
+        for (int i = 0; i < 100; i++)
+            map.put(new LongId(Base.class, i), String.valueOf(i));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(map);
+        }
+        ObjectIdMap<String> copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy = (ObjectIdMap<String>) ois.readObject();
+        }
+        assertEquals(map, copy);
+        copy.put(new LongId(Base.class, 100), "100");
+        assertEquals(101, copy.size());
+    }
+
+    public static class Base {
+    }
+
+    public static class Sub
+        extends Base {
+    }
+}
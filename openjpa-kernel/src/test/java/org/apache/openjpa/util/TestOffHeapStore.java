@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link OffHeapStore}.
+ */
+public class TestOffHeapStore {
+
+    private static byte[] record(int key, int len) {
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++)
+            bytes[i] = (byte) (key + i);
+        return bytes;
+    }
+
+    @Test
+    public void testBasics() {
+        OffHeapStore store = new OffHeapStore(1024, 256);
+        assertTrue(store.put("a", record(1, 10), 0, 10));
+        assertArrayEquals(record(1, 10), store.get("a"));
+        assertTrue(store.containsKey("a"));
+        assertEquals(1, store.size());
+        assertEquals(10, store.getLiveBytes());
+
+        assertTrue(store.put("a", record(2, 20), 0, 20));
+        assertArrayEquals(record(2, 20), store.get("a"));
+        assertEquals(20, store.getLiveBytes());
+
+        assertTrue(store.remove("a"));
+        assertFalse(store.remove("a"));
+        assertNull(store.get("a"));
+        assertEquals(0, store.getLiveBytes());
+    }
+
+    @Test
+    public void testRecordsLargerThanSlabAreRejected() {
+        OffHeapStore store = new OffHeapStore(1024, 256);
+        assertFalse(store.put("a", new byte[257], 0, 257));
+        assertNull(store.get("a"));
+    }
+
+    @Test
+    public void testOldestSlabIsEvicted() {
+        final List<Object> evicted = new ArrayList<>();
+        OffHeapStore store = new OffHeapStore(400, 100) {
+            @Override
+            protected void entryEvicted(Object key, ByteBuffer record) {
+                assertEquals(50, record.remaining());
+                assertEquals((byte) (int) (Integer) key, record.get(record.position()));
+                evicted.add(key);
+            }
+        };
+        // 4 slabs of 2 records each
+        for (int i = 0; i < 8; i++)
+            assertTrue(store.put(i, record(i, 50), 0, 50));
+        assertTrue(evicted.isEmpty());
+        assertEquals(400, store.getLiveBytes());
+
+        // wrapping around reclaims the first slab
+        store.put(2, record(9, 50), 0, 50);
+        assertEquals(2, evicted.size());
+        assertEquals(0, evicted.get(0));
+        assertEquals(1, evicted.get(1));
+        assertNull(store.get(0));
+        assertArrayEquals(record(9, 50), store.get(2));
+
+        // the replaced copy of 2 in the second slab is not evicted with it
+        store.put(8, record(8, 50), 0, 50);
+        store.put(9, record(9, 50), 0, 50);
+        assertEquals(3, evicted.size());
+        assertEquals(3, evicted.get(2));
+        assertArrayEquals(record(9, 50), store.get(2));
+        for (int i = 4; i < 10; i++)
+            assertArrayEquals(record(i, 50), store.get(i));
+        assertEquals(7, store.size());
+    }
+
+    @Test
+    public void testRemoveIfAndClear() {
+        OffHeapStore store = new OffHeapStore(1024, 256);
+        for (int i = 0; i < 10; i++)
+            store.put(i, record(i, 8), 0, 8);
+        store.removeIf(key -> ((Integer) key) % 2 == 0);
+        assertEquals(5, store.size());
+        assertNull(store.get(0));
+        assertArrayEquals(record(1, 8), store.get(1));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.getLiveBytes());
+        assertNull(store.get(1));
+        assertTrue(store.put(1, record(3, 8), 0, 8));
+        assertArrayEquals(record(3, 8), store.get(1));
+    }
+
+    @Test
+    public void testConcurrentReadersSeeWholeRecords() throws Exception {
+        final OffHeapStore store = new OffHeapStore(4096, 512);
+        final List<Throwable> errors = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                int key = i % 100;
+                store.put(key, record(key, 64), 0, 64);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    int key = i % 100;
+                    byte[] bytes = store.get(key);
+                    if (bytes != null)
+                        assertArrayEquals(record(key, 64), bytes);
+                }
+            } catch (Throwable t) {
+                synchronized (errors) {
+                    errors.add(t);
+                }
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+}
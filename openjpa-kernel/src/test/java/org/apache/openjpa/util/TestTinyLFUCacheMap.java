@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import org.apache.openjpa.lib.util.concurrent.FrequencySketch;
+import org.apache.openjpa.lib.util.concurrent.TinyLFUMap;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link TinyLFUCacheMap} and its {@link FrequencySketch}.
+ */
+public class TestTinyLFUCacheMap {
+
+    @Test
+    public void testSketchCountsAndSaturates() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        assertEquals(0, sketch.frequency(42));
+        for (int i = 0; i < 5; i++)
+            sketch.increment(42);
+        assertEquals(5, sketch.frequency(42));
+        for (int i = 0; i < 20; i++)
+            sketch.increment(42);
+        assertEquals(15, sketch.frequency(42));
+    }
+
+    @Test
+    public void testSketchAges() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 8; i++)
+            sketch.increment(-1);
+        assertEquals(8, sketch.frequency(-1));
+        // ten times the size in additions triggers a reset
+        for (int i = 0; i < 640; i++)
+            sketch.increment(i);
+        assertTrue(sketch.frequency(-1) < 8);
+    }
+
+    @Test
+    public void testBasics() {
+        TinyLFUCacheMap map = new TinyLFUCacheMap(10);
+        assertNull(map.put("a", 1));
+        assertEquals(1, map.get("a"));
+        assertEquals(1, map.remove("a"));
+        assertNull(map.get("a"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testSizeLimit() {
+        TinyLFUCacheMap map = new TinyLFUCacheMap(50, 50, .75F, 4);
+        map.setSoftReferenceSize(0);
+        for (int i = 0; i < 1000; i++)
+            map.put(i, i);
+        assertEquals(50, map.size());
+        map.setCacheSize(10);
+        assertEquals(10, map.size());
+    }
+
+    @Test
+    public void testWindowIsSplitBetweenStripes() {
+        // one percent of 3200 is a window of 32 entries, 2 per stripe
+        TinyLFUCacheMap map = new TinyLFUCacheMap(3200, 3200, .75F, 16);
+        for (int i = 0; i < 3200; i++)
+            map.put(i, i);
+        assertTrue(((TinyLFUMap) map.cacheMap).getWindowSize() <= 32);
+    }
+
+    @Test
+    public void testScanDoesNotFlushHotEntries() {
+        assertTrue(hotHits(new TinyLFUCacheMap(100, 100, .75F, 4)) >= 45);
+        // plain recency loses most of the hot set to the scan
+        assertTrue(hotHits(new ConcurrentCacheMap(100, 100, .75F, 4)) < 45);
+    }
+
+    /**
+     * Interleave reads of 50 hot keys, each read three times per round,
+     * with a scan of keys read only once, and return how many hot keys are
+     * still cached afterwards.
+     */
+    private static int hotHits(CacheMap map) {
+        map.setSoftReferenceSize(0);
+        int scan = 1000;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 150; i++) {
+                if (map.get(i % 50) == null)
+                    map.put(i % 50, i % 50);
+            }
+            for (int i = 0; i < 200; i++, scan++) {
+                if (map.get(scan) == null)
+                    map.put(scan, scan);
+            }
+        }
+        int hits = 0;
+        for (int i = 0; i < 50; i++)
+            if (map.get(i) != null)
+                hits++;
+        return hits;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests bounding {@link CacheMap}s by the weight of their entries.
+ */
+public class TestWeightedCacheMap {
+
+    /**
+     * Create a plain, LRU or concurrent map that weighs string values by
+     * their length and tracks the weight changes.
+     */
+    private static CacheMap newMap(int type, AtomicLong tracked) {
+        switch (type) {
+            case 0:
+                return new CacheMap(false, 100000, 100, .75F, 16) {
+                    @Override
+                    protected long weigh(Object key, Object value) {
+                        return ((String) value).length();
+                    }
+
+                    @Override
+                    protected void weightChanged(Object key, Object value, long delta) {
+                        tracked.addAndGet(delta);
+                    }
+                };
+            case 1:
+                return new CacheMap(true, 100000, 100, .75F, 16) {
+                    @Override
+                    protected long weigh(Object key, Object value) {
+                        return ((String) value).length();
+                    }
+
+                    @Override
+                    protected void weightChanged(Object key, Object value, long delta) {
+                        tracked.addAndGet(delta);
+                    }
+                };
+            default:
+                return new ConcurrentCacheMap(100000, 100, .75F, 4) {
+                    @Override
+                    protected long weigh(Object key, Object value) {
+                        return ((String) value).length();
+                    }
+
+                    @Override
+                    protected void weightChanged(Object key, Object value, long delta) {
+                        tracked.addAndGet(delta);
+                    }
+                };
+        }
+    }
+
+    @Test
+    public void testWeightIsBounded() {
+        for (int type = 0; type < 3; type++) {
+            AtomicLong tracked = new AtomicLong();
+            CacheMap map = newMap(type, tracked);
+            map.setSoftReferenceSize(0);
+            map.setMaxWeight(1000);
+            for (int i = 0; i < 100; i++)
+                map.put(i, repeat(i % 10 == 0 ? 500 : 50));
+            assertTrue(map.getWeight() <= 1000);
+            assertTrue(map.size() >= 10);
+            assertTrue(map.size() < 100);
+            assertEquals(map.getWeight(), tracked.get());
+        }
+    }
+
+    @Test
+    public void testReplaceRemoveAndClearReleaseWeight() {
+        for (int type = 0; type < 3; type++) {
+            AtomicLong tracked = new AtomicLong();
+            CacheMap map = newMap(type, tracked);
+            map.setMaxWeight(1000);
+            map.put("a", repeat(100));
+            map.put("b", repeat(200));
+            assertEquals(300, map.getWeight());
+            map.put("a", repeat(10));
+            assertEquals(210, map.getWeight());
+            map.remove("b");
+            assertEquals(10, map.getWeight());
+
+            // pinned entries are not weighed
+            map.pin("a");
+            assertEquals(0, map.getWeight());
+            map.unpin("a");
+            assertEquals(10, map.getWeight());
+
+            map.put("c", repeat(300));
+            map.clear();
+            assertEquals(0, map.getWeight());
+            assertEquals(0, tracked.get());
+        }
+    }
+
+    @Test
+    public void testLRUEvictsLeastRecentlyUsed() {
+        CacheMap map = newMap(1, new AtomicLong());
+        map.setSoftReferenceSize(0);
+        map.setMaxWeight(300);
+        map.put("a", repeat(100));
+        map.put("b", repeat(100));
+        map.put("c", repeat(100));
+        map.get("a");
+        map.put("d", repeat(100));
+        assertNotNull(map.get("a"));
+        assertNull(map.get("b"));
+        assertNotNull(map.get("d"));
+    }
+
+    @Test
+    public void testUnboundedMapIsNotWeighed() {
+        AtomicLong tracked = new AtomicLong();
+        CacheMap map = newMap(0, tracked);
+        map.put("a", repeat(100));
+        assertEquals(-1, map.getMaxWeight());
+        assertEquals(0, map.getWeight());
+        assertEquals(0, tracked.get());
+    }
+
+    private static String repeat(int length) {
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            buf.append('x');
+        return buf.toString();
+    }
+}
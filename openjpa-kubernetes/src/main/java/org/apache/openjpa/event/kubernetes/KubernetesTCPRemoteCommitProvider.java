@@ -18,13 +18,17 @@
  */
 package org.apache.openjpa.event.kubernetes;
 
+import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientBuilder;
 import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
 import io.fabric8.kubernetes.client.readiness.Readiness;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import org.apache.openjpa.event.DynamicTCPRemoteCommitProvider;
 import org.apache.openjpa.lib.util.Localizer;
@@ -37,6 +41,12 @@ public class KubernetesTCPRemoteCommitProvider extends DynamicTCPRemoteCommitPro
 
     private String _label = "<label>";
 
+    private KubernetesClient _client;
+
+    private volatile SharedIndexInformer<Pod> _informer;
+
+    private boolean _closed;
+
     public KubernetesTCPRemoteCommitProvider() throws UnknownHostException {
         super();
     }
@@ -61,26 +71,137 @@ public class KubernetesTCPRemoteCommitProvider extends DynamicTCPRemoteCommitPro
         return new KubernetesClientBuilder().build();
     }
 
+    /**
+     * Start watching the pods of the configured namespace and label, so that peers are added, removed and
+     * reconnected as soon as their pods change.
+     */
+    @Override
+    public void endConfiguration() {
+        try {
+            startInformer();
+        } catch (KubernetesClientException e) {
+            if (log.isFatalEnabled()) {
+                log.fatal(s_loc.get("kubernetestcp-error"), e);
+            }
+        }
+
+        super.endConfiguration();
+    }
+
+    /**
+     * Create the client and start the pod informer, unless already done, and return the informer or null if
+     * this provider is closed.
+     */
+    private synchronized SharedIndexInformer<Pod> startInformer() throws KubernetesClientException {
+        if (_informer == null && !_closed) {
+            if (_client == null) {
+                _client = kubernetesClient();
+            }
+            _informer = _client.pods().inNamespace(_namespace).withLabel(_label).inform(new PodHandler());
+        }
+        return _informer;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        synchronized (this) {
+            _closed = true;
+            if (_informer != null) {
+                _informer.close();
+            }
+            if (_client != null) {
+                _client.close();
+            }
+        }
+    }
+
+    /**
+     * Return the addresses of the ready pods known to the pod informer, without querying the Kubernetes API.
+     * If the informer could not be started yet, try again, and list the pods once if it still fails.
+     */
     @Override
     protected List<String> fetchDynamicAddresses() {
-        List<String> podIPs = new ArrayList<>();
+        SharedIndexInformer<Pod> informer = _informer;
+        if (informer == null) {
+            try {
+                informer = startInformer();
+            } catch (KubernetesClientException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn(s_loc.get("kubernetestcp-error"), e);
+                }
+            }
+        }
+        List<Pod> pods = (informer != null) ? informer.getStore().list() : listPods();
 
-        try (KubernetesClient client = kubernetesClient()) {
-            podIPs.addAll(client.pods().inNamespace(_namespace).withLabel(_label).list().
-                    getItems().stream().
-                    filter(Readiness::isPodReady).
-                    map(pod -> pod.getStatus().getPodIP()).
-                    collect(Collectors.toList()));
+        List<String> podIPs = pods.stream().
+                filter(Readiness::isPodReady).
+                map(pod -> pod.getStatus().getPodIP()).
+                filter(Objects::nonNull).
+                collect(Collectors.toList());
 
-            if (log.isTraceEnabled()) {
-                log.trace(s_loc.get("kubernetestcp-pods", podIPs));
+        if (log.isTraceEnabled()) {
+            log.trace(s_loc.get("kubernetestcp-pods", podIPs));
+        }
+        return podIPs;
+    }
+
+    /**
+     * List the pods of the configured namespace and label once, or return an empty list if the Kubernetes API
+     * cannot be reached.
+     */
+    private List<Pod> listPods() {
+        try {
+            KubernetesClient client;
+            synchronized (this) {
+                if (_closed) {
+                    return Collections.emptyList();
+                }
+                if (_client == null) {
+                    _client = kubernetesClient();
+                }
+                client = _client;
             }
+            return client.pods().inNamespace(_namespace).withLabel(_label).list().getItems();
         } catch (KubernetesClientException e) {
-            if (log.isFatalEnabled()) {
-                log.fatal(s_loc.get("kubernetestcp-error"), e);
+            if (log.isWarnEnabled()) {
+                log.warn(s_loc.get("kubernetestcp-error"), e);
             }
+            return Collections.emptyList();
         }
+    }
 
-        return podIPs;
+    private static String readyPodIP(final Pod pod) {
+        return (pod != null && Readiness.isPodReady(pod)) ? pod.getStatus().getPodIP() : null;
+    }
+
+    /**
+     * Updates the peers on each change of a watched pod.
+     */
+    private class PodHandler implements ResourceEventHandler<Pod> {
+
+        @Override
+        public void onAdd(final Pod pod) {
+            onUpdate(null, pod);
+        }
+
+        @Override
+        public void onUpdate(final Pod oldPod, final Pod newPod) {
+            updateAddresses(fetchDynamicAddresses());
+
+            // a pod that just became ready may run a new instance on a known address
+            String podIP = readyPodIP(newPod);
+            if (podIP != null && !podIP.equals(readyPodIP(oldPod))) {
+                if (log.isTraceEnabled()) {
+                    log.trace(s_loc.get("kubernetestcp-pod-ready", newPod.getMetadata().getName(), podIP));
+                }
+                reconnect(podIP);
+            }
+        }
+
+        @Override
+        public void onDelete(final Pod pod, final boolean deletedFinalStateUnknown) {
+            updateAddresses(fetchDynamicAddresses());
+        }
     }
 }
@@ -21,6 +21,7 @@ package org.apache.openjpa.event.kubernetes;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodBuilder;
@@ -33,7 +34,10 @@ import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
 import java.lang.reflect.Field;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.openjpa.event.TCPRemoteCommitProvider;
 import org.apache.openjpa.lib.conf.Configuration;
 import org.apache.openjpa.lib.log.SLF4JLogFactory;
@@ -130,21 +134,29 @@ public class KubernetesTCPRemoteCommitProviderTest {
         assertTrue(podList.getItems().stream().anyMatch(pod -> "pod2".equals(pod.getMetadata().getName())));
     }
 
-    @Test
-    public void addresses() throws UnknownHostException, NoSuchFieldException,
-            IllegalArgumentException, IllegalAccessException, InterruptedException {
+    private KubernetesTCPRemoteCommitProvider newProvider(final int cacheDurationMillis)
+            throws UnknownHostException {
+        return newProvider(cacheDurationMillis, 0);
+    }
+
+    private KubernetesTCPRemoteCommitProvider newProvider(final int cacheDurationMillis, final int failures)
+            throws UnknownHostException {
 
         // prepare KubernetesTCPRemoteCommitProvider instance, inject mocked Kubernetes client
+        AtomicInteger attempts = new AtomicInteger();
         KubernetesTCPRemoteCommitProvider rcp = new KubernetesTCPRemoteCommitProvider() {
 
             @Override
             protected KubernetesClient kubernetesClient() throws KubernetesClientException {
+                if (attempts.incrementAndGet() <= failures) {
+                    throw new KubernetesClientException("unavailable");
+                }
                 return server.getClient();
             }
         };
         rcp.setNamespace(NAMESPACE);
         rcp.setLabel(LABEL);
-        rcp.setCacheDurationMillis(500);
+        rcp.setCacheDurationMillis(cacheDurationMillis);
 
         // mock OpenJPA configuration
         Configuration conf = context.mock(Configuration.class);
@@ -159,11 +171,80 @@ public class KubernetesTCPRemoteCommitProviderTest {
 
         // finalize
         rcp.endConfiguration();
+        return rcp;
+    }
+
+    private static void awaitAddresses(final KubernetesTCPRemoteCommitProvider rcp, final String... expected)
+            throws Exception {
+
+        List<String> addresses = null;
+        for (int i = 0; i < 100; i++) {
+            addresses = getAddresses(rcp);
+            if (addresses.size() == expected.length && addresses.containsAll(Arrays.asList(expected))) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("Expected " + Arrays.asList(expected) + " but was " + addresses);
+    }
+
+    @Test
+    public void addresses() throws UnknownHostException, NoSuchFieldException,
+            IllegalArgumentException, IllegalAccessException, InterruptedException {
+
+        KubernetesTCPRemoteCommitProvider rcp = newProvider(500);
 
         // expect to find remote addresses of matching pods
         List<String> addresses = getAddresses(rcp);
         assertEquals(2, addresses.size());
         assertTrue(addresses.contains(pod1.getStatus().getPodIP()));
         assertTrue(addresses.contains(pod2.getStatus().getPodIP()));
+
+        // the informer keeps the addresses after the next refresh
+        Thread.sleep(1000);
+        addresses = getAddresses(rcp);
+        assertEquals(2, addresses.size());
+        rcp.close();
+    }
+
+    @Test
+    public void informerIsRetried() throws Exception {
+        // the informer cannot be started on configuration
+        KubernetesTCPRemoteCommitProvider rcp = newProvider(200, 1);
+        awaitAddresses(rcp, "1.1.1.1", "2.2.2.2");
+        rcp.close();
+    }
+
+    @Test
+    public void watchedMembership() throws Exception {
+        // refresh rarely, so that changes are only seen through the watch
+        KubernetesTCPRemoteCommitProvider rcp = newProvider(600000);
+        awaitAddresses(rcp, "1.1.1.1", "2.2.2.2");
+
+        KubernetesClient client = server.getClient();
+        Pod pod5 = new PodBuilder().
+                withNewMetadata().
+                withName("pod5").
+                addToLabels(LABEL, "value5").
+                endMetadata().
+                withStatus(new PodStatusBuilder().withPodIP("5.5.5.5").build()).
+                build();
+        client.pods().inNamespace(NAMESPACE).resource(pod5).create();
+
+        // a pod that is not ready is no peer
+        Thread.sleep(500);
+        awaitAddresses(rcp, "1.1.1.1", "2.2.2.2");
+
+        PodCondition condition = new PodCondition();
+        condition.setType("Ready");
+        condition.setStatus("True");
+        pod5 = client.pods().inNamespace(NAMESPACE).withName("pod5").get();
+        pod5.getStatus().setConditions(Collections.singletonList(condition));
+        client.pods().inNamespace(NAMESPACE).resource(pod5).replace();
+        awaitAddresses(rcp, "1.1.1.1", "2.2.2.2", "5.5.5.5");
+
+        client.pods().inNamespace(NAMESPACE).withName("pod1").delete();
+        awaitAddresses(rcp, "2.2.2.2", "5.5.5.5");
+        rcp.close();
     }
 }
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.lib.rop;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import org.apache.openjpa.lib.util.Localizer;
+
+/**
+ * Forward-only result list that does not retain its elements, so that
+ * results can be streamed in bounded memory. The list can only be
+ * traversed once. Each element is passed to {@link #consumed} when the
+ * traversal moves past it or the list is closed.
+ *
+ * @since 4.0.1
+ */
+public class StreamingResultList extends AbstractSequentialResultList {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (StreamingResultList.class);
+
+    private static final int OPEN = 0;
+    private static final int FREED = 1;
+    private static final int CLOSED = 2;
+
+    private final ResultObjectProvider _rop;
+    private int _state = OPEN;
+    private Itr _itr = null;
+    private int _size = -1;
+
+    public StreamingResultList(ResultObjectProvider rop) {
+        _rop = rop;
+        try {
+            _rop.open();
+        } catch (RuntimeException re) {
+            close();
+            throw re;
+        } catch (Exception e) {
+            close();
+            _rop.handleCheckedException(e);
+        }
+    }
+
+    /**
+     * Notification that the traversal has moved past the given element.
+     * Does nothing by default.
+     */
+    protected void consumed(Object obj) {
+    }
+
+    @Override
+    public boolean isProviderOpen() {
+        return _state == OPEN;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return _state == CLOSED;
+    }
+
+    @Override
+    public void close() {
+        if (_state != CLOSED) {
+            free();
+            _state = CLOSED;
+            if (_itr != null)
+                _itr.release();
+        }
+    }
+
+    private void free() {
+        if (_state == OPEN) {
+            try {
+                _rop.close();
+            } catch (Exception e) {
+            }
+            _state = FREED;
+        }
+    }
+
+    @Override
+    public int size() {
+        assertOpen();
+        if (_size != -1)
+            return _size;
+        try {
+            _size = _rop.size();
+            return _size;
+        } catch (RuntimeException re) {
+            close();
+            throw re;
+        } catch (Exception e) {
+            close();
+            _rop.handleCheckedException(e);
+            return -1;
+        }
+    }
+
+    @Override
+    protected ListIterator itr(int index) {
+        assertOpen();
+        if (_itr != null)
+            throw new IllegalStateException(_loc.get("streamed").getMessage());
+        _itr = new Itr();
+        while (_itr.nextIndex() < index)
+            _itr.next();
+        return _itr;
+    }
+
+    @Override
+    public int hashCode() {
+        // superclass traverses the list for its hashcode
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        // superclass traverses the list for equality
+        return other == this;
+    }
+
+    @Override
+    public List subList(int fromIndex, int toIndex) {
+        throw new UnsupportedOperationException();
+    }
+
+    private class Itr extends AbstractListIterator {
+
+        private int _idx = 0;
+        private Object _last = null;
+        private boolean _returned = false;
+        private Boolean _next = null;
+
+        @Override
+        public int nextIndex() {
+            return _idx;
+        }
+
+        @Override
+        public int previousIndex() {
+            return _idx - 1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (_next != null)
+                return _next;
+            if (_state != OPEN)
+                return false;
+
+            // the previous element is no longer reachable once we advance
+            release();
+            try {
+                _next = _rop.next();
+            } catch (RuntimeException re) {
+                close();
+                throw re;
+            } catch (Exception e) {
+                close();
+                _rop.handleCheckedException(e);
+                return false;
+            }
+            if (!_next)
+                free();
+            return _next;
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            _next = null;
+            try {
+                _last = _rop.getResultObject();
+            } catch (RuntimeException re) {
+                close();
+                throw re;
+            } catch (Exception e) {
+                close();
+                _rop.handleCheckedException(e);
+            }
+            _returned = true;
+            _idx++;
+            return _last;
+        }
+
+        private void release() {
+            if (_returned) {
+                Object last = _last;
+                _last = null;
+                _returned = false;
+                consumed(last);
+            }
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return false;
+        }
+
+        @Override
+        public Object previous() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.lib.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch estimating how often a hash has been seen recently.
+ * Each <code>long</code> of the table holds sixteen 4-bit counters, and an
+ * item is counted in four of them, so the sketch costs eight bytes per
+ * element of the cache it serves. Once the number of increments reaches
+ * ten times that size, all counters are halved, so that the sketch tracks
+ * recent rather than historic popularity. Counters are updated with
+ * compare-and-set and may be read and incremented concurrently; the
+ * estimate is approximate by design.
+ *
+ * @since 4.0.1
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L,
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_TABLE_SIZE = 1 << 26;
+
+    private final AtomicInteger _additions = new AtomicInteger();
+    private volatile AtomicLongArray _table;
+    private volatile int _sampleSize;
+
+    /**
+     * Create a sketch for a cache of the given maximum size.
+     */
+    public FrequencySketch(int maximumSize) {
+        ensureCapacity(maximumSize);
+    }
+
+    /**
+     * Resize the sketch for a cache of the given maximum size. Existing
+     * counts are discarded if the table has to change size.
+     */
+    public void ensureCapacity(int maximumSize) {
+        int size = 8;
+        int max = Math.min(Math.max(maximumSize, 1), MAX_TABLE_SIZE);
+        while (size < max)
+            size <<= 1;
+        if (_table != null && _table.length() == size)
+            return;
+        _table = new AtomicLongArray(size);
+        _sampleSize = (int) Math.min(10L * max, Integer.MAX_VALUE);
+        _additions.set(0);
+    }
+
+    /**
+     * The estimated number of recent occurrences of the given hash, at most
+     * 15.
+     */
+    public int frequency(int hash) {
+        AtomicLongArray table = _table;
+        int h = rehash(hash);
+        int start = (h & 3) << 2;
+        int freq = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(table, h, i);
+            int count = (int) ((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+            freq = Math.min(freq, count);
+        }
+        return freq;
+    }
+
+    /**
+     * Count an occurrence of the given hash.
+     */
+    public void increment(int hash) {
+        AtomicLongArray table = _table;
+        int h = rehash(hash);
+        int start = (h & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+            added |= incrementAt(table, indexOf(table, h, i), start + i);
+
+        if (added && _additions.incrementAndGet() >= _sampleSize)
+            reset();
+    }
+
+    /**
+     * Increment the given 4-bit counter unless it is saturated.
+     */
+    private static boolean incrementAt(AtomicLongArray table, int index,
+        int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        while (true) {
+            long cur = table.get(index);
+            if ((cur & mask) == mask)
+                return false;
+            if (table.compareAndSet(index, cur, cur + (1L << offset)))
+                return true;
+        }
+    }
+
+    /**
+     * Halve all counters. Only the thread that moves the addition count
+     * back below the sample size performs the reset.
+     */
+    private void reset() {
+        int additions = _additions.get();
+        if (additions < _sampleSize
+            || !_additions.compareAndSet(additions, additions >>> 1))
+            return;
+
+        AtomicLongArray table = _table;
+        for (int i = 0; i < table.length(); i++) {
+            long cur;
+            do {
+                cur = table.get(i);
+            } while (!table.compareAndSet(i, cur, (cur >>> 1) & RESET_MASK));
+        }
+    }
+
+    private static int indexOf(AtomicLongArray table, int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & (table.length() - 1);
+    }
+
+    private static int rehash(int x) {
+        x *= 0x31848bab;
+        x ^= (x >>> 14);
+        return x;
+    }
+}
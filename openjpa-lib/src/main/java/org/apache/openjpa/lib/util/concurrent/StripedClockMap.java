@@ -0,0 +1,583 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.lib.util.concurrent;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.openjpa.lib.util.SizedMap;
+
+/**
+ * A size-bounded map whose reads never block. Entries are held in a
+ * {@link java.util.concurrent.ConcurrentHashMap}; mutations are serialized
+ * per lock stripe, and each stripe keeps its entries on a CLOCK ring that
+ * approximates LRU ordering. A read only sets the entry's reference bit,
+ * so reads scale with the number of cores. When the map overflows, the
+ * clock hand of the mutating stripe sweeps its ring and evicts the first
+ * entry that has not been referenced since the last sweep, falling back
+ * to the other stripes when the current stripe has nothing to give.
+ * Every eviction happens while holding the victim's stripe lock, so callers
+ * that serialize their own compound operations through {@link #lock} see
+ * a consistent view of the evicted key.
+ *
+ * @since 4.0.1
+ */
+public class StripedClockMap extends AbstractMap
+    implements ConcurrentMap, SizedMap {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int MAX_STRIPES = 1 << 16;
+
+    private final java.util.concurrent.ConcurrentHashMap<Object, Node> _map;
+    private final Stripe[] _stripes;
+    private final int _mask;
+    private final AtomicInteger _size = new AtomicInteger();
+    private volatile int _max = Integer.MAX_VALUE;
+    private int _nextStripe = 0;
+
+    public StripedClockMap() {
+        this(16, .75F, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create a map with the given initial capacity, load factor and number
+     * of lock stripes. The stripe count is rounded up to a power of two.
+     */
+    public StripedClockMap(int initialCapacity, float loadFactor,
+        int concurrencyLevel) {
+        if (concurrencyLevel <= 0)
+            concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+        int stripes = 1;
+        while (stripes < concurrencyLevel && stripes < MAX_STRIPES)
+            stripes <<= 1;
+
+        _map = new java.util.concurrent.ConcurrentHashMap<>(
+            Math.max(initialCapacity, 16), loadFactor, stripes);
+        _stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++)
+            _stripes[i] = new Stripe();
+        _mask = stripes - 1;
+    }
+
+    /**
+     * Acquire the stripe lock that guards mutations of the given key. The
+     * lock is reentrant, and mutators of this map acquire it as well.
+     */
+    public void lock(Object key) {
+        stripeFor(key).lock();
+    }
+
+    /**
+     * Release the stripe lock acquired by {@link #lock}.
+     */
+    public void unlock(Object key) {
+        stripeFor(key).unlock();
+    }
+
+    /**
+     * The index of the stripe that guards the given key, between 0 and
+     * {@link #getConcurrencyLevel} exclusive. Callers that mutate many keys
+     * can group them by stripe and lock each stripe once with
+     * {@link #lockStripe}.
+     */
+    public int stripeOf(Object key) {
+        return spread(key.hashCode()) & _mask;
+    }
+
+    /**
+     * Acquire the lock of the stripe with the given index.
+     */
+    public void lockStripe(int index) {
+        _stripes[index].lock();
+    }
+
+    /**
+     * Release the lock acquired by {@link #lockStripe}.
+     */
+    public void unlockStripe(int index) {
+        _stripes[index].unlock();
+    }
+
+    /**
+     * The number of lock stripes.
+     */
+    public int getConcurrencyLevel() {
+        return _stripes.length;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return _max;
+    }
+
+    @Override
+    public void setMaxSize(int max) {
+        if (max < 0)
+            throw new IllegalArgumentException(String.valueOf(max));
+        _max = max;
+        for (Stripe stripe : _stripes) {
+            stripe.lock();
+            try {
+                while (_size.get() > _max && evict(stripe, null))
+                    ;
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        return _size.get() >= _max;
+    }
+
+    @Override
+    public void overflowRemoved(Object key, Object value) {
+    }
+
+    @Override
+    public int size() {
+        return _size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _size.get() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && _map.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (key == null)
+            return null;
+        accessed(key);
+        Node node = _map.get(key);
+        if (node == null)
+            return null;
+        touch(node);
+        return node.value;
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock();
+        try {
+            Node node = _map.get(key);
+            if (node != null) {
+                Object old = node.value;
+                node.value = value;
+                touch(node);
+                return old;
+            }
+
+            node = new Node(key, value);
+            _map.put(key, node);
+            _size.incrementAndGet();
+            link(stripe, node);
+            evictOverflow(stripe, node);
+            return null;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (key == null)
+            return null;
+        Stripe stripe = stripeFor(key);
+        stripe.lock();
+        try {
+            Node node = _map.remove(key);
+            if (node == null)
+                return null;
+            unlink(stripe, node);
+            _size.decrementAndGet();
+            return node.value;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Stripe stripe : _stripes) {
+            stripe.lock();
+            try {
+                for (Node node = stripe.first(); node != null;
+                    node = stripe.first()) {
+                    _map.remove(node.key, node);
+                    unlink(stripe, node);
+                    _size.decrementAndGet();
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    @Override
+    public Map.Entry removeRandom() {
+        for (int i = 0; i < _stripes.length; i++) {
+            Stripe stripe = _stripes[(nextStripe() + i) & _mask];
+            stripe.lock();
+            try {
+                Node node = stripe.first();
+                if (node != null) {
+                    _map.remove(node.key, node);
+                    unlink(stripe, node);
+                    _size.decrementAndGet();
+                    return new SimpleImmutableEntry(node.key, node.value);
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evict one entry as if the map had overflowed. The victim is chosen,
+     * removed and passed to {@link #overflowRemoved} while its stripe is
+     * locked, so a concurrent mutation of the key cannot run between the
+     * removal and the notification.
+     *
+     * @return false if there was no entry to evict
+     */
+    public boolean evictOne() {
+        for (int i = 0; i < _stripes.length; i++) {
+            Stripe stripe = _stripes[(nextStripe() + i) & _mask];
+            stripe.lock();
+            try {
+                if (evict(stripe, null))
+                    return true;
+            } finally {
+                stripe.unlock();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator randomEntryIterator() {
+        return entrySet().iterator();
+    }
+
+    @Override
+    public Set entrySet() {
+        return new EntrySet();
+    }
+
+    /**
+     * Record an access to the given entry.
+     */
+    private static void touch(Node node) {
+        // avoid dirtying the cache line when the bit is already set
+        if (!node.referenced)
+            node.referenced = true;
+    }
+
+    /**
+     * Hook invoked without any lock on every lookup of the given key,
+     * whether or not it is mapped. Insertions are not counted: a cache
+     * inserts after a missed lookup, which has already been counted.
+     */
+    void accessed(Object key) {
+    }
+
+    /**
+     * Place a newly mapped node on one of the rings of its locked stripe.
+     */
+    void link(Stripe stripe, Node node) {
+        stripe.main.link(node);
+    }
+
+    /**
+     * Take a node off its ring. The stripe is locked by the current thread.
+     */
+    void unlink(Stripe stripe, Node node) {
+        if (node.ring != null)
+            node.ring.unlink(node);
+    }
+
+    /**
+     * Evict one entry other than <code>exclude</code> from the given locked
+     * stripe.
+     *
+     * @return true if an entry was evicted
+     */
+    boolean evict(Stripe stripe, Node exclude) {
+        Node victim = stripe.main.sweep(exclude);
+        if (victim == null)
+            return false;
+        evictNode(stripe, victim);
+        return true;
+    }
+
+    /**
+     * Remove the given node of a locked stripe and notify
+     * {@link #overflowRemoved}.
+     */
+    void evictNode(Stripe stripe, Node node) {
+        _map.remove(node.key, node);
+        unlink(stripe, node);
+        _size.decrementAndGet();
+        overflowRemoved(node.key, node.value);
+    }
+
+    /**
+     * Evict entries until the map is back under its maximum size. The
+     * given stripe is locked by the current thread; other stripes are only
+     * tried, never waited on, so concurrent evictors cannot deadlock. If
+     * every other stripe is busy the map may briefly exceed its size; the
+     * next mutation will trim it.
+     */
+    private void evictOverflow(Stripe stripe, Node added) {
+        while (_size.get() > _max) {
+            if (evict(stripe, added))
+                continue;
+
+            boolean evicted = false;
+            for (int i = 0; i < _stripes.length && !evicted; i++) {
+                Stripe other = _stripes[(nextStripe() + i) & _mask];
+                if (other == stripe || !other.tryLock())
+                    continue;
+                try {
+                    evicted = evict(other, null);
+                } finally {
+                    other.unlock();
+                }
+            }
+            if (evicted)
+                continue;
+            // with a zero size even the new entry has to go
+            if (_max > 0 || !evict(stripe, null))
+                return;
+        }
+    }
+
+    /**
+     * The stripe with the given index.
+     */
+    Stripe stripe(int index) {
+        return _stripes[index];
+    }
+
+    private Stripe stripeFor(Object key) {
+        return _stripes[stripeOf(key)];
+    }
+
+    /**
+     * Spread the bits of a hash code so that power-of-two tables see the
+     * high bits too.
+     */
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private int nextStripe() {
+        // racy by design; only used to spread eviction across stripes
+        return _nextStripe++;
+    }
+
+    /**
+     * Map entry. The value and reference bit are read without locking; the
+     * ring links are guarded by the owning stripe's lock.
+     */
+    static class Node {
+
+        final Object key;
+        volatile Object value;
+        volatile boolean referenced;
+        Ring ring;
+        Node prev;
+        Node next;
+
+        Node(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Circular list of nodes, with the clock hand pointing at the next
+     * eviction candidate. Nodes are linked just behind the hand, so until
+     * the hand moves it also points at the oldest node.
+     */
+    static class Ring {
+
+        Node hand;
+        int count;
+
+        void link(Node node) {
+            if (hand == null) {
+                node.prev = node;
+                node.next = node;
+                hand = node;
+            } else {
+                node.next = hand;
+                node.prev = hand.prev;
+                hand.prev.next = node;
+                hand.prev = node;
+            }
+            node.ring = this;
+            count++;
+        }
+
+        void unlink(Node node) {
+            if (node.next == node)
+                hand = null;
+            else {
+                node.prev.next = node.next;
+                node.next.prev = node.prev;
+                if (hand == node)
+                    hand = node.next;
+            }
+            node.next = null;
+            node.prev = null;
+            node.ring = null;
+            count--;
+        }
+
+        /**
+         * Advance the hand, clearing reference bits, until an unreferenced
+         * node is found. Gives up after two full revolutions.
+         */
+        Node sweep(Node exclude) {
+            for (int i = 0, max = count * 2; i < max && hand != null; i++) {
+                Node node = hand;
+                hand = node.next;
+                if (node == exclude)
+                    continue;
+                if (node.referenced)
+                    node.referenced = false;
+                else
+                    return node;
+            }
+            return null;
+        }
+
+        /**
+         * The node under the hand, skipping <code>exclude</code>.
+         */
+        Node first(Node exclude) {
+            if (hand == null)
+                return null;
+            if (hand != exclude)
+                return hand;
+            return (hand.next == hand) ? null : hand.next;
+        }
+    }
+
+    /**
+     * A lock stripe. Its entries live on the main ring, or on the admission
+     * window ring when a subclass applies an admission policy.
+     */
+    static class Stripe extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        final Ring main = new Ring();
+        final Ring window = new Ring();
+
+        Node first() {
+            return (window.hand != null) ? window.hand : main.hand;
+        }
+    }
+
+    /**
+     * View of the entry set.
+     */
+    private class EntrySet extends AbstractSet {
+
+        @Override
+        public int size() {
+            return StripedClockMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            StripedClockMap.this.clear();
+        }
+
+        @Override
+        public Iterator iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /**
+     * Weakly consistent iterator over the entries.
+     */
+    private class EntryIterator implements Iterator {
+
+        private final Iterator<Node> _itr = _map.values().iterator();
+        private Node _last = null;
+
+        @Override
+        public boolean hasNext() {
+            return _itr.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            if (!_itr.hasNext())
+                throw new NoSuchElementException();
+            _last = _itr.next();
+            return new WriteThroughEntry(_last);
+        }
+
+        @Override
+        public void remove() {
+            if (_last == null)
+                throw new IllegalStateException();
+            StripedClockMap.this.remove(_last.key);
+            _last = null;
+        }
+    }
+
+    /**
+     * Entry whose {@link #setValue} writes through to the map.
+     */
+    private class WriteThroughEntry extends SimpleEntry {
+
+        private static final long serialVersionUID = 1L;
+
+        WriteThroughEntry(Node node) {
+            super(node.key, node.value);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.lib.util.concurrent;
+
+/**
+ * {@link StripedClockMap} with a W-TinyLFU admission policy. New entries
+ * enter a small admission window that holds about one percent of the
+ * maximum size, split evenly between the stripes. When the window of a
+ * stripe overflows, its oldest entry becomes a
+ * candidate for the main area, and is only admitted if a
+ * {@link FrequencySketch} of recent lookups rates it more popular than the
+ * entry the main area's CLOCK hand would evict in its place. Entries that
+ * are looked up once, such as those touched by a large scan, therefore
+ * pass through the window without displacing the hot working set.
+ *
+ * @since 4.0.1
+ */
+public class TinyLFUMap extends StripedClockMap {
+
+    private static final int WINDOW_PERCENT = 1;
+
+    private final FrequencySketch _sketch;
+    // the maximum size of the window of each stripe
+    private volatile int _windowMax = 1;
+
+    public TinyLFUMap() {
+        this(16, .75F, 16);
+    }
+
+    /**
+     * Create a map with the given initial capacity, load factor and number
+     * of lock stripes.
+     */
+    public TinyLFUMap(int initialCapacity, float loadFactor,
+        int concurrencyLevel) {
+        super(initialCapacity, loadFactor, concurrencyLevel);
+        _sketch = new FrequencySketch(initialCapacity);
+    }
+
+    @Override
+    public void setMaxSize(int max) {
+        if (max >= 0) {
+            _windowMax = Math.max(1, (int) (max * (long) WINDOW_PERCENT / 100 / getConcurrencyLevel()));
+            if (max != Integer.MAX_VALUE)
+                _sketch.ensureCapacity(max);
+        }
+        super.setMaxSize(max);
+    }
+
+    /**
+     * The number of entries in the admission windows of all stripes.
+     */
+    public int getWindowSize() {
+        int size = 0;
+        for (int i = 0; i < getConcurrencyLevel(); i++) {
+            lockStripe(i);
+            try {
+                size += stripe(i).window.count;
+            } finally {
+                unlockStripe(i);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The estimated number of recent lookups of the given key.
+     */
+    public int frequency(Object key) {
+        return _sketch.frequency(spread(key.hashCode()));
+    }
+
+    @Override
+    void accessed(Object key) {
+        _sketch.increment(spread(key.hashCode()));
+    }
+
+    @Override
+    void link(Stripe stripe, Node node) {
+        stripe.window.link(node);
+
+        // move the oldest window entries to the main area, letting each one
+        // compete with the main area's victim if the map is full
+        while (stripe.window.count > _windowMax) {
+            Node candidate = stripe.window.first(node);
+            if (candidate == null)
+                break;
+            unlink(stripe, candidate);
+            stripe.main.link(candidate);
+            if (size() <= getMaxSize())
+                continue;
+
+            Node victim = stripe.main.sweep(candidate);
+            if (victim != null)
+                evictNode(stripe, admit(candidate, victim) ? victim : candidate);
+        }
+    }
+
+    @Override
+    boolean evict(Stripe stripe, Node exclude) {
+        if (super.evict(stripe, exclude))
+            return true;
+        Node victim = stripe.window.first(exclude);
+        if (victim == null)
+            return false;
+        evictNode(stripe, victim);
+        return true;
+    }
+
+    /**
+     * Whether the window candidate should replace the main area's victim.
+     */
+    private boolean admit(Node candidate, Node victim) {
+        return frequency(candidate.key) > frequency(victim.key);
+    }
+}
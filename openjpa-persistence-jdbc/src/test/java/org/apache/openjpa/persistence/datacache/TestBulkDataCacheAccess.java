@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.openjpa.datacache.ConcurrentDataCache;
+import org.apache.openjpa.datacache.DataCachePCData;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests that loading and committing many instances accesses the data cache
+ * in bulk rather than one instance at a time.
+ */
+public class TestBulkDataCacheAccess extends SingleEMFTestCase {
+
+    private static final int COUNT = 20;
+
+    @Override
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, CachedPerson.class, CachedManager.class,
+            CachedEmployee.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", CountingDataCache.class.getName() + "(EnableStatistics=true)");
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < COUNT; i++) {
+            CachedPerson person = new CachedPerson();
+            person.setId(i);
+            person.setFirstName("p" + i);
+            em.persist(person);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private CountingDataCache getCache() {
+        return (CountingDataCache) emf.getConfiguration().getDataCacheManagerInstance().getSystemDataCache();
+    }
+
+    private static List<Object> ids() {
+        List<Object> ids = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++)
+            ids.add(i);
+        return ids;
+    }
+
+    public void testLoadAllPutsInBulk() {
+        emf.getCache().evictAll();
+        CountingDataCache cache = getCache();
+        cache.reset();
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        Collection<CachedPerson> people = em.findAll(CachedPerson.class, ids());
+        assertEquals(COUNT, people.size());
+        em.close();
+
+        assertEquals(0, cache.gets.get());
+        assertEquals(0, cache.puts.get());
+        assertTrue(cache.getAlls.get() > 0);
+        assertTrue(cache.putAlls.get() > 0);
+        assertEquals(COUNT, cache.getCacheMap().size());
+    }
+
+    public void testLoadAllGetsInBulk() {
+        CountingDataCache cache = getCache();
+        cache.reset();
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        for (CachedPerson person : em.findAll(CachedPerson.class, ids()))
+            assertEquals("p" + person.getId(), person.getFirstName());
+        em.close();
+
+        assertEquals(0, cache.gets.get());
+        assertEquals(0, cache.putAlls.get());
+        assertTrue(cache.getAlls.get() > 0);
+        assertEquals(COUNT, cache.getStatistics().getHitCount());
+    }
+
+    public void testCommitLooksUpUpdatesInBulk() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        Collection<CachedPerson> people = em.findAll(CachedPerson.class, ids());
+        CountingDataCache cache = getCache();
+        cache.reset();
+
+        em.getTransaction().begin();
+        for (CachedPerson person : people)
+            person.setFirstName("q" + person.getId());
+        em.getTransaction().commit();
+        em.close();
+        assertEquals(0, cache.gets.get());
+        assertTrue(cache.getAlls.get() > 0);
+
+        em = emf.createEntityManager();
+        for (CachedPerson person : em.findAll(CachedPerson.class, ids()))
+            assertEquals("q" + person.getId(), person.getFirstName());
+        em.close();
+        assertEquals(COUNT, cache.getStatistics().getHitCount());
+    }
+
+    /**
+     * Counts the single and bulk accesses to the cache.
+     */
+    public static class CountingDataCache extends ConcurrentDataCache {
+
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger gets = new AtomicInteger();
+        final AtomicInteger getAlls = new AtomicInteger();
+        final AtomicInteger puts = new AtomicInteger();
+        final AtomicInteger putAlls = new AtomicInteger();
+
+        void reset() {
+            gets.set(0);
+            getAlls.set(0);
+            puts.set(0);
+            putAlls.set(0);
+            getStatistics().reset();
+        }
+
+        @Override
+        public DataCachePCData get(Object key) {
+            gets.incrementAndGet();
+            return super.get(key);
+        }
+
+        @Override
+        public Map<Object, DataCachePCData> getAll(List<Object> keys) {
+            getAlls.incrementAndGet();
+            return super.getAll(keys);
+        }
+
+        @Override
+        public DataCachePCData put(DataCachePCData data) {
+            puts.incrementAndGet();
+            return super.put(data);
+        }
+
+        @Override
+        public void putAll(Collection<DataCachePCData> values) {
+            putAlls.incrementAndGet();
+            super.putAll(values);
+        }
+    }
+}
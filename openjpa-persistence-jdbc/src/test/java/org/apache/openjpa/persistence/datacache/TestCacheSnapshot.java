@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.io.File;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import org.apache.openjpa.datacache.ConcurrentQueryCache;
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCacheManagerImpl;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+
+/**
+ * Tests writing the data and query caches to a snapshot file at shutdown
+ * and restoring them at startup.
+ */
+public class TestCacheSnapshot extends SQLListenerTestCase {
+
+    private static final String QUERY = "select p from CachedPerson p where p.firstName like :name";
+
+    private File _snapshot;
+
+    @Override
+    public void setUp() {
+        _snapshot = new File("target", "cache-snapshot-" + getName() + ".bin").getAbsoluteFile();
+        _snapshot.delete();
+        setUp(props(true, "none"));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        _snapshot.delete();
+    }
+
+    private Object[] props(boolean clear, String validation) {
+        return new Object[] { FRESH_EMF, clear ? CLEAR_TABLES : null,
+            CachedPerson.class, CachedManager.class, CachedEmployee.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", "true",
+            "openjpa.QueryCache", "true",
+            "openjpa.DataCacheManager", "default(SnapshotFile=" + _snapshot.getPath()
+                + ", SnapshotValidation=" + validation + ", SnapshotBatchSize=4)" };
+    }
+
+    /**
+     * Close the factory, writing the snapshot, and create a new one that
+     * restores it.
+     */
+    private void restart(String validation) {
+        closeEMF(emf);
+        reopen(validation);
+    }
+
+    /**
+     * Create a factory and use it, which restores the snapshot.
+     */
+    private void reopen(String validation) {
+        assertTrue(_snapshot.isFile());
+        setUp(props(false, validation));
+        emf.createEntityManager().close();
+        resetSQL();
+    }
+
+    private void persistPeople(int count) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < count; i++) {
+            CachedPerson person = new CachedPerson();
+            person.setId(i);
+            person.setFirstName("first" + i);
+            em.persist(person);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private List<?> runQuery() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery(QUERY).setParameter("name", "first%").getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    private DataCache getCache() {
+        return emf.getConfiguration().getDataCacheManagerInstance().getSystemDataCache();
+    }
+
+    private DataCacheManagerImpl getManager() {
+        return (DataCacheManagerImpl) emf.getConfiguration().getDataCacheManagerInstance();
+    }
+
+    private Object oid(int id) {
+        return JPAFacadeHelper.toOpenJPAObjectId(JPAFacadeHelper.getMetaData(emf, CachedPerson.class), id);
+    }
+
+    /**
+     * Change person 1 and delete person 2 without going through the cache.
+     */
+    private void changeBehindCache() {
+        closeEMF(emf);
+        EntityManagerFactory plain = createEMF(FRESH_EMF, CachedPerson.class, CachedManager.class,
+            CachedEmployee.class);
+        try {
+            EntityManager em = plain.createEntityManager();
+            em.getTransaction().begin();
+            em.find(CachedPerson.class, 1).setFirstName("changed");
+            em.remove(em.find(CachedPerson.class, 2));
+            em.getTransaction().commit();
+            em.close();
+        } finally {
+            closeEMF(plain);
+        }
+    }
+
+    private void awaitPending(int count) throws InterruptedException {
+        for (int i = 0; i < 200 && getManager().getSnapshotPendingCount() > count; i++)
+            Thread.sleep(50);
+        assertEquals(count, getManager().getSnapshotPendingCount());
+    }
+
+    public void testRestartIsWarm() {
+        persistPeople(10);
+        assertEquals(10, runQuery().size());
+
+        restart("none");
+        for (int i = 0; i < 10; i++)
+            assertTrue(getCache().contains(oid(i)));
+        EntityManager em = emf.createEntityManager();
+        for (int i = 0; i < 10; i++)
+            assertEquals("first" + i, em.find(CachedPerson.class, i).getFirstName());
+        em.close();
+        assertEquals(10, runQuery().size());
+        assertEquals(sql.toString(), 0, getSQLCount());
+        assertEquals(0, getManager().getSnapshotPendingCount());
+    }
+
+    public void testBackgroundValidationEvictsStaleEntries() throws Exception {
+        persistPeople(10);
+        assertEquals(10, runQuery().size());
+        changeBehindCache();
+        reopen("background");
+
+        awaitPending(0);
+        DataCache cache = getCache();
+        assertTrue(cache.contains(oid(0)));
+        assertFalse(cache.contains(oid(1)));
+        assertFalse(cache.contains(oid(2)));
+        for (int i = 3; i < 10; i++)
+            assertTrue(cache.contains(oid(i)));
+        ConcurrentQueryCache queryCache = (ConcurrentQueryCache) emf.getConfiguration()
+            .getDataCacheManagerInstance().getSystemQueryCache();
+        assertEquals(0, queryCache.getCacheMap().size());
+
+        EntityManager em = emf.createEntityManager();
+        assertEquals("changed", em.find(CachedPerson.class, 1).getFirstName());
+        assertNull(em.find(CachedPerson.class, 2));
+        em.close();
+        assertEquals(8, runQuery().size());
+    }
+
+    public void testLazyValidationChecksEntriesOnFirstUse() throws Exception {
+        persistPeople(10);
+        changeBehindCache();
+        reopen("lazy");
+
+        assertEquals(10, getManager().getSnapshotPendingCount());
+        EntityManager em = emf.createEntityManager();
+        assertEquals("first0", em.find(CachedPerson.class, 0).getFirstName());
+        em.close();
+        awaitPending(9);
+        assertTrue(getCache().contains(oid(0)));
+        assertTrue(getCache().contains(oid(1)));
+
+        // the stale entry is served once and then evicted
+        em = emf.createEntityManager();
+        assertEquals("first1", em.find(CachedPerson.class, 1).getFirstName());
+        em.close();
+        awaitPending(8);
+        assertFalse(getCache().contains(oid(1)));
+        em = emf.createEntityManager();
+        assertEquals("changed", em.find(CachedPerson.class, 1).getFirstName());
+        em.close();
+    }
+
+    public void testSnapshotIsRewrittenAtShutdown() {
+        persistPeople(3);
+        restart("none");
+        long written = _snapshot.lastModified();
+        assertTrue(_snapshot.length() > 0);
+        assertFalse(new File(_snapshot.getPath() + ".tmp").exists());
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        CachedPerson person = new CachedPerson();
+        person.setId(3);
+        person.setFirstName("first3");
+        em.persist(person);
+        em.getTransaction().commit();
+        em.close();
+
+        restart("none");
+        assertTrue(_snapshot.lastModified() >= written);
+        for (int i = 0; i < 4; i++)
+            assertTrue(getCache().contains(oid(i)));
+    }
+
+    public void testUnusedFactoryKeepsSnapshot() {
+        persistPeople(3);
+        closeEMF(emf);
+        long length = _snapshot.length();
+
+        setUp(props(false, "none"));
+        closeEMF(emf);
+        assertEquals(length, _snapshot.length());
+
+        reopen("none");
+        for (int i = 0; i < 3; i++)
+            assertTrue(getCache().contains(oid(i)));
+    }
+}
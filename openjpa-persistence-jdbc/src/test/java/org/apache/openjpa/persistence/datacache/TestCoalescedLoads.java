@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.persistence.EntityManager;
+
+import org.apache.openjpa.datacache.CacheStatistics;
+import org.apache.openjpa.lib.jdbc.AbstractJDBCListener;
+import org.apache.openjpa.lib.jdbc.JDBCEvent;
+import org.apache.openjpa.lib.jdbc.JDBCListener;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests that concurrent loads of an instance missing from the data cache
+ * go to the database only once.
+ */
+public class TestCoalescedLoads extends SingleEMFTestCase {
+
+    private static final int THREADS = 8;
+
+    private final SlowSelects _selects = new SlowSelects();
+
+    @Override
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, CachedPerson.class, CachedManager.class,
+            CachedEmployee.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", "true(CoalesceLoads=true, CoalesceTimeout=10000, EnableStatistics=true)",
+            "openjpa.jdbc.JDBCListeners", new JDBCListener[] { _selects });
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        CachedPerson person = new CachedPerson();
+        person.setId(1);
+        person.setFirstName("first");
+        em.persist(person);
+        em.getTransaction().commit();
+        em.close();
+        emf.getCache().evictAll();
+        getStatistics().reset();
+    }
+
+    private CacheStatistics getStatistics() {
+        return emf.getStoreCache().getStatistics();
+    }
+
+    /**
+     * Find the given person in the given number of threads at once, and
+     * return the first names found.
+     */
+    private List<String> findConcurrently(int id, int threads) throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<String> names = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                EntityManager em = emf.createEntityManager();
+                try {
+                    barrier.await();
+                    CachedPerson person = em.find(CachedPerson.class, id);
+                    synchronized (names) {
+                        names.add(person == null ? null : person.getFirstName());
+                    }
+                } catch (Throwable t) {
+                    synchronized (errors) {
+                        errors.add(t);
+                    }
+                } finally {
+                    em.close();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers)
+            worker.join(30000);
+        if (!errors.isEmpty())
+            throw new AssertionError(errors.get(0));
+        assertEquals(threads, names.size());
+        return names;
+    }
+
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        _selects.reset(500);
+        for (String name : findConcurrently(1, THREADS))
+            assertEquals("first", name);
+        assertEquals(1, _selects.count.get());
+
+        // threads either waited for the load or found the cached data
+        CacheStatistics stats = getStatistics();
+        assertEquals(THREADS, stats.getReadCount());
+        assertTrue(stats.getCoalescedLoadCount() > 0);
+        assertEquals(THREADS - 1, stats.getHitCount() + stats.getCoalescedLoadCount());
+        assertEquals(stats.getCoalescedLoadCount(),
+            stats.getCoalescedLoadCount(CachedPerson.class.getName()));
+        assertTrue(emf.getCache().contains(CachedPerson.class, 1));
+    }
+
+    public void testMissingInstanceIsLoadedByEachThread() throws Exception {
+        _selects.reset(200);
+        for (String name : findConcurrently(99, 4))
+            assertNull(name);
+        assertEquals(4, _selects.count.get());
+        assertEquals(0, getStatistics().getCoalescedLoadCount());
+    }
+
+    public void testLoadsAreNotCoalescedWhenBypassingTheCache() throws Exception {
+        _selects.reset(0);
+        EntityManager em = emf.createEntityManager();
+        em.setProperty("jakarta.persistence.cache.storeMode",
+            jakarta.persistence.CacheStoreMode.BYPASS);
+        assertEquals("first", em.find(CachedPerson.class, 1).getFirstName());
+        em.close();
+        assertEquals(1, _selects.count.get());
+        assertFalse(emf.getCache().contains(CachedPerson.class, 1));
+        assertEquals(0, getStatistics().getCoalescedLoadCount());
+    }
+
+    /**
+     * Counts and delays selects from the person table.
+     */
+    public static class SlowSelects extends AbstractJDBCListener {
+
+        final AtomicInteger count = new AtomicInteger();
+        private volatile long _delay = 0;
+
+        void reset(long delay) {
+            count.set(0);
+            _delay = delay;
+        }
+
+        @Override
+        public void beforeExecuteStatement(JDBCEvent event) {
+            String sql = event.getSQL();
+            if (sql == null || !sql.startsWith("SELECT") || !sql.contains("CachedPerson"))
+                return;
+            count.incrementAndGet();
+            try {
+                Thread.sleep(_delay);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
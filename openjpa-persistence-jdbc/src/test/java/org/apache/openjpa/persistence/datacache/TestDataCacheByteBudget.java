@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import jakarta.persistence.EntityManager;
+
+import org.apache.openjpa.datacache.CacheStatistics;
+import org.apache.openjpa.datacache.ConcurrentDataCache;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests bounding the data cache by the estimated size of its entries.
+ */
+public class TestDataCacheByteBudget extends SingleEMFTestCase {
+
+    private static final long BUDGET = 8000;
+
+    @Override
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, CachedPerson.class, CachedManager.class,
+            CachedEmployee.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", "true(MaxBytes=" + BUDGET + ", SoftReferenceSize=0)");
+    }
+
+    private ConcurrentDataCache getCache() {
+        return (ConcurrentDataCache) emf.getConfiguration().getDataCacheManagerInstance().getSystemDataCache();
+    }
+
+    private CacheStatistics getStatistics() {
+        return emf.getStoreCache().getStatistics();
+    }
+
+    private void persistPeople(int first, int count, int nameLength) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = first; i < first + count; i++) {
+            CachedPerson person = new CachedPerson();
+            person.setId(i);
+            person.setFirstName(name(i, nameLength));
+            em.persist(person);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private static String name(int id, int length) {
+        StringBuilder buf = new StringBuilder(length);
+        buf.append(id);
+        while (buf.length() < length)
+            buf.append('x');
+        return buf.toString();
+    }
+
+    public void testLargeEntriesAreBoundedByBytes() {
+        persistPeople(0, 40, 250);
+        ConcurrentDataCache cache = getCache();
+        int size = cache.getCacheMap().size();
+        assertTrue(size > 0);
+        assertTrue(String.valueOf(size), size < 40);
+        long bytes = getStatistics().getByteCount();
+        assertTrue(bytes > 0);
+        assertTrue(bytes <= BUDGET);
+        assertEquals(bytes, getStatistics().getByteCount(CachedPerson.class));
+        assertEquals(bytes, cache.getCacheMap().getWeight());
+
+        // the evicted instances are loaded again from the database
+        EntityManager em = emf.createEntityManager();
+        for (int i = 0; i < 40; i++)
+            assertEquals(name(i, 250), em.find(CachedPerson.class, i).getFirstName());
+        em.close();
+        assertTrue(getStatistics().getByteCount() <= BUDGET);
+    }
+
+    public void testSmallEntriesFitInTheSameBudget() {
+        persistPeople(0, 10, 250);
+        int large = getCache().getCacheMap().size();
+        emf.getCache().evictAll();
+        assertEquals(0, getStatistics().getByteCount());
+
+        persistPeople(100, 10, 1);
+        persistPeople(200, 10, 1);
+        assertTrue(getCache().getCacheMap().size() > large);
+    }
+}
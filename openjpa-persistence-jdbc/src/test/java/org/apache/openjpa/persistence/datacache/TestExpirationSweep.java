@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.openjpa.datacache.ConcurrentDataCache;
+import org.apache.openjpa.datacache.ExpirationEvent;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.datacache.common.apps.CacheObjectE;
+import org.apache.openjpa.persistence.datacache.common.apps.CacheObjectF;
+import org.apache.openjpa.persistence.datacache.common.apps.CacheObjectG;
+import org.apache.openjpa.persistence.datacache.common.apps.CacheObjectH;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests evicting timed out data cache entries without waiting for them to
+ * be looked up.
+ */
+public class TestExpirationSweep extends SingleEMFTestCase {
+
+    private static final int COUNT = 5;
+
+    private final List<ExpirationEvent> _events = new ArrayList<>();
+
+    @Override
+    public void setUp() {
+        // entries of CacheObjectH time out after half a second
+        super.setUp(CLEAR_TABLES, CacheObjectE.class, CacheObjectF.class,
+            CacheObjectG.class, CacheObjectH.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", "true(ExpirationTick=50)");
+        getCache().addExpirationListener(event -> {
+            synchronized (_events) {
+                _events.add(event);
+            }
+        });
+    }
+
+    private ConcurrentDataCache getCache() {
+        return (ConcurrentDataCache) emf.getConfiguration().getDataCacheManagerInstance().getSystemDataCache();
+    }
+
+    private void persist(Object... pcs) {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (Object pc : pcs)
+            em.persist(pc);
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private void awaitSize(int size) throws InterruptedException {
+        for (int i = 0; i < 100 && getCache().getCacheMap().size() > size; i++)
+            Thread.sleep(50);
+        assertEquals(size, getCache().getCacheMap().size());
+    }
+
+    public void testTimedOutEntriesAreEvictedTogether() throws Exception {
+        Object[] pcs = new Object[COUNT];
+        for (int i = 0; i < COUNT; i++)
+            pcs[i] = new CacheObjectH("h" + i);
+        persist(pcs);
+        assertEquals(COUNT, getCache().getCacheMap().size());
+
+        awaitSize(0);
+        Set<Object> keys = new HashSet<>();
+        synchronized (_events) {
+            assertEquals(COUNT, _events.size());
+            for (ExpirationEvent event : _events) {
+                assertTrue(event.getExpired());
+                keys.add(event.getKey());
+            }
+        }
+        assertEquals(COUNT, keys.size());
+    }
+
+    public void testEntriesWithoutTimeoutAreKept() throws Exception {
+        persist(new CacheObjectE("e"), new CacheObjectH("h"));
+        assertEquals(2, getCache().getCacheMap().size());
+        awaitSize(1);
+        Thread.sleep(200);
+        assertEquals(1, getCache().getCacheMap().size());
+        synchronized (_events) {
+            assertEquals(1, _events.size());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+
+import org.apache.openjpa.datacache.ConcurrentDataCache;
+import org.apache.openjpa.datacache.DataCachePCData;
+import org.apache.openjpa.datacache.PCDataCodec;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.StoreCacheImpl;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+import org.apache.openjpa.util.OffHeapStore;
+
+/**
+ * Tests the off-heap tier of the data cache.
+ */
+public class TestOffHeapDataCache extends SQLListenerTestCase {
+
+    private static final int CACHE_SIZE = 5;
+
+    @Override
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, CachedPerson.class, CachedManager.class,
+            CachedEmployee.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", "true(EvictionPolicy=clock, CacheSize="
+                + CACHE_SIZE + ", OffHeapSize=1048576)");
+    }
+
+    private ConcurrentDataCache getCache() {
+        return (ConcurrentDataCache) ((StoreCacheImpl) emf.getCache())
+            .getDelegate();
+    }
+
+    private void persistPeople(int count) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < count; i++) {
+            CachedPerson person = new CachedPerson();
+            person.setId(i);
+            person.setFirstName("first" + i);
+            person.setLastName("last" + i);
+            em.persist(person);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testEvictedEntriesAreServedOffHeap() {
+        persistPeople(20);
+        ConcurrentDataCache cache = getCache();
+        OffHeapStore store = cache.getOffHeapStore();
+        assertNotNull(store);
+        assertEquals(0, cache.getSoftReferenceSize());
+        assertTrue(cache.getCacheMap().size() <= CACHE_SIZE);
+        assertEquals(20, cache.getCacheMap().size() + store.size());
+
+        EntityManager em = emf.createEntityManager();
+        resetSQL();
+        for (int i = 0; i < 20; i++) {
+            CachedPerson person = em.find(CachedPerson.class, i);
+            assertEquals("first" + i, person.getFirstName());
+            assertEquals("last" + i, person.getLastName());
+        }
+        assertEquals(sql.toString(), 0, getSQLCount());
+        em.close();
+    }
+
+    public void testUpdateInvalidatesOffHeapEntry() {
+        persistPeople(20);
+        ConcurrentDataCache cache = getCache();
+        assertTrue(cache.getOffHeapStore().size() > 0);
+        Object oid = findOffHeapId(cache);
+        assertNotNull(oid);
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        CachedPerson person = em.find(CachedPerson.class,
+            JPAFacadeHelper.fromOpenJPAObjectId(oid));
+        person.setFirstName("changed");
+        em.getTransaction().commit();
+        em.close();
+
+        assertFalse(cache.getOffHeapStore().containsKey(oid));
+        em = emf.createEntityManager();
+        person = em.find(CachedPerson.class, JPAFacadeHelper.fromOpenJPAObjectId(oid));
+        assertEquals("changed", person.getFirstName());
+        em.close();
+    }
+
+    public void testEvictClearsOffHeapEntries() {
+        persistPeople(20);
+        ConcurrentDataCache cache = getCache();
+        assertTrue(cache.getOffHeapStore().size() > 0);
+        emf.getCache().evict(CachedPerson.class);
+        assertEquals(0, cache.getOffHeapStore().size());
+    }
+
+    public void testCodecRoundTripsRelations() throws Exception {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        CachedManager manager = new CachedManager();
+        manager.setId(100);
+        manager.setFirstName("boss");
+        List<CachedEmployee> employees = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CachedEmployee employee = new CachedEmployee();
+            employee.setId(101 + i);
+            employee.setManager(manager);
+            employees.add(employee);
+            em.persist(employee);
+        }
+        manager.setEmployees(employees);
+        em.persist(manager);
+        em.getTransaction().commit();
+        em.close();
+
+        em = emf.createEntityManager();
+        manager = em.find(CachedManager.class, 100);
+        assertEquals(3, manager.getEmployees().size());
+        em.close();
+
+        ConcurrentDataCache cache = getCache();
+        Object oid = JPAFacadeHelper.toOpenJPAObjectId(
+            JPAFacadeHelper.getMetaData(emf, CachedManager.class), 100);
+        DataCachePCData data = cache.get(oid);
+        assertNotNull(data);
+
+        PCDataCodec codec = new PCDataCodec(emf.getConfiguration());
+        DataCachePCData copy = codec.decode(codec.encode(data));
+        assertEquals(data.getId(), copy.getId());
+        assertEquals(data.getType(), copy.getType());
+        assertEquals(data.getVersion(), copy.getVersion());
+        assertEquals(data.getTimeOut(), copy.getTimeOut());
+        int fields = JPAFacadeHelper.getMetaData(emf, CachedManager.class)
+            .getFields().length;
+        for (int i = 0; i < fields; i++) {
+            assertEquals(data.isLoaded(i), copy.isLoaded(i));
+            assertEquals(data.getData(i), copy.getData(i));
+        }
+    }
+
+    private Object findOffHeapId(ConcurrentDataCache cache) {
+        for (int i = 0; i < 20; i++) {
+            Object oid = JPAFacadeHelper.toOpenJPAObjectId(
+                JPAFacadeHelper.getMetaData(emf, CachedPerson.class), i);
+            if (cache.getOffHeapStore().containsKey(oid))
+                return oid;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import jakarta.persistence.EntityManager;
+
+import org.apache.openjpa.datacache.ConcurrentDataCache;
+import org.apache.openjpa.datacache.ConcurrentQueryCache;
+import org.apache.openjpa.datacache.DataCacheManagerImpl;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.StoreCacheImpl;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+import org.apache.openjpa.util.MappedFileStore;
+import org.apache.openjpa.util.OffHeapStore;
+
+/**
+ * Tests the memory-mapped overflow tier of the data and query caches.
+ */
+public class TestOverflowDataCache extends SQLListenerTestCase {
+
+    private static final int CACHE_SIZE = 5;
+    private static final int EMPLOYEE_IDS = 100;
+
+    @Override
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, CachedPerson.class, CachedManager.class,
+            CachedEmployee.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", "true(EvictionPolicy=clock, CacheSize="
+                + CACHE_SIZE + ", OverflowSize=1048576)",
+            "openjpa.QueryCache", "true(EvictionPolicy=clock, CacheSize="
+                + CACHE_SIZE + ", OverflowSize=1048576)",
+            "openjpa.DataCacheManager", "default(OverflowTypes="
+                + CachedEmployee.class.getName() + ")");
+    }
+
+    private ConcurrentDataCache getCache() {
+        return (ConcurrentDataCache) ((StoreCacheImpl) emf.getCache())
+            .getDelegate();
+    }
+
+    private ConcurrentQueryCache getQueryCache() {
+        return (ConcurrentQueryCache) emf.getConfiguration()
+            .getDataCacheManagerInstance().getSystemQueryCache();
+    }
+
+    private void persist(int count) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < count; i++) {
+            CachedPerson person = new CachedPerson();
+            person.setId(i);
+            person.setFirstName("first" + i);
+            em.persist(person);
+
+            CachedEmployee employee = new CachedEmployee();
+            employee.setId(EMPLOYEE_IDS + i);
+            employee.setFirstName("employee" + i);
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private Object oid(Class<?> cls, int id) {
+        return JPAFacadeHelper.toOpenJPAObjectId(
+            JPAFacadeHelper.getMetaData(emf, cls), id);
+    }
+
+    public void testOnlyConfiguredTypesOverflow() {
+        persist(20);
+        ConcurrentDataCache cache = getCache();
+        assertNull(cache.getOffHeapStore());
+        OffHeapStore overflow = cache.getOverflowStore();
+        assertNotNull(overflow);
+        assertTrue(overflow.size() > 0);
+        for (int i = 0; i < 20; i++)
+            assertFalse(overflow.containsKey(oid(CachedPerson.class, i)));
+        assertEquals(40 - cache.getCacheMap().size(),
+            overflow.size() + countMissingPeople(cache));
+
+        EntityManager em = emf.createEntityManager();
+        resetSQL();
+        for (int i = 0; i < 20; i++) {
+            CachedEmployee employee = em.find(CachedEmployee.class,
+                EMPLOYEE_IDS + i);
+            assertEquals("employee" + i, employee.getFirstName());
+        }
+        assertEquals(sql.toString(), 0, getSQLCount());
+        em.close();
+    }
+
+    public void testManagerOverridesConfiguredTypes() {
+        DataCacheManagerImpl manager = (DataCacheManagerImpl) emf
+            .getConfiguration().getDataCacheManagerInstance();
+        assertTrue(manager.isOverflowEnabled(CachedEmployee.class));
+        assertFalse(manager.isOverflowEnabled(CachedPerson.class));
+        assertFalse(manager.isOverflowEnabled(CachedManager.class));
+
+        manager.startOverflow(CachedPerson.class.getName());
+        assertTrue(manager.isOverflowEnabled(CachedManager.class));
+        manager.stopOverflow(CachedEmployee.class.getName());
+        assertFalse(manager.isOverflowEnabled(CachedEmployee.class));
+        assertTrue(manager.isOverflowEnabled(CachedPerson.class.getName()));
+    }
+
+    public void testUpdateInvalidatesOverflowEntry() {
+        persist(20);
+        OffHeapStore overflow = getCache().getOverflowStore();
+        Object oid = null;
+        int id = -1;
+        for (int i = 0; i < 20 && oid == null; i++) {
+            if (overflow.containsKey(oid(CachedEmployee.class, EMPLOYEE_IDS + i))) {
+                id = EMPLOYEE_IDS + i;
+                oid = oid(CachedEmployee.class, id);
+            }
+        }
+        assertNotNull(oid);
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(CachedEmployee.class, id).setFirstName("changed");
+        em.getTransaction().commit();
+        em.close();
+
+        assertFalse(overflow.containsKey(oid));
+        em = emf.createEntityManager();
+        assertEquals("changed", em.find(CachedEmployee.class, id).getFirstName());
+        em.close();
+    }
+
+    public void testQueryResultsOverflow() {
+        persist(20);
+        String jpql = "select e from CachedEmployee e where e.id = :id";
+        EntityManager em = emf.createEntityManager();
+        for (int i = 0; i < 20; i++)
+            em.createQuery(jpql).setParameter("id", EMPLOYEE_IDS + i)
+                .getResultList();
+        em.close();
+
+        ConcurrentQueryCache cache = getQueryCache();
+        OffHeapStore overflow = cache.getOverflowStore();
+        assertNotNull(overflow);
+        assertEquals(20, cache.getCacheMap().size() + overflow.size());
+        assertTrue(overflow.size() > 0);
+        assertNotNull(((MappedFileStore) overflow).getDirectory());
+
+        // results come from the tier rather than the database
+        em = emf.createEntityManager();
+        resetSQL();
+        for (int i = 0; i < 20; i++) {
+            CachedEmployee employee = (CachedEmployee) em.createQuery(jpql)
+                .setParameter("id", EMPLOYEE_IDS + i).getSingleResult();
+            assertEquals("employee" + i, employee.getFirstName());
+        }
+        assertEquals(sql.toString(), 0, getSQLCount());
+        em.close();
+
+        // a change to the candidate type invalidates them
+        em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(CachedEmployee.class, EMPLOYEE_IDS).setFirstName("changed");
+        em.getTransaction().commit();
+        em.close();
+        assertEquals(0, overflow.size());
+    }
+
+    private int countMissingPeople(ConcurrentDataCache cache) {
+        int missing = 0;
+        for (int i = 0; i < 20; i++)
+            if (!cache.getCacheMap().containsKey(oid(CachedPerson.class, i)))
+                missing++;
+        return missing;
+    }
+}
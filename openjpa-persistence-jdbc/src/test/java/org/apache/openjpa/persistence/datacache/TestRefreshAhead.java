@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCacheManagerImpl;
+import org.apache.openjpa.datacache.DataCachePCData;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.datacache.common.apps.CacheObjectE;
+import org.apache.openjpa.persistence.datacache.common.apps.CacheObjectF;
+import org.apache.openjpa.persistence.datacache.common.apps.CacheObjectG;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests reloading data cache entries in the background before they time out.
+ */
+public class TestRefreshAhead extends SingleEMFTestCase {
+
+    private Object _id;
+    private Object _oid;
+
+    @Override
+    public void setUp() {
+        // entries of CacheObjectG time out after 5 seconds, and are
+        // refreshed when read during the last 4
+        super.setUp(CLEAR_TABLES, CacheObjectE.class, CacheObjectF.class,
+            CacheObjectG.class,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.DataCache", "true(RefreshAheadWindow=4000)");
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        CacheObjectG g = new CacheObjectG("g");
+        em.persist(g);
+        em.getTransaction().commit();
+        _id = em.getObjectId(g);
+        em.close();
+        _oid = JPAFacadeHelper.toOpenJPAObjectId(JPAFacadeHelper.getMetaData(emf, CacheObjectG.class), _id);
+    }
+
+    private DataCache getCache() {
+        return emf.getConfiguration().getDataCacheManagerInstance().getSystemDataCache();
+    }
+
+    private DataCacheManagerImpl getManager() {
+        return (DataCacheManagerImpl) emf.getConfiguration().getDataCacheManagerInstance();
+    }
+
+    private String find() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        try {
+            CacheObjectG g = (CacheObjectG) em.find(CacheObjectG.class, _id);
+            return (g == null) ? null : g.getStr();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Change or delete the instance without going through the cache.
+     */
+    private void updateBehindCache(String sql) {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.createNativeQuery(sql).executeUpdate();
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private void awaitRefreshes(long count) throws InterruptedException {
+        for (int i = 0; i < 200 && getManager().getRefreshCount() < count; i++)
+            Thread.sleep(50);
+        assertEquals(count, getManager().getRefreshCount());
+    }
+
+    public void testFreshEntriesAreNotRefreshed() throws Exception {
+        assertEquals("g", find());
+        Thread.sleep(200);
+        assertEquals(0, getManager().getRefreshCount());
+    }
+
+    public void testExpiringEntryIsReloaded() throws Exception {
+        DataCachePCData data = getCache().get(_oid);
+        assertNotNull(data);
+        long timeout = data.getTimeOut();
+        updateBehindCache("UPDATE CacheObjectE SET str = 'changed'");
+        assertEquals("g", find());
+
+        Thread.sleep(1100);
+        assertEquals("g", find());
+        awaitRefreshes(1);
+        data = getCache().get(_oid);
+        assertNotNull(data);
+        assertTrue(data.getTimeOut() > timeout);
+        assertEquals("changed", find());
+    }
+
+    public void testDeletedEntryIsRemoved() throws Exception {
+        updateBehindCache("DELETE FROM CacheObjectE");
+        Thread.sleep(1100);
+        assertEquals("g", find());
+        awaitRefreshes(1);
+        assertFalse(getCache().contains(_oid));
+        assertNull(find());
+    }
+}
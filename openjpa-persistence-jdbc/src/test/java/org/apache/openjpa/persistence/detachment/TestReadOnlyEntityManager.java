@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.detachment;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.openjpa.enhance.PersistenceCapable;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.detachment.model.DMCustomer;
+import org.apache.openjpa.persistence.detachment.model.DMCustomerInventory;
+import org.apache.openjpa.persistence.detachment.model.DMItem;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+import org.apache.openjpa.util.Proxy;
+
+/**
+ * Tests read-only entity managers.
+ */
+public class TestReadOnlyEntityManager extends SingleEMFTestCase {
+
+    private long _id;
+
+    @Override
+    public void setUp() {
+        super.setUp(DMCustomer.class, DMCustomerInventory.class, DMItem.class, CLEAR_TABLES);
+
+        DMItem item = new DMItem();
+        item.setName("item");
+        DMCustomerInventory inventory1 = new DMCustomerInventory();
+        DMCustomerInventory inventory2 = new DMCustomerInventory();
+        inventory1.setItem(item);
+        inventory2.setItem(item);
+        DMCustomer customer = new DMCustomer();
+        customer.setLastName("ReadOnly");
+        customer.setCal(Calendar.getInstance());
+        customer.setCustomerInventories(Arrays.asList(inventory1, inventory2));
+        inventory1.setCustomer(customer);
+        inventory2.setCustomer(customer);
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.persist(customer);
+        em.getTransaction().commit();
+        em.close();
+        _id = customer.getId();
+    }
+
+    private OpenJPAEntityManager newReadOnlyEntityManager() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.setReadOnly(true);
+        return em;
+    }
+
+    private static void assertPlain(DMCustomer customer) {
+        assertTrue(((PersistenceCapable) customer).pcIsDetached());
+        assertFalse(customer.getCal() instanceof Proxy);
+        assertFalse(customer.getCustomerInventories() instanceof Proxy);
+        assertEquals(2, customer.getCustomerInventories().size());
+        for (DMCustomerInventory inventory : customer.getCustomerInventories()) {
+            assertTrue(((PersistenceCapable) inventory).pcIsDetached());
+            assertSame(customer, inventory.getCustomer());
+        }
+    }
+
+    public void testFindReturnsDetachedInstances() {
+        OpenJPAEntityManager em = newReadOnlyEntityManager();
+        DMCustomer customer = em.find(DMCustomer.class, _id);
+        assertPlain(customer);
+        assertFalse(em.contains(customer));
+        assertTrue(em.getManagedObjects().isEmpty());
+
+        // each operation loads its own instances
+        assertNotSame(customer, em.find(DMCustomer.class, _id));
+        em.close();
+    }
+
+    public void testQueryReturnsDetachedInstances() {
+        OpenJPAEntityManager em = newReadOnlyEntityManager();
+        em.getTransaction().begin();
+        List<DMCustomer> result = em.createQuery("select c from DMCustomer c", DMCustomer.class)
+            .getResultList();
+        assertEquals(1, result.size());
+        assertPlain(result.get(0));
+        assertTrue(em.getManagedObjects().isEmpty());
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testWritesAreRejected() {
+        OpenJPAEntityManager em = newReadOnlyEntityManager();
+        em.getTransaction().begin();
+        try {
+            em.persist(new DMItem());
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            em.merge(em.find(DMCustomer.class, _id));
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            em.createQuery("delete from DMItem").executeUpdate();
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        em.getTransaction().rollback();
+        em.close();
+    }
+
+    public void testReadOnlyProperty() {
+        OpenJPAEntityManager em = emf.createEntityManager(
+            Collections.singletonMap("openjpa.ReadOnly", "true"));
+        assertTrue(em.getReadOnly());
+        assertPlain(em.find(DMCustomer.class, _id));
+        em.setReadOnly(false);
+        assertTrue(em.contains(em.find(DMCustomer.class, _id)));
+        em.close();
+    }
+
+    public void testDirtyContextCannotBecomeReadOnly() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.persist(new DMItem());
+        try {
+            em.setReadOnly(true);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        em.getTransaction().rollback();
+        em.close();
+    }
+}
@@ -41,4 +41,10 @@ public class TestTCPRemoteEvents
             "Port=5636, Addresses=127.0.0.1:5636;127.0.0.1:6636",
             "Port=6636, Addresses=127.0.0.1:5636;127.0.0.1:6636");
     }
+
+    public void testEventsWithBinaryCodec() {
+        doTest(TCPRemoteCommitProvider.class,
+            "Port=5636, Addresses=127.0.0.1:5636;127.0.0.1:6636, Codec=binary",
+            "Port=6636, Addresses=127.0.0.1:5636;127.0.0.1:6636, Codec=binary");
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.flush;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.RollbackException;
+
+import org.apache.openjpa.event.AbstractLifecycleListener;
+import org.apache.openjpa.event.LifecycleEvent;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerSPI;
+import org.apache.openjpa.persistence.jdbc.update.NumericVersionedEntity;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests that a flush only visits the instances changed since the previous
+ * flush and the instances that need a version check.
+ */
+public class TestFlushChangedInstances extends SingleEMFTestCase {
+
+    private static final int COUNT = 20;
+
+    private final List<Long> _ids = new ArrayList<>();
+
+    @Override
+    public void setUp() {
+        super.setUp(NumericVersionedEntity.class, CLEAR_TABLES);
+
+        OpenJPAEntityManagerSPI em = (OpenJPAEntityManagerSPI) emf.createEntityManager();
+        em.getTransaction().begin();
+        List<NumericVersionedEntity> entities = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            NumericVersionedEntity entity = new NumericVersionedEntity();
+            entity.setName("name" + i);
+            em.persist(entity);
+            entities.add(entity);
+        }
+        em.getTransaction().commit();
+        for (NumericVersionedEntity entity : entities)
+            _ids.add(entity.getId());
+        em.close();
+    }
+
+    public void testOnlyChangedInstancesAreFlushed() {
+        OpenJPAEntityManagerSPI em = (OpenJPAEntityManagerSPI) emf.createEntityManager();
+        StoreCounter counter = new StoreCounter();
+        em.addLifecycleListener(counter, NumericVersionedEntity.class);
+        em.getTransaction().begin();
+        List<NumericVersionedEntity> entities = new ArrayList<>();
+        for (Long id : _ids)
+            entities.add(em.find(NumericVersionedEntity.class, id));
+
+        entities.get(0).setName("changed0");
+        em.flush();
+        assertEquals(1, counter.stores);
+
+        // the instance flushed before is not stored again
+        entities.get(1).setName("changed1");
+        em.flush();
+        assertEquals(2, counter.stores);
+
+        // but it is once changed again after its flush
+        entities.get(0).setName("changed again");
+        em.flush();
+        assertEquals(3, counter.stores);
+
+        em.remove(entities.get(1));
+        em.getTransaction().commit();
+        em.close();
+
+        em = (OpenJPAEntityManagerSPI) emf.createEntityManager();
+        assertEquals("changed again", em.find(NumericVersionedEntity.class, _ids.get(0)).getName());
+        assertNull(em.find(NumericVersionedEntity.class, _ids.get(1)));
+        assertEquals("name2", em.find(NumericVersionedEntity.class, _ids.get(2)).getName());
+        em.close();
+    }
+
+    public void testVersionOfCleanInstanceIsChecked() {
+        OpenJPAEntityManagerSPI em = (OpenJPAEntityManagerSPI) emf.createEntityManager();
+        em.getTransaction().begin();
+        NumericVersionedEntity entity = em.find(NumericVersionedEntity.class, _ids.get(0));
+        em.lock(entity, LockModeType.OPTIMISTIC);
+        em.find(NumericVersionedEntity.class, _ids.get(1)).setName("changed");
+
+        OpenJPAEntityManagerSPI em2 = (OpenJPAEntityManagerSPI) emf.createEntityManager();
+        em2.getTransaction().begin();
+        em2.find(NumericVersionedEntity.class, _ids.get(0)).setName("concurrent");
+        em2.getTransaction().commit();
+        em2.close();
+
+        try {
+            em.getTransaction().commit();
+            fail();
+        } catch (RollbackException re) {
+            // expected
+        }
+        em.close();
+    }
+
+    public void testVersionOfCleanInstanceIsUpdated() {
+        OpenJPAEntityManagerSPI em = (OpenJPAEntityManagerSPI) emf.createEntityManager();
+        em.getTransaction().begin();
+        NumericVersionedEntity entity = em.find(NumericVersionedEntity.class, _ids.get(0));
+        int version = entity.getVersion();
+        em.lock(entity, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        em.getTransaction().commit();
+        em.close();
+
+        em = (OpenJPAEntityManagerSPI) emf.createEntityManager();
+        assertEquals(version + 1, em.find(NumericVersionedEntity.class, _ids.get(0)).getVersion());
+        em.close();
+    }
+
+    /**
+     * Counts the instances stored.
+     */
+    public static class StoreCounter
+        extends AbstractLifecycleListener {
+
+        private int stores = 0;
+
+        @Override
+        public void beforeStore(LifecycleEvent event) {
+            stores++;
+        }
+    }
+}
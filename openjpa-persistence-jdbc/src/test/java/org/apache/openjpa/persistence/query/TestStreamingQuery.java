@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.query;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.openjpa.kernel.QueryHints;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.OpenJPAQuery;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests streaming query results through {@link jakarta.persistence.Query#getResultStream}.
+ */
+public class TestStreamingQuery extends SingleEMFTestCase {
+
+    private static final int COUNT = 30;
+
+    @Override
+    public void setUp() {
+        super.setUp(SimpleEntity.class, CLEAR_TABLES);
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < COUNT; i++)
+            em.persist(new SimpleEntity("name" + i, "value" + i));
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private static OpenJPAQuery<SimpleEntity> newQuery(OpenJPAEntityManager em) {
+        OpenJPAQuery<SimpleEntity> q = (OpenJPAQuery<SimpleEntity>) em.createQuery(
+            "select s from simple s", SimpleEntity.class);
+        return q.setHint(QueryHints.HINT_STREAM_DETACH, true);
+    }
+
+    public void testStreamReturnsAllResults() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        try (Stream<SimpleEntity> stream = em.createQuery(
+            "select s from simple s order by s.name", SimpleEntity.class).getResultStream()) {
+            List<String> names = stream.map(SimpleEntity::getName).collect(Collectors.toList());
+            assertEquals(COUNT, names.size());
+            assertEquals("name0", names.get(0));
+        }
+        em.close();
+    }
+
+    public void testStreamedInstancesAreManagedByDefault() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        List<SimpleEntity> results;
+        try (Stream<SimpleEntity> stream = em.createQuery(
+            "select s from simple s", SimpleEntity.class).getResultStream()) {
+            results = stream.collect(Collectors.toList());
+        }
+        assertEquals(COUNT, results.size());
+        for (SimpleEntity result : results) {
+            assertTrue(em.contains(result));
+            result.setValue("changed");
+        }
+        em.getTransaction().commit();
+        em.close();
+
+        em = emf.createEntityManager();
+        for (SimpleEntity result : results)
+            assertEquals("changed", em.find(SimpleEntity.class, result.getId()).getValue());
+        em.close();
+    }
+
+    public void testHintIsSupported() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        assertTrue(newQuery(em).getSupportedHints().contains(QueryHints.HINT_STREAM_DETACH));
+        assertEquals(Boolean.TRUE, newQuery(em).getHints().get(QueryHints.HINT_STREAM_DETACH));
+        em.close();
+    }
+
+    public void testDistinctIsLeftToTheDatabase() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        try (Stream<String> stream = em.createQuery(
+            "select distinct substring(s.name, 1, 4) from simple s", String.class)
+            .setHint(QueryHints.HINT_STREAM_DETACH, "true").getResultStream()) {
+            List<String> prefixes = stream.collect(Collectors.toList());
+            assertEquals(1, prefixes.size());
+            assertEquals("name", prefixes.get(0));
+        }
+        em.close();
+    }
+
+    public void testConsumedInstancesAreDetached() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        OpenJPAQuery<SimpleEntity> q = newQuery(em);
+        q.getFetchPlan().setFetchBatchSize(5);
+        try (Stream<SimpleEntity> stream = q.getResultStream()) {
+            Iterator<SimpleEntity> itr = stream.iterator();
+            SimpleEntity first = itr.next();
+            assertTrue(em.contains(first));
+            int count = 1;
+            while (itr.hasNext()) {
+                SimpleEntity current = itr.next();
+                assertTrue(em.contains(current));
+                // only the instances of the current batch stay managed
+                assertTrue(em.getManagedObjects().size() <= 5);
+                count++;
+            }
+            assertEquals(COUNT, count);
+            assertFalse(em.contains(first));
+        }
+        assertTrue(em.getManagedObjects().isEmpty());
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testDirtyInstancesStayManaged() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        OpenJPAQuery<SimpleEntity> q = newQuery(em);
+        q.getFetchPlan().setFetchBatchSize(5);
+        SimpleEntity changed = null;
+        try (Stream<SimpleEntity> stream = q.getResultStream()) {
+            for (Iterator<SimpleEntity> itr = stream.iterator(); itr.hasNext();) {
+                SimpleEntity current = itr.next();
+                if (changed == null) {
+                    changed = current;
+                    changed.setValue("changed");
+                }
+            }
+        }
+        assertTrue(em.contains(changed));
+        assertEquals(1, em.getManagedObjects().size());
+        em.getTransaction().commit();
+
+        em.clear();
+        assertEquals("changed", em.find(SimpleEntity.class, changed.getId()).getValue());
+        em.close();
+    }
+
+    public void testStreamDoesNotChangeFetchBatchSize() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        OpenJPAQuery<SimpleEntity> q = newQuery(em);
+        int batch = q.getFetchPlan().getFetchBatchSize();
+        try (Stream<SimpleEntity> stream = q.getResultStream()) {
+            assertEquals(COUNT, stream.count());
+        }
+        assertEquals(batch, q.getFetchPlan().getFetchBatchSize());
+        assertEquals(COUNT, q.getResultList().size());
+        em.close();
+    }
+}
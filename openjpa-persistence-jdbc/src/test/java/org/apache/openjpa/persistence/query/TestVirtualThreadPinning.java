@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.query;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Runs broker workloads on virtual threads and asserts that they are not
+ * pinned to their carrier threads by OpenJPA monitors. The pinning check
+ * requires a JDK 21 to 23 JVM started with <code>-Djdk.tracePinnedThreads</code>,
+ * as done by the <code>test-virtual-threads</code> profile; JDK 24 removed
+ * the trace. Tests that cannot run on this JVM are reported as skipped,
+ * which is why they run with JUnit 4.
+ */
+@RunWith(JUnit4.class)
+public class TestVirtualThreadPinning extends SingleEMFTestCase {
+
+    private static final int THREADS = 50;
+    private static final int REPEATS = 5;
+    private static final String TRACE_PINNED_THREADS = "jdk.tracePinnedThreads";
+
+    @Before
+    @Override
+    public void setUp() {
+        super.setUp(SimpleEntity.class, CLEAR_TABLES,
+            "openjpa.DataCache", "true",
+            "openjpa.QueryCache", "true",
+            "openjpa.RemoteCommitProvider", "sjvm");
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    public void testBrokerWorkloadOnVirtualThreads() throws Exception {
+        ExecutorService executor = newVirtualThreadExecutor();
+        Assume.assumeTrue("virtual threads are not available", executor != null);
+
+        runWorkloads(executor);
+    }
+
+    @Test
+    public void testBrokerWorkloadDoesNotPin() throws Exception {
+        int version = Runtime.version().feature();
+        Assume.assumeTrue("pinned threads are only traced on JDK 21 to 23", version >= 21 && version < 24);
+        Assume.assumeTrue("run with -D" + TRACE_PINNED_THREADS, System.getProperty(TRACE_PINNED_THREADS) != null);
+        ExecutorService executor = newVirtualThreadExecutor();
+        Assume.assumeTrue("virtual threads are not available", executor != null);
+
+        String trace = tracePinning(() -> {
+            runWorkloads(executor);
+            return null;
+        });
+        assertFalse("virtual threads were pinned by OpenJPA monitors:\n" + trace,
+            trace.contains("org.apache.openjpa"));
+    }
+
+    /**
+     * Run the workloads of all threads on the given executor and check
+     * their results.
+     */
+    private void runWorkloads(ExecutorService executor) throws Exception {
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> runWorkload(thread, errors)));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        if (!errors.isEmpty())
+            throw new AssertionError(errors.get(0));
+        OpenJPAEntityManager em = emf.createEntityManager();
+        assertEquals((long) THREADS * REPEATS,
+            em.createQuery("select count(s) from simple s").getSingleResult());
+        em.close();
+    }
+
+    private void runWorkload(int thread, List<Throwable> errors) {
+        try {
+            for (int i = 0; i < REPEATS; i++) {
+                OpenJPAEntityManager em = emf.createEntityManager();
+                em.getTransaction().begin();
+                SimpleEntity entity = new SimpleEntity("name" + thread, "value" + i);
+                em.persist(entity);
+                em.getTransaction().commit();
+                em.clear();
+
+                assertNotNull(em.find(SimpleEntity.class, entity.getId()));
+                assertEquals(i + 1, em.createQuery("select s from simple s where s.name = :name")
+                    .setParameter("name", "name" + thread).getResultList().size());
+                em.close();
+            }
+        } catch (Throwable t) {
+            errors.add(t);
+        }
+    }
+
+    /**
+     * Return an executor running each task on its own virtual thread, or
+     * null if this JVM does not support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            // older JVM, or virtual threads are a disabled preview feature
+            return null;
+        }
+    }
+
+    /**
+     * Run the given workload and return the lines of the pinned thread
+     * traces printed to standard output that mention a held monitor.
+     */
+    private static String tracePinning(Callable<Void> workload) throws Exception {
+        PrintStream out = System.out;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new TeeOutputStream(out, buf), true));
+        try {
+            workload.call();
+        } finally {
+            System.out.flush();
+            System.setOut(out);
+        }
+
+        StringBuilder trace = new StringBuilder();
+        for (String line : buf.toString().split("\\R")) {
+            if (line.contains("<== monitors"))
+                trace.append(line.trim()).append('\n');
+        }
+        return trace.toString();
+    }
+
+    /**
+     * Copies everything written to the original stream.
+     */
+    private static class TeeOutputStream extends OutputStream {
+
+        private final OutputStream _out;
+        private final ByteArrayOutputStream _copy;
+
+        TeeOutputStream(OutputStream out, ByteArrayOutputStream copy) {
+            _out = out;
+            _copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            _out.write(b);
+            _copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _out.write(b, off, len);
+            _copy.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.querycache;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+
+@Entity
+public class QCValueEntity {
+
+    public enum Status { OPEN, CLOSED }
+
+    @Id
+    private String pk;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private Timestamp stamp;
+
+    private UUID token;
+
+    public QCValueEntity() {
+    }
+
+    public QCValueEntity(String pk, Status status, Timestamp stamp, UUID token) {
+        this.pk = pk;
+        this.status = status;
+        this.stamp = stamp;
+        this.token = token;
+    }
+
+    public String getPk() {
+        return pk;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Timestamp getStamp() {
+        return stamp;
+    }
+
+    public UUID getToken() {
+        return token;
+    }
+}
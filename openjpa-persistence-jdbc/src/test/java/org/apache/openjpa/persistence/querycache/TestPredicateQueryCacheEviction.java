@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.querycache;
+
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+
+import org.apache.openjpa.datacache.ConcurrentQueryCache;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests that the predicate eviction policy of the query cache keeps the
+ * results of queries whose equality predicates no committed instance
+ * satisfies.
+ */
+public class TestPredicateQueryCacheEviction extends SingleEMFTestCase {
+
+    private static final String BY_AMOUNT = "select o from QCEntity o where o.amount = :amount";
+    private static final String BY_DESCRIPTION = "select o from QCEntity o where o.description = 'd1'";
+    private static final String BY_QC = "select e from QCEntityM2O e where e.qc.pk = :pk";
+
+    @Override
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, QCEntityM2O.class, QCEntity.class,
+            "openjpa.DataCache", "true",
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.QueryCache", "true(EvictPolicy='predicate')");
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        QCEntity qc1 = new QCEntity("qc1", "d1", 1L);
+        QCEntity qc2 = new QCEntity("qc2", "d2", 2L);
+        QCEntityM2O m2o = new QCEntityM2O("m2o");
+        m2o.setQc(qc1);
+        em.persist(qc1);
+        em.persist(qc2);
+        em.persist(m2o);
+        em.getTransaction().commit();
+        em.close();
+        getQueryCache().clear();
+    }
+
+    private ConcurrentQueryCache getQueryCache() {
+        return (ConcurrentQueryCache) OpenJPAPersistence.cast(emf).getQueryResultCache().getDelegate();
+    }
+
+    private int getQueryCacheSize() {
+        return getQueryCache().getCacheMap().size();
+    }
+
+    private List<?> byAmount(long amount) {
+        EntityManager em = emf.createEntityManager();
+        List<?> res = em.createQuery(BY_AMOUNT).setParameter("amount", amount).getResultList();
+        em.close();
+        return res;
+    }
+
+    private void persist(QCEntity qc) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.persist(qc);
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private void setAmount(String pk, long amount) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(QCEntity.class, pk).setAmount(amount);
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testCommitOfNonMatchingInstanceKeepsResult() {
+        assertEquals(1, byAmount(1L).size());
+        assertEquals(1, getQueryCacheSize());
+
+        persist(new QCEntity("qc3", "d3", 3L));
+        setAmount("qc2", 4L);
+        assertEquals(1, getQueryCacheSize());
+        assertEquals(1, byAmount(1L).size());
+    }
+
+    public void testCommitOfMatchingInstanceEvictsResult() {
+        assertEquals(1, byAmount(1L).size());
+        persist(new QCEntity("qc3", "d3", 1L));
+        assertEquals(0, getQueryCacheSize());
+        assertEquals(2, byAmount(1L).size());
+
+        // an update to a matching value
+        setAmount("qc2", 1L);
+        assertEquals(0, getQueryCacheSize());
+        assertEquals(3, byAmount(1L).size());
+    }
+
+    public void testUpdateAwayFromMatchingValueEvictsResult() {
+        assertEquals(1, byAmount(1L).size());
+        setAmount("qc1", 5L);
+        assertEquals(0, getQueryCacheSize());
+        assertEquals(0, byAmount(1L).size());
+    }
+
+    public void testDeleteOfMatchingInstanceEvictsResult() {
+        assertEquals(1, byAmount(2L).size());
+        assertEquals(1, byAmount(1L).size());
+        assertEquals(2, getQueryCacheSize());
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.remove(em.find(QCEntity.class, "qc2"));
+        em.getTransaction().commit();
+        em.close();
+        assertEquals(1, getQueryCacheSize());
+        assertEquals(0, byAmount(2L).size());
+    }
+
+    public void testLiteralPredicate() {
+        EntityManager em = emf.createEntityManager();
+        assertEquals(1, em.createQuery(BY_DESCRIPTION).getResultList().size());
+        em.close();
+
+        persist(new QCEntity("qc3", "d3", 1L));
+        assertEquals(1, getQueryCacheSize());
+        persist(new QCEntity("qc4", "d1", 1L));
+        assertEquals(0, getQueryCacheSize());
+    }
+
+    public void testRelationPredicate() {
+        EntityManager em = emf.createEntityManager();
+        assertEquals(1, em.createQuery(BY_QC).setParameter("pk", "qc1").getResultList().size());
+        assertEquals(1, getQueryCacheSize());
+
+        em.getTransaction().begin();
+        QCEntityM2O other = new QCEntityM2O("other");
+        other.setQc(em.find(QCEntity.class, "qc2"));
+        em.persist(other);
+        em.getTransaction().commit();
+        assertEquals(1, getQueryCacheSize());
+
+        em.getTransaction().begin();
+        other.setQc(em.find(QCEntity.class, "qc1"));
+        em.getTransaction().commit();
+        assertEquals(0, getQueryCacheSize());
+        assertEquals(2, em.createQuery(BY_QC).setParameter("pk", "qc1").getResultList().size());
+        em.close();
+    }
+
+    public void testDefaultPolicyEvictsByType() {
+        getQueryCache().setEvictPolicy("default");
+        try {
+            assertEquals(1, byAmount(1L).size());
+            persist(new QCEntity("qc3", "d3", 3L));
+            assertEquals(0, getQueryCacheSize());
+        } finally {
+            getQueryCache().setEvictPolicy("predicate");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.querycache;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import org.apache.openjpa.persistence.querycache.QCValueEntity.Status;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+
+/**
+ * Tests that the results of projection and aggregate queries are served
+ * from the query cache, including projections of immutable and copyable
+ * value types, and are dropped when a class in the access path changes.
+ */
+public class TestProjectionQueryCache extends SQLListenerTestCase {
+
+    private static final String BY_STATUS =
+        "select o.status, count(o) from QCValueEntity o group by o.status order by o.status";
+    private static final Timestamp STAMP = new Timestamp(1000000L);
+    private static final UUID TOKEN = UUID.randomUUID();
+
+    @Override
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, QCValueEntity.class,
+            "openjpa.DataCache", "true",
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.QueryCache", "true");
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.persist(new QCValueEntity("a", Status.OPEN, STAMP, TOKEN));
+        em.persist(new QCValueEntity("b", Status.OPEN, STAMP, TOKEN));
+        em.persist(new QCValueEntity("c", Status.CLOSED, STAMP, TOKEN));
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private List<?> query(String jpql, Object... params) {
+        EntityManager em = emf.createEntityManager();
+        Query q = em.createQuery(jpql);
+        for (int i = 0; i < params.length; i++)
+            q.setParameter(i + 1, params[i]);
+        List<?> res = q.getResultList();
+        em.close();
+        return res;
+    }
+
+    private void assertCached(String jpql, Object... params) {
+        List<?> res = query(jpql, params);
+        resetSQL();
+        assertEquals(res.size(), query(jpql, params).size());
+        assertEquals(jpql, 0, getSQLCount());
+    }
+
+    public void testAggregateByEnumIsCached() {
+        assertCached(BY_STATUS);
+        List<?> res = query(BY_STATUS);
+        assertEquals(2, res.size());
+        assertEquals(Status.CLOSED, ((Object[]) res.get(0))[0]);
+        assertEquals(Status.OPEN, ((Object[]) res.get(1))[0]);
+        assertEquals(2L, ((Number) ((Object[]) res.get(1))[1]).longValue());
+    }
+
+    public void testScalarAggregateIsCached() {
+        String jpql = "select count(o) from QCValueEntity o where o.status = ?1";
+        assertCached(jpql, Status.OPEN);
+        assertEquals(2L, ((Number) query(jpql, Status.OPEN).get(0)).longValue());
+    }
+
+    public void testImmutableValueProjectionIsCached() {
+        String jpql = "select o.token from QCValueEntity o where o.pk = 'a'";
+        assertCached(jpql);
+        assertEquals(TOKEN, query(jpql).get(0));
+    }
+
+    public void testMutableValueProjectionIsCopied() {
+        String jpql = "select o.stamp from QCValueEntity o where o.pk = 'a'";
+        assertCached(jpql);
+
+        ((Timestamp) query(jpql).get(0)).setTime(0L);
+
+        resetSQL();
+        assertEquals(STAMP, query(jpql).get(0));
+        assertEquals(0, getSQLCount());
+    }
+
+    public void testChangeEvictsProjection() {
+        assertCached(BY_STATUS);
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(QCValueEntity.class, "c").setStatus(Status.OPEN);
+        em.getTransaction().commit();
+        em.close();
+
+        resetSQL();
+        List<?> res = query(BY_STATUS);
+        assertTrue(getSQLCount() > 0);
+        assertEquals(1, res.size());
+        assertEquals(3L, ((Number) ((Object[]) res.get(0))[1]).longValue());
+    }
+}
@@ -277,6 +277,18 @@ public class EntityManagerImpl
         properties = null;
     }
 
+    @Override
+    public boolean getReadOnly() {
+        return _broker.getReadOnly();
+    }
+
+    @Override
+    public void setReadOnly(boolean val) {
+        assertNotCloseInvoked();
+        _broker.setReadOnly(val);
+        properties = null;
+    }
+
     @Override
     public boolean getNontransactionalRead() {
         return _broker.getNontransactionalRead();
@@ -175,7 +175,8 @@ public class HintHandler  {
         } else if (QueryHints.HINT_IGNORE_PREPARED_QUERY.equals(key)) {
             plan.setHint(key, Filters.convert(value, Boolean.class));
             owner.ignorePreparedQuery();
-        } else if (QueryHints.HINT_USE_LITERAL_IN_SQL.equals(key)) {
+        } else if (QueryHints.HINT_USE_LITERAL_IN_SQL.equals(key)
+            || QueryHints.HINT_STREAM_DETACH.equals(key)) {
             Boolean convertedValue = (Boolean)Filters.convert(value, Boolean.class);
             plan.setHint(key, convertedValue);
         } else { // default
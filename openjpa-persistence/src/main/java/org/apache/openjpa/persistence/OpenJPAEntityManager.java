@@ -149,6 +149,26 @@ public interface OpenJPAEntityManager
      */
     void setIgnoreChanges(boolean ignore);
 
+    /**
+     * Whether the entity manager is read-only. A read-only entity manager
+     * does not allow persist, merge, remove or bulk updates, and detaches
+     * the entities loaded by each find or query when it completes, so that
+     * they are not kept in its persistence context.
+     *
+     * @since 4.0.1
+     */
+    boolean getReadOnly();
+
+    /**
+     * Whether the entity manager is read-only. A read-only entity manager
+     * does not allow persist, merge, remove or bulk updates, and detaches
+     * the entities loaded by each find or query when it completes, so that
+     * they are not kept in its persistence context.
+     *
+     * @since 4.0.1
+     */
+    void setReadOnly(boolean readOnly);
+
     /**
      * Whether to allow nontransactional access to persistent state.
      */
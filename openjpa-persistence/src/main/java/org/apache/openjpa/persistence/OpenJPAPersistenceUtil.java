@@ -18,7 +18,6 @@
  */
 package org.apache.openjpa.persistence;
 
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -140,7 +139,6 @@ public class OpenJPAPersistenceUtil {
         HashSet<OpenJPAStateManager> pcs) {
         boolean isLoaded = true;
         try {
-            BitSet loadSet = sm.getLoaded();
             if (attr != null) {
                 FieldMetaData fmd = sm.getMetaData().getField(attr);
                 // Could not find field metadata for the specified attribute.
@@ -148,7 +146,7 @@ public class OpenJPAPersistenceUtil {
                     return LoadState.UNKNOWN;
                 }
                 // Otherwise, return the load state
-                if(!loadSet.get(fmd.getIndex())) {
+                if(!sm.isFieldLoaded(fmd.getIndex())) {
                     return LoadState.NOT_LOADED;
                 }
             }
@@ -194,10 +192,8 @@ public class OpenJPAPersistenceUtil {
 
     private static boolean isLoadedField(OpenJPAStateManager sm,
         FieldMetaData fmd, HashSet<OpenJPAStateManager> pcs) {
-        BitSet loadSet = sm.getLoaded();
-
         // Simple load state check for the field
-        if (!loadSet.get(fmd.getIndex()))
+        if (!sm.isFieldLoaded(fmd.getIndex()))
             return false;
 
         Object field = sm.fetchField(fmd.getIndex(), false);
@@ -26,7 +26,11 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import jakarta.persistence.FlushModeType;
 import jakarta.persistence.LockModeType;
@@ -71,6 +75,8 @@ import org.apache.openjpa.util.UserException;
 public class QueryImpl<X> extends AbstractQuery<X> implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final Localizer _loc = Localizer.forPackage(QueryImpl.class);
+    // fetch batch size of streamed results when none is configured
+    private static final int STREAM_FETCH_BATCH_SIZE = 100;
 	private transient FetchPlan _fetch;
 
 	private String _id;
@@ -288,13 +294,23 @@ public class QueryImpl<X> extends AbstractQuery<X> implements Serializable {
 	}
 
 	private Object execute() {
+		return execute(false);
+	}
+
+	private Object execute(boolean streaming) {
         if (!isNative() && _query.getOperation() != QueryOperations.OP_SELECT)
             throw new InvalidStateException(_loc.get("not-select-query", getQueryString()), null, null, false);
 		try {
 		    lock();
             Map params = getParameterValues();
             boolean registered = preExecute(params);
-            Object result = _query.execute(params);
+            Object result;
+            _query.setStreaming(streaming);
+            try {
+                result = _query.execute(params);
+            } finally {
+                _query.setStreaming(false);
+            }
             if (registered) {
                 postExecute(result);
             }
@@ -331,6 +347,48 @@ public class QueryImpl<X> extends AbstractQuery<X> implements Serializable {
 		}
 	}
 
+	/**
+	 * Execute the query and stream its results. The streamed instances are
+	 * managed, as for {@link #getResultList}, unless the
+	 * {@link QueryHints#HINT_STREAM_DETACH} hint is set. With the hint, the
+	 * results are read forward-only from a cursor that stays open until the
+	 * stream is closed, and the instances the stream has moved past are
+	 * detached from the persistence context. As for other large result sets,
+	 * duplicates of distinct queries are then removed by the database only,
+	 * as filtering them in memory would retain every result.
+	 */
+	@Override
+    public Stream<X> getResultStream() {
+		_em.assertNotCloseInvoked();
+		if (!Boolean.TRUE.equals(_query.getFetchConfiguration().getHint(QueryHints.HINT_STREAM_DETACH)))
+		    return getResultList().stream();
+		boolean queryFetchPlanUsed = pushQueryFetchPlan();
+		FetchConfiguration fetch = _query.getFetchConfiguration();
+		int batch = fetch.getFetchBatchSize();
+		try {
+		    if (batch < 0)
+		        fetch.setFetchBatchSize(STREAM_FETCH_BATCH_SIZE);
+		    Object ob = execute(true);
+		    if (!(ob instanceof List))
+		        return Stream.of((X) ob);
+		    List<X> ret = (List<X>) ob;
+		    if (ret instanceof ResultList)
+		        ret = new DelegatingResultList<>((ResultList<X>) ret,
+		            PersistenceExceptions.getRollbackTranslator(_em));
+		    Stream<X> stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+		        ret.iterator(), Spliterator.ORDERED), false);
+		    if (ret instanceof ResultList) {
+		        ResultList<X> res = (ResultList<X>) ret;
+		        stream = stream.onClose(res::close);
+		    }
+		    return stream;
+		} finally {
+		    if (batch < 0)
+		        _query.getFetchConfiguration().setFetchBatchSize(batch);
+			popQueryFetchPlan(queryFetchPlanUsed);
+		}
+	}
+
 	/**
 	 * Execute a query that returns a single result.
 	 */